@@ -15,25 +15,37 @@
  */
 package com.mnxfst.stream.directory;
 
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 
 import akka.actor.ActorRef;
+import akka.actor.Terminated;
 import akka.actor.UntypedActor;
 
+import com.mnxfst.stream.directory.message.ComponentBulkLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentDeregistrationMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
 import com.mnxfst.stream.directory.message.ComponentDeregistrationResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
 
 /**
  * Central component registration. Each component must notify an instance of this node about
  * its existence. The reference along with an unique identifier will be written to a central
- * directory, eg. Zookeeper. 
+ * directory, eg. Zookeeper.<br/><br/>
+ * Instead of issuing {@link ComponentLookupMessage lookups} components may {@link ComponentSubscriptionMessage subscribe}
+ * for the components they depend on. Subscribers receive all matching registrations and deregistrations pushed towards
+ * them. Registered components and subscribers are watched, thus terminated components are deregistered and subscriptions 
+ * of terminated subscribers removed automatically.
  * @author mnxfst
  * @since 03.03.2014
  *
@@ -43,10 +55,13 @@ public class ComponentRegistry extends UntypedActor {
 	public static final String COMPONENT_REGISTRY_ID = "componentRegistry";
 	
 	/**
-	 * map of already registered compontents - a reference that does not exist might be 
+	 * index of already registered compontents - a reference that does not exist might be 
 	 * available in a remote store thus this is only a cache  
 	 */
-	private Map<String, ComponentRegistryEntry> registeredComponents = new HashMap<>();
+	private final ComponentRegistryIndex registeredComponents = new ComponentRegistryIndex();
+	
+	/** subscribers along with the component identifiers they are interested in (empty set == all components of the type) */
+	private final Map<ComponentType, Map<ActorRef, Set<String>>> subscriptions = new EnumMap<>(ComponentType.class);
 	
 	/**
 	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
@@ -55,16 +70,25 @@ public class ComponentRegistry extends UntypedActor {
 
 		if(message instanceof ComponentLookupMessage) {
 			getSender().tell(lookupComponentReferences((ComponentLookupMessage)message), getSelf());
+		} else if(message instanceof ComponentBulkLookupMessage) {
+			getSender().tell(lookupComponentReferences((ComponentBulkLookupMessage)message), getSelf());
 		} else if(message instanceof ComponentRegistrationMessage) {
 			getSender().tell(registerComponent((ComponentRegistrationMessage)message), getSelf());
 		} else if(message instanceof ComponentDeregistrationMessage) {
 			getSender().tell(deregisterComponent((ComponentDeregistrationMessage)message), getSelf());
+		} else if(message instanceof ComponentSubscriptionMessage) {
+			getSender().tell(subscribe((ComponentSubscriptionMessage)message, getSender()), getSelf());
+		} else if(message instanceof Terminated) {
+			handleTermination(((Terminated)message).getActor());
+		} else {
+			unhandled(message);
 		}
 		
 	}
 	
 	/**
-	 * Looks up the {@link ActorRef references} towards the named components
+	 * Looks up the {@link ActorRef references} towards the named components. If no component identifier is provided, the
+	 * references of all components of the requested type are returned
 	 * @param lookupMessage 
 	 * @return
 	 */
@@ -72,12 +96,46 @@ public class ComponentRegistry extends UntypedActor {
 		
 		// prepare response message and step through retrieved component identifiers (if any exists and the type is not null)
 		ComponentLookupResponseMessage response = new ComponentLookupResponseMessage(lookupMessage.getType());
-		if(lookupMessage != null && lookupMessage.getType() != null && lookupMessage.getComponentIds() != null && !lookupMessage.getComponentIds().isEmpty()) {
-			for(String cid : lookupMessage.getComponentIds()) {
-				// TODO cache lookup, zookeeper and null response
-				ComponentRegistryEntry registryEntry = registeredComponents.get(lookupMessage.getType()+"#"+cid);
-				if(registryEntry != null) {
+		if(lookupMessage.getType() != null) {
+			if(lookupMessage.getComponentIds() == null || lookupMessage.getComponentIds().isEmpty()) {
+				for(final ComponentRegistryEntry registryEntry : registeredComponents.getAll(lookupMessage.getType()))
 					response.addComponentReference(registryEntry.getComponentId(), registryEntry.getReference());
+			} else {
+				for(String cid : lookupMessage.getComponentIds()) {
+					// TODO cache lookup, zookeeper and null response
+					ActorRef reference = registeredComponents.getReference(lookupMessage.getType(), cid);
+					if(reference != null) {
+						response.addComponentReference(cid, reference);
+					}
+				}
+			}
+		}
+		return response;
+	}
+	
+	/**
+	 * Looks up the {@link ActorRef references} towards the named components of all requested types and answers them
+	 * in a single response
+	 * @param lookupMessage
+	 * @return
+	 */
+	protected ComponentBulkLookupResponseMessage lookupComponentReferences(final ComponentBulkLookupMessage lookupMessage) {
+		
+		ComponentBulkLookupResponseMessage response = new ComponentBulkLookupResponseMessage();
+		if(lookupMessage.getComponentIds() != null) {
+			for(final Map.Entry<ComponentType, Set<String>> typeComponentIds : lookupMessage.getComponentIds().entrySet()) {
+				final ComponentType type = typeComponentIds.getKey();
+				if(type == null)
+					continue;
+				if(typeComponentIds.getValue() == null || typeComponentIds.getValue().isEmpty()) {
+					for(final ComponentRegistryEntry registryEntry : registeredComponents.getAll(type))
+						response.addComponentReference(type, registryEntry.getComponentId(), registryEntry.getReference());
+				} else {
+					for(final String cid : typeComponentIds.getValue()) {
+						ActorRef reference = registeredComponents.getReference(type, cid);
+						if(reference != null)
+							response.addComponentReference(type, cid, reference);
+					}
 				}
 			}
 		}
@@ -101,13 +159,11 @@ public class ComponentRegistry extends UntypedActor {
 			if(msg.getReference() == null)
 				return new ComponentRegistrationResponseMessage(msg.getId(), msg.getType(), ComponentRegistrationResponseMessage.REGISTRATION_FAILED_MISSING_REFERENCE);
 			
-			// build component identifier from type followed by hash tag and component identifier
-			String componentIdentifier = msg.getType() + "#" + msg.getId();
-			if(this.registeredComponents.containsKey(componentIdentifier))
+			// register new component using the retrieved information, watch it for automatic deregistration and notify subscribers 
+			if(!this.registeredComponents.add(new ComponentRegistryEntry(msg.getId(), msg.getType(), msg.getReference())))
 				return new ComponentRegistrationResponseMessage(msg.getId(), msg.getType(), ComponentRegistrationResponseMessage.REGISTRATION_FAILED_NON_UNIQUE_ID);
-			
-			// register new component using the retrieved information 
-			this.registeredComponents.put(componentIdentifier, new ComponentRegistryEntry(msg.getId(), msg.getType(), msg.getReference()));
+			context().watch(msg.getReference());
+			notifyRegistration(msg.getId(), msg.getType(), msg.getReference());
 			return new ComponentRegistrationResponseMessage(msg.getId(), msg.getType(), ComponentRegistrationResponseMessage.REGISTRATION_OK);
 		}
 
@@ -130,12 +186,12 @@ public class ComponentRegistry extends UntypedActor {
 			if(msg.getType() == null)
 				return new ComponentDeregistrationResponseMessage(msg.getId(), msg.getType(), ComponentDeregistrationResponseMessage.DEREGISTRATION_FAILED_MISSING_TYPE);
 			
-			// build component identifier from type followed by hash tag and component identifier
-			String componentIdentifier = msg.getType() + "#" + msg.getId();
-			
-			// deregister component if available
-			if(this.registeredComponents.containsKey(componentIdentifier))
-				this.registeredComponents.remove(componentIdentifier);
+			// deregister component if available - its reference is not watched any longer unless still in use
+			final ComponentRegistryEntry entry = this.registeredComponents.remove(msg.getType(), msg.getId());
+			if(entry != null) {
+				unwatchUnused(entry.getReference());
+				notifyDeregistration(msg.getId(), msg.getType());
+			}
 			
 			// response message telling about successful deregistration
 			return new ComponentDeregistrationResponseMessage(msg.getId(), msg.getType(), ComponentDeregistrationResponseMessage.DEREGISTRATION_OK);
@@ -145,5 +201,115 @@ public class ComponentRegistry extends UntypedActor {
 		return new ComponentDeregistrationResponseMessage(null, null, ComponentDeregistrationResponseMessage.DEREGISTRATION_FAILED_EMPTY_MESSAGE);
 		
 	}
+	
+	/**
+	 * Subscribes the given {@link ActorRef subscriber} for changes on the referenced components and returns the references
+	 * of all matching components registered so far
+	 * @param msg
+	 * @param subscriber
+	 * @return
+	 */
+	protected ComponentLookupResponseMessage subscribe(final ComponentSubscriptionMessage msg, final ActorRef subscriber) {
+		
+		ComponentLookupResponseMessage response = new ComponentLookupResponseMessage(msg.getType());
+		if(msg.getType() == null || subscriber == null)
+			return response;
+
+		Map<ActorRef, Set<String>> typeSubscriptions = this.subscriptions.get(msg.getType());
+		if(typeSubscriptions == null) {
+			typeSubscriptions = new HashMap<>();
+			this.subscriptions.put(msg.getType(), typeSubscriptions);
+		}
+		
+		// merge with an existing subscription - an empty set of identifiers covers all components of the type 
+		Set<String> componentIds = typeSubscriptions.get(subscriber);
+		if(componentIds == null) {
+			componentIds = new HashSet<>(msg.getComponentIds());
+			typeSubscriptions.put(subscriber, componentIds);
+			context().watch(subscriber);
+		} else if(!componentIds.isEmpty()) {
+			if(msg.getComponentIds().isEmpty())
+				componentIds.clear();
+			else
+				componentIds.addAll(msg.getComponentIds());
+		}
+		
+		if(msg.getComponentIds().isEmpty()) {
+			for(final ComponentRegistryEntry entry : this.registeredComponents.getAll(msg.getType()))
+				response.addComponentReference(entry.getComponentId(), entry.getReference());
+		} else {
+			for(final String cid : msg.getComponentIds()) {
+				ActorRef reference = this.registeredComponents.getReference(msg.getType(), cid);
+				if(reference != null)
+					response.addComponentReference(cid, reference);
+			}
+		}
+		return response;
+	}
+	
+	/**
+	 * Removes all registrations and subscriptions of the terminated actor
+	 * @param ref
+	 */
+	protected void handleTermination(final ActorRef ref) {
+		
+		for(final ComponentRegistryEntry entry : this.registeredComponents.removeAll(ref)) {
+			notifyDeregistration(entry.getComponentId(), entry.getType());
+			context().system().log().info("Terminated component deregistered [id="+entry.getComponentId()+", type="+entry.getType()+"]");
+		}
+		
+		for(final Map<ActorRef, Set<String>> typeSubscriptions : this.subscriptions.values())
+			typeSubscriptions.remove(ref);
+	}
+	
+	/**
+	 * Stops watching the given reference if it is neither registered nor subscribed any longer
+	 * @param ref
+	 */
+	protected void unwatchUnused(final ActorRef ref) {
+		if(this.registeredComponents.contains(ref))
+			return;
+		for(final Map<ActorRef, Set<String>> typeSubscriptions : this.subscriptions.values()) {
+			if(typeSubscriptions.containsKey(ref))
+				return;
+		}
+		context().unwatch(ref);
+	}
+	
+	/**
+	 * Pushes the registration of the referenced component towards all interested subscribers
+	 * @param componentId
+	 * @param type
+	 * @param reference
+	 */
+	protected void notifyRegistration(final String componentId, final ComponentType type, final ActorRef reference) {
+		
+		final Map<ActorRef, Set<String>> typeSubscriptions = this.subscriptions.get(type);
+		if(typeSubscriptions != null && !typeSubscriptions.isEmpty()) {
+			ComponentLookupResponseMessage notification = new ComponentLookupResponseMessage(type);
+			notification.addComponentReference(componentId, reference);
+			for(final Map.Entry<ActorRef, Set<String>> subscription : typeSubscriptions.entrySet()) {
+				if(subscription.getValue().isEmpty() || subscription.getValue().contains(componentId))
+					subscription.getKey().tell(notification, getSelf());
+			}
+		}
+	}
+	
+	/**
+	 * Pushes the deregistration of the referenced component towards all interested subscribers
+	 * @param componentId
+	 * @param type
+	 */
+	protected void notifyDeregistration(final String componentId, final ComponentType type) {
+		
+		final Map<ActorRef, Set<String>> typeSubscriptions = this.subscriptions.get(type);
+		if(typeSubscriptions != null && !typeSubscriptions.isEmpty()) {
+			ComponentDeregistrationNotificationMessage notification = new ComponentDeregistrationNotificationMessage(componentId, type);
+			for(final Map.Entry<ActorRef, Set<String>> subscription : typeSubscriptions.entrySet()) {
+				if(subscription.getValue().isEmpty() || subscription.getValue().contains(componentId))
+					subscription.getKey().tell(notification, getSelf());
+			}
+		}
+	}
 
 }
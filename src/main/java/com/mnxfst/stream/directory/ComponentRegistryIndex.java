@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import akka.actor.ActorRef;
+
+/**
+ * Index of {@link ComponentRegistryEntry registry entries} used by the {@link ComponentRegistry component registry}. Entries
+ * are kept in one map per {@link ComponentType type}, thus a lookup is a plain array access followed by a hash map lookup 
+ * keyed by the component identifier and does not allocate any object. Instances are not thread-safe.
+ * @author mnxfst
+ * @since 22.03.2014
+ *
+ */
+public class ComponentRegistryIndex {
+
+	/** entries per type and component identifier */
+	private final EnumMap<ComponentType, Map<String, ComponentRegistryEntry>> entries = new EnumMap<>(ComponentType.class);
+	
+	/**
+	 * Default constructor
+	 */
+	public ComponentRegistryIndex() {
+		for(final ComponentType type : ComponentType.values())
+			this.entries.put(type, new HashMap<String, ComponentRegistryEntry>());
+	}
+	
+	/**
+	 * Adds the given entry to the index. Returns false if an entry of the same type and identifier already exists
+	 * @param entry
+	 * @return
+	 */
+	public boolean add(final ComponentRegistryEntry entry) {
+		final Map<String, ComponentRegistryEntry> typeEntries = this.entries.get(entry.getType());
+		if(typeEntries.containsKey(entry.getComponentId()))
+			return false;
+		typeEntries.put(entry.getComponentId(), entry);
+		return true;
+	}
+	
+	/**
+	 * Removes the referenced entry from the index and returns it. Returns null if no such entry exists
+	 * @param type
+	 * @param componentId
+	 * @return
+	 */
+	public ComponentRegistryEntry remove(final ComponentType type, final String componentId) {
+		return this.entries.get(type).remove(componentId);
+	}
+	
+	/**
+	 * Removes all entries pointing to the given reference and returns them
+	 * @param reference
+	 * @return
+	 */
+	public List<ComponentRegistryEntry> removeAll(final ActorRef reference) {
+		List<ComponentRegistryEntry> removed = null;
+		for(final Map<String, ComponentRegistryEntry> typeEntries : this.entries.values()) {
+			for(Iterator<ComponentRegistryEntry> iter = typeEntries.values().iterator(); iter.hasNext();) {
+				ComponentRegistryEntry entry = iter.next();
+				if(reference.equals(entry.getReference())) {
+					iter.remove();
+					if(removed == null)
+						removed = new ArrayList<>();
+					removed.add(entry);
+				}
+			}
+		}
+		if(removed == null)
+			return Collections.emptyList();
+		return removed;
+	}
+	
+	/**
+	 * Returns true if any entry points to the given reference
+	 * @param reference
+	 * @return
+	 */
+	public boolean contains(final ActorRef reference) {
+		for(final Map<String, ComponentRegistryEntry> typeEntries : this.entries.values()) {
+			for(final ComponentRegistryEntry entry : typeEntries.values()) {
+				if(reference.equals(entry.getReference()))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the referenced entry or null if it does not exist
+	 * @param type
+	 * @param componentId
+	 * @return
+	 */
+	public ComponentRegistryEntry get(final ComponentType type, final String componentId) {
+		return this.entries.get(type).get(componentId);
+	}
+	
+	/**
+	 * Returns the reference towards the referenced component or null if it does not exist
+	 * @param type
+	 * @param componentId
+	 * @return
+	 */
+	public ActorRef getReference(final ComponentType type, final String componentId) {
+		final ComponentRegistryEntry entry = this.entries.get(type).get(componentId);
+		return (entry != null ? entry.getReference() : null);
+	}
+	
+	/**
+	 * Returns all entries of the given type. The returned collection is a read-only view
+	 * @param type
+	 * @return
+	 */
+	public Collection<ComponentRegistryEntry> getAll(final ComponentType type) {
+		return Collections.unmodifiableCollection(this.entries.get(type).values());
+	}
+	
+	/**
+	 * Returns the number of entries of the given type
+	 * @param type
+	 * @return
+	 */
+	public int size(final ComponentType type) {
+		return this.entries.get(type).size();
+	}
+}
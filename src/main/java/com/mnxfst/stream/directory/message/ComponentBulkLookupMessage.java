@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory.message;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import akka.actor.ActorRef;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.directory.ComponentRegistry;
+import com.mnxfst.stream.directory.ComponentType;
+
+/**
+ * Requests the lookup of {@link ActorRef references} for components of different {@link ComponentType types} at once. The
+ * message must be directed to the {@link ComponentRegistry component registry} and will be responded to by a single
+ * {@link ComponentBulkLookupResponseMessage}. An empty set of identifiers requests all components of the type.
+ * @author mnxfst
+ * @since 22.03.2014
+ *
+ */
+@JsonRootName ( value = "componentBulkLookupMessage" )
+public class ComponentBulkLookupMessage implements Serializable {
+
+	private static final long serialVersionUID = 8617224532291064785L;
+
+	/** components to retrieve references for per type */
+	@JsonProperty ( value = "componentIds", required = true )
+	private Map<ComponentType, Set<String>> componentIds = new HashMap<>();
+	
+	/**
+	 * Default constructor
+	 */
+	public ComponentBulkLookupMessage() {		
+	}
+	
+	/**
+	 * Adds a component identifier to lookup the {@link ActorRef reference} for
+	 * @param type
+	 * @param componentId
+	 */
+	public void addComponentId(final ComponentType type, final String componentId) {
+		addComponentType(type).add(componentId);
+	}
+	
+	/**
+	 * Requests all components of the given type - unless identifiers are added for it
+	 * @param type
+	 * @return
+	 */
+	public Set<String> addComponentType(final ComponentType type) {
+		Set<String> typeComponentIds = this.componentIds.get(type);
+		if(typeComponentIds == null) {
+			typeComponentIds = new HashSet<>();
+			this.componentIds.put(type, typeComponentIds);
+		}
+		return typeComponentIds;
+	}
+
+	public Map<ComponentType, Set<String>> getComponentIds() {
+		return componentIds;
+	}
+
+	public void setComponentIds(Map<ComponentType, Set<String>> componentIds) {
+		this.componentIds = componentIds;
+	}
+	
+}
@@ -0,0 +1,81 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory.message;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import akka.actor.ActorRef;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.directory.ComponentType;
+
+/**
+ * Response to {@link ComponentBulkLookupMessage component bulk lookup message}
+ * @author mnxfst
+ * @since 22.03.2014
+ *
+ */
+@JsonRootName ( value = "componentBulkLookupResponseMessage" )
+public class ComponentBulkLookupResponseMessage implements Serializable {
+
+	private static final long serialVersionUID = -2608834722146404733L;
+
+	/** holds a mapping from a requested component id towards the actor reference per type. missing entry == no reference found */
+	@JsonProperty ( value = "componentRefs", required = true )
+	private Map<ComponentType, Map<String, ActorRef>> componentReferences = new HashMap<>();
+	
+	/**
+	 * Default constructor
+	 */
+	public ComponentBulkLookupResponseMessage() {		
+	}
+	
+	/**
+	 * Adds the {@link ActorRef reference} for a given component
+	 * @param type
+	 * @param componentId
+	 * @param componentReference
+	 */
+	public void addComponentReference(final ComponentType type, final String componentId, final ActorRef componentReference) {
+		Map<String, ActorRef> typeReferences = this.componentReferences.get(type);
+		if(typeReferences == null) {
+			typeReferences = new HashMap<>();
+			this.componentReferences.put(type, typeReferences);
+		}
+		typeReferences.put(componentId, componentReference);
+	}
+	
+	/**
+	 * Returns the references found for the given type - null if none was found
+	 * @param type
+	 * @return
+	 */
+	public Map<String, ActorRef> getComponentReferences(final ComponentType type) {
+		return this.componentReferences.get(type);
+	}
+
+	public Map<ComponentType, Map<String, ActorRef>> getComponentReferences() {
+		return componentReferences;
+	}
+
+	public void setComponentReferences(Map<ComponentType, Map<String, ActorRef>> componentReferences) {
+		this.componentReferences = componentReferences;
+	}
+	
+}
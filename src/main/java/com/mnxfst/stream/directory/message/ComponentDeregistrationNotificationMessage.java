@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.directory.ComponentRegistry;
+import com.mnxfst.stream.directory.ComponentType;
+
+/**
+ * Pushed by the {@link ComponentRegistry component registry} towards all {@link ComponentSubscriptionMessage subscribers}
+ * when the referenced component has been deregistered or terminated 
+ * @author mnxfst
+ * @since 21.03.2014
+ *
+ */
+@JsonRootName ( value = "componentDeregistrationNotificationMessage" )
+public class ComponentDeregistrationNotificationMessage implements Serializable {
+
+	private static final long serialVersionUID = -1954302981622785107L;
+
+	/** unique component identifier */
+	@JsonProperty ( value = "id", required = true )	
+	private String id;
+	
+	/** component type */
+	@JsonProperty ( value = "type", required = true )
+	private ComponentType type;
+	
+	/**
+	 * Default constructor
+	 */
+	public ComponentDeregistrationNotificationMessage() {		
+	}
+	
+	/**
+	 * Initializes the instance using the provided input
+	 * @param identifier
+	 * @param type
+	 */
+	public ComponentDeregistrationNotificationMessage(final String identifier, final ComponentType type) {
+		this.id = identifier;
+		this.type = type;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public ComponentType getType() {
+		return type;
+	}
+
+	public void setType(ComponentType type) {
+		this.type = type;
+	}
+	
+}
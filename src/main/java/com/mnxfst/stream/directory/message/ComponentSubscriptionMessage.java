@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory.message;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import akka.actor.ActorRef;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.directory.ComponentRegistry;
+import com.mnxfst.stream.directory.ComponentType;
+
+/**
+ * Subscribes the sender with the {@link ComponentRegistry component registry} for changes on components of the 
+ * given {@link ComponentType type}. The registry responds with a {@link ComponentLookupResponseMessage} holding the
+ * references of all matching components known so far and pushes a {@link ComponentLookupResponseMessage} for each
+ * later registration as well as a {@link ComponentDeregistrationNotificationMessage} for each deregistration or 
+ * termination. An empty set of component identifiers subscribes for all components of the given type. The subscription
+ * is removed as soon as the subscriber terminates.
+ * @author mnxfst
+ * @since 21.03.2014
+ *
+ */
+@JsonRootName ( value = "componentSubscriptionMessage" )
+public class ComponentSubscriptionMessage implements Serializable {
+
+	private static final long serialVersionUID = 3297834528871187703L;
+
+	/** components to receive notifications for - empty if all components of the given type are of interest */
+	@JsonProperty ( value = "componentIds", required = true )
+	private Set<String> componentIds = new HashSet<>();
+
+	/** component type */
+	@JsonProperty ( value = "type", required = true )
+	private ComponentType type;
+	
+	/**
+	 * Default constructor
+	 */
+	public ComponentSubscriptionMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param type
+	 */
+	public ComponentSubscriptionMessage(final ComponentType type) {
+		this.type = type;
+	}
+	
+	/**
+	 * Adds a component identifier to receive {@link ActorRef reference} notifications for
+	 * @param componentId
+	 */
+	public void addComponentId(final String componentId) {
+		this.componentIds.add(componentId);
+	}
+
+	public Set<String> getComponentIds() {
+		return componentIds;
+	}
+
+	public void setComponentIds(Set<String> componentIds) {
+		this.componentIds = componentIds;
+	}
+
+	public ComponentType getType() {
+		return type;
+	}
+
+	public void setType(ComponentType type) {
+		this.type = type;
+	}
+	
+}
@@ -55,6 +55,31 @@ public abstract class DispatchPolicy {
 	 */
 	public abstract Set<String> determineDestinations(final StreamEventMessage message);
 
+	/**
+	 * Notifies the policy about a destination which became available, eg. after being registered with the
+	 * component registry. Policies which distribute messages across the available destinations override it
+	 * @param destinationId
+	 */
+	public void destinationAdded(final String destinationId) {		
+	}
+
+	/**
+	 * Notifies the policy about a destination which is no longer available
+	 * @param destinationId
+	 */
+	public void destinationRemoved(final String destinationId) {		
+	}
+
+	/**
+	 * Notifies the policy about the load reported by a destination. Policies which balance messages across 
+	 * destinations override it
+	 * @param destinationId
+	 * @param receivedEvents number of events the destination received from the dispatcher since it started
+	 * @param latencyMillis average time passed between ingestion and arrival of events at the destination
+	 */
+	public void loadReported(final String destinationId, final long receivedEvents, final long latencyMillis) {		
+	}
+
 	/**
 	 * Returns the policy name 
 	 * @return
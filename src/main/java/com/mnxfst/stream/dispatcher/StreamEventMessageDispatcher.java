@@ -17,24 +17,53 @@ package com.mnxfst.stream.dispatcher;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
+
 import akka.actor.ActorRef;
 import akka.actor.UntypedActor;
+import akka.routing.RoundRobinRouter;
+import akka.routing.RouterConfig;
+import akka.routing.SmallestMailboxRouter;
 
 import com.mnxfst.stream.directory.ComponentType;
-import com.mnxfst.stream.directory.message.ComponentLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
 import com.mnxfst.stream.dispatcher.config.DispatchPolicyConfiguration;
 import com.mnxfst.stream.dispatcher.config.StreamEventMessageDispatcherConfiguration;
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.message.StreamEventBatch;
 import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.StreamEventConsistentHashingRouter;
+import com.mnxfst.stream.pipeline.message.PipelineLoadReportMessage;
 
 /**
- * Dispatches inbound messages according to a configured {@link DispatchPolicy policy}
+ * Dispatches inbound messages according to a configured {@link DispatchPolicy policy}. References towards the
+ * destinations are pushed by the component registry after {@link ComponentSubscriptionMessage subscribing} for them.
+ * Messages towards configured destinations not known yet are buffered like messages waiting for credits and are delivered in 
+ * order as soon as the reference arrives. Without a {@link StreamEventMessageDispatcherConfiguration#getFlowBufferSize() flow buffer}
+ * they are dropped and counted along with all other dropped events.<br/><br/>
+ * If more than one {@link StreamEventMessageDispatcherConfiguration#getInstances() instance} is configured, the instances are
+ * accessed through a {@link #createRouterConfig(StreamEventMessageDispatcherConfiguration) router} which is registered with the
+ * registry instead of the instances. Each instance initializes its own policy and subscribes for the destinations itself, thus
+ * instances share the read-only configuration only and never synchronize on a common state.<br/><br/>
+ * Destinations may limit the number of events sent towards them by granting {@link FlowCreditMessage credits}. Events exceeding 
+ * the credits are buffered per destination up to the {@link StreamEventMessageDispatcherConfiguration#getFlowBufferSize() configured size}
+ * and are delivered as soon as further credits arrive, all events beyond are dropped. The dispatcher itself grants credits 
+ * towards the senders of events according to the free buffer capacity, thus a slow destination finally stalls the listener. 
+ * Instances accessed through a router grant their credits under the dispatcher identifier along with their 
+ * {@link FlowCreditMessage#getInstanceId() instance name} and the number of events they received, thus the senders are able 
+ * to combine the credits of all instances
  * @author mnxfst
  * @since 28.02.2014
  *
@@ -49,6 +78,12 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 	private final Map<String, ActorRef> dispatchDestinations = new HashMap<>();
 	/** reference towards component registry */
 	private final ActorRef componentRegistryRef;
+	/** flow control state per destination */
+	private final Map<String, DestinationFlow> destinationFlows = new HashMap<>();
+	/** flow control state per sender of events */
+	private final Map<ActorRef, UpstreamFlow> upstreamFlows = new HashMap<>();
+	/** number of events dropped since a destination had neither credits nor buffer capacity left or was not known */
+	private long droppedEvents = 0;
 
 	/**
 	 * Initializes the dispatcher using the provided input
@@ -67,13 +102,14 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 		super.preStart();
 		this.dispatchPolicy = initDispatchPolicy(dispatcherConfiguration.getDispatchPolicy());
 		
-		// register the component with the registry
-		this.componentRegistryRef.tell(new ComponentRegistrationMessage(this.dispatcherConfiguration.getId(), ComponentType.DISPATCHER, getSelf()), getSelf());
+		// register the component with the registry - pooled instances register the router which is their parent
+		final ActorRef registrationRef = (isPooled() ? context().parent() : getSelf());
+		this.componentRegistryRef.tell(new ComponentRegistrationMessage(this.dispatcherConfiguration.getId(), ComponentType.DISPATCHER, registrationRef), getSelf());
 		
-		// request references to dispatch destinations
-		ComponentLookupMessage dispatchDestinationsLookupMessage = new ComponentLookupMessage(ComponentType.PIPELINE_ROOT);
-		dispatchDestinationsLookupMessage.getComponentIds().addAll(dispatcherConfiguration.getDestinations());
-		this.componentRegistryRef.tell(dispatchDestinationsLookupMessage, getSelf());
+		// subscribe for references to dispatch destinations
+		ComponentSubscriptionMessage dispatchDestinationsSubscriptionMessage = new ComponentSubscriptionMessage(ComponentType.PIPELINE_ROOT);
+		dispatchDestinationsSubscriptionMessage.getComponentIds().addAll(dispatcherConfiguration.getDestinations());
+		this.componentRegistryRef.tell(dispatchDestinationsSubscriptionMessage, getSelf());
 	}
 
 	/**
@@ -82,43 +118,53 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 	public void onReceive(Object message) throws Exception {
 		
 		if(message instanceof StreamEventMessage) {
-			if(this.dispatcherConfiguration.getDestinations().size() > this.dispatchDestinations.size())
-				ensurePipelineReferences();
-			
 			// handle messages of type StreamEventMessage by determining their destination and dispatching it to that instance
 			dispatchMessage((StreamEventMessage)message);
+			recordUpstreamEvents(getSender(), 1);
+		} else if(message instanceof StreamEventBatch) {
+			// batches are dispatched as a whole to each destination receiving all contained events 
+			dispatchBatch((StreamEventBatch)message);
+			recordUpstreamEvents(getSender(), ((StreamEventBatch)message).size());
+		} else if(message instanceof FlowCreditMessage) {
+			// credits granted by a destination
+			updateDestinationCredits((FlowCreditMessage)message);
 		} else if(message instanceof ComponentRegistrationResponseMessage) {
 
 			// 	handle registration response
 			ComponentRegistrationResponseMessage componentRegistrationResponse = (ComponentRegistrationResponseMessage)message;
 			if(componentRegistrationResponse.getState() == ComponentRegistrationResponseMessage.REGISTRATION_OK) {			
 				context().system().log().info("Successfully registered dispatcher with component registry: [id="+componentRegistrationResponse.getId()+", type="+componentRegistrationResponse.getType()+", state="+componentRegistrationResponse.getState()+"]");
+			} else if(isPooled() && componentRegistrationResponse.getState() == ComponentRegistrationResponseMessage.REGISTRATION_FAILED_NON_UNIQUE_ID) {
+				// all instances register the same router, only the first one succeeds
+				context().system().log().debug("Dispatcher router already registered with component registry: [id="+componentRegistrationResponse.getId()+", type="+componentRegistrationResponse.getType()+"]");
 			} else {
 				// TODO send log or report to another node?
 				throw new RuntimeException("Failed to register dispatcher with component registry: [id="+componentRegistrationResponse.getId()+", type="+componentRegistrationResponse.getType()+", state="+componentRegistrationResponse.getState()+"]");
 			}
 		} else if(message instanceof ComponentLookupResponseMessage) {
 			
-			ComponentLookupResponseMessage lr = (ComponentLookupResponseMessage)message;
-			// handle component lookup response
+			// handle component lookup response - pushed by the registry on subscription and each later registration
 			registerDispatchDestinations((ComponentLookupResponseMessage)message);
-		}
+		} else if(message instanceof PipelineLoadReportMessage) {
 			
-	}
-	
-	protected void ensurePipelineReferences() {
-		if(this.dispatcherConfiguration.getDestinations().size() > this.dispatchDestinations.size()) {
-			ComponentLookupMessage componentLookup = new ComponentLookupMessage(ComponentType.DISPATCHER);
-			for(String did : this.dispatcherConfiguration.getDestinations()) {
-				if(!this.dispatchDestinations.containsKey(did)) {
-					componentLookup.addComponentId(did);
+			// load reported periodically by the destinations
+			PipelineLoadReportMessage report = (PipelineLoadReportMessage)message;
+			this.dispatchPolicy.loadReported(report.getPipelineId(), report.getReceivedEvents(), report.getLatencyMillis());
+		} else if(message instanceof ComponentDeregistrationNotificationMessage) {
+			ComponentDeregistrationNotificationMessage notification = (ComponentDeregistrationNotificationMessage)message;
+			if(notification.getType() == ComponentType.PIPELINE_ROOT && this.dispatchDestinations.remove(notification.getId()) != null) {
+				this.dispatchPolicy.destinationRemoved(notification.getId());
+				DestinationFlow flow = this.destinationFlows.remove(notification.getId());
+				if(flow != null && !flow.pendingEvents.isEmpty()) {
+					dropEvents(notification.getId(), flow.pendingEvents.size());
+					grantUpstreamCredits();
 				}
+				context().system().log().info("Dispatch destination removed [dispatcher="+dispatcherConfiguration.getId()+", destination="+notification.getId()+"]");
 			}
-			if(!componentLookup.getComponentIds().isEmpty()) {
-				this.componentRegistryRef.tell(componentLookup, getSelf());
-				context().system().log().info("Component lookup issued by dispatcher '"+dispatcherConfiguration.getId()+"' as still pipeline references are missing [destIds="+this.dispatcherConfiguration.getDestinations().size()+", dispRefs="+this.dispatchDestinations.size()+"]");
-			}
+		} else {
+			unhandled(message);
 		}
+			
 	}
 	
 	/**
@@ -132,29 +178,276 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 			// determine the destinations according to the configured dispatch policy
 			Set<String> destIds = dispatchPolicy.determineDestinations(message);
 			if(destIds != null && !destIds.isEmpty()) {
-				// prepare a component lookup message that may be issued in case that not all destinations could be found
-				ComponentLookupMessage componentLookupMessage = new ComponentLookupMessage(ComponentType.PIPELINE_ROOT);
-				
-				// step through destination identifiers, lookup the reference and forward the message
+				// step through destination identifiers, lookup the reference and forward the message - messages towards unknown 
+				// destinations are retained as the registry pushes their references as soon as they become available
 				for(String id : destIds) {
-					
 					final ActorRef destinationRef = this.dispatchDestinations.get(id);
 					if(destinationRef != null)
-						destinationRef.tell(message, getSelf());
+						deliverMessage(id, destinationRef, message);
 					else
-						componentLookupMessage.addComponentId(id);
-					
+						retainMessage(id, message);
 				}
-
-				// if the component lookup message holds any identifiers, issue the request towards the registry
-				if(!componentLookupMessage.getComponentIds().isEmpty())
-					this.componentRegistryRef.tell(componentLookupMessage, getSelf());				
 			}
 		}
 	}
 	
 	/**
-	 * Registers the dispatch destinations contained in the received {@link ComponentLookupMessage component lookup response}
+	 * Dispatches the provided batch. Destinations selected for all contained events receive the batch instance itself,
+	 * all others a batch holding the subset of events selected for them - in both cases the order of events is kept
+	 * @param batch
+	 */
+	protected void dispatchBatch(final StreamEventBatch batch) {
+		
+		if(batch == null || batch.size() == 0)
+			return;
+		
+		// collect events per destination
+		final Map<String, List<StreamEventMessage>> destinationEvents = new LinkedHashMap<>();
+		for(final StreamEventMessage message : batch.getEvents()) {
+			Set<String> destIds = dispatchPolicy.determineDestinations(message);
+			if(destIds != null) {
+				for(String id : destIds) {
+					List<StreamEventMessage> events = destinationEvents.get(id);
+					if(events == null) {
+						events = new ArrayList<>(batch.size());
+						destinationEvents.put(id, events);
+					}
+					events.add(message);
+				}
+			}
+		}
+		
+		// forward the collected events - events towards unknown destinations are retained
+		for(final Map.Entry<String, List<StreamEventMessage>> entry : destinationEvents.entrySet()) {
+			final ActorRef destinationRef = this.dispatchDestinations.get(entry.getKey());
+			if(destinationRef != null) {
+				deliverBatch(entry.getKey(), destinationRef, entry.getValue(), (entry.getValue().size() == batch.size() ? batch : null));
+			} else {
+				for(final StreamEventMessage message : entry.getValue())
+					retainMessage(entry.getKey(), message);
+			}
+		}
+	}
+	
+	/**
+	 * Buffers the message for a configured destination whose reference has not been pushed by the registry yet. The message is 
+	 * dropped if no flow buffer is configured, the buffer is full or the destination is not configured at all
+	 * @param destinationId
+	 * @param message
+	 */
+	protected void retainMessage(final String destinationId, final StreamEventMessage message) {
+		
+		if(this.dispatcherConfiguration.getFlowBufferSize() > 0 && this.dispatcherConfiguration.getDestinations().contains(destinationId)) {
+			final DestinationFlow flow = getDestinationFlow(destinationId);
+			if(flow.pendingEvents.size() < this.dispatcherConfiguration.getFlowBufferSize()) {
+				flow.pendingEvents.add(message);
+				return;
+			}
+		}
+		dropEvents(destinationId, 1);
+	}
+	
+	/**
+	 * Sends the message towards the destination if it has credits left and no events are waiting for it, otherwise the 
+	 * message is buffered or dropped if the buffer is full
+	 * @param destinationId
+	 * @param destinationRef
+	 * @param message
+	 */
+	protected void deliverMessage(final String destinationId, final ActorRef destinationRef, final StreamEventMessage message) {
+		
+		if(this.dispatcherConfiguration.getFlowBufferSize() <= 0) {
+			destinationRef.tell(message, getSelf());
+			return;
+		}
+		
+		final DestinationFlow flow = getDestinationFlow(destinationId);
+		if(flow.pendingEvents.isEmpty() && flow.sentEvents < flow.creditLimit) {
+			destinationRef.tell(message, getSelf());
+			flow.sentEvents++;
+		} else if(flow.pendingEvents.size() < this.dispatcherConfiguration.getFlowBufferSize()) {
+			flow.pendingEvents.add(message);
+		} else {
+			dropEvents(destinationId, 1);
+		}
+	}
+	
+	/**
+	 * Sends the events as batch towards the destination if it has credits left and no events are waiting for it, otherwise 
+	 * the events are buffered or dropped if the buffer is full. A batch is sent as a whole even if it exceeds the credits
+	 * left, thus the credits are overrun by a single batch at most 
+	 * @param destinationId
+	 * @param destinationRef
+	 * @param events
+	 * @param batch batch holding exactly the given events, null if a new one must be created
+	 */
+	protected void deliverBatch(final String destinationId, final ActorRef destinationRef, final List<StreamEventMessage> events, final StreamEventBatch batch) {
+		
+		final DestinationFlow flow = (this.dispatcherConfiguration.getFlowBufferSize() > 0 ? getDestinationFlow(destinationId) : null);
+		if(flow == null || (flow.pendingEvents.isEmpty() && flow.sentEvents < flow.creditLimit)) {
+			destinationRef.tell((batch != null ? batch : new StreamEventBatch(events)), getSelf());
+			if(flow != null)
+				flow.sentEvents += events.size();
+			return;
+		}
+		
+		for(final StreamEventMessage event : events) {
+			if(flow.pendingEvents.size() < this.dispatcherConfiguration.getFlowBufferSize())
+				flow.pendingEvents.add(event);
+			else
+				dropEvents(destinationId, 1);
+		}
+	}
+	
+	/**
+	 * Updates the credits of the destination named in the message and delivers the events buffered for it as far
+	 * as the credits allow
+	 * @param credit
+	 */
+	protected void updateDestinationCredits(final FlowCreditMessage credit) {
+		
+		if(credit.getSourceId() == null || this.dispatcherConfiguration.getFlowBufferSize() <= 0)
+			return;
+		
+		final DestinationFlow flow = getDestinationFlow(credit.getSourceId());
+		flow.creditLimit = (flow.creditLimit == DestinationFlow.UNLIMITED ? credit.getCreditLimit() : Math.max(flow.creditLimit, credit.getCreditLimit()));
+		
+		final ActorRef destinationRef = this.dispatchDestinations.get(credit.getSourceId());
+		if(destinationRef != null && deliverPendingEvents(destinationRef, flow))
+			grantUpstreamCredits();
+	}
+	
+	/**
+	 * Delivers the events buffered for the destination as far as its credits allow - more than one event is sent as batch.
+	 * Returns true if any event has been delivered
+	 * @param destinationRef
+	 * @param flow
+	 * @return
+	 */
+	protected boolean deliverPendingEvents(final ActorRef destinationRef, final DestinationFlow flow) {
+		
+		final long available = Math.min(flow.pendingEvents.size(), flow.creditLimit - flow.sentEvents);
+		if(available <= 0)
+			return false;
+		if(available == 1) {
+			destinationRef.tell(flow.pendingEvents.poll(), getSelf());
+		} else {
+			final List<StreamEventMessage> events = new ArrayList<>((int)available);
+			for(int i = 0; i < available; i++)
+				events.add(flow.pendingEvents.poll());
+			destinationRef.tell(new StreamEventBatch(events), getSelf());
+		}
+		flow.sentEvents += available;
+		return true;
+	}
+	
+	/**
+	 * Records events received from the given sender and grants further credits if required. Dispatchers without flow
+	 * control do not grant credits
+	 * @param sender
+	 * @param events
+	 */
+	protected void recordUpstreamEvents(final ActorRef sender, final int events) {
+		
+		if(this.dispatcherConfiguration.getFlowBufferSize() <= 0 || sender == null || sender.equals(context().system().deadLetters()))
+			return;
+		
+		UpstreamFlow flow = this.upstreamFlows.get(sender);
+		if(flow == null) {
+			flow = new UpstreamFlow();
+			this.upstreamFlows.put(sender, flow);
+		}
+		flow.receivedEvents += events;
+		grantUpstreamCredits(sender, flow, computeFreeBufferCapacity());
+	}
+	
+	/**
+	 * Grants further credits towards all senders of events if required
+	 */
+	protected void grantUpstreamCredits() {
+		if(this.upstreamFlows.isEmpty())
+			return;
+		final long free = computeFreeBufferCapacity();
+		for(final Map.Entry<ActorRef, UpstreamFlow> entry : this.upstreamFlows.entrySet())
+			grantUpstreamCredits(entry.getKey(), entry.getValue(), free);
+	}
+	
+	/**
+	 * Grants further credits towards the sender as soon as less than half of the buffer size is left. The sender
+	 * may send its share of the free buffer capacity beyond the events received from it so far. Pooled instances
+	 * name themselves and report the events received, as the sender combines the credits of all instances
+	 * @param sender
+	 * @param flow
+	 * @param free
+	 */
+	protected void grantUpstreamCredits(final ActorRef sender, final UpstreamFlow flow, final long free) {
+		final long limit = flow.receivedEvents + free / this.upstreamFlows.size();
+		if(limit > flow.creditLimit && (flow.creditLimit < 0 || flow.creditLimit - flow.receivedEvents < this.dispatcherConfiguration.getFlowBufferSize() / 2)) {
+			flow.creditLimit = limit;
+			if(isPooled())
+				sender.tell(new FlowCreditMessage(this.dispatcherConfiguration.getId(), limit, getSelf().path().name(), flow.receivedEvents), getSelf());
+			else
+				sender.tell(new FlowCreditMessage(this.dispatcherConfiguration.getId(), limit), getSelf());
+		}
+	}
+	
+	/**
+	 * Returns the buffer capacity left by the destination holding the largest number of events
+	 * @return
+	 */
+	protected long computeFreeBufferCapacity() {
+		int pending = 0;
+		for(final DestinationFlow flow : this.destinationFlows.values())
+			pending = Math.max(pending, flow.pendingEvents.size());
+		return Math.max(0, this.dispatcherConfiguration.getFlowBufferSize() - pending);
+	}
+	
+	/**
+	 * Returns the flow control state of the referenced destination - creates it if missing
+	 * @param destinationId
+	 * @return
+	 */
+	protected DestinationFlow getDestinationFlow(final String destinationId) {
+		DestinationFlow flow = this.destinationFlows.get(destinationId);
+		if(flow == null) {
+			flow = new DestinationFlow();
+			this.destinationFlows.put(destinationId, flow);
+		}
+		return flow;
+	}
+	
+	/**
+	 * Counts the given number of dropped events and reports the first and each ten thousandth one 
+	 * @param destinationId
+	 * @param events
+	 */
+	protected void dropEvents(final String destinationId, final int events) {
+		final long before = this.droppedEvents;
+		this.droppedEvents += events;
+		if(before == 0 || before / 10000 != this.droppedEvents / 10000)
+			context().system().log().warning("Events dropped, destination ran out of credits or is unknown [dispatcher="+dispatcherConfiguration.getId()+", destination="+destinationId+", dropped="+this.droppedEvents+"]");
+	}
+	
+	/**
+	 * Returns the number of events dropped since a destination had neither credits nor buffer capacity left or was not known
+	 * @return
+	 */
+	protected long getDroppedEvents() {
+		return this.droppedEvents;
+	}
+	
+	/**
+	 * Returns the number of events buffered for the referenced destination
+	 * @param destinationId
+	 * @return
+	 */
+	protected int getPendingEvents(final String destinationId) {
+		final DestinationFlow flow = this.destinationFlows.get(destinationId);
+		return (flow != null ? flow.pendingEvents.size() : 0);
+	}
+	
+	/**
+	 * Registers the dispatch destinations contained in the received {@link ComponentLookupResponseMessage component lookup response}
 	 * @param componentLookupResponse
 	 */
 	protected void registerDispatchDestinations(final ComponentLookupResponseMessage componentLookupResponse) {
@@ -170,7 +463,17 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 				for(String cid : componentLookupResponse.getComponentReferences().keySet()) {
 					final ActorRef cref = componentLookupResponse.getComponentReferences().get(cid);
 					if(cref != null) {
-						dispatchDestinations.put(cid, cref);
+						if(dispatchDestinations.put(cid, cref) == null) {
+							// a (re-)registered destination counts from scratch - events retained while it was unknown are delivered right away
+							final DestinationFlow previous = this.destinationFlows.remove(cid);
+							dispatchPolicy.destinationAdded(cid);
+							if(previous != null && !previous.pendingEvents.isEmpty()) {
+								final DestinationFlow flow = getDestinationFlow(cid);
+								flow.pendingEvents.addAll(previous.pendingEvents);
+								deliverPendingEvents(cref, flow);
+								grantUpstreamCredits();
+							}
+						}
 					} else {
 						context().system().log().info("Lookup for component [cid="+cid+", type="+componentLookupResponse.getType()+"] failed: no reference received");
 					}
@@ -199,6 +502,30 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 		return dispatchPolicyInstance;		
 	}
 
+	/**
+	 * Returns true if the dispatcher is one of several instances accessed through a router
+	 * @return
+	 */
+	protected boolean isPooled() {
+		return this.dispatcherConfiguration.getInstances() > 1;
+	}
+	
+	/**
+	 * Returns the configuration of the router used for accessing the {@link StreamEventMessageDispatcherConfiguration#getInstances() configured number} 
+	 * of dispatcher instances. The router creates the instances itself, thus they receive the router as {@link akka.actor.ActorContext#parent() parent}
+	 * @param cfg
+	 * @return
+	 */
+	public static RouterConfig createRouterConfig(final StreamEventMessageDispatcherConfiguration cfg) {
+		
+		final int instances = Math.max(1, cfg.getInstances());
+		if(StringUtils.equalsIgnoreCase(cfg.getRouterType(), StreamEventMessageDispatcherConfiguration.ROUTER_TYPE_SMALLEST_MAILBOX))
+			return new SmallestMailboxRouter(instances);
+		if(StringUtils.equalsIgnoreCase(cfg.getRouterType(), StreamEventMessageDispatcherConfiguration.ROUTER_TYPE_CONSISTENT_HASH))
+			return new StreamEventConsistentHashingRouter(instances, cfg.getRouterHashAttribute());
+		return new RoundRobinRouter(instances);
+	}
+
 	/**
 	 * Returns the dispatcher
 	 * @return
@@ -206,5 +533,33 @@ public class StreamEventMessageDispatcher extends UntypedActor {
 	protected DispatchPolicy getDispatchPolicy() {
 		return this.dispatchPolicy;		
 	}
+
+	/**
+	 * Flow control state of a single destination
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	protected static class DestinationFlow {
+		/** credit limit of destinations which did not grant any credits */
+		static final long UNLIMITED = Long.MAX_VALUE;
+		/** events sent since the destination became available */
+		long sentEvents = 0;
+		/** total number of events the destination accepts */
+		long creditLimit = UNLIMITED;
+		/** events waiting for credits */
+		final ArrayDeque<StreamEventMessage> pendingEvents = new ArrayDeque<>();
+	}
+	
+	/**
+	 * Flow control state of a single sender of events
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	protected static class UpstreamFlow {
+		/** events received from the sender */
+		long receivedEvents = 0;
+		/** credit limit granted towards the sender, -1 if none has been granted yet */
+		long creditLimit = -1;
+	}
 	
 }
@@ -33,6 +33,17 @@ import com.mnxfst.stream.dispatcher.StreamEventMessageDispatcher;
 public class StreamEventMessageDispatcherConfiguration implements Serializable {
 
 	private static final long serialVersionUID = 5180913580358704014L;
+
+	/** instances are selected in turn */
+	public static final String ROUTER_TYPE_ROUND_ROBIN = "roundRobin";
+	/** the instance holding the fewest messages in its mailbox is selected */
+	public static final String ROUTER_TYPE_SMALLEST_MAILBOX = "smallestMailbox";
+	/** instances are selected by hashing the {@link #routerHashAttribute configured attribute}, thus events sharing a key keep their order */
+	public static final String ROUTER_TYPE_CONSISTENT_HASH = "consistentHash";
+	
+	/** default number of events buffered per destination running out of credits */
+	public static final int DEFAULT_FLOW_BUFFER_SIZE = 10000;
+	
 	
 	/** identifier to be used for referencing the dispatcher, eg. by stream listeners */
 	@JsonProperty ( value = "id", required = true )
@@ -49,6 +60,24 @@ public class StreamEventMessageDispatcherConfiguration implements Serializable {
 	/** dispatch policy */
 	@JsonProperty ( value = "dispatchPolicy", required = true )
 	private DispatchPolicyConfiguration dispatchPolicy = null;
+	/** optional akka dispatcher the dispatcher is executed on, eg. stream-analyzer.dispatchers.cpu-bound */
+	@JsonProperty ( value = "dispatcher", required = false )
+	private String dispatcher = null;
+	/** number of dispatcher instances - accessed through the configured router if more than one is requested */
+	@JsonProperty ( value = "instances", required = false )
+	private int instances = 1;
+	/** router type used for accessing the instances - see ROUTER_TYPE_* constants, defaults to round-robin */
+	@JsonProperty ( value = "routerType", required = false )
+	private String routerType = ROUTER_TYPE_ROUND_ROBIN;
+	/** custom attribute used as hash key by consistent hash router - the event identifier is used if missing */
+	@JsonProperty ( value = "routerHashAttribute", required = false )
+	private String routerHashAttribute = null;
+	/** max. number of events buffered per destination running out of credits - further events are dropped, 0 disables the flow control */
+	@JsonProperty ( value = "flowBufferSize", required = false )
+	private int flowBufferSize = DEFAULT_FLOW_BUFFER_SIZE;
+	/** optional akka mailbox the dispatcher instances use, eg. stream-analyzer.mailboxes.bounded */
+	@JsonProperty ( value = "mailbox", required = false )
+	private String mailbox = null;
 	
 	/**
 	 * Default constructor
@@ -143,6 +172,89 @@ public class StreamEventMessageDispatcherConfiguration implements Serializable {
 	public void setDispatchPolicy(DispatchPolicyConfiguration dispatchPolicy) {
 		this.dispatchPolicy = dispatchPolicy;
 	}
-	
+
+	/**
+	 * @return the dispatcher
+	 */
+	public String getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * @param dispatcher the dispatcher to set
+	 */
+	public void setDispatcher(String dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * @return the instances
+	 */
+	public int getInstances() {
+		return instances;
+	}
+
+	/**
+	 * @param instances the instances to set
+	 */
+	public void setInstances(int instances) {
+		this.instances = instances;
+	}
+
+	/**
+	 * @return the routerType
+	 */
+	public String getRouterType() {
+		return routerType;
+	}
+
+	/**
+	 * @param routerType the routerType to set
+	 */
+	public void setRouterType(String routerType) {
+		this.routerType = routerType;
+	}
+
+	/**
+	 * @return the routerHashAttribute
+	 */
+	public String getRouterHashAttribute() {
+		return routerHashAttribute;
+	}
+
+	/**
+	 * @param routerHashAttribute the routerHashAttribute to set
+	 */
+	public void setRouterHashAttribute(String routerHashAttribute) {
+		this.routerHashAttribute = routerHashAttribute;
+	}
+
+	/**
+	 * @return the flowBufferSize
+	 */
+	public int getFlowBufferSize() {
+		return flowBufferSize;
+	}
+
+	/**
+	 * @param flowBufferSize the flowBufferSize to set
+	 */
+	public void setFlowBufferSize(int flowBufferSize) {
+		this.flowBufferSize = flowBufferSize;
+	}
+
+	/**
+	 * @return the mailbox
+	 */
+	public String getMailbox() {
+		return mailbox;
+	}
+
+	/**
+	 * @param mailbox the mailbox to set
+	 */
+	public void setMailbox(String mailbox) {
+		this.mailbox = mailbox;
+	}
 	
 }
@@ -0,0 +1,240 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mnxfst.stream.dispatcher.DispatchPolicy;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Implements a key-partitioned dispatch policy: each message is forwarded to exactly one destination which is
+ * selected by hashing a key extracted from the message onto a ring of destinations. All messages sharing the same
+ * key - eg. the same visitor - end up at the same destination which allows stateful aggregations across several
+ * pipeline instances.<br/><br/>
+ * The key is read either from a custom attribute or from a field of the event content referenced by its dotted path, 
+ * eg. "visitor.id". Messages missing the key are distributed by their identifier. Each destination is placed on the 
+ * ring several times (virtual nodes), thus keys spread evenly and adding or removing a destination only remaps the 
+ * keys falling into its ring segments. Destinations are removed from the ring as long as they are not available.
+ * @author mnxfst
+ * @since 28.03.2014
+ *
+ */
+public class ConsistentHashDispatchPolicy extends DispatchPolicy {
+
+	public static final String HASH_DESTINATION_PREFIX = "hash.destination.";
+	public static final String HASH_KEY_PATH = "hash.key.path";
+	public static final String HASH_KEY_ATTRIBUTE = "hash.key.attribute";
+	public static final String HASH_VIRTUAL_NODES = "hash.virtualNodes";
+	
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+	
+	/** destinations currently placed on the ring */
+	private final Set<String> destinations = new LinkedHashSet<>();
+	/** pre-allocated results, one per destination */
+	private final Map<String, Set<String>> destinationSets = new HashMap<>();
+	/** segments of the path pointing towards the key within the event content */
+	private String[] keyPath = null;
+	/** custom attribute holding the key */
+	private String keyAttribute = null;
+	/** number of ring positions per destination */
+	private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+	
+	/** sorted ring positions */
+	private long[] ringPositions = new long[0];
+	/** destination owning the ring position found at the same index */
+	private String[] ringDestinations = new String[0];
+	
+	/**
+	 * Initializes the policy
+	 * @param name
+	 */
+	public ConsistentHashDispatchPolicy(String name) {
+		super(name);
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#init(java.util.Map)
+	 */
+	public void init(Map<String, String> settings) {
+		
+		if(settings == null || settings.isEmpty())
+			throw new IllegalArgumentException("Missing required settings for consistent hash dispatch policy '"+getName()+"'");
+		
+		for(int i = 0; settings.containsKey(HASH_DESTINATION_PREFIX + i); i++) {
+			String value = settings.get(HASH_DESTINATION_PREFIX + i);
+			if(StringUtils.isNotBlank(value))
+				this.destinations.add(value.trim());
+		}
+		
+		String path = settings.get(HASH_KEY_PATH);
+		if(StringUtils.isNotBlank(path))
+			this.keyPath = StringUtils.split(path.trim(), '.');
+		String attribute = settings.get(HASH_KEY_ATTRIBUTE);
+		if(StringUtils.isNotBlank(attribute))
+			this.keyAttribute = attribute.trim();
+		if(this.keyPath == null && this.keyAttribute == null)
+			throw new IllegalArgumentException("Missing required setting '"+HASH_KEY_PATH+"' or '"+HASH_KEY_ATTRIBUTE+"' for consistent hash dispatch policy '"+getName()+"'");
+		
+		String nodes = settings.get(HASH_VIRTUAL_NODES);
+		if(StringUtils.isNotBlank(nodes)) {
+			try {
+				this.virtualNodes = Integer.parseInt(nodes.trim());
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value '"+nodes+"' found for setting '"+HASH_VIRTUAL_NODES+"'");
+			}
+			if(this.virtualNodes < 1)
+				throw new IllegalArgumentException("Invalid value '"+nodes+"' found for setting '"+HASH_VIRTUAL_NODES+"'");
+		}
+		
+		rebuildRing();
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#determineDestinations(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	public Set<String> determineDestinations(StreamEventMessage message) {
+		
+		if(this.ringPositions.length == 0)
+			return Collections.emptySet();
+		
+		String key = extractKey(message);
+		if(key == null)
+			key = message.getIdentifier();
+		return this.destinationSets.get(findDestination(key != null ? hash(key) : 0));
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#destinationAdded(java.lang.String)
+	 */
+	public void destinationAdded(String destinationId) {
+		if(destinationId != null && this.destinations.add(destinationId))
+			rebuildRing();
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#destinationRemoved(java.lang.String)
+	 */
+	public void destinationRemoved(String destinationId) {
+		if(this.destinations.remove(destinationId))
+			rebuildRing();
+	}
+	
+	/**
+	 * Returns the key found in the configured custom attribute or event field - null if the message does not carry it
+	 * @param message
+	 * @return
+	 */
+	protected String extractKey(final StreamEventMessage message) {
+		
+		if(this.keyAttribute != null) {
+			String key = message.getCustomAttributes().get(this.keyAttribute);
+			if(key != null)
+				return key;
+		}
+		
+		if(this.keyPath != null) {
+			JsonNode node = message.getEventTree();
+			for(int i = 0; i < this.keyPath.length && !node.isMissingNode(); i++)
+				node = node.path(this.keyPath[i]);
+			if(node.isValueNode())
+				return node.asText();
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the destination owning the first ring position at or after the given hash
+	 * @param hash
+	 * @return
+	 */
+	protected String findDestination(final long hash) {
+		int index = Arrays.binarySearch(this.ringPositions, hash);
+		if(index < 0)
+			index = -index - 1;
+		if(index == this.ringPositions.length)
+			index = 0;
+		return this.ringDestinations[index];
+	}
+	
+	/**
+	 * Places the virtual nodes of all available destinations on the ring
+	 */
+	protected void rebuildRing() {
+		
+		TreeMap<Long, String> ring = new TreeMap<>();
+		for(String destination : this.destinations) {
+			for(int i = 0; i < this.virtualNodes; i++) {
+				Long position = Long.valueOf(hash(destination + "#" + i));
+				// on collision the lexicographically smaller destination wins, thus the ring does not depend on the order of addition
+				String owner = ring.get(position);
+				if(owner == null || destination.compareTo(owner) < 0)
+					ring.put(position, destination);
+			}
+		}
+		
+		long[] ringPositions = new long[ring.size()];
+		String[] ringDestinations = new String[ring.size()];
+		int i = 0;
+		for(Map.Entry<Long, String> entry : ring.entrySet()) {
+			ringPositions[i] = entry.getKey().longValue();
+			ringDestinations[i] = entry.getValue();
+			i++;
+		}
+		this.ringPositions = ringPositions;
+		this.ringDestinations = ringDestinations;
+		
+		this.destinationSets.clear();
+		for(String destination : this.destinations)
+			this.destinationSets.put(destination, Collections.singleton(destination));
+	}
+	
+	/**
+	 * Computes a 64 bit hash of the given string (FNV-1a followed by the murmur3 finalizer for better avalanche)
+	 * @param value
+	 * @return
+	 */
+	protected static long hash(final String value) {
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+	
+	/**
+	 * Returns the destinations currently placed on the ring
+	 * @return
+	 */
+	public Set<String> getDestinations() {
+		return Collections.unmodifiableSet(this.destinations);
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.mnxfst.stream.dispatcher.DispatchPolicy;
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.PipelineRoot;
+import com.mnxfst.stream.pipeline.message.PipelineLoadReportMessage;
+
+/**
+ * Balances messages across equivalent destinations, eg. replicated pipelines: each message is forwarded to exactly
+ * one destination which is selected by the power of two choices - two destinations are sampled randomly and the 
+ * less loaded one wins. Compared with always picking the least loaded destination, sampling keeps the dispatcher from
+ * hot-spotting a single destination while acting on load values which are only updated periodically.<br/><br/>
+ * The load of a destination is computed from the {@link PipelineLoadReportMessage reports} sent by each {@link PipelineRoot pipeline root}:
+ * the number of events sent but not yet received by the destination (queue depth) plus the reported average latency 
+ * between ingestion and arrival, weighted by a configurable factor that expresses how many queued events a millisecond 
+ * of latency is worth. Destinations are removed as long as they are not available.
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class LeastLoadedDispatchPolicy extends DispatchPolicy {
+
+	public static final String LOAD_DESTINATION_PREFIX = "load.destination.";
+	public static final String LOAD_CHOICES = "load.choices";
+	public static final String LOAD_LATENCY_WEIGHT = "load.latencyWeight";
+	
+	public static final int DEFAULT_CHOICES = 2;
+	public static final double DEFAULT_LATENCY_WEIGHT = 1.0;
+	
+	/** load of available destinations */
+	private final Map<String, DestinationLoad> destinations = new LinkedHashMap<>();
+	/** available destinations - array for sampling them by index */
+	private DestinationLoad[] candidates = new DestinationLoad[0];
+	/** number of destinations sampled for each message - all destinations are compared if it exceeds their number */
+	private int choices = DEFAULT_CHOICES;
+	/** number of queued events a millisecond of latency is worth */
+	private double latencyWeight = DEFAULT_LATENCY_WEIGHT;
+	/** used for sampling destinations - the policy is accessed by the owning dispatcher only */
+	private final Random random = new Random();
+	
+	/**
+	 * Initializes the policy
+	 * @param name
+	 */
+	public LeastLoadedDispatchPolicy(String name) {
+		super(name);
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#init(java.util.Map)
+	 */
+	public void init(Map<String, String> settings) {
+
+		if(settings == null)
+			throw new IllegalArgumentException("Missing required settings for least loaded dispatch policy '"+getName()+"'");
+		
+		for(int i = 0; settings.containsKey(LOAD_DESTINATION_PREFIX + i); i++) {
+			String value = settings.get(LOAD_DESTINATION_PREFIX + i);
+			if(StringUtils.isNotBlank(value) && !this.destinations.containsKey(value.trim()))
+				this.destinations.put(value.trim(), new DestinationLoad(value.trim()));
+		}
+		
+		String choices = settings.get(LOAD_CHOICES);
+		if(StringUtils.isNotBlank(choices)) {
+			try {
+				this.choices = Integer.parseInt(choices.trim());
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value '"+choices+"' found for setting '"+LOAD_CHOICES+"'");
+			}
+			if(this.choices < 1)
+				throw new IllegalArgumentException("Invalid value '"+choices+"' found for setting '"+LOAD_CHOICES+"'");
+		}
+		
+		String latencyWeight = settings.get(LOAD_LATENCY_WEIGHT);
+		if(StringUtils.isNotBlank(latencyWeight)) {
+			try {
+				this.latencyWeight = Double.parseDouble(latencyWeight.trim());
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value '"+latencyWeight+"' found for setting '"+LOAD_LATENCY_WEIGHT+"'");
+			}
+			if(this.latencyWeight < 0 || Double.isNaN(this.latencyWeight) || Double.isInfinite(this.latencyWeight))
+				throw new IllegalArgumentException("Invalid value '"+latencyWeight+"' found for setting '"+LOAD_LATENCY_WEIGHT+"'");
+		}
+		
+		rebuildCandidates();
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#determineDestinations(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	public Set<String> determineDestinations(StreamEventMessage message) {
+		
+		final DestinationLoad[] candidates = this.candidates;
+		final int count = candidates.length;
+		if(count == 0)
+			return Collections.emptySet();
+		
+		DestinationLoad selected;
+		if(count == 1) {
+			selected = candidates[0];
+		} else if(this.choices >= count) {
+			// compare all destinations, starting at a random one to spread ties
+			int offset = this.random.nextInt(count);
+			selected = candidates[offset];
+			for(int i = 1; i < count; i++) {
+				DestinationLoad candidate = candidates[(offset + i) % count];
+				if(candidate.load(this.latencyWeight) < selected.load(this.latencyWeight))
+					selected = candidate;
+			}
+		} else if(this.choices == 2) {
+			// sample two distinct destinations
+			int first = this.random.nextInt(count);
+			int second = this.random.nextInt(count - 1);
+			if(second >= first)
+				second++;
+			selected = candidates[first];
+			if(candidates[second].load(this.latencyWeight) < selected.load(this.latencyWeight))
+				selected = candidates[second];
+		} else {
+			// sample the configured number of destinations - duplicates are accepted as the number is small compared to the available destinations
+			selected = candidates[this.random.nextInt(count)];
+			for(int i = 1; i < this.choices; i++) {
+				DestinationLoad candidate = candidates[this.random.nextInt(count)];
+				if(candidate.load(this.latencyWeight) < selected.load(this.latencyWeight))
+					selected = candidate;
+			}
+		}
+		
+		selected.sentEvents++;
+		return selected.result;
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#destinationAdded(java.lang.String)
+	 */
+	public void destinationAdded(String destinationId) {
+		// counters start from scratch as a newly registered pipeline root counts from scratch, too
+		if(destinationId != null && !this.destinations.containsKey(destinationId)) {
+			this.destinations.put(destinationId, new DestinationLoad(destinationId));
+			rebuildCandidates();
+		}
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#destinationRemoved(java.lang.String)
+	 */
+	public void destinationRemoved(String destinationId) {
+		if(this.destinations.remove(destinationId) != null)
+			rebuildCandidates();
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#loadReported(java.lang.String, long, long)
+	 */
+	public void loadReported(String destinationId, long receivedEvents, long latencyMillis) {
+		DestinationLoad destination = this.destinations.get(destinationId);
+		if(destination != null) {
+			// the root may have counted events sent before the dispatcher was restarted, thus the difference is 
+			// remembered and subtracted from all later reports
+			if(receivedEvents - destination.receivedOffset > destination.sentEvents)
+				destination.receivedOffset = receivedEvents - destination.sentEvents;
+			destination.receivedEvents = receivedEvents - destination.receivedOffset;
+			destination.latencyMillis = Math.max(0, latencyMillis);
+		}
+	}
+	
+	/**
+	 * Returns the current load of the referenced destination, -1 if it is not available
+	 * @param destinationId
+	 * @return
+	 */
+	public double getLoad(final String destinationId) {
+		DestinationLoad destination = this.destinations.get(destinationId);
+		return (destination != null ? destination.load(this.latencyWeight) : -1);
+	}
+	
+	/**
+	 * Returns the number of events sent but not yet received by the referenced destination, -1 if it is not available
+	 * @param destinationId
+	 * @return
+	 */
+	public long getQueueDepth(final String destinationId) {
+		DestinationLoad destination = this.destinations.get(destinationId);
+		return (destination != null ? destination.queueDepth() : -1);
+	}
+	
+	/**
+	 * Returns the available destinations
+	 * @return
+	 */
+	public Set<String> getDestinations() {
+		return Collections.unmodifiableSet(this.destinations.keySet());
+	}
+	
+	/**
+	 * Copies the available destinations into the array used for sampling
+	 */
+	protected void rebuildCandidates() {
+		this.candidates = this.destinations.values().toArray(new DestinationLoad[this.destinations.size()]);
+	}
+	
+	/**
+	 * Load of a single destination
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	protected static class DestinationLoad {
+		/** pre-allocated result */
+		final Set<String> result;
+		/** events sent since the destination became available */
+		long sentEvents = 0;
+		/** events received by the destination according to its last report */
+		long receivedEvents = 0;
+		/** events the destination reported beyond the ones sent - see {@link LeastLoadedDispatchPolicy#loadReported(String, long, long)} */
+		long receivedOffset = 0;
+		/** average latency according to the last report */
+		long latencyMillis = 0;
+		
+		DestinationLoad(final String destinationId) {
+			this.result = Collections.singleton(destinationId);
+		}
+		
+		long queueDepth() {
+			return Math.max(0, this.sentEvents - this.receivedEvents);
+		}
+		
+		double load(final double latencyWeight) {
+			return queueDepth() + latencyWeight * this.latencyMillis;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.mnxfst.stream.dispatcher.DispatchPolicy;
+import com.mnxfst.stream.dispatcher.policy.rule.CompiledRuleSet;
+import com.mnxfst.stream.dispatcher.policy.rule.RuleSetCompiler;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Implements a content based dispatch policy. Each rule consists of a predicate expression, eg. 
+ * <code>${person.city} == 'Hamburg' &amp;&amp; ${person.postalCode} != 23847</code>, and the destinations receiving 
+ * all events matching it. An event is forwarded to the destinations of all matching rules - or to the default 
+ * destinations if no rule matches. The expressions are parsed once on {@link #init(Map) initialization} and compiled 
+ * into a {@link CompiledRuleSet} which shares field extractions and comparisons across all rules.<br/><br/>
+ * Settings: <code>rule.N.expression</code>, <code>rule.N.destinations</code> (comma separated) with N starting at 0
+ * and optionally <code>rule.default.destinations</code>. At most 64 distinct destinations are supported
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public class RuleBasedDispatchPolicy extends DispatchPolicy {
+
+	public static final String RULE_PREFIX = "rule.";
+	public static final String RULE_EXPRESSION_SUFFIX = ".expression";
+	public static final String RULE_DESTINATIONS_SUFFIX = ".destinations";
+	public static final String RULE_DEFAULT_DESTINATIONS = "rule.default.destinations";
+	
+	/** compiled rules */
+	private CompiledRuleSet ruleSet;
+	/** per rule: mask of the destinations receiving matching events */
+	private long[] ruleDestinations;
+	/** mask of the destinations receiving events not matching any rule */
+	private long defaultDestinations = 0;
+	/** all destinations - the index is the bit within a destination mask */
+	private final List<String> destinations = new ArrayList<>();
+	/** results computed so far, keyed by destination mask */
+	private final Map<Long, Set<String>> results = new HashMap<>();
+	/** rule results of the event currently evaluated */
+	private boolean[] ruleResults;
+	
+	/**
+	 * Initializes the policy
+	 * @param name
+	 */
+	public RuleBasedDispatchPolicy(String name) {
+		super(name);
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#init(java.util.Map)
+	 */
+	public void init(Map<String, String> settings) {
+		
+		if(settings == null || settings.isEmpty())
+			throw new IllegalArgumentException("Missing required settings for rule based dispatch policy '"+getName()+"'");
+		
+		RuleSetCompiler compiler = new RuleSetCompiler();
+		List<Long> masks = new ArrayList<>();
+		for(int i = 0; settings.containsKey(RULE_PREFIX + i + RULE_EXPRESSION_SUFFIX); i++) {
+			compiler.addRule(settings.get(RULE_PREFIX + i + RULE_EXPRESSION_SUFFIX));
+			long mask = toDestinationMask(settings.get(RULE_PREFIX + i + RULE_DESTINATIONS_SUFFIX));
+			if(mask == 0)
+				throw new IllegalArgumentException("Missing required setting '"+RULE_PREFIX + i + RULE_DESTINATIONS_SUFFIX+"' for rule based dispatch policy '"+getName()+"'");
+			masks.add(mask);
+		}
+		if(masks.isEmpty())
+			throw new IllegalArgumentException("Missing required setting '"+RULE_PREFIX + 0 + RULE_EXPRESSION_SUFFIX+"' for rule based dispatch policy '"+getName()+"'");
+		this.defaultDestinations = toDestinationMask(settings.get(RULE_DEFAULT_DESTINATIONS));
+		
+		this.ruleSet = compiler.compile();
+		this.ruleResults = new boolean[this.ruleSet.getRuleCount()];
+		this.ruleDestinations = new long[masks.size()];
+		for(int i = 0; i < masks.size(); i++)
+			this.ruleDestinations[i] = masks.get(i);
+	}
+
+	/**
+	 * @see com.mnxfst.stream.dispatcher.DispatchPolicy#determineDestinations(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	public Set<String> determineDestinations(StreamEventMessage message) {
+		
+		this.ruleSet.evaluate(message, this.ruleResults);
+		long mask = 0;
+		for(int i = 0; i < this.ruleResults.length; i++) {
+			if(this.ruleResults[i])
+				mask = mask | this.ruleDestinations[i];
+		}
+		if(mask == 0)
+			mask = this.defaultDestinations;
+		
+		Long key = Long.valueOf(mask);
+		Set<String> result = this.results.get(key);
+		if(result == null) {
+			result = toDestinations(mask);
+			this.results.put(key, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Converts the comma separated list of destinations into a mask, registering unknown destinations
+	 * @param value
+	 * @return
+	 */
+	protected long toDestinationMask(final String value) {
+		long mask = 0;
+		if(StringUtils.isNotBlank(value)) {
+			for(String destination : StringUtils.split(value, ',')) {
+				if(StringUtils.isBlank(destination))
+					continue;
+				int index = this.destinations.indexOf(destination.trim());
+				if(index < 0) {
+					if(this.destinations.size() == Long.SIZE)
+						throw new IllegalArgumentException("Rule based dispatch policy '"+getName()+"' supports at most " + Long.SIZE + " destinations");
+					index = this.destinations.size();
+					this.destinations.add(destination.trim());
+				}
+				mask = mask | (1L << index);
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Converts the given mask into a read-only set of destinations
+	 * @param mask
+	 * @return
+	 */
+	protected Set<String> toDestinations(final long mask) {
+		Set<String> result = new LinkedHashSet<>();
+		for(int i = 0; i < this.destinations.size(); i++) {
+			if((mask & (1L << i)) != 0)
+				result.add(this.destinations.get(i));
+		}
+		return Collections.unmodifiableSet(result);
+	}
+	
+	/**
+	 * Returns the compiled rules
+	 * @return
+	 */
+	public CompiledRuleSet getRuleSet() {
+		return ruleSet;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy.rule;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Set of rules compiled by the {@link RuleSetCompiler}. Evaluation performs a single pass over all distinct fields
+ * referenced by any rule: each field is extracted once, string equality predicates on it are resolved by a single 
+ * hash lookup of its value, all remaining predicates on it are tested directly. The rules finally combine the shared
+ * predicate results, thus the cost of an event depends on the number of distinct fields rather than on the number 
+ * of rules.<br/><br/>
+ * Instances keep per-event state and must be used from within a single actor only
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public class CompiledRuleSet {
+
+	/** path segments of all distinct fields */
+	private final String[][] fieldPaths;
+	/** per field: string literal to index of the equality predicate comparing the field against it */
+	private final Map<String, Integer>[] stringEqualities;
+	/** per field: indexes of all other predicates on the field */
+	private final int[][] fieldPredicates;
+	/** all distinct predicates */
+	private final FieldPredicate[] predicates;
+	/** compiled rules */
+	private final RuleNode[] rules;
+	/** indexes of the string equality predicates - reset before each evaluation */
+	private final int[] stringEqualityPredicates;
+	
+	/** predicate results of the event currently evaluated */
+	private final boolean[] predicateResults;
+	
+	/**
+	 * Initializes the rule set using the provided input
+	 * @param fieldPaths
+	 * @param stringEqualities
+	 * @param fieldPredicates
+	 * @param predicates
+	 * @param rules
+	 */
+	public CompiledRuleSet(final String[][] fieldPaths, final Map<String, Integer>[] stringEqualities, final int[][] fieldPredicates, 
+			final FieldPredicate[] predicates, final RuleNode[] rules) {
+		this.fieldPaths = fieldPaths;
+		this.stringEqualities = stringEqualities;
+		this.fieldPredicates = fieldPredicates;
+		this.predicates = predicates;
+		this.rules = rules;
+		this.predicateResults = new boolean[predicates.length];
+		
+		int count = 0;
+		for(int i = 0; i < predicates.length; i++)
+			if(predicates[i].isStringEquality())
+				count++;
+		this.stringEqualityPredicates = new int[count];
+		count = 0;
+		for(int i = 0; i < predicates.length; i++)
+			if(predicates[i].isStringEquality())
+				this.stringEqualityPredicates[count++] = i;
+	}
+	
+	/**
+	 * Evaluates all rules against the given message and writes their results into the provided array 
+	 * @param message
+	 * @param ruleResults array of size {@link #getRuleCount()}
+	 */
+	public void evaluate(final StreamEventMessage message, final boolean[] ruleResults) {
+		
+		for(int i = 0; i < this.stringEqualityPredicates.length; i++)
+			this.predicateResults[this.stringEqualityPredicates[i]] = false;
+		
+		final JsonNode tree = message.getEventTree();
+		for(int f = 0; f < this.fieldPaths.length; f++) {
+			JsonNode node = tree;
+			final String[] path = this.fieldPaths[f];
+			for(int i = 0; i < path.length && !node.isMissingNode(); i++)
+				node = node.path(path[i]);
+			
+			if(!this.stringEqualities[f].isEmpty() && node.isValueNode() && !node.isNull()) {
+				Integer predicate = this.stringEqualities[f].get(node.asText());
+				if(predicate != null)
+					this.predicateResults[predicate.intValue()] = true;
+			}
+			final int[] others = this.fieldPredicates[f];
+			for(int i = 0; i < others.length; i++)
+				this.predicateResults[others[i]] = this.predicates[others[i]].test(node);
+		}
+		
+		for(int r = 0; r < this.rules.length; r++)
+			ruleResults[r] = this.rules[r].evaluate(this.predicateResults);
+	}
+	
+	/**
+	 * Returns the number of compiled rules
+	 * @return
+	 */
+	public int getRuleCount() {
+		return this.rules.length;
+	}
+	
+	/**
+	 * Returns the number of distinct fields referenced by all rules
+	 * @return
+	 */
+	public int getFieldCount() {
+		return this.fieldPaths.length;
+	}
+	
+	/**
+	 * Returns the number of distinct predicates referenced by all rules
+	 * @return
+	 */
+	public int getPredicateCount() {
+		return this.predicates.length;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder fields = new StringBuilder();
+		for(String[] path : this.fieldPaths)
+			fields.append(fields.length() > 0 ? ", " : "").append(Arrays.toString(path));
+		return "CompiledRuleSet [rules=" + this.rules.length + ", predicates=" + this.predicates.length + ", fields=" + fields + "]";
+	}
+}
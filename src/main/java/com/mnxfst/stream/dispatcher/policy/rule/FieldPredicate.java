@@ -0,0 +1,170 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy.rule;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compares a field of the event content against a literal, eg. <code>${person.city} == 'Hamburg'</code>. Inequality
+ * is expressed by negating the equality predicate, thus both share a single evaluation. Missing fields and JSON null
+ * are equal to the <code>null</code> literal only, relational operators evaluate to false unless both sides are 
+ * numbers or both are strings
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public class FieldPredicate {
+
+	/** supported comparison operators */
+	public enum Operator {
+		EQ("=="), LT("<"), LE("<="), GT(">"), GE(">=");
+		
+		private final String symbol;
+		
+		private Operator(final String symbol) {
+			this.symbol = symbol;
+		}
+		
+		public String getSymbol() {
+			return symbol;
+		}
+	}
+	
+	/** supported literal types */
+	public enum LiteralType {
+		STRING, NUMBER, BOOLEAN, NULL
+	}
+	
+	/** index of the compared field */
+	private final int fieldIndex;
+	private final Operator operator;
+	private final LiteralType literalType;
+	/** literal as found in the expression - unquoted for strings */
+	private final String literal;
+	/** numeric value of number literals */
+	private final double number;
+	
+	/**
+	 * Initializes the predicate using the provided input
+	 * @param fieldIndex
+	 * @param operator
+	 * @param literalType
+	 * @param literal
+	 */
+	public FieldPredicate(final int fieldIndex, final Operator operator, final LiteralType literalType, final String literal) {
+		this.fieldIndex = fieldIndex;
+		this.operator = operator;
+		this.literalType = literalType;
+		this.literal = literal;
+		this.number = (literalType == LiteralType.NUMBER ? Double.parseDouble(literal) : Double.NaN);
+	}
+	
+	/**
+	 * Evaluates the predicate against the given field value - missing fields are expected as missing node
+	 * @param node
+	 * @return
+	 */
+	public boolean test(final JsonNode node) {
+		
+		switch(this.literalType) {
+			case NULL:
+				return node.isMissingNode() || node.isNull();
+			case BOOLEAN:
+				if(node.isBoolean())
+					return String.valueOf(node.booleanValue()).equals(this.literal);
+				return node.isTextual() && node.textValue().equalsIgnoreCase(this.literal);
+			case NUMBER: {
+				double value = toNumber(node);
+				if(Double.isNaN(value))
+					return false;
+				return compare(Double.compare(value, this.number));
+			}
+			case STRING: {
+				if(!node.isValueNode() || node.isNull())
+					return false;
+				return compare(node.asText().compareTo(this.literal));
+			}
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * Returns true if the predicate is an equality comparison against a string, thus it may be evaluated via hash lookup
+	 * @return
+	 */
+	public boolean isStringEquality() {
+		return this.operator == Operator.EQ && this.literalType == LiteralType.STRING;
+	}
+	
+	/**
+	 * Returns a key which is equal for all predicates performing the same comparison
+	 * @return
+	 */
+	public String getKey() {
+		return this.fieldIndex + " " + this.operator + " " + this.literalType + " " + this.literal;
+	}
+	
+	/**
+	 * Maps the result of comparing the field value against the literal to the outcome of the operator
+	 * @param comparison
+	 * @return
+	 */
+	private boolean compare(final int comparison) {
+		switch(this.operator) {
+			case EQ: return comparison == 0;
+			case LT: return comparison < 0;
+			case LE: return comparison <= 0;
+			case GT: return comparison > 0;
+			case GE: return comparison >= 0;
+			default: return false;
+		}
+	}
+	
+	/**
+	 * Returns the numeric value of the given node - numbers provided as text are accepted as well - or NaN
+	 * @param node
+	 * @return
+	 */
+	private static double toNumber(final JsonNode node) {
+		if(node.isNumber())
+			return node.doubleValue();
+		if(node.isTextual()) {
+			try {
+				return Double.parseDouble(node.textValue());
+			} catch(NumberFormatException e) {
+				// not a number
+			}
+		}
+		return Double.NaN;
+	}
+
+	public int getFieldIndex() {
+		return fieldIndex;
+	}
+
+	public Operator getOperator() {
+		return operator;
+	}
+
+	public LiteralType getLiteralType() {
+		return literalType;
+	}
+
+	public String getLiteral() {
+		return literal;
+	}
+}
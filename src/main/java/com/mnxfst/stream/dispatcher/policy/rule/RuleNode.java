@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy.rule;
+
+/**
+ * Node of a compiled rule expression. Leaves reference the result of a {@link FieldPredicate predicate} which is 
+ * evaluated once per event and shared by all rules referencing it, inner nodes combine the results of their children   
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public abstract class RuleNode {
+
+	/**
+	 * Evaluates the node against the provided predicate results
+	 * @param predicateResults
+	 * @return
+	 */
+	public abstract boolean evaluate(final boolean[] predicateResults);
+	
+	/**
+	 * References the result of a single predicate
+	 */
+	public static final class PredicateNode extends RuleNode {
+		private final int predicateIndex;
+		
+		public PredicateNode(final int predicateIndex) {
+			this.predicateIndex = predicateIndex;
+		}
+		
+		public boolean evaluate(final boolean[] predicateResults) {
+			return predicateResults[this.predicateIndex];
+		}
+	}
+	
+	/**
+	 * Negates the result of its child
+	 */
+	public static final class NotNode extends RuleNode {
+		private final RuleNode child;
+		
+		public NotNode(final RuleNode child) {
+			this.child = child;
+		}
+		
+		public boolean evaluate(final boolean[] predicateResults) {
+			return !this.child.evaluate(predicateResults);
+		}
+	}
+	
+	/**
+	 * Evaluates to true if all children evaluate to true
+	 */
+	public static final class AndNode extends RuleNode {
+		private final RuleNode[] children;
+		
+		public AndNode(final RuleNode[] children) {
+			this.children = children;
+		}
+		
+		public boolean evaluate(final boolean[] predicateResults) {
+			for(int i = 0; i < this.children.length; i++) {
+				if(!this.children[i].evaluate(predicateResults))
+					return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Evaluates to true if any child evaluates to true
+	 */
+	public static final class OrNode extends RuleNode {
+		private final RuleNode[] children;
+		
+		public OrNode(final RuleNode[] children) {
+			this.children = children;
+		}
+		
+		public boolean evaluate(final boolean[] predicateResults) {
+			for(int i = 0; i < this.children.length; i++) {
+				if(this.children[i].evaluate(predicateResults))
+					return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.mnxfst.stream.dispatcher.policy.rule.FieldPredicate.LiteralType;
+import com.mnxfst.stream.dispatcher.policy.rule.FieldPredicate.Operator;
+
+/**
+ * Compiles rule expressions into a {@link CompiledRuleSet}. Fields and predicates are interned across all rules, 
+ * thus rules referencing the same field or comparison share its evaluation. Supported syntax:
+ * <pre>
+ * expression := and ( '||' and )*
+ * and        := unary ( '&&' unary )*
+ * unary      := '!' unary | '(' expression ')' | comparison
+ * comparison := '${' path '}' ( '==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' ) literal
+ * literal    := 'string' | "string" | number | true | false | null
+ * </pre>
+ * Example: <code>${person.city} == 'Hamburg' &amp;&amp; ${person.postalCode} != 23847</code>
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public class RuleSetCompiler {
+
+	/** field path to field index */
+	private final Map<String, Integer> fields = new HashMap<>();
+	private final List<String[]> fieldPaths = new ArrayList<>();
+	/** predicate key to predicate index */
+	private final Map<String, Integer> predicateIndexes = new HashMap<>();
+	private final List<FieldPredicate> predicates = new ArrayList<>();
+	private final List<RuleNode> rules = new ArrayList<>();
+	
+	/** expression currently parsed */
+	private String expression;
+	/** parser position within the current expression */
+	private int position;
+	
+	/**
+	 * Parses the given expression and adds it as next rule. Returns the index of the rule
+	 * @param ruleExpression
+	 * @return
+	 * @throws IllegalArgumentException if the expression is invalid
+	 */
+	public int addRule(final String ruleExpression) {
+		if(StringUtils.isBlank(ruleExpression))
+			throw new IllegalArgumentException("Missing required rule expression");
+		
+		this.expression = ruleExpression;
+		this.position = 0;
+		RuleNode rule = parseExpression();
+		skipWhitespace();
+		if(this.position < this.expression.length())
+			throw error("Unexpected input");
+		
+		this.rules.add(rule);
+		return this.rules.size() - 1;
+	}
+	
+	/**
+	 * Returns the rule set holding all rules added so far
+	 * @return
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public CompiledRuleSet compile() {
+		
+		Map<String, Integer>[] stringEqualities = new Map[this.fieldPaths.size()];
+		List<List<Integer>> others = new ArrayList<>();
+		for(int f = 0; f < this.fieldPaths.size(); f++) {
+			stringEqualities[f] = new HashMap<>();
+			others.add(new ArrayList<Integer>());
+		}
+		for(int p = 0; p < this.predicates.size(); p++) {
+			FieldPredicate predicate = this.predicates.get(p);
+			if(predicate.isStringEquality())
+				stringEqualities[predicate.getFieldIndex()].put(predicate.getLiteral(), p);
+			else
+				others.get(predicate.getFieldIndex()).add(p);
+		}
+		
+		int[][] fieldPredicates = new int[this.fieldPaths.size()][];
+		for(int f = 0; f < fieldPredicates.length; f++) {
+			fieldPredicates[f] = new int[others.get(f).size()];
+			for(int i = 0; i < fieldPredicates[f].length; i++)
+				fieldPredicates[f][i] = others.get(f).get(i);
+		}
+		
+		return new CompiledRuleSet(this.fieldPaths.toArray(new String[this.fieldPaths.size()][]), stringEqualities, fieldPredicates, 
+				this.predicates.toArray(new FieldPredicate[this.predicates.size()]), this.rules.toArray(new RuleNode[this.rules.size()]));
+	}
+	
+	/**
+	 * expression := and ( '||' and )*
+	 * @return
+	 */
+	protected RuleNode parseExpression() {
+		List<RuleNode> children = new ArrayList<>();
+		children.add(parseAnd());
+		while(consume("||"))
+			children.add(parseAnd());
+		return (children.size() == 1 ? children.get(0) : new RuleNode.OrNode(children.toArray(new RuleNode[children.size()])));
+	}
+	
+	/**
+	 * and := unary ( '&&' unary )*
+	 * @return
+	 */
+	protected RuleNode parseAnd() {
+		List<RuleNode> children = new ArrayList<>();
+		children.add(parseUnary());
+		while(consume("&&"))
+			children.add(parseUnary());
+		return (children.size() == 1 ? children.get(0) : new RuleNode.AndNode(children.toArray(new RuleNode[children.size()])));
+	}
+	
+	/**
+	 * unary := '!' unary | '(' expression ')' | comparison
+	 * @return
+	 */
+	protected RuleNode parseUnary() {
+		skipWhitespace();
+		if(peek("!=")) 
+			throw error("Missing field reference");
+		if(consume("!"))
+			return new RuleNode.NotNode(parseUnary());
+		if(consume("(")) {
+			RuleNode node = parseExpression();
+			if(!consume(")"))
+				throw error("Missing closing parenthesis");
+			return node;
+		}
+		return parseComparison();
+	}
+	
+	/**
+	 * comparison := '${' path '}' operator literal
+	 * @return
+	 */
+	protected RuleNode parseComparison() {
+		
+		if(!consume("${"))
+			throw error("Expected field reference");
+		int end = this.expression.indexOf('}', this.position);
+		if(end < 0)
+			throw error("Unterminated field reference");
+		String path = this.expression.substring(this.position, end).trim();
+		if(path.isEmpty())
+			throw error("Empty field reference");
+		this.position = end + 1;
+		
+		boolean negate = false;
+		Operator operator;
+		if(consume("=="))
+			operator = Operator.EQ;
+		else if(consume("!=")) {
+			operator = Operator.EQ;
+			negate = true;
+		} else if(consume("<="))
+			operator = Operator.LE;
+		else if(consume(">="))
+			operator = Operator.GE;
+		else if(consume("<"))
+			operator = Operator.LT;
+		else if(consume(">"))
+			operator = Operator.GT;
+		else
+			throw error("Expected comparison operator");
+		
+		skipWhitespace();
+		LiteralType literalType;
+		String literal;
+		if(peek("'") || peek("\"")) {
+			literalType = LiteralType.STRING;
+			literal = parseString();
+		} else {
+			int start = this.position;
+			while(this.position < this.expression.length() && isLiteralChar(this.expression.charAt(this.position)))
+				this.position++;
+			literal = this.expression.substring(start, this.position);
+			if(literal.equals("null"))
+				literalType = LiteralType.NULL;
+			else if(literal.equals("true") || literal.equals("false"))
+				literalType = LiteralType.BOOLEAN;
+			else {
+				try {
+					Double.parseDouble(literal);
+				} catch(NumberFormatException e) {
+					this.position = start;
+					throw error("Expected literal");
+				}
+				literalType = LiteralType.NUMBER;
+			}
+		}
+		if(operator != Operator.EQ && (literalType == LiteralType.NULL || literalType == LiteralType.BOOLEAN))
+			throw error("Operator '" + operator.getSymbol() + "' not applicable to literal '" + literal + "'");
+		
+		RuleNode node = new RuleNode.PredicateNode(internPredicate(internField(path), operator, literalType, literal));
+		return (negate ? new RuleNode.NotNode(node) : node);
+	}
+	
+	/**
+	 * Parses a quoted string supporting backslash escapes
+	 * @return
+	 */
+	protected String parseString() {
+		char quote = this.expression.charAt(this.position++);
+		StringBuilder value = new StringBuilder();
+		while(this.position < this.expression.length()) {
+			char c = this.expression.charAt(this.position++);
+			if(c == quote)
+				return value.toString();
+			if(c == '\\' && this.position < this.expression.length())
+				c = this.expression.charAt(this.position++);
+			value.append(c);
+		}
+		throw error("Unterminated string literal");
+	}
+	
+	/**
+	 * Returns the index of the given field - registering it if required
+	 * @param path
+	 * @return
+	 */
+	protected int internField(final String path) {
+		Integer index = this.fields.get(path);
+		if(index == null) {
+			index = this.fieldPaths.size();
+			this.fields.put(path, index);
+			this.fieldPaths.add(StringUtils.split(path, '.'));
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the index of the given predicate - registering it if required
+	 * @param fieldIndex
+	 * @param operator
+	 * @param literalType
+	 * @param literal
+	 * @return
+	 */
+	protected int internPredicate(final int fieldIndex, final Operator operator, final LiteralType literalType, final String literal) {
+		FieldPredicate predicate = new FieldPredicate(fieldIndex, operator, literalType, literal);
+		Integer index = this.predicateIndexes.get(predicate.getKey());
+		if(index == null) {
+			index = this.predicates.size();
+			this.predicateIndexes.put(predicate.getKey(), index);
+			this.predicates.add(predicate);
+		}
+		return index;
+	}
+	
+	/**
+	 * Skips whitespaces and consumes the given token if found at the current position
+	 * @param token
+	 * @return
+	 */
+	protected boolean consume(final String token) {
+		skipWhitespace();
+		if(this.expression.startsWith(token, this.position)) {
+			this.position = this.position + token.length();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns true if the given token is found at the current position
+	 * @param token
+	 * @return
+	 */
+	protected boolean peek(final String token) {
+		return this.expression.startsWith(token, this.position);
+	}
+	
+	protected void skipWhitespace() {
+		while(this.position < this.expression.length() && Character.isWhitespace(this.expression.charAt(this.position)))
+			this.position++;
+	}
+	
+	protected static boolean isLiteralChar(final char c) {
+		return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '+';
+	}
+	
+	/**
+	 * Returns an exception describing the error found at the current position
+	 * @param message
+	 * @return
+	 */
+	protected IllegalArgumentException error(final String message) {
+		return new IllegalArgumentException(message + " at position " + this.position + " of rule expression '" + this.expression + "'");
+	}
+}
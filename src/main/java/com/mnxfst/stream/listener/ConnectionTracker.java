@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+/**
+ * Keeps track of the connection a listener holds towards its source: the time passed since connecting and the
+ * duration of each outage, ie. the time between losing the connection and re-establishing it. Planned disconnects
+ * do not count as outage. All timestamps are given as milliseconds since epoch, thus the tracker does not read the 
+ * clock itself. Instances are not thread-safe
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class ConnectionTracker {
+
+	/** time the current connection was established, -1 while disconnected */
+	private long connectedSince = -1;
+	/** time the current outage started, -1 if there is none */
+	private long outageSince = -1;
+	/** time spent connected by all previous connections */
+	private long previousUptimeMillis = 0;
+	/** number of connections established */
+	private long connects = 0;
+	/** number of outages which have ended */
+	private long outages = 0;
+	/** duration of the most recent outage */
+	private long lastOutageMillis = 0;
+	/** duration of the longest outage */
+	private long longestOutageMillis = 0;
+	/** duration of all outages */
+	private long totalOutageMillis = 0;
+	
+	/**
+	 * Records an established connection and returns the duration of the outage which ended thereby, -1 if there was none
+	 * @param now
+	 * @return
+	 */
+	public long connected(final long now) {
+		if(this.connectedSince >= 0)
+			return -1;
+		this.connectedSince = now;
+		this.connects++;
+		
+		if(this.outageSince < 0)
+			return -1;
+		final long outageMillis = Math.max(0, now - this.outageSince);
+		this.outageSince = -1;
+		this.outages++;
+		this.lastOutageMillis = outageMillis;
+		this.longestOutageMillis = Math.max(this.longestOutageMillis, outageMillis);
+		this.totalOutageMillis += outageMillis;
+		return outageMillis;
+	}
+	
+	/**
+	 * Records a lost connection, starting an outage unless the disconnect was planned. Failed attempts to re-establish
+	 * the connection do not restart a running outage
+	 * @param now
+	 * @param planned
+	 */
+	public void disconnected(final long now, final boolean planned) {
+		if(this.connectedSince >= 0) {
+			this.previousUptimeMillis += Math.max(0, now - this.connectedSince);
+			this.connectedSince = -1;
+		}
+		if(planned)
+			this.outageSince = -1;
+		else if(this.outageSince < 0)
+			this.outageSince = now;
+	}
+	
+	/**
+	 * Returns true if a connection is established
+	 * @return
+	 */
+	public boolean isConnected() {
+		return this.connectedSince >= 0;
+	}
+	
+	/**
+	 * Returns the time passed since establishing the current connection, 0 if disconnected
+	 * @param now
+	 * @return
+	 */
+	public long getUptimeMillis(final long now) {
+		return (this.connectedSince >= 0 ? Math.max(0, now - this.connectedSince) : 0);
+	}
+	
+	/**
+	 * Returns the time spent connected by all connections, including the current one
+	 * @param now
+	 * @return
+	 */
+	public long getTotalUptimeMillis(final long now) {
+		return this.previousUptimeMillis + getUptimeMillis(now);
+	}
+	
+	/**
+	 * Returns the duration of the running outage, 0 if there is none
+	 * @param now
+	 * @return
+	 */
+	public long getCurrentOutageMillis(final long now) {
+		return (this.outageSince >= 0 ? Math.max(0, now - this.outageSince) : 0);
+	}
+
+	public long getConnects() {
+		return connects;
+	}
+
+	public long getOutages() {
+		return outages;
+	}
+
+	public long getLastOutageMillis() {
+		return lastOutageMillis;
+	}
+
+	public long getLongestOutageMillis() {
+		return longestOutageMillis;
+	}
+
+	public long getTotalOutageMillis() {
+		return totalOutageMillis;
+	}
+}
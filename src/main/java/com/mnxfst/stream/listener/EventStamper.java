@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.uuid.EthernetAddress;
+
+/**
+ * Provides identifiers and ingestion timestamps to all {@link com.mnxfst.stream.message.StreamEventMessage events} 
+ * entering the system. Each call to {@link #nextId()} returns a 64 bit value which is strictly increasing within this
+ * instance and carries the ingestion time: the upper 44 bits hold the milliseconds since epoch, the lower 20 bits a 
+ * sequence number which allows up to 1M identifiers per millisecond. If the sequence is exhausted, the identifiers
+ * continue within the next millisecond, thus the timestamp may lead the clock slightly under extreme load but never 
+ * runs backwards. Combined with the {@link #getNodeId() node identifier} the value forms a 128 bit identifier which 
+ * is unique across hosts.<br/><br/>
+ * Stamping is lock-free and does not allocate, the string representation is rendered on request only. Instances are 
+ * thread-safe, listeners are expected to share the {@link #getInstance() default instance}
+ * @author mnxfst
+ * @since 26.03.2014
+ *
+ */
+public class EventStamper {
+
+	/** number of bits reserved for the sequence */
+	public static final int SEQUENCE_BITS = 20;
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final EventStamper INSTANCE = new EventStamper(createNodeId());
+	
+	/** identifier of the stamping node - upper half of the 128 bit identifier */
+	private final long nodeId;
+	/** most recently assigned identifier */
+	private final AtomicLong lastId = new AtomicLong(0);
+	
+	/**
+	 * Initializes the stamper using the provided input
+	 * @param nodeId
+	 */
+	public EventStamper(final long nodeId) {
+		this.nodeId = nodeId;
+	}
+	
+	/**
+	 * Returns the shared instance
+	 * @return
+	 */
+	public static EventStamper getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Returns the next identifier which is greater than all identifiers returned before
+	 * @return
+	 */
+	public long nextId() {
+		final long candidate = System.currentTimeMillis() << SEQUENCE_BITS;
+		while(true) {
+			final long last = this.lastId.get();
+			final long next = (candidate > last ? candidate : last + 1);
+			if(this.lastId.compareAndSet(last, next))
+				return next;
+		}
+	}
+	
+	/**
+	 * Returns the ingestion time, given as milliseconds since epoch, carried by the provided identifier
+	 * @param id
+	 * @return
+	 */
+	public static long timestampOf(final long id) {
+		return id >>> SEQUENCE_BITS;
+	}
+	
+	/**
+	 * Returns the 128 bit representation of the given identifier as 32 digit hex string
+	 * @param id
+	 * @return
+	 */
+	public String formatId(final long id) {
+		char[] digits = new char[32];
+		writeHex(this.nodeId, digits, 0);
+		writeHex(id, digits, 16);
+		return new String(digits);
+	}
+	
+	/**
+	 * Returns the identifier of the stamping node
+	 * @return
+	 */
+	public long getNodeId() {
+		return nodeId;
+	}
+	
+	/**
+	 * Writes the 16 digit hex representation of the given value into the provided array 
+	 * @param value
+	 * @param digits
+	 * @param offset
+	 */
+	private static void writeHex(final long value, final char[] digits, final int offset) {
+		for(int i = 15; i >= 0; i--)
+			digits[offset + 15 - i] = HEX_DIGITS[(int)((value >>> (i * 4)) & 0xF)];
+	}
+	
+	/**
+	 * Derives the node identifier from the ethernet address of this host - if available - plus a random part which
+	 * distinguishes multiple processes on the same host
+	 * @return
+	 */
+	protected static long createNodeId() {
+		SecureRandom random = new SecureRandom();
+		long randomPart = random.nextLong();
+		try {
+			EthernetAddress address = EthernetAddress.fromInterface();
+			if(address != null)
+				return (address.toLong() << 16) | (randomPart & 0xFFFF);
+		} catch(Exception e) {
+			// fall back to random node identifier
+		}
+		return randomPart;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mnxfst.stream.message.FlowCreditMessage;
+
+/**
+ * Keeps track of the {@link FlowCreditMessage credits} granted towards a listener which sends each event to all of its
+ * dispatchers. Reading from the source must pause as soon as any of them runs out of credits. Credit limits refer to the
+ * events a dispatcher received from the listener, thus each dispatcher is {@link #register(String) registered} with the
+ * number of events sent before it became available.<br/><br/>
+ * Dispatchers running several instances behind a router grant credits per instance along with the number of events each 
+ * instance received. As the router decides which instance receives an event, the listener may send the events received by all 
+ * instances plus the smallest credit headroom left by any of them - even if the router selects the same instance for all further
+ * events, that instance never receives more than it granted.<br/><br/>
+ * Events count as sent when they are handed over to the dispatchers. Listeners buffering events before doing so check 
+ * the credits along with the {@link #hasCredit(long) events pending} in their buffer.<br/><br/>
+ * {@link #consume(int)} and {@link #hasCredit()} are lock-free and meant to be called by the thread sending to the 
+ * dispatchers or reading from the source, credits are granted and revoked by the listener actor
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class FlowCreditGate {
+
+	/** credit limit applied as long as no dispatcher granted credits */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	
+	/** total number of events sent */
+	private final AtomicLong sentEvents = new AtomicLong(0);
+	/** events sent before a dispatcher became available */
+	private final Map<String, Long> sentOffsets = new HashMap<>();
+	/** credit limit per dispatcher - relative to the number of events sent in total */
+	private final Map<String, Long> creditLimits = new HashMap<>();
+	/** events received and credit limit per instance of dispatchers granting credits per instance */
+	private final Map<String, Map<String, long[]>> instanceCredits = new HashMap<>();
+	/** smallest credit limit over all dispatchers */
+	private volatile long creditLimit = UNLIMITED;
+	
+	/**
+	 * Counts the given number of sent events and returns true if credits are left afterwards
+	 * @param events
+	 * @return
+	 */
+	public boolean consume(final int events) {
+		return this.sentEvents.addAndGet(events) < this.creditLimit;
+	}
+	
+	/**
+	 * Returns true if credits are left
+	 * @return
+	 */
+	public boolean hasCredit() {
+		return this.sentEvents.get() < this.creditLimit;
+	}
+	
+	/**
+	 * Returns true if credits are left once the given number of events pending to be sent has been sent
+	 * @param pendingEvents
+	 * @return
+	 */
+	public boolean hasCredit(final long pendingEvents) {
+		return this.sentEvents.get() + pendingEvents < this.creditLimit;
+	}
+	
+	/**
+	 * Registers a dispatcher which receives all events sent from now on
+	 * @param sourceId
+	 */
+	public synchronized void register(final String sourceId) {
+		if(!this.sentOffsets.containsKey(sourceId))
+			this.sentOffsets.put(sourceId, this.sentEvents.get());
+	}
+	
+	/**
+	 * Applies the credit limit granted by the referenced dispatcher and returns true if credits are left afterwards. 
+	 * Dispatchers not registered before are registered implicitly 
+	 * @param sourceId
+	 * @param limit number of events the dispatcher accepts in total
+	 * @return
+	 */
+	public synchronized boolean grant(final String sourceId, final long limit) {
+		register(sourceId);
+		return applyCreditLimit(sourceId, this.sentOffsets.get(sourceId) + limit);
+	}
+	
+	/**
+	 * Applies the credit limit granted by a single instance of the referenced dispatcher and returns true if credits are left 
+	 * afterwards. The dispatcher accepts the events received by all of its instances plus the smallest headroom left by any instance
+	 * @param sourceId
+	 * @param instanceId
+	 * @param receivedEvents number of events the instance received so far
+	 * @param limit number of events the instance accepts in total
+	 * @return
+	 */
+	public synchronized boolean grant(final String sourceId, final String instanceId, final long receivedEvents, final long limit) {
+		register(sourceId);
+		
+		Map<String, long[]> instances = this.instanceCredits.get(sourceId);
+		if(instances == null) {
+			instances = new HashMap<>();
+			this.instanceCredits.put(sourceId, instances);
+		}
+		long[] instance = instances.get(instanceId);
+		if(instance == null) {
+			instance = new long[]{receivedEvents, limit};
+			instances.put(instanceId, instance);
+		} else {
+			instance[0] = Math.max(instance[0], receivedEvents);
+			instance[1] = Math.max(instance[1], limit);
+		}
+		
+		long received = 0;
+		long headroom = Long.MAX_VALUE;
+		for(final long[] values : instances.values()) {
+			received += values[0];
+			headroom = Math.min(headroom, values[1] - values[0]);
+		}
+		return applyCreditLimit(sourceId, this.sentOffsets.get(sourceId) + received + Math.max(0, headroom));
+	}
+	
+	/**
+	 * Applies the {@link FlowCreditMessage credits} depending on whether they were granted by a single instance or the dispatcher as a whole
+	 * @param credit
+	 * @return
+	 */
+	public boolean grant(final FlowCreditMessage credit) {
+		if(credit.getInstanceId() != null)
+			return grant(credit.getSourceId(), credit.getInstanceId(), credit.getReceivedEvents(), credit.getCreditLimit());
+		return grant(credit.getSourceId(), credit.getCreditLimit());
+	}
+	
+	/**
+	 * Keeps the absolute credit limit of the referenced dispatcher if it exceeds the previous one and returns true if credits are left
+	 * @param sourceId
+	 * @param absoluteLimit
+	 * @return
+	 */
+	protected boolean applyCreditLimit(final String sourceId, final long absoluteLimit) {
+		final Long previous = this.creditLimits.get(sourceId);
+		if(previous == null || absoluteLimit > previous) {
+			this.creditLimits.put(sourceId, absoluteLimit);
+			updateCreditLimit();
+		}
+		return hasCredit();
+	}
+	
+	/**
+	 * Removes the referenced dispatcher and returns true if credits are left afterwards
+	 * @param sourceId
+	 * @return
+	 */
+	public synchronized boolean remove(final String sourceId) {
+		this.sentOffsets.remove(sourceId);
+		this.instanceCredits.remove(sourceId);
+		if(this.creditLimits.remove(sourceId) != null)
+			updateCreditLimit();
+		return hasCredit();
+	}
+	
+	/**
+	 * Computes the smallest credit limit over all dispatchers
+	 */
+	protected void updateCreditLimit() {
+		long limit = UNLIMITED;
+		for(final Long value : this.creditLimits.values())
+			limit = Math.min(limit, value);
+		this.creditLimit = limit;
+	}
+	
+	/**
+	 * Returns the total number of events sent
+	 * @return
+	 */
+	public long getSentEvents() {
+		return this.sentEvents.get();
+	}
+	
+	/**
+	 * Returns the smallest credit limit over all dispatchers
+	 * @return
+	 */
+	public long getCreditLimit() {
+		return this.creditLimit;
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer handing over elements from a single producer thread to a single consumer, eg. from the thread
+ * reading from a socket towards the listener actor draining it. Neither side blocks nor locks: the producer publishes 
+ * an element by advancing the tail, the consumer releases a slot by advancing the head. Elements offered while the 
+ * buffer is full are rejected and counted as {@link #getDroppedElements() dropped}.<br/><br/>
+ * The capacity is rounded up to the next power of two. {@link #offer(Object)} must be called by one thread at a time,
+ * {@link #poll()} and {@link #drainTo(List, int)} as well, all other methods are safe to be called by any thread 
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class IngestRingBuffer<T> {
+
+	/** buffered elements - slots are cleared by the consumer */
+	private final AtomicReferenceArray<T> elements;
+	/** mask applied to positions for computing the slot index */
+	private final int mask;
+	/** position of the next element to consume - written by the consumer only */
+	private final AtomicLong head = new AtomicLong(0);
+	/** position of the next element to produce - written by the producer only */
+	private final AtomicLong tail = new AtomicLong(0);
+	/** number of elements rejected since the buffer was full - written by the producer only */
+	private final AtomicLong droppedElements = new AtomicLong(0);
+	/** head as last seen by the producer - saves reading the consumer's counter on each offer */
+	private long cachedHead = 0;
+	
+	/**
+	 * Initializes the buffer using the provided input
+	 * @param capacity minimum number of elements the buffer holds, rounded up to the next power of two
+	 */
+	public IngestRingBuffer(final int capacity) {
+		if(capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		final int size = (capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+		this.elements = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+	
+	/**
+	 * Appends the element to the buffer. Returns false and counts the element as dropped if the buffer is full 
+	 * @param element
+	 * @return
+	 */
+	public boolean offer(final T element) {
+		if(element == null)
+			throw new NullPointerException("Null elements are not supported");
+		
+		final long position = this.tail.get();
+		if(position - this.cachedHead >= this.elements.length()) {
+			this.cachedHead = this.head.get();
+			if(position - this.cachedHead >= this.elements.length()) {
+				this.droppedElements.lazySet(this.droppedElements.get() + 1);
+				return false;
+			}
+		}
+		this.elements.lazySet((int)(position & this.mask), element);
+		this.tail.lazySet(position + 1);
+		return true;
+	}
+	
+	/**
+	 * Removes and returns the oldest element, null if the buffer is empty
+	 * @return
+	 */
+	public T poll() {
+		final long position = this.head.get();
+		if(position >= this.tail.get())
+			return null;
+		final int index = (int)(position & this.mask);
+		final T element = this.elements.get(index);
+		this.elements.lazySet(index, null);
+		this.head.lazySet(position + 1);
+		return element;
+	}
+	
+	/**
+	 * Removes up to the given number of elements and appends them to the list in order of arrival
+	 * @param target
+	 * @param maxElements
+	 * @return number of elements moved
+	 */
+	public int drainTo(final List<T> target, final int maxElements) {
+		final long position = this.head.get();
+		final int available = (int)Math.min(maxElements, this.tail.get() - position);
+		if(available <= 0)
+			return 0;
+		for(int i = 0; i < available; i++) {
+			final int index = (int)((position + i) & this.mask);
+			target.add(this.elements.get(index));
+			this.elements.lazySet(index, null);
+		}
+		this.head.lazySet(position + available);
+		return available;
+	}
+	
+	/**
+	 * Returns the number of elements currently buffered
+	 * @return
+	 */
+	public int size() {
+		// read the head first, thus the result never gets negative 
+		final long position = this.head.get();
+		return (int)Math.max(0, Math.min(this.elements.length(), this.tail.get() - position));
+	}
+	
+	/**
+	 * Returns true if no elements are buffered
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	/**
+	 * Returns the number of elements the buffer holds at most 
+	 * @return
+	 */
+	public int capacity() {
+		return this.elements.length();
+	}
+	
+	/**
+	 * Returns the number of elements accepted since the buffer was created
+	 * @return
+	 */
+	public long getOfferedElements() {
+		return this.tail.get();
+	}
+	
+	/**
+	 * Returns the number of elements rejected since the buffer was full
+	 * @return
+	 */
+	public long getDroppedElements() {
+		return this.droppedElements.get();
+	}
+}
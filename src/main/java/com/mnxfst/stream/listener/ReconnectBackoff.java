@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.Random;
+
+/**
+ * Computes the delays between attempts to re-establish a connection. The delay doubles with each failed attempt, starting 
+ * at the minimum and being capped at the maximum. Half of each delay is randomized, thus listeners which lost their 
+ * connections at the same time do not hit the source in lockstep. {@link #reset() Resetting} after a successful attempt
+ * starts over at the minimum delay  
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class ReconnectBackoff {
+
+	/** delay applied before the first attempt */
+	private final long minDelayMillis;
+	/** upper bound of all delays */
+	private final long maxDelayMillis;
+	/** source of the jitter */
+	private final Random random;
+	/** number of attempts since the last reset */
+	private int attempts = 0;
+	
+	/**
+	 * Initializes the backoff using the provided input
+	 * @param minDelayMillis
+	 * @param maxDelayMillis
+	 */
+	public ReconnectBackoff(final long minDelayMillis, final long maxDelayMillis) {
+		this(minDelayMillis, maxDelayMillis, new Random());
+	}
+	
+	/**
+	 * Initializes the backoff using the provided input
+	 * @param minDelayMillis
+	 * @param maxDelayMillis
+	 * @param random
+	 */
+	public ReconnectBackoff(final long minDelayMillis, final long maxDelayMillis, final Random random) {
+		if(minDelayMillis < 1)
+			throw new IllegalArgumentException("Invalid minimum delay: " + minDelayMillis);
+		if(maxDelayMillis < minDelayMillis)
+			throw new IllegalArgumentException("Invalid maximum delay: " + maxDelayMillis);
+		this.minDelayMillis = minDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.random = random;
+	}
+	
+	/**
+	 * Returns the delay to wait before the next attempt and counts the attempt. The result lies between half of 
+	 * and the full exponential delay
+	 * @return
+	 */
+	public long nextDelay() {
+		long delay = this.minDelayMillis;
+		for(int i = 0; i < this.attempts && delay < this.maxDelayMillis; i++)
+			delay <<= 1;
+		delay = Math.min(delay, this.maxDelayMillis);
+		this.attempts++;
+		
+		final long fixed = delay - delay / 2;
+		return fixed + (long)(this.random.nextDouble() * (delay / 2 + 1));
+	}
+	
+	/**
+	 * Starts over at the minimum delay
+	 */
+	public void reset() {
+		this.attempts = 0;
+	}
+	
+	/**
+	 * Returns the number of attempts since the last reset
+	 * @return
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+}
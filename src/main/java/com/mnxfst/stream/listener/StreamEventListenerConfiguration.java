@@ -16,8 +16,10 @@
 package com.mnxfst.stream.listener;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,7 +29,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
 
 /**
- * Common base for all {@link StreamEventListener event listener configurations}
+ * Common base for all {@link StreamEventListener event listener configurations}. A listener may be split into 
+ * {@link #getShards() shards}, each being run by an instance of its own which applies the shard settings on top of 
+ * the common ones, eg. for reading a partition of the source through a connection of its own. All shards feed the 
+ * same dispatchers
  * @author mnxfst
  * @since 28.02.2014
  *
@@ -36,6 +41,13 @@ import com.fasterxml.jackson.annotation.JsonRootName;
 public class StreamEventListenerConfiguration implements Serializable {
 
 	private static final long serialVersionUID = -6549690615195743137L;
+	
+	/** separates the listener identifier from the shard index within shard identifiers */
+	public static final String SHARD_ID_SEPARATOR = "-shard-";
+	/** setting provided to each shard: index of the shard */
+	public static final String SETTING_SHARD_INDEX = "listener.shardIndex";
+	/** setting provided to each shard: number of shards */
+	public static final String SETTING_SHARD_COUNT = "listener.shardCount";
 
 	@JsonProperty ( value = "listenerClass", required = true )
 	private String listenerClass = null;
@@ -58,6 +70,14 @@ public class StreamEventListenerConfiguration implements Serializable {
 	@JsonProperty ( value = "settings", required = true ) 
 	private Map<String, String> settings = new HashMap<>();
 	
+	/** optional akka dispatcher the listener is executed on, eg. stream-analyzer.dispatchers.pinned */
+	@JsonProperty ( value = "dispatcher", required = false )
+	private String dispatcher = null;
+	
+	/** optional settings per shard, overriding the common settings - the listener is run by a single instance if empty */
+	@JsonProperty ( value = "shards", required = false )
+	private List<Map<String, String>> shards = new ArrayList<>();
+	
 	/**
 	 * Default constructor - quite obvious, eh ;-)
 	 */
@@ -153,6 +173,61 @@ public class StreamEventListenerConfiguration implements Serializable {
 	public void setSettings(Map<String, String> settings) {
 		this.settings = settings;
 	}
+
+	public String getDispatcher() {
+		return dispatcher;
+	}
+
+	public void setDispatcher(String dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	public List<Map<String, String>> getShards() {
+		return shards;
+	}
+
+	public void setShards(List<Map<String, String>> shards) {
+		this.shards = shards;
+	}
+	
+	/**
+	 * Adds a shard applying the given settings on top of the common ones
+	 * @param shardSettings
+	 */
+	public void addShard(final Map<String, String> shardSettings) {
+		this.shards.add(shardSettings != null ? shardSettings : new HashMap<String, String>());
+	}
+	
+	/**
+	 * Returns the configurations of all listener instances to run: this configuration if no shards are declared, 
+	 * otherwise one configuration per shard. Shard configurations are identified and named by the listener identifier
+	 * and name followed by {@link #SHARD_ID_SEPARATOR} and the shard index. Their settings hold the common settings,
+	 * overridden by the shard settings, plus {@link #SETTING_SHARD_INDEX} and {@link #SETTING_SHARD_COUNT}
+	 * @return
+	 */
+	public List<StreamEventListenerConfiguration> createShardConfigurations() {
+		
+		final List<StreamEventListenerConfiguration> configurations = new ArrayList<>();
+		if(this.shards == null || this.shards.isEmpty()) {
+			configurations.add(this);
+			return configurations;
+		}
+		
+		for(int i = 0; i < this.shards.size(); i++) {
+			final StreamEventListenerConfiguration shardCfg = new StreamEventListenerConfiguration(this.listenerClass, 
+					this.id + SHARD_ID_SEPARATOR + i, this.name + SHARD_ID_SEPARATOR + i, this.description, this.version);
+			shardCfg.getDispatchers().addAll(this.dispatchers);
+			shardCfg.setDispatcher(this.dispatcher);
+			if(this.settings != null)
+				shardCfg.getSettings().putAll(this.settings);
+			if(this.shards.get(i) != null)
+				shardCfg.getSettings().putAll(this.shards.get(i));
+			shardCfg.getSettings().put(SETTING_SHARD_INDEX, String.valueOf(i));
+			shardCfg.getSettings().put(SETTING_SHARD_COUNT, String.valueOf(this.shards.size()));
+			configurations.add(shardCfg);
+		}
+		return configurations;
+	}
 	 
 	
 }
@@ -0,0 +1,276 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import akka.actor.ActorRef;
+
+import com.mnxfst.stream.listener.EventStamper;
+import com.mnxfst.stream.listener.FlowCreditGate;
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Accepts events pushed via HTTP POST on behalf of the {@link HttpStreamListenerActor listener}. The body of a request 
+ * towards the {@link #getEventPath() event path} is taken as a single event, the body of a request towards the 
+ * {@link #getBatchPath() batch path} holds one event per line (newline-delimited json). Events are copied from the 
+ * request buffer, stamped and sent by the I/O thread towards all dispatchers straight away, a batch as 
+ * {@link StreamEventBatch} - the listener merely keeps the set of dispatchers and the credits up to date.<br/><br/>
+ * Requests are answered with <code>202 Accepted</code> as soon as the events are handed over, thus the client never waits
+ * for the pipelines. Load is shed before reading the body: <code>429 Too Many Requests</code> is returned if the dispatchers 
+ * ran out of {@link FlowCreditGate credits}, <code>503 Service Unavailable</code> if no dispatcher is available
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@Sharable
+public class HttpIngestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+	private static final Logger logger = Logger.getLogger(HttpIngestHandler.class);
+	
+	/** suffix appended to the event path for addressing the batch path */
+	public static final String BATCH_PATH_SUFFIX = "/batch";
+	/** seconds a client is asked to wait before retrying a rejected request */
+	public static final String RETRY_AFTER_SECONDS = "1";
+	
+	/** listener the events are sent on behalf of - receives the credits */
+	private final ActorRef listenerRef;
+	/** origin assigned to all events */
+	private final String origin;
+	/** path accepting single events */
+	private final String eventPath;
+	/** path accepting newline-delimited batches */
+	private final String batchPath;
+	/** credits granted by the dispatchers */
+	private final FlowCreditGate creditGate;
+	/** provides identifiers and timestamps to all events received */
+	private final EventStamper stamper = EventStamper.getInstance();
+	/** dispatchers receiving the events - replaced as a whole by the listener */
+	private volatile List<ActorRef> dispatcherRefs = Collections.emptyList();
+	/** number of events accepted */
+	private final AtomicLong acceptedEvents = new AtomicLong(0);
+	/** number of requests rejected for lack of credits or dispatchers */
+	private final AtomicLong rejectedRequests = new AtomicLong(0);
+	
+	/**
+	 * Initializes the handler using the provided input
+	 * @param listenerRef
+	 * @param origin
+	 * @param eventPath
+	 * @param creditGate
+	 */
+	public HttpIngestHandler(final ActorRef listenerRef, final String origin, final String eventPath, final FlowCreditGate creditGate) {
+		this.listenerRef = listenerRef;
+		this.origin = origin;
+		this.eventPath = eventPath;
+		this.batchPath = eventPath + BATCH_PATH_SUFFIX;
+		this.creditGate = creditGate;
+	}
+	
+	/**
+	 * @see io.netty.channel.SimpleChannelInboundHandler#channelRead0(io.netty.channel.ChannelHandlerContext, java.lang.Object)
+	 */
+	protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+		
+		final String path = getPath(request.getUri());
+		final boolean batch = this.batchPath.equals(path);
+		if(!batch && !this.eventPath.equals(path)) {
+			respond(ctx, request, HttpResponseStatus.NOT_FOUND, null);
+			return;
+		}
+		if(!HttpMethod.POST.equals(request.getMethod())) {
+			respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED, null);
+			return;
+		}
+		
+		final List<ActorRef> dispatchers = this.dispatcherRefs;
+		if(dispatchers.isEmpty()) {
+			this.rejectedRequests.incrementAndGet();
+			respond(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, null);
+			return;
+		}
+		if(!this.creditGate.hasCredit()) {
+			this.rejectedRequests.incrementAndGet();
+			respond(ctx, request, HttpResponseStatus.TOO_MANY_REQUESTS, null);
+			return;
+		}
+		
+		final ByteBuf content = request.content();
+		final Object message;
+		final int events;
+		if(batch) {
+			final List<StreamEventMessage> batchEvents = readLines(content);
+			events = batchEvents.size();
+			message = (events == 1 ? batchEvents.get(0) : new StreamEventBatch(batchEvents));
+		} else if(content.isReadable()) {
+			events = 1;
+			message = createEvent(content, content.readerIndex(), content.readableBytes());
+		} else {
+			events = 0;
+			message = null;
+		}
+		
+		if(events > 0) {
+			for(final ActorRef dispatcherRef : dispatchers)
+				dispatcherRef.tell(message, this.listenerRef);
+			this.creditGate.consume(events);
+			this.acceptedEvents.addAndGet(events);
+		}
+		respond(ctx, request, HttpResponseStatus.ACCEPTED, "{\"accepted\":" + events + "}");
+	}
+	
+	/**
+	 * Answers requests exceeding the content limit with <code>413 Request Entity Too Large</code>, closes the channel on all other errors
+	 * @see io.netty.channel.ChannelInboundHandlerAdapter#exceptionCaught(io.netty.channel.ChannelHandlerContext, java.lang.Throwable)
+	 */
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		if(cause instanceof TooLongFrameException) {
+			this.rejectedRequests.incrementAndGet();
+			FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+			HttpHeaders.setContentLength(response, 0);
+			ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+		} else {
+			logger.error("Failed to handle http request. Error: " + cause.getMessage());
+			ctx.close();
+		}
+	}
+	
+	/**
+	 * Splits the content into lines and returns one event per non-blank line. Carriage returns preceding the line feed are dropped
+	 * @param content
+	 * @return
+	 */
+	protected List<StreamEventMessage> readLines(final ByteBuf content) {
+		
+		final List<StreamEventMessage> events = new ArrayList<>();
+		final int end = content.writerIndex();
+		int start = content.readerIndex();
+		while(start < end) {
+			int lineEnd = content.forEachByte(start, end - start, ByteBufProcessor.FIND_LF);
+			final int next = (lineEnd < 0 ? end : lineEnd + 1);
+			if(lineEnd < 0)
+				lineEnd = end;
+			if(lineEnd > start && content.getByte(lineEnd - 1) == '\r')
+				lineEnd--;
+			
+			// skip blank lines
+			final int first = content.forEachByte(start, lineEnd - start, ByteBufProcessor.FIND_NON_LINEAR_WHITESPACE);
+			if(first >= 0)
+				events.add(createEvent(content, start, lineEnd - start));
+			start = next;
+		}
+		return events;
+	}
+	
+	/**
+	 * Copies the referenced bytes and returns them as stamped event. The request buffer is released by the handler afterwards,
+	 * thus the event must own its content
+	 * @param content
+	 * @param index
+	 * @param length
+	 * @return
+	 */
+	protected StreamEventMessage createEvent(final ByteBuf content, final int index, final int length) {
+		final byte[] bytes = new byte[length];
+		content.getBytes(index, bytes);
+		final long id = this.stamper.nextId();
+		return StreamEventMessage.fromUtf8(this.stamper.formatId(id), this.origin, EventStamper.timestampOf(id), bytes);
+	}
+	
+	/**
+	 * Writes the response, keeping the connection alive if requested by the client
+	 * @param ctx
+	 * @param request
+	 * @param status
+	 * @param body optional json body
+	 */
+	protected void respond(final ChannelHandlerContext ctx, final FullHttpRequest request, final HttpResponseStatus status, final String body) {
+		
+		final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, 
+				(body != null ? Unpooled.copiedBuffer(body, CharsetUtil.UTF_8) : Unpooled.EMPTY_BUFFER));
+		if(body != null)
+			response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json; charset=UTF-8");
+		if(status == HttpResponseStatus.TOO_MANY_REQUESTS || status == HttpResponseStatus.SERVICE_UNAVAILABLE)
+			response.headers().set(HttpHeaders.Names.RETRY_AFTER, RETRY_AFTER_SECONDS);
+		HttpHeaders.setContentLength(response, response.content().readableBytes());
+		
+		final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+		if(keepAlive)
+			response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		final ChannelFuture future = ctx.writeAndFlush(response);
+		if(!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+	
+	/**
+	 * Returns the path of the given uri, ie. the uri without query string
+	 * @param uri
+	 * @return
+	 */
+	protected static String getPath(final String uri) {
+		final int queryStart = uri.indexOf('?');
+		return (queryStart >= 0 ? uri.substring(0, queryStart) : uri);
+	}
+	
+	/**
+	 * Replaces the dispatchers receiving the events
+	 * @param dispatcherRefs
+	 */
+	public void updateDispatchers(final Collection<ActorRef> dispatcherRefs) {
+		this.dispatcherRefs = Collections.unmodifiableList(new ArrayList<>(dispatcherRefs));
+	}
+
+	public String getEventPath() {
+		return eventPath;
+	}
+
+	public String getBatchPath() {
+		return batchPath;
+	}
+
+	public long getAcceptedEvents() {
+		return acceptedEvents.get();
+	}
+
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+}
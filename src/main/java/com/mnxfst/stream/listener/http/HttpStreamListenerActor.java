@@ -0,0 +1,262 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.http;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import akka.actor.ActorRef;
+import akka.actor.UntypedActor;
+
+import com.mnxfst.stream.directory.ComponentRegistry;
+import com.mnxfst.stream.directory.ComponentType;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
+import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
+import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
+import com.mnxfst.stream.listener.FlowCreditGate;
+import com.mnxfst.stream.listener.StreamEventListenerConfiguration;
+import com.mnxfst.stream.listener.message.IngestStatsMessage;
+import com.mnxfst.stream.listener.message.IngestStatsRequestMessage;
+import com.mnxfst.stream.message.FlowCreditMessage;
+
+/**
+ * Accepts events pushed via HTTP. The listener runs a netty server of its own which reads requests into pooled buffers 
+ * and hands them over to the {@link HttpIngestHandler ingest handler}. The handler sends the events towards the dispatchers
+ * right from the I/O threads, thus the listener only keeps track of the available dispatchers and the credits they grant.
+ * Requests are rejected as long as the dispatchers ran out of credits.<br/><br/>
+ * Settings:
+ * <ul>
+ *   <li>{@link #HTTP_CONFIG_PORT} - port to listen on (required)</li>
+ *   <li>{@link #HTTP_CONFIG_HOST} - address to bind to, all addresses if missing</li>
+ *   <li>{@link #HTTP_CONFIG_PATH} - path accepting single events, batches are accepted below <code>&lt;path&gt;/batch</code></li>
+ *   <li>{@link #HTTP_CONFIG_MAX_CONTENT_LENGTH} - maximum size of a request body in bytes</li>
+ *   <li>{@link #HTTP_CONFIG_WORKER_THREADS} - number of I/O threads, netty's default if missing</li>
+ * </ul>
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class HttpStreamListenerActor extends UntypedActor {
+
+	public static final String HTTP_CONFIG_PORT = "http.port";
+	public static final String HTTP_CONFIG_HOST = "http.host";
+	public static final String HTTP_CONFIG_PATH = "http.path";
+	public static final String HTTP_CONFIG_MAX_CONTENT_LENGTH = "http.maxContentLength";
+	public static final String HTTP_CONFIG_WORKER_THREADS = "http.workerThreads";
+	
+	/** default path accepting single events */
+	public static final String DEFAULT_PATH = "/events";
+	/** default maximum size of a request body in bytes */
+	public static final int DEFAULT_MAX_CONTENT_LENGTH = 1024 * 1024;
+	
+	/** identifier the listener registers with */
+	private final String listenerId;
+	/** port to listen on */
+	private final int port;
+	/** address to bind to, null for all addresses */
+	private final String host;
+	/** path accepting single events */
+	private final String path;
+	/** maximum size of a request body in bytes */
+	private final int maxContentLength;
+	/** number of I/O threads, 0 for netty's default */
+	private final int workerThreads;
+	/** dispatchers to receive the events */
+	private final Set<String> dispatcherIds = new HashSet<>();
+	/** dispatcher references pushed by the component registry */
+	private final Map<String, ActorRef> dispatchers = new HashMap<>();
+	/** reference towards the component registry */
+	private final ActorRef componentRegistryRef;
+	/** credits granted by the dispatchers - requests are rejected as soon as they run out */
+	private final FlowCreditGate creditGate = new FlowCreditGate();
+	
+	/** handles all requests */
+	private HttpIngestHandler ingestHandler = null;
+	/** accepts connections */
+	private EventLoopGroup bossGroup = null;
+	/** reads and writes connections */
+	private EventLoopGroup workerGroup = null;
+	/** server channel */
+	private Channel serverChannel = null;
+	
+	/**
+	 * Initializes the listener using the provided input
+	 * @param configuration
+	 * @param componentRegistryRef reference towards {@link ComponentRegistry component registry}
+	 */
+	public HttpStreamListenerActor(final StreamEventListenerConfiguration configuration, final ActorRef componentRegistryRef) {
+		
+		final Map<String, String> settings = configuration.getSettings();
+		this.listenerId = configuration.getId();
+		this.port = parseInt(settings.get(HTTP_CONFIG_PORT), -1, HTTP_CONFIG_PORT);
+		if(this.port < 0)
+			throw new IllegalArgumentException("Missing required setting '"+HTTP_CONFIG_PORT+"'");
+		this.host = StringUtils.trimToNull(settings.get(HTTP_CONFIG_HOST));
+		this.path = (StringUtils.isNotBlank(settings.get(HTTP_CONFIG_PATH)) ? settings.get(HTTP_CONFIG_PATH).trim() : DEFAULT_PATH);
+		this.maxContentLength = parseInt(settings.get(HTTP_CONFIG_MAX_CONTENT_LENGTH), DEFAULT_MAX_CONTENT_LENGTH, HTTP_CONFIG_MAX_CONTENT_LENGTH);
+		this.workerThreads = parseInt(settings.get(HTTP_CONFIG_WORKER_THREADS), 0, HTTP_CONFIG_WORKER_THREADS);
+		this.dispatcherIds.addAll(configuration.getDispatchers());
+		this.componentRegistryRef = componentRegistryRef;
+	}
+	
+	/**
+	 * Starts the http server, registers the listener and subscribes for the dispatchers
+	 * @see akka.actor.UntypedActor#preStart()
+	 */
+	public void preStart() throws Exception {
+		
+		this.ingestHandler = new HttpIngestHandler(getSelf(), this.listenerId, this.path, this.creditGate);
+		this.bossGroup = new NioEventLoopGroup(1);
+		this.workerGroup = new NioEventLoopGroup(this.workerThreads);
+		
+		final HttpIngestHandler handler = this.ingestHandler;
+		final int maxContentLength = this.maxContentLength;
+		ServerBootstrap bootstrap = new ServerBootstrap();
+		bootstrap.group(this.bossGroup, this.workerGroup)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(new ChannelInitializer<SocketChannel>() {
+				public void initChannel(SocketChannel ch) throws Exception {
+					ch.pipeline().addLast(new HttpServerCodec());
+					ch.pipeline().addLast(new HttpObjectAggregator(maxContentLength));
+					ch.pipeline().addLast(handler);
+				}
+			})
+			.option(ChannelOption.SO_BACKLOG, 128)
+			.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+			.childOption(ChannelOption.SO_KEEPALIVE, true);
+		
+		try {
+			this.serverChannel = bootstrap.bind(this.host != null ? new InetSocketAddress(this.host, this.port) : new InetSocketAddress(this.port)).sync().channel();
+		} catch(Exception e) {
+			shutdownServer();
+			throw new RuntimeException("Unable to bind http listener to port " + this.port + ": " + e.getMessage(), e);
+		}
+		context().system().log().info("[listener="+this.listenerId+", port="+this.port+", path="+this.path+"] http listener started");
+		
+		this.componentRegistryRef.tell(new ComponentRegistrationMessage(this.listenerId, ComponentType.STREAM_LISTENER, getSelf()), getSelf());
+		
+		// subscribe for references to the dispatchers
+		ComponentSubscriptionMessage dispatcherSubscription = new ComponentSubscriptionMessage(ComponentType.DISPATCHER);
+		dispatcherSubscription.getComponentIds().addAll(this.dispatcherIds);
+		this.componentRegistryRef.tell(dispatcherSubscription, getSelf());
+	}
+	
+	/**
+	 * Stops the http server
+	 * @see akka.actor.UntypedActor#postStop()
+	 */
+	public void postStop() throws Exception {
+		shutdownServer();
+	}
+	
+	/**
+	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
+	 */
+	public void onReceive(Object message) throws Exception {
+		
+		if(message instanceof FlowCreditMessage) {
+			FlowCreditMessage msg = (FlowCreditMessage)message;
+			if(msg.getSourceId() != null)
+				this.creditGate.grant(msg);
+		} else if(message instanceof ComponentLookupResponseMessage) {
+			ComponentLookupResponseMessage msg = (ComponentLookupResponseMessage)message;
+			if(msg.getType() == ComponentType.DISPATCHER && msg.getComponentReferences() != null && !msg.getComponentReferences().isEmpty()) {
+				for(String cid : msg.getComponentReferences().keySet()) {
+					final ActorRef cref = msg.getComponentReferences().get(cid);
+					if(cref != null) {
+						this.creditGate.register(cid);
+						this.dispatchers.put(cid, cref);
+					}
+				}
+				this.ingestHandler.updateDispatchers(this.dispatchers.values());
+			}
+		} else if(message instanceof ComponentDeregistrationNotificationMessage) {
+			ComponentDeregistrationNotificationMessage msg = (ComponentDeregistrationNotificationMessage)message;
+			if(msg.getType() == ComponentType.DISPATCHER) {
+				this.dispatchers.remove(msg.getId());
+				this.creditGate.remove(msg.getId());
+				this.ingestHandler.updateDispatchers(this.dispatchers.values());
+			}
+		} else if(message instanceof IngestStatsRequestMessage) {
+			IngestStatsMessage stats = new IngestStatsMessage(this.listenerId, 0, 0, this.ingestHandler.getAcceptedEvents(), 0, !this.creditGate.hasCredit());
+			stats.setConnectionState(this.serverChannel != null && this.serverChannel.isActive() ? "LISTENING" : "CLOSED");
+			stats.setRejectedRequests(this.ingestHandler.getRejectedRequests());
+			getSender().tell(stats, getSelf());
+		} else if(message instanceof ComponentRegistrationResponseMessage) {
+			ComponentRegistrationResponseMessage msg = (ComponentRegistrationResponseMessage)message;
+			context().system().log().info("http listener registration[id="+msg.getId()+", type="+msg.getType()+", state="+msg.getState()+"]");
+		} else {
+			unhandled(message);
+		}
+	}
+	
+	/**
+	 * Closes the server channel and releases the event loops
+	 */
+	protected void shutdownServer() {
+		if(this.serverChannel != null) {
+			this.serverChannel.close();
+			this.serverChannel = null;
+		}
+		if(this.workerGroup != null) {
+			this.workerGroup.shutdownGracefully();
+			this.workerGroup = null;
+		}
+		if(this.bossGroup != null) {
+			this.bossGroup.shutdownGracefully();
+			this.bossGroup = null;
+		}
+	}
+	
+	/**
+	 * Parses the given integer setting, returns the default value if it is missing
+	 * @param value
+	 * @param defaultValue
+	 * @param setting
+	 * @return
+	 */
+	protected static int parseInt(final String value, final int defaultValue, final String setting) {
+		if(StringUtils.isBlank(value))
+			return defaultValue;
+		try {
+			final int result = Integer.parseInt(value.trim());
+			if(result >= 0)
+				return result;
+		} catch(NumberFormatException e) {
+			// handled below
+		}
+		throw new IllegalArgumentException("Invalid value for '"+setting+"': " + value);
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Reports the state of the buffer which hands over events from the socket reading thread of a stream listener towards
+ * the listener itself as well as the uptime and outages of the connection towards its source. Sent in response to an 
+ * {@link IngestStatsRequestMessage ingest stats request}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "ingestStatsMessage" )
+public class IngestStatsMessage implements Serializable {
+
+	private static final long serialVersionUID = 6447904861437917364L;
+
+	/** identifier of reporting listener */
+	@JsonProperty ( value = "listenerId", required = true )
+	private String listenerId;
+	
+	/** number of events waiting in the buffer */
+	@JsonProperty ( value = "queueDepth", required = true )
+	private int queueDepth;
+	
+	/** number of events the buffer holds at most */
+	@JsonProperty ( value = "queueCapacity", required = true )
+	private int queueCapacity;
+	
+	/** number of events accepted by the buffer since the listener started */
+	@JsonProperty ( value = "receivedEvents", required = true )
+	private long receivedEvents;
+	
+	/** number of events dropped since the buffer was full */
+	@JsonProperty ( value = "droppedEvents", required = true )
+	private long droppedEvents;
+	
+	/** true if reading from the source is suspended for lack of credits */
+	@JsonProperty ( value = "suspended", required = true )
+	private boolean suspended;
+	
+	/** number of requests rejected by push listeners, eg. for lack of credits */
+	@JsonProperty ( value = "rejectedRequests", required = false )
+	private long rejectedRequests;
+	
+	/** state of the connection towards the source */
+	@JsonProperty ( value = "connectionState", required = false )
+	private String connectionState;
+	
+	/** milliseconds passed since the current connection was established, 0 if disconnected */
+	@JsonProperty ( value = "uptimeMillis", required = false )
+	private long uptimeMillis;
+	
+	/** milliseconds spent connected since the listener started */
+	@JsonProperty ( value = "totalUptimeMillis", required = false )
+	private long totalUptimeMillis;
+	
+	/** number of outages which have ended */
+	@JsonProperty ( value = "outages", required = false )
+	private long outages;
+	
+	/** milliseconds passed since the connection was lost, 0 if connected */
+	@JsonProperty ( value = "currentOutageMillis", required = false )
+	private long currentOutageMillis;
+	
+	/** duration of the most recent outage */
+	@JsonProperty ( value = "lastOutageMillis", required = false )
+	private long lastOutageMillis;
+	
+	/** duration of the longest outage */
+	@JsonProperty ( value = "longestOutageMillis", required = false )
+	private long longestOutageMillis;
+	
+	/**
+	 * Default constructor
+	 */
+	public IngestStatsMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param listenerId
+	 * @param queueDepth
+	 * @param queueCapacity
+	 * @param receivedEvents
+	 * @param droppedEvents
+	 * @param suspended
+	 */
+	public IngestStatsMessage(final String listenerId, final int queueDepth, final int queueCapacity, final long receivedEvents, final long droppedEvents, final boolean suspended) {
+		this.listenerId = listenerId;
+		this.queueDepth = queueDepth;
+		this.queueCapacity = queueCapacity;
+		this.receivedEvents = receivedEvents;
+		this.droppedEvents = droppedEvents;
+		this.suspended = suspended;
+	}
+
+	public String getListenerId() {
+		return listenerId;
+	}
+
+	public void setListenerId(String listenerId) {
+		this.listenerId = listenerId;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public long getReceivedEvents() {
+		return receivedEvents;
+	}
+
+	public void setReceivedEvents(long receivedEvents) {
+		this.receivedEvents = receivedEvents;
+	}
+
+	public long getDroppedEvents() {
+		return droppedEvents;
+	}
+
+	public void setDroppedEvents(long droppedEvents) {
+		this.droppedEvents = droppedEvents;
+	}
+
+	public boolean isSuspended() {
+		return suspended;
+	}
+
+	public void setSuspended(boolean suspended) {
+		this.suspended = suspended;
+	}
+
+	public String getConnectionState() {
+		return connectionState;
+	}
+
+	public void setConnectionState(String connectionState) {
+		this.connectionState = connectionState;
+	}
+
+	public long getUptimeMillis() {
+		return uptimeMillis;
+	}
+
+	public void setUptimeMillis(long uptimeMillis) {
+		this.uptimeMillis = uptimeMillis;
+	}
+
+	public long getTotalUptimeMillis() {
+		return totalUptimeMillis;
+	}
+
+	public void setTotalUptimeMillis(long totalUptimeMillis) {
+		this.totalUptimeMillis = totalUptimeMillis;
+	}
+
+	public long getOutages() {
+		return outages;
+	}
+
+	public void setOutages(long outages) {
+		this.outages = outages;
+	}
+
+	public long getCurrentOutageMillis() {
+		return currentOutageMillis;
+	}
+
+	public void setCurrentOutageMillis(long currentOutageMillis) {
+		this.currentOutageMillis = currentOutageMillis;
+	}
+
+	public long getLastOutageMillis() {
+		return lastOutageMillis;
+	}
+
+	public void setLastOutageMillis(long lastOutageMillis) {
+		this.lastOutageMillis = lastOutageMillis;
+	}
+
+	public long getLongestOutageMillis() {
+		return longestOutageMillis;
+	}
+
+	public void setLongestOutageMillis(long longestOutageMillis) {
+		this.longestOutageMillis = longestOutageMillis;
+	}
+
+	public long getRejectedRequests() {
+		return rejectedRequests;
+	}
+
+	public void setRejectedRequests(long rejectedRequests) {
+		this.rejectedRequests = rejectedRequests;
+	}
+	
+}
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Asks a stream listener for its {@link IngestStatsMessage ingest statistics}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "ingestStatsRequestMessage" )
+public class IngestStatsRequestMessage implements Serializable {
+
+	private static final long serialVersionUID = -2391783455612808617L;
+
+	/**
+	 * Default constructor
+	 */
+	public IngestStatsRequestMessage() {		
+	}
+	
+}
@@ -1,48 +1,74 @@
 package com.mnxfst.stream.listener.webtrends;
 
-import java.io.IOException;
+import java.io.Serializable;
 import java.net.URI;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
-import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
 import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
 import akka.actor.UntypedActor;
-import akka.event.EventStream;
+import akka.dispatch.Futures;
+import akka.pattern.Patterns;
 
-import com.fasterxml.uuid.EthernetAddress;
-import com.fasterxml.uuid.Generators;
-import com.fasterxml.uuid.impl.TimeBasedGenerator;
 import com.mnxfst.stream.directory.ComponentRegistry;
 import com.mnxfst.stream.directory.ComponentType;
-import com.mnxfst.stream.directory.message.ComponentLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
+import com.mnxfst.stream.listener.ConnectionTracker;
+import com.mnxfst.stream.listener.FlowCreditGate;
+import com.mnxfst.stream.listener.IngestRingBuffer;
+import com.mnxfst.stream.listener.ReconnectBackoff;
 import com.mnxfst.stream.listener.StreamEventListenerConfiguration;
+import com.mnxfst.stream.listener.message.IngestStatsMessage;
+import com.mnxfst.stream.listener.message.IngestStatsRequestMessage;
+import com.mnxfst.stream.listener.message.ResumeStreamListenerMessage;
+import com.mnxfst.stream.listener.message.SuspendStreamListenerMessage;
+import com.mnxfst.stream.listener.webtrends.WebtrendsStreamSocket.ConnectionSignal;
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.message.StreamEventBatch;
 import com.mnxfst.stream.message.StreamEventMessage;
 
-@WebSocket
+/**
+ * Reads events from the webtrends stream api and sends them towards all configured dispatchers. The web socket is served
+ * by a {@link WebtrendsStreamSocket socket adapter} running on the threads of the web socket client. It hands over the events
+ * through a lock-free {@link IngestRingBuffer ingest buffer} which the listener drains in batches, thus all actor state is 
+ * accessed by the actor only. Each connection gets a buffer of its own as the buffer accepts a single producer only and the 
+ * thread serving a closed connection may still hand over an event. Buffers of previous connections are drained ahead of the
+ * current one and dropped once empty.<br/><br/>
+ * Lost connections are re-established after a {@link ReconnectBackoff randomized exponential backoff}. The access token is
+ * refreshed ahead of its expiry and kept for reconnecting, thus a reconnect does not wait for the authentication service
+ * unless the token expired meanwhile. Tokens are fetched off the actor thread on the {@link #TOKEN_REQUEST_DISPATCHER_ID blocking 
+ * dispatcher} and {@link TokenRefreshResult handed back} as message. A {@link SuspendStreamListenerMessage suspend message} 
+ * closes the connection and pauses token refreshes until a {@link ResumeStreamListenerMessage resume message} arrives. Uptime and outages are {@link ConnectionTracker tracked} 
+ * and reported along with the {@link IngestStatsMessage ingest statistics}.<br/><br/>
+ * A listener configuration may declare {@link StreamEventListenerConfiguration#getShards() shards}, each being run by 
+ * a listener of its own holding a separate connection. Shards must read disjoint parts of the stream, eg. by overriding 
+ * the {@link #WT_CONFIG_STREAM_QUERY query}, otherwise events are read twice 
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
 public class WebtrendsStreamListenerActor extends UntypedActor {
 
-	private static final Logger logger = Logger.getLogger(WebtrendsStreamListenerActor.class);
-	private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-
+	/** origin assigned to all events read from the stream api */
 	public static final String EVENT_SOURCE_ID = "webtrendsStreamsApi";
 	
 	public static final String WT_CONFIG_AUTH_AUDIENCE = "wt.authAudience";
@@ -55,13 +81,54 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 	public static final String WT_CONFIG_STREAM_QUERY = "wt.streamQuery";
 	public static final String WT_CONFIG_STREAM_VERSION = "wt.streamVersion";
 	public static final String WT_CONFIG_SCHEMA_VERSION = "wt.schemaVersion";
+	public static final String WT_CONFIG_INGEST_BUFFER_SIZE = "wt.ingestBufferSize";
+	public static final String WT_CONFIG_DRAIN_BATCH_SIZE = "wt.drainBatchSize";
+	public static final String WT_CONFIG_RECONNECT_MIN_DELAY = "wt.reconnectMinDelay";
+	public static final String WT_CONFIG_RECONNECT_MAX_DELAY = "wt.reconnectMaxDelay";
+	public static final String WT_CONFIG_CONNECT_TIMEOUT = "wt.connectTimeout";
+	public static final String WT_CONFIG_TOKEN_LIFETIME = "wt.tokenLifetime";
+	public static final String WT_CONFIG_TOKEN_REFRESH_MARGIN = "wt.tokenRefreshMargin";
+	
+	/** default number of events waiting for the listener at most */
+	public static final int DEFAULT_INGEST_BUFFER_SIZE = 65536;
+	/** default number of events sent towards the dispatchers at once */
+	public static final int DEFAULT_DRAIN_BATCH_SIZE = 512;
+	/** default delay in milliseconds before the first reconnect attempt */
+	public static final int DEFAULT_RECONNECT_MIN_DELAY = 500;
+	/** default upper bound in milliseconds of the delay between reconnect attempts */
+	public static final int DEFAULT_RECONNECT_MAX_DELAY = 60000;
+	/** default time in milliseconds granted to a connection attempt */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	/** default token lifetime in seconds, applied if the authentication service does not provide it */
+	public static final int DEFAULT_TOKEN_LIFETIME = 1800;
+	/** default time in seconds a token is refreshed ahead of its expiry */
+	public static final int DEFAULT_TOKEN_REFRESH_MARGIN = 120;
+	
+	/** dispatcher running the token requests if configured, the default dispatcher is used otherwise */
+	public static final String TOKEN_REQUEST_DISPATCHER_ID = "stream-analyzer.dispatchers.blocking-io";
 	
+	/** message sent to the listener itself for triggering a reconnect attempt */
+	protected static final String RECONNECT_TICK = "webtrendsStreamListener.reconnect";
+	/** message sent to the listener itself for refreshing the access token */
+	protected static final String TOKEN_REFRESH_TICK = "webtrendsStreamListener.tokenRefresh";
+	/** status code of the signal sent to the listener itself if a connection attempt timed out */
+	protected static final int STATUS_CONNECT_TIMEOUT = -2;
+	
+	/** states of the connection towards the stream api */
+	public enum ConnectionState {
+		DISCONNECTED, CONNECTING, CONNECTED, SUSPENDED
+	}
+	
+	/** identifier the listener registers with - shards of a listener are told apart by their identifiers */
+	private final String listenerId;
 	private final String authAudience;
 	private final String authScope;
 	private final String authUrl;
 	private final String clientId;
 	private final String clientSecret;
 	private String oAuthToken;
+	/** time the access token expires, given as milliseconds since epoch */
+	private long oAuthTokenExpiry = 0;
 	private final String streamType;
 	private final String streamQuery;
 	private final String streamVersion;
@@ -70,11 +137,52 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 	private final Map<String, ActorRef> dispatchers = new HashMap<>();
 	private final Set<String> dispatcherIds = new HashSet<>();
 	final ActorRef componentRegistryRef;
-		  
-	private final CountDownLatch latch = new CountDownLatch(1);
 	
 	private WebSocketClient webtrendsStreamSocketClient = null;
-	private TimeBasedGenerator uuidGenerator = null;
+	/** socket adapter reading from the stream api */
+	private WebtrendsStreamSocket webtrendsStreamSocket = null;
+	/** pending connection attempt - cancelled if it times out */
+	private java.util.concurrent.Future<Session> connectFuture = null;
+	/** events handed over by the socket adapter of the current connection */
+	private IngestRingBuffer<StreamEventMessage> ingestBuffer;
+	/** buffers of previous connections holding events not drained yet - oldest first */
+	private final List<IngestRingBuffer<StreamEventMessage>> retiredIngestBuffers = new ArrayList<>();
+	/** number of events offered to buffers of previous connections which have been dropped */
+	private long retiredOfferedEvents = 0;
+	/** number of events dropped by buffers of previous connections which have been dropped */
+	private long retiredDroppedEvents = 0;
+	/** capacity of the ingest buffer created per connection */
+	private final int ingestBufferSize;
+	/** number of events sent towards the dispatchers at once */
+	private final int drainBatchSize;
+	/** number of dropped events already reported */
+	private long reportedDroppedEvents = 0;
+	/** credits granted by the dispatchers - reading from the web socket is suspended as soon as they run out */
+	private final FlowCreditGate creditGate = new FlowCreditGate();
+	/** current state of the connection towards the stream api */
+	private ConnectionState connectionState = ConnectionState.DISCONNECTED;
+	/** identifier of the most recent connection attempt */
+	private int connectionId = 0;
+	/** delays between reconnect attempts */
+	private final ReconnectBackoff reconnectBackoff;
+	/** time in milliseconds granted to a connection attempt */
+	private final int connectTimeout;
+	/** token lifetime in seconds, applied if the authentication service does not provide it */
+	private final int tokenLifetime;
+	/** time in seconds a token is refreshed ahead of its expiry */
+	private final int tokenRefreshMargin;
+	/** uptime and outages of the connection */
+	private final ConnectionTracker connectionTracker = new ConnectionTracker();
+	/** pending reconnect attempt */
+	private Cancellable reconnectSchedule = null;
+	/** pending token refresh */
+	private Cancellable tokenRefreshSchedule = null;
+	/** identifier of the most recent token request */
+	private int tokenRequestId = 0;
+	/** true while a token request is running */
+	private boolean tokenRequestPending = false;
+	/** true if a connection attempt waits for the running token request */
+	private boolean connectAwaitingToken = false;
 
 	/**
 	 * Initializes the socket using the provided input
@@ -82,6 +190,7 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 	 */
 	public WebtrendsStreamListenerActor(final StreamEventListenerConfiguration configuration, final ActorRef componentRegistryRef) {
 
+		this.listenerId = configuration.getId();
 		this.authAudience = configuration.getSettings().get(WT_CONFIG_AUTH_AUDIENCE);
 		this.authScope = configuration.getSettings().get(WT_CONFIG_AUTH_SCOPE);
 		this.authUrl = configuration.getSettings().get(WT_CONFIG_AUTH_URL);
@@ -93,6 +202,15 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 		this.streamVersion = configuration.getSettings().get(WT_CONFIG_STREAM_VERSION);
 		this.schemaVersion = configuration.getSettings().get(WT_CONFIG_SCHEMA_VERSION);
 		this.dispatcherIds.addAll(configuration.getDispatchers());
+		this.ingestBufferSize = parseSize(configuration.getSettings().get(WT_CONFIG_INGEST_BUFFER_SIZE), DEFAULT_INGEST_BUFFER_SIZE, WT_CONFIG_INGEST_BUFFER_SIZE);
+		this.ingestBuffer = new IngestRingBuffer<>(this.ingestBufferSize);
+		this.drainBatchSize = parseSize(configuration.getSettings().get(WT_CONFIG_DRAIN_BATCH_SIZE), DEFAULT_DRAIN_BATCH_SIZE, WT_CONFIG_DRAIN_BATCH_SIZE);
+		this.reconnectBackoff = new ReconnectBackoff(
+				parseSize(configuration.getSettings().get(WT_CONFIG_RECONNECT_MIN_DELAY), DEFAULT_RECONNECT_MIN_DELAY, WT_CONFIG_RECONNECT_MIN_DELAY), 
+				parseSize(configuration.getSettings().get(WT_CONFIG_RECONNECT_MAX_DELAY), DEFAULT_RECONNECT_MAX_DELAY, WT_CONFIG_RECONNECT_MAX_DELAY));
+		this.connectTimeout = parseSize(configuration.getSettings().get(WT_CONFIG_CONNECT_TIMEOUT), DEFAULT_CONNECT_TIMEOUT, WT_CONFIG_CONNECT_TIMEOUT);
+		this.tokenLifetime = parseSize(configuration.getSettings().get(WT_CONFIG_TOKEN_LIFETIME), DEFAULT_TOKEN_LIFETIME, WT_CONFIG_TOKEN_LIFETIME);
+		this.tokenRefreshMargin = parseSize(configuration.getSettings().get(WT_CONFIG_TOKEN_REFRESH_MARGIN), DEFAULT_TOKEN_REFRESH_MARGIN, WT_CONFIG_TOKEN_REFRESH_MARGIN);
 		
 		this.componentRegistryRef = componentRegistryRef;
 	}
@@ -102,37 +220,44 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 	 * @see akka.actor.UntypedActor#preStart()
 	 */
 	public void preStart() throws Exception {
-				
-		// initialize the uuid generator which is based on time and ethernet address
-		this.uuidGenerator = Generators.timeBasedGenerator(EthernetAddress.fromInterface());
-		
-		// authenticate with the webtrends service
-		WebtrendsTokenRequest tokenRequest = new WebtrendsTokenRequest(this.authUrl, this.authAudience, this.authScope, this.clientId, this.clientSecret);
-		this.oAuthToken = tokenRequest.execute();		
 		
-		// initialize the webtrends stream socket client and connect the listener
 		this.webtrendsStreamSocketClient = new WebSocketClient();
 		try {
 			this.webtrendsStreamSocketClient.start();
-			ClientUpgradeRequest upgradeRequest = new ClientUpgradeRequest();
-			this.webtrendsStreamSocketClient.connect(this, new URI(this.eventStreamUrl), upgradeRequest);
-			await(5, TimeUnit.SECONDS);
 		} catch(Exception e) {
-			throw new RuntimeException("Unable to connect to web socket: " + e.getMessage(), e);
+			throw new RuntimeException("Unable to start web socket client: " + e.getMessage(), e);
 		}
 		
-		this.componentRegistryRef.tell(new ComponentRegistrationMessage(EVENT_SOURCE_ID, ComponentType.STREAM_LISTENER, getSelf()), getSelf());
+		this.componentRegistryRef.tell(new ComponentRegistrationMessage(this.listenerId, ComponentType.STREAM_LISTENER, getSelf()), getSelf());
+		
+		// subscribe for references to the dispatchers
+		ComponentSubscriptionMessage dispatcherSubscription = new ComponentSubscriptionMessage(ComponentType.DISPATCHER);
+		dispatcherSubscription.getComponentIds().addAll(this.dispatcherIds);
+		this.componentRegistryRef.tell(dispatcherSubscription, getSelf());
+		
+		connect();
 	}
 
-
 	/**
-	 * Executed after establishing web socket connection with streams api
-	 * @param session
+	 * Stops the web socket client
+	 * @see akka.actor.UntypedActor#postStop()
 	 */
-	@OnWebSocketConnect
-	public void onConnect(Session session) {
-		
-		// build SAPI query object
+	public void postStop() throws Exception {
+		cancelSchedule(this.reconnectSchedule);
+		cancelSchedule(this.tokenRefreshSchedule);
+		if(this.webtrendsStreamSocket != null)
+			this.webtrendsStreamSocket.close();
+		if(this.connectFuture != null)
+			this.connectFuture.cancel(true);
+		if(this.webtrendsStreamSocketClient != null)
+			this.webtrendsStreamSocketClient.stop();
+	}
+	
+	/**
+	 * Builds the SAPI query object sent after connecting
+	 * @return
+	 */
+	protected String buildStreamQuery() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("{\"access_token\":\"");
 	    sb.append(oAuthToken);
@@ -146,95 +271,410 @@ public class WebtrendsStreamListenerActor extends UntypedActor {
 	    sb.append("\",\"schema_version\":\"");
 	    sb.append(schemaVersion);
 	    sb.append("\"}");
-
-	    try {
-	    	session.getRemote().sendString(sb.toString());
-	    	logger.info("WebTrends Streams API reader connected");
-	    } catch(IOException e) {
-	    	throw new RuntimeException("Unable to open stream", e);
-	    }
-	    
-    	
+	    return sb.toString();
 	}
-
+	
 	/**
-	 * Executed by web socket implementation when receiving a message from the
-	 * streams api. The message will be directly forwarded to the current 
-	 * {@link ActorSystem actor systems} {@link EventStream event stream} 
-	 * @param message
+	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
 	 */
-	@OnWebSocketMessage
-	public void onMessage(String message) {
+	public void onReceive(Object message) throws Exception {
 		
-		if(dispatcherIds.size() > dispatchers.size()) {
-			// TODO
-			ComponentLookupMessage componentLookup = new ComponentLookupMessage(ComponentType.DISPATCHER);
-			for(String did : dispatcherIds) {
-				if(!dispatchers.containsKey(did)) {
-					componentLookup.addComponentId(did);
+		if(WebtrendsStreamSocket.DRAIN_SIGNAL.equals(message)) {
+			drainIngestBuffer();
+		} else if(message instanceof ConnectionSignal) {
+			handleConnectionSignal((ConnectionSignal)message);
+		} else if(RECONNECT_TICK.equals(message)) {
+			this.reconnectSchedule = null;
+			if(this.connectionState == ConnectionState.DISCONNECTED)
+				connect();
+		} else if(TOKEN_REFRESH_TICK.equals(message)) {
+			this.tokenRefreshSchedule = null;
+			if(this.connectionState != ConnectionState.SUSPENDED)
+				requestToken();
+		} else if(message instanceof TokenRefreshResult) {
+			handleTokenRefreshResult((TokenRefreshResult)message);
+		} else if(message instanceof SuspendStreamListenerMessage) {
+			suspend();
+		} else if(message instanceof ResumeStreamListenerMessage) {
+			if(this.connectionState == ConnectionState.SUSPENDED) {
+				this.connectionState = ConnectionState.DISCONNECTED;
+				this.reconnectBackoff.reset();
+				connect();
+			}
+		} else if(message instanceof ComponentLookupResponseMessage) {
+			ComponentLookupResponseMessage msg = (ComponentLookupResponseMessage)message;
+			if(msg.getType() == ComponentType.DISPATCHER && msg.getComponentReferences() != null && !msg.getComponentReferences().isEmpty()) {
+				for(String cid : msg.getComponentReferences().keySet()) {
+					final ActorRef cref = msg.getComponentReferences().get(cid);
+					if(cref != null) {
+						this.creditGate.register(cid);
+						this.dispatchers.put(cid, cref);
+					}
 				}
 			}
-			if(!componentLookup.getComponentIds().isEmpty()) {
-				this.componentRegistryRef.tell(componentLookup, getSelf());
-				context().system().log().info("Component lookup issued by webtrends stream listener as still dispatcher references are missing [dispIds="+dispatcherIds.size()+", dispRefs="+dispatchers.size()+"]");
+		} else if(message instanceof ComponentDeregistrationNotificationMessage) {
+			ComponentDeregistrationNotificationMessage msg = (ComponentDeregistrationNotificationMessage)message;
+			if(msg.getType() == ComponentType.DISPATCHER) {
+				this.dispatchers.remove(msg.getId());
+				if(this.creditGate.remove(msg.getId()) && this.webtrendsStreamSocket != null)
+					this.webtrendsStreamSocket.resumeReading();
 			}
+		} else if(message instanceof FlowCreditMessage) {
+			FlowCreditMessage msg = (FlowCreditMessage)message;
+			if(msg.getSourceId() != null && this.creditGate.grant(msg) && this.webtrendsStreamSocket != null)
+				this.webtrendsStreamSocket.resumeReading();
+		} else if(message instanceof IngestStatsRequestMessage) {
+			getSender().tell(createIngestStats(), getSelf());
+		} else if(message instanceof ComponentRegistrationResponseMessage) {
+			ComponentRegistrationResponseMessage msg = (ComponentRegistrationResponseMessage)message;
+			context().system().log().info("webtrends listener registration[id="+msg.getId()+", type="+msg.getType()+", state="+msg.getState()+"]");
+		} else {
+			unhandled(message);
 		}
+	}
+	
+	/**
+	 * Establishes a new connection towards the stream api. If the access token is about to expire, a new one is requested
+	 * and the attempt continues as soon as it arrives. Failed attempts are retried after a backoff
+	 */
+	protected void connect() {
+		
+		final long refreshDelay = this.oAuthTokenExpiry - this.tokenRefreshMargin * 1000L - System.currentTimeMillis();
+		if(refreshDelay <= 0) {
+			this.connectAwaitingToken = true;
+			requestToken();
+			return;
+		}
+		// the refresh is paused while suspended
+		if(this.tokenRefreshSchedule == null && !this.tokenRequestPending)
+			scheduleTokenRefresh(refreshDelay);
 		
+		// the socket of the previous connection may still hand over an event, thus the new one must not share its buffer
+		if(this.webtrendsStreamSocket != null) {
+			this.retiredIngestBuffers.add(this.ingestBuffer);
+			this.ingestBuffer = new IngestRingBuffer<>(this.ingestBufferSize);
+		}
+		
+		this.connectionId++;
+		this.webtrendsStreamSocket = new WebtrendsStreamSocket(getSelf(), this.connectionId, this.ingestBuffer, this.creditGate, buildStreamQuery());
+		this.connectionState = ConnectionState.CONNECTING;
 		try {
-			for(final ActorRef ref : this.dispatchers.values()) {
-				ref.tell(new StreamEventMessage(uuidGenerator.generate().toString(), EVENT_SOURCE_ID, sdf.format(new Date()), message), getSender());
-			}
+			this.connectFuture = this.webtrendsStreamSocketClient.connect(this.webtrendsStreamSocket, new URI(this.eventStreamUrl), new ClientUpgradeRequest());
 		} catch(Exception e) {
-			logger.error("Failed to insert webtrends stream event into processing pipeline. Error: " + e.getMessage());
+			context().system().log().error("[listener="+this.listenerId+", connection="+this.connectionId+"] unable to connect to web socket: " + e.getMessage());
+			connectionLost(false);
+			return;
 		}
+		
+		// the signal is ignored if the connection got established meanwhile
+		context().system().scheduler().scheduleOnce(Duration.create(this.connectTimeout, TimeUnit.MILLISECONDS), getSelf(), 
+				new ConnectionSignal(this.connectionId, false, STATUS_CONNECT_TIMEOUT, "connect timeout"), context().dispatcher(), null);
 	}
-
+	
 	/**
-	 * Executed when closing the web socket connection
-	 * @param statusCode
-	 * @param reason
+	 * Handles a connection being established or lost. Signals referring to previous connection attempts are ignored
+	 * @param signal
 	 */
-	@OnWebSocketClose		    
-	public void onClose(int statusCode, String reason) {
-		logger.info("websocket closing[status="+statusCode+", reason="+reason+"]");
+	protected void handleConnectionSignal(final ConnectionSignal signal) {
+		
+		if(signal.getConnectionId() != this.connectionId)
+			return;
+		// timeouts apply to pending attempts only
+		if(signal.getStatusCode() == STATUS_CONNECT_TIMEOUT && this.connectionState != ConnectionState.CONNECTING)
+			return;
+		
+		if(signal.isConnected()) {
+			if(this.connectionState != ConnectionState.CONNECTING)
+				return;
+			this.connectionState = ConnectionState.CONNECTED;
+			this.connectFuture = null;
+			this.reconnectBackoff.reset();
+			final long outageMillis = this.connectionTracker.connected(System.currentTimeMillis());
+			if(outageMillis >= 0)
+				context().system().log().info("[listener="+this.listenerId+", connection="+this.connectionId+", outage="+outageMillis+"ms] reconnected");
+		} else if(this.connectionState == ConnectionState.CONNECTED) {
+			context().system().log().warning("[listener="+this.listenerId+", connection="+this.connectionId+", status="+signal.getStatusCode()+", reason="+signal.getReason()+"] connection lost");
+			connectionLost(false);
+		} else if(this.connectionState == ConnectionState.CONNECTING) {
+			context().system().log().warning("[listener="+this.listenerId+", connection="+this.connectionId+", status="+signal.getStatusCode()+", reason="+signal.getReason()+"] connection attempt failed");
+			connectionLost(false);
+		}
 	}
-
+	
 	/**
-	 * Timeout handler
-	 * @param duration
-	 * @param unit
-	 * @return
-	 * @throws InterruptedException
+	 * Closes the current connection - or cancels the pending attempt - and schedules a reconnect attempt unless the disconnect was planned
+	 * @param planned
 	 */
-	public boolean await(int duration, TimeUnit unit) throws InterruptedException {
-		return latch.await(duration, unit);
+	protected void connectionLost(final boolean planned) {
+		if(this.webtrendsStreamSocket != null)
+			this.webtrendsStreamSocket.close();
+		if(this.connectFuture != null) {
+			this.connectFuture.cancel(true);
+			this.connectFuture = null;
+		}
+		this.connectionTracker.disconnected(System.currentTimeMillis(), planned);
+		if(planned) {
+			this.connectionState = ConnectionState.SUSPENDED;
+			this.connectAwaitingToken = false;
+			cancelSchedule(this.reconnectSchedule);
+			this.reconnectSchedule = null;
+			cancelSchedule(this.tokenRefreshSchedule);
+			this.tokenRefreshSchedule = null;
+		} else {
+			this.connectionState = ConnectionState.DISCONNECTED;
+			scheduleReconnect();
+		}
 	}
 	
 	/**
-	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
+	 * Closes the current connection until the listener is resumed
 	 */
-	public void onReceive(Object message) throws Exception {
+	protected void suspend() {
+		if(this.connectionState == ConnectionState.SUSPENDED)
+			return;
+		context().system().log().info("[listener="+this.listenerId+", connection="+this.connectionId+"] suspended");
+		connectionLost(true);
+	}
+	
+	/**
+	 * Schedules the next reconnect attempt unless one is pending already
+	 */
+	protected void scheduleReconnect() {
+		if(this.reconnectSchedule != null)
+			return;
+		final long delay = this.reconnectBackoff.nextDelay();
+		context().system().log().info("[listener="+this.listenerId+", attempt="+this.reconnectBackoff.getAttempts()+", delay="+delay+"ms] reconnect scheduled");
+		this.reconnectSchedule = context().system().scheduler().scheduleOnce(Duration.create(delay, TimeUnit.MILLISECONDS), getSelf(), RECONNECT_TICK, context().dispatcher(), null);
+	}
+	
+	/**
+	 * Requests a new access token unless a request is running already. The request blocks on the authentication service, 
+	 * thus it is run on the {@link #TOKEN_REQUEST_DISPATCHER_ID blocking dispatcher} and its {@link TokenRefreshResult result}
+	 * is sent back to the listener
+	 */
+	protected void requestToken() {
 		
-		if(message instanceof ComponentLookupResponseMessage) {
-			ComponentLookupResponseMessage msg = (ComponentLookupResponseMessage)message;
-			if(msg.getType() == ComponentType.DISPATCHER && msg.getComponentReferences() != null && !msg.getComponentReferences().isEmpty()) {
-				for(String cid : msg.getComponentReferences().keySet()) {
-					final ActorRef cref = msg.getComponentReferences().get(cid);
-					if(cref != null) {
-						this.dispatchers.put(cid, cref);
-					}
+		if(this.tokenRequestPending)
+			return;
+		cancelSchedule(this.tokenRefreshSchedule);
+		this.tokenRefreshSchedule = null;
+		this.tokenRequestPending = true;
+		
+		final int requestId = ++this.tokenRequestId;
+		final WebtrendsTokenRequest tokenRequest = new WebtrendsTokenRequest(this.authUrl, this.authAudience, this.authScope, this.clientId, this.clientSecret);
+		final ExecutionContext executionContext = (context().system().dispatchers().hasDispatcher(TOKEN_REQUEST_DISPATCHER_ID) ? 
+				context().system().dispatchers().lookup(TOKEN_REQUEST_DISPATCHER_ID) : context().dispatcher());
+		final Future<Object> result = Futures.future(new Callable<Object>() {
+			public Object call() throws Exception {
+				try {
+					final String token = tokenRequest.execute();
+					return new TokenRefreshResult(requestId, token, tokenRequest.getExpiresIn(), null);
+				} catch(Exception e) {
+					return new TokenRefreshResult(requestId, null, -1, e.getMessage());
 				}
 			}
-		} else if(message instanceof ComponentRegistrationResponseMessage) {
-			ComponentRegistrationResponseMessage msg = (ComponentRegistrationResponseMessage)message;
-			context().system().log().info("webtrends listener registration[id="+msg.getId()+", type="+msg.getType()+", state="+msg.getState()+"]");
+		}, executionContext);
+		Patterns.pipe(result, context().dispatcher()).to(getSelf());
+	}
+	
+	/**
+	 * Keeps the fetched access token and schedules its refresh ahead of expiry - unless the listener is suspended. If the token 
+	 * could not be fetched, the previous one is kept and the refresh is retried after the margin has passed half-way. A connection 
+	 * attempt waiting for the token is continued or rescheduled. Results of previous requests are ignored 
+	 * @param result
+	 */
+	protected void handleTokenRefreshResult(final TokenRefreshResult result) {
+		
+		if(result.getRequestId() != this.tokenRequestId)
+			return;
+		this.tokenRequestPending = false;
+		
+		long refreshDelay = this.tokenRefreshMargin * 500L;
+		if(result.getToken() != null) {
+			final long lifetime = (result.getExpiresIn() > 0 ? result.getExpiresIn() : this.tokenLifetime);
+			this.oAuthToken = result.getToken();
+			this.oAuthTokenExpiry = System.currentTimeMillis() + lifetime * 1000L;
+			refreshDelay = Math.max(refreshDelay, (lifetime - this.tokenRefreshMargin) * 1000L);
 		} else {
-			unhandled(message);
+			context().system().log().error("[listener="+this.listenerId+"] unable to fetch access token: " + result.getError());
 		}
 		
-		// TODO suspend message
-		// TODO disconnect message
-		// TODO reconnect message
+		if(this.connectionState == ConnectionState.SUSPENDED)
+			return;
+		scheduleTokenRefresh(refreshDelay);
+		
+		if(this.connectAwaitingToken && this.connectionState == ConnectionState.DISCONNECTED) {
+			this.connectAwaitingToken = false;
+			if(result.getToken() != null)
+				connect();
+			else
+				scheduleReconnect();
+		}
+	}
+	
+	/**
+	 * Schedules the next token refresh after the given delay given in milliseconds
+	 * @param delay
+	 */
+	protected void scheduleTokenRefresh(final long delay) {
+		cancelSchedule(this.tokenRefreshSchedule);
+		this.tokenRefreshSchedule = context().system().scheduler().scheduleOnce(Duration.create(delay, TimeUnit.MILLISECONDS), getSelf(), TOKEN_REFRESH_TICK, context().dispatcher(), null);
+	}
+	
+	/**
+	 * Cancels the given schedule if not null
+	 * @param schedule
+	 */
+	protected static void cancelSchedule(final Cancellable schedule) {
+		if(schedule != null)
+			schedule.cancel();
+	}
+	
+	/**
+	 * Creates the {@link IngestStatsMessage ingest statistics} including the connection uptime and outages
+	 * @return
+	 */
+	protected IngestStatsMessage createIngestStats() {
+		final long now = System.currentTimeMillis();
+		int bufferedEvents = this.ingestBuffer.size();
+		long offeredEvents = this.retiredOfferedEvents + this.ingestBuffer.getOfferedElements();
+		for(final IngestRingBuffer<StreamEventMessage> buffer : this.retiredIngestBuffers) {
+			bufferedEvents += buffer.size();
+			offeredEvents += buffer.getOfferedElements();
+		}
+		final IngestStatsMessage stats = new IngestStatsMessage(this.listenerId, bufferedEvents, this.ingestBuffer.capacity(), 
+				offeredEvents, getDroppedEvents(), (this.webtrendsStreamSocket != null && this.webtrendsStreamSocket.isSuspended()));
+		stats.setConnectionState(this.connectionState.name());
+		stats.setUptimeMillis(this.connectionTracker.getUptimeMillis(now));
+		stats.setTotalUptimeMillis(this.connectionTracker.getTotalUptimeMillis(now));
+		stats.setOutages(this.connectionTracker.getOutages());
+		stats.setCurrentOutageMillis(this.connectionTracker.getCurrentOutageMillis(now));
+		stats.setLastOutageMillis(this.connectionTracker.getLastOutageMillis());
+		stats.setLongestOutageMillis(this.connectionTracker.getLongestOutageMillis());
+		return stats;
+	}
+	
+	/**
+	 * Takes up to {@link #drainBatchSize} events from the ingest buffers - previous connections first - and sends them towards 
+	 * all dispatchers, a single event as is, multiple events as {@link StreamEventBatch batch}. Buffers of previous connections
+	 * are dropped as soon as they are empty. The events consume credits as they are sent, thus the 
+	 * credits match the events received by the dispatchers. If events are left afterwards, the listener signals itself to 
+	 * continue after processing the messages that arrived meanwhile 
+	 */
+	protected void drainIngestBuffer() {
+		
+		if(this.webtrendsStreamSocket != null)
+			this.webtrendsStreamSocket.drainStarted();
+		final List<StreamEventMessage> events = new ArrayList<>(Math.min(this.drainBatchSize, Math.max(1, this.ingestBuffer.size())));
+		int drained = 0;
+		for(final Iterator<IngestRingBuffer<StreamEventMessage>> iter = this.retiredIngestBuffers.iterator(); iter.hasNext() && drained < this.drainBatchSize;) {
+			final IngestRingBuffer<StreamEventMessage> buffer = iter.next();
+			drained += buffer.drainTo(events, this.drainBatchSize - drained);
+			if(buffer.isEmpty()) {
+				this.retiredOfferedEvents += buffer.getOfferedElements();
+				this.retiredDroppedEvents += buffer.getDroppedElements();
+				iter.remove();
+			}
+		}
+		if(drained < this.drainBatchSize)
+			drained += this.ingestBuffer.drainTo(events, this.drainBatchSize - drained);
+		if(drained > 0) {
+			// all dispatchers receive the same immutable message
+			final Object message = (drained == 1 ? events.get(0) : new StreamEventBatch(events));
+			for(final ActorRef ref : this.dispatchers.values())
+				ref.tell(message, getSelf());
+			this.creditGate.consume(drained);
+		}
+		
+		final long droppedEvents = getDroppedEvents();
+		if(droppedEvents > this.reportedDroppedEvents) {
+			context().system().log().warning("[listener="+this.listenerId+", dropped="+(droppedEvents - this.reportedDroppedEvents)+", total="+droppedEvents+"] ingest buffer full, events dropped");
+			this.reportedDroppedEvents = droppedEvents;
+		}
+		
+		if((!this.ingestBuffer.isEmpty() || !this.retiredIngestBuffers.isEmpty()) && this.webtrendsStreamSocket != null)
+			this.webtrendsStreamSocket.signalDrain();
+	}
+	
+	/**
+	 * Returns the number of events dropped by all ingest buffers since the listener started
+	 * @return
+	 */
+	protected long getDroppedEvents() {
+		long droppedEvents = this.retiredDroppedEvents + this.ingestBuffer.getDroppedElements();
+		for(final IngestRingBuffer<StreamEventMessage> buffer : this.retiredIngestBuffers)
+			droppedEvents += buffer.getDroppedElements();
+		return droppedEvents;
+	}
+	
+	/**
+	 * Parses the given size setting, returns the default value if it is missing
+	 * @param value
+	 * @param defaultValue
+	 * @param setting
+	 * @return
+	 */
+	protected static int parseSize(final String value, final int defaultValue, final String setting) {
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		try {
+			final int size = Integer.parseInt(value.trim());
+			if(size > 0)
+				return size;
+		} catch(NumberFormatException e) {
+			// handled below
+		}
+		throw new IllegalArgumentException("Invalid value for '"+setting+"': " + value);
+	}
+
+	/**
+	 * Hands the result of a token request back to the listener
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 *
+	 */
+	protected static class TokenRefreshResult implements Serializable {
+		
+		private static final long serialVersionUID = 4112509236683146021L;
+		
+		/** identifier of the token request */
+		private final int requestId;
+		/** fetched access token, null if the request failed */
+		private final String token;
+		/** token lifetime in seconds, -1 if not provided by the authentication service */
+		private final long expiresIn;
+		/** reason the request failed for */
+		private final String error;
+		
+		/**
+		 * Initializes the result using the provided input
+		 * @param requestId
+		 * @param token
+		 * @param expiresIn
+		 * @param error
+		 */
+		public TokenRefreshResult(final int requestId, final String token, final long expiresIn, final String error) {
+			this.requestId = requestId;
+			this.token = token;
+			this.expiresIn = expiresIn;
+			this.error = error;
+		}
+
+		public int getRequestId() {
+			return requestId;
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+		public long getExpiresIn() {
+			return expiresIn;
+		}
+
+		public String getError() {
+			return error;
+		}
 	}
 
 }
@@ -0,0 +1,321 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.webtrends;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.SuspendToken;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+import akka.actor.ActorRef;
+
+import com.mnxfst.stream.listener.EventStamper;
+import com.mnxfst.stream.listener.FlowCreditGate;
+import com.mnxfst.stream.listener.IngestRingBuffer;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Web socket adapter reading from the webtrends stream api on behalf of the {@link WebtrendsStreamListenerActor listener}. 
+ * Events are stamped and handed over through an {@link IngestRingBuffer ingest buffer} by the web socket thread, which never 
+ * touches any actor state. The listener is notified by a {@link #DRAIN_SIGNAL signal} as soon as events are waiting, further
+ * signals are sent only after the listener {@link #drainStarted() started} draining, thus a busy socket does not flood 
+ * its mailbox.<br/><br/>
+ * Reading is suspended as soon as the events sent by the listener plus the events waiting in the buffer exhaust the credits
+ * granted by the {@link FlowCreditGate dispatchers} and resumed by the listener when further credits arrive. Events arriving while the buffer is full are dropped.<br/><br/>
+ * Each instance serves a single connection attempt. The listener is told about the connection being established or lost 
+ * by a {@link ConnectionSignal signal} carrying the identifier of the attempt, thus signals of previous attempts can be
+ * told apart 
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@WebSocket
+public class WebtrendsStreamSocket {
+
+	private static final Logger logger = Logger.getLogger(WebtrendsStreamSocket.class);
+
+	/** message sent towards the listener if events are waiting in the buffer */
+	public static final String DRAIN_SIGNAL = "webtrendsStreamSocket.drain";
+	
+	/** listener draining the buffer */
+	private final ActorRef listenerRef;
+	/** identifier of the connection attempt served by this instance */
+	private final int connectionId;
+	/** events handed over towards the listener - used by this connection only, thus written by its web socket thread only */
+	private final IngestRingBuffer<StreamEventMessage> ingestBuffer;
+	/** credits granted by the dispatchers */
+	private final FlowCreditGate creditGate;
+	/** query sent after connecting */
+	private final String streamQuery;
+	/** provides identifiers and timestamps to all events received */
+	private final EventStamper stamper = EventStamper.getInstance();
+	/** set while a drain signal is on its way towards the listener */
+	private final AtomicBoolean drainSignaled = new AtomicBoolean(false);
+	/** web socket session - set by the web socket thread on connect */
+	private volatile Session session = null;
+	/** token required for resuming the suspended session, null while reading */
+	private final AtomicReference<SuspendToken> suspendToken = new AtomicReference<>();
+	/** set as soon as the connection is lost or closed - events arriving afterwards are ignored */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Initializes the socket using the provided input
+	 * @param listenerRef
+	 * @param connectionId
+	 * @param ingestBuffer
+	 * @param creditGate
+	 * @param streamQuery
+	 */
+	public WebtrendsStreamSocket(final ActorRef listenerRef, final int connectionId, final IngestRingBuffer<StreamEventMessage> ingestBuffer, final FlowCreditGate creditGate, final String streamQuery) {
+		this.listenerRef = listenerRef;
+		this.connectionId = connectionId;
+		this.ingestBuffer = ingestBuffer;
+		this.creditGate = creditGate;
+		this.streamQuery = streamQuery;
+	}
+	
+	/**
+	 * Executed after establishing web socket connection with streams api. A connection established after the instance 
+	 * has been closed, eg. by the connect timeout, is closed right away
+	 * @param session
+	 */
+	@OnWebSocketConnect
+	public void onConnect(Session session) {
+		
+		// the session is published before checking, thus either this thread or close() sees the other one
+		this.session = session;
+		if(this.closed.get()) {
+			logger.info("WebTrends Streams API reader connected after being closed [connection="+this.connectionId+"]");
+			session.close();
+			return;
+		}
+	    try {
+	    	session.getRemote().sendString(this.streamQuery);
+	    	logger.info("WebTrends Streams API reader connected [connection="+this.connectionId+"]");
+	    	this.listenerRef.tell(new ConnectionSignal(this.connectionId, true, 0, null), ActorRef.noSender());
+	    } catch(IOException e) {
+	    	logger.error("Unable to open stream [connection="+this.connectionId+"]. Error: " + e.getMessage());
+	    	connectionLost(-1, e.getMessage());
+	    	session.close();
+	    }
+	}
+
+	/**
+	 * Executed by web socket implementation when receiving a message from the streams api
+	 * @param message
+	 */
+	@OnWebSocketMessage
+	public void onMessage(String message) {
+		
+		try {
+			final long id = this.stamper.nextId();
+			handOver(new StreamEventMessage(this.stamper.formatId(id), WebtrendsStreamListenerActor.EVENT_SOURCE_ID, EventStamper.timestampOf(id), message));
+		} catch(Exception e) {
+			logger.error("Failed to insert webtrends stream event into processing pipeline. Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Executed by web socket implementation when receiving a binary frame from the
+	 * streams api. The UTF-8 encoded payload is handed over to the pipeline as is, thus it
+	 * needs not be decoded unless an element requests the string representation
+	 * @param payload
+	 * @param offset
+	 * @param length
+	 */
+	@OnWebSocketMessage
+	public void onMessage(byte[] payload, int offset, int length) {
+		
+		try {
+			// the message takes over the array, thus it must hold the event only 
+			final byte[] content = (offset == 0 && length == payload.length ? payload : Arrays.copyOfRange(payload, offset, offset + length));
+			final long id = this.stamper.nextId();
+			handOver(StreamEventMessage.fromUtf8(this.stamper.formatId(id), WebtrendsStreamListenerActor.EVENT_SOURCE_ID, EventStamper.timestampOf(id), content));
+		} catch(Exception e) {
+			logger.error("Failed to insert webtrends stream event into processing pipeline. Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Executed when closing the web socket connection
+	 * @param statusCode
+	 * @param reason
+	 */
+	@OnWebSocketClose		    
+	public void onClose(int statusCode, String reason) {
+		this.session = null;
+		logger.info("websocket closing[connection="+this.connectionId+", status="+statusCode+", reason="+reason+"]");
+		connectionLost(statusCode, reason);
+	}
+	
+	/**
+	 * Executed when the connection fails, eg. while connecting
+	 * @param cause
+	 */
+	@OnWebSocketError
+	public void onError(Throwable cause) {
+		logger.error("websocket error[connection="+this.connectionId+"]. Error: " + (cause != null ? cause.getMessage() : null));
+		connectionLost(-1, (cause != null ? cause.getMessage() : null));
+	}
+	
+	/**
+	 * Tells the listener about the connection being lost - once per instance
+	 * @param statusCode
+	 * @param reason
+	 */
+	protected void connectionLost(final int statusCode, final String reason) {
+		if(this.closed.compareAndSet(false, true))
+			this.listenerRef.tell(new ConnectionSignal(this.connectionId, false, statusCode, reason), ActorRef.noSender());
+	}
+	
+	/**
+	 * Appends the event to the ingest buffer, notifies the listener and suspends reading from the web socket if the
+	 * buffered events exhaust the credits left. Credits are consumed by the listener when sending the events, thus
+	 * dropped events do not count. Executed by the web socket thread
+	 * @param event
+	 */
+	protected void handOver(final StreamEventMessage event) {
+		if(this.closed.get() || !this.ingestBuffer.offer(event))
+			return;
+		signalDrain();
+		if(!this.creditGate.hasCredit(this.ingestBuffer.size()))
+			suspendReading();
+	}
+	
+	/**
+	 * Notifies the listener about waiting events unless a notification is on its way already
+	 */
+	public void signalDrain() {
+		if(this.drainSignaled.compareAndSet(false, true))
+			this.listenerRef.tell(DRAIN_SIGNAL, ActorRef.noSender());
+	}
+	
+	/**
+	 * Must be called by the listener before draining the buffer, thus events appended meanwhile lead to a new signal
+	 */
+	public void drainStarted() {
+		this.drainSignaled.set(false);
+	}
+	
+	/**
+	 * Suspends reading from the web socket. Credits granted between running out and suspending would not resume the
+	 * session, thus the credits are checked again afterwards
+	 */
+	protected void suspendReading() {
+		final Session session = this.session;
+		if(session == null || this.suspendToken.get() != null)
+			return;
+		
+		this.suspendToken.set(session.suspend());
+		logger.debug("websocket suspended [sent="+this.creditGate.getSentEvents()+", buffered="+this.ingestBuffer.size()+", limit="+this.creditGate.getCreditLimit()+"]");
+		if(this.creditGate.hasCredit(this.ingestBuffer.size()))
+			resumeReading();
+	}
+	
+	/**
+	 * Resumes reading from the web socket if it is suspended
+	 */
+	public void resumeReading() {
+		final SuspendToken token = this.suspendToken.getAndSet(null);
+		if(token != null) {
+			token.resume();
+			logger.debug("websocket resumed [sent="+this.creditGate.getSentEvents()+", limit="+this.creditGate.getCreditLimit()+"]");
+		}
+	}
+	
+	/**
+	 * Closes the web socket session if open. Events arriving afterwards are ignored and the listener is not told about
+	 * the connection being lost
+	 */
+	public void close() {
+		this.closed.set(true);
+		final Session session = this.session;
+		if(session != null)
+			session.close();
+	}
+	
+	/**
+	 * Returns true if reading from the web socket is suspended
+	 * @return
+	 */
+	public boolean isSuspended() {
+		return this.suspendToken.get() != null;
+	}
+	
+	public int getConnectionId() {
+		return connectionId;
+	}
+	
+	/**
+	 * Tells the listener about a connection being established or lost 
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 *
+	 */
+	public static class ConnectionSignal implements Serializable {
+		
+		private static final long serialVersionUID = -1823546409618416097L;
+		
+		/** identifier of the connection attempt */
+		private final int connectionId;
+		/** true if the connection was established, false if it was lost */
+		private final boolean connected;
+		/** status code provided on close, -1 if the connection failed */
+		private final int statusCode;
+		/** reason provided on close or failure */
+		private final String reason;
+		
+		/**
+		 * Initializes the signal using the provided input
+		 * @param connectionId
+		 * @param connected
+		 * @param statusCode
+		 * @param reason
+		 */
+		public ConnectionSignal(final int connectionId, final boolean connected, final int statusCode, final String reason) {
+			this.connectionId = connectionId;
+			this.connected = connected;
+			this.statusCode = statusCode;
+			this.reason = reason;
+		}
+
+		public int getConnectionId() {
+			return connectionId;
+		}
+
+		public boolean isConnected() {
+			return connected;
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+}
@@ -59,6 +59,8 @@ public class WebtrendsTokenRequest {
   
 	private String clientId;
 	private String clientSecret;
+	/** lifetime of the most recently fetched token in seconds, -1 if not provided by the service */
+	private long expiresIn = -1;
   
 	public WebtrendsTokenRequest(String authUrl, String audience, String scope, String clientId, String clientSecret) {
 		this.authUrl = authUrl;
@@ -92,8 +94,18 @@ public class WebtrendsTokenRequest {
 	    if (error != null)
         	throw new Exception(obj.findValue("Description").asText());
       
+	    JsonNode expiresInNode = obj.findValue("expires_in");
+	    this.expiresIn = (expiresInNode != null ? expiresInNode.asLong(-1) : -1);
 	    return obj.findValue("access_token").asText();
 	}
+	
+	/**
+	 * Returns the lifetime in seconds of the token fetched by the most recent {@link #execute()}, -1 if the service did not provide it
+	 * @return
+	 */
+	public long getExpiresIn() {
+		return expiresIn;
+	}
   
 	private String buildAssertion() {
       	// Json representation of the header
@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Grants credits towards a sender of {@link StreamEventMessage events}: the receiving component may send events
+ * towards the granting one as long as the total number of events it has sent stays below the credit limit. The 
+ * limit is cumulative and never decreases, thus a lost or duplicated message does not break the accounting - a 
+ * later one simply supersedes it. Senders which never received a credit message are not limited.<br/><br/>
+ * Dispatchers running several instances behind a router grant credits per {@link #getInstanceId() instance}. As the sender
+ * cannot tell which instance receives an event, each instance additionally reports the number of events it received
+ * from the sender and the credits of all instances are combined by the sender (see FlowCreditGate)
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "flowCreditMessage" )
+public class FlowCreditMessage implements Serializable {
+
+	private static final long serialVersionUID = -6620311736480843218L;
+
+	/** identifier of the component granting the credits, eg. the pipeline or dispatcher id */
+	@JsonProperty ( value = "sourceId", required = true )
+	private String sourceId;
+	
+	/** total number of events the receiver may have sent towards the granting component */
+	@JsonProperty ( value = "creditLimit", required = true )
+	private long creditLimit;
+	
+	/** identifier of the granting instance if the component runs several instances behind a router, null otherwise */
+	@JsonProperty ( value = "instanceId", required = false )
+	private String instanceId = null;
+	
+	/** number of events the granting instance received from the receiver of this message - set along with the instance identifier only */
+	@JsonProperty ( value = "receivedEvents", required = false )
+	private long receivedEvents = 0;
+	
+	/**
+	 * Default constructor
+	 */
+	public FlowCreditMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param sourceId
+	 * @param creditLimit
+	 */
+	public FlowCreditMessage(final String sourceId, final long creditLimit) {
+		this.sourceId = sourceId;
+		this.creditLimit = creditLimit;
+	}
+	
+	/**
+	 * Initializes the message granted by a single instance of a component running several instances
+	 * @param sourceId
+	 * @param creditLimit total number of events the receiver may have sent towards the instance
+	 * @param instanceId
+	 * @param receivedEvents number of events the instance received from the receiver so far
+	 */
+	public FlowCreditMessage(final String sourceId, final long creditLimit, final String instanceId, final long receivedEvents) {
+		this.sourceId = sourceId;
+		this.creditLimit = creditLimit;
+		this.instanceId = instanceId;
+		this.receivedEvents = receivedEvents;
+	}
+
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	public void setSourceId(String sourceId) {
+		this.sourceId = sourceId;
+	}
+
+	public long getCreditLimit() {
+		return creditLimit;
+	}
+
+	public void setCreditLimit(long creditLimit) {
+		this.creditLimit = creditLimit;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public void setInstanceId(String instanceId) {
+		this.instanceId = instanceId;
+	}
+
+	public long getReceivedEvents() {
+		return receivedEvents;
+	}
+
+	public void setReceivedEvents(long receivedEvents) {
+		this.receivedEvents = receivedEvents;
+	}
+	
+}
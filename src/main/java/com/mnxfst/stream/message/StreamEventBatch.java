@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Carries an ordered set of {@link StreamEventMessage event messages} which travel through the system
+ * as a single message. Receivers must process the contained events in order. The batch is immutable as 
+ * it is shared by all receivers it gets fanned out to
+ * @author mnxfst
+ * @since 19.03.2014
+ *
+ */
+@JsonRootName ( value = "streamEventBatch" )
+public class StreamEventBatch implements Serializable {
+
+	private static final long serialVersionUID = 6207443839416720347L;
+
+	/** contained events */
+	@JsonProperty ( value = "events", required = true )
+	private final List<StreamEventMessage> events;
+
+	/**
+	 * Initializes an empty batch
+	 */
+	public StreamEventBatch() {
+		this.events = Collections.emptyList();
+	}
+
+	/**
+	 * Initializes the batch using the provided input. The events are copied, thus later changes to the
+	 * provided list are not visible to the batch
+	 * @param events
+	 */
+	@JsonCreator
+	public StreamEventBatch(@JsonProperty("events") final List<StreamEventMessage> events) {
+		this.events = (events != null && !events.isEmpty() ? Collections.unmodifiableList(new ArrayList<>(events)) : Collections.<StreamEventMessage>emptyList());
+	}
+
+	/**
+	 * Returns the number of contained events
+	 * @return
+	 */
+	public int size() {
+		return this.events.size();
+	}
+
+	/**
+	 * Returns the contained events as unmodifiable list
+	 * @return
+	 */
+	public List<StreamEventMessage> getEvents() {
+		return events;
+	}
+
+}
@@ -15,111 +15,453 @@
  */
 package com.mnxfst.stream.message;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
 
 /**
  * Defines the message floating around in the system. It holds a common set of information
- * required for every message plus a content area where arbitrary data can be transported 
+ * required for every message plus a content area where arbitrary data can be transported
  * in. The only restriction on that field is that it must hold {@link Serializable serializable)
  * data. Aside all nodes accessing the content MUST ensure that they can handle the contained
- * format
+ * format.<br/><br/>
+ * Instances are immutable, thus a single instance may be handed over to any number of receivers,
+ * eg. pipelines running in parallel. Modifications are applied through the <code>with...</code>
+ * methods which return a new instance sharing all unchanged fields - including the custom attributes
+ * map as long as it is not modified - with the original one.<br/><br/>
+ * The event content is expected to be JSON. Its {@link #getEventTree() parsed representation} is materialized
+ * on first access and cached by the instance, thus all later consumers - eg. the elements of a pipeline - reuse it.
+ * Replacing the content via {@link #withEvent(String)} results in a new instance without the cached tree.<br/><br/>
+ * The event content is either held as {@link String} or - if {@link #fromUtf8(String, String, long, byte[]) created}
+ * from a binary source - as UTF-8 encoded bytes which sinks may {@link #getEventBytes() write out} without transcoding.
+ * In the latter case the string representation is decoded on first request only.<br/><br/>
+ * The time of ingestion and - if provided by the source - the time the event occurred are held as milliseconds since
+ * epoch, thus windowing or latency measurement need no date parsing. The ISO representation required by JSON 
+ * consumers is {@link #getTimestamp() rendered} on request only
  * @author mnxfst
  * @since 28.02.2014
  *
  */
 @JsonRootName ( value = "streamEvent" )
-public class StreamEventMessage implements Serializable {
+public final class StreamEventMessage implements Serializable {
 
 	private static final long serialVersionUID = -5771490648930073652L;
+
+	private static final Map<String, String> NO_ATTRIBUTES = Collections.emptyMap();
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 	
+	/** value of {@link #getEventTime()} if the source did not provide an event time */
+	public static final long NO_EVENT_TIME = 0;
+
 	/** message identifier */
 	@JsonProperty ( value = "id", required = true )
-	private String identifier;
+	private final String identifier;
+
 	/** message origin a.k.a. the listener which received the event */
 	@JsonProperty ( value = "origin", required = true )
-	private String origin;
-	/** time of event ingestion, required format: "yyyy-MM-dd'T'HH:mm:ss.SSSZ" */
-	@JsonProperty ( value = "timestamp", required = true )
-	private String timestamp;
-	/** content */
-	@JsonProperty ( value = "event", required = true )
-	private String event;
-	/** custom attributes */
+	private final String origin;
+
+	/** time of event ingestion, given as milliseconds since epoch - rendered as "timestamp" when written as JSON */
+	private final long ingestionTime;
+
+	/** time the event occurred at the source, given as milliseconds since epoch - optional */
+	@JsonProperty ( value = "eventTime" )
+	private final long eventTime;
+
+	/** content - null if the content is held as UTF-8 bytes */
+	private final String event;
+
+	/** content as UTF-8 encoded bytes - null if the content is held as string */
+	private final byte[] eventBytes;
+
+	/** custom attributes - read-only, shared between derived instances */
 	@JsonProperty ( value = "customAttributes" )
-	private Map<String, String> customAttributes = new HashMap<>();
-	
+	private final Map<String, String> customAttributes;
+
+	/** parsed event content - materialized on first access, not transferred along with the message */
+	@JsonIgnore
+	private transient volatile JsonNode eventTree;
+
+	/** string representation decoded from the UTF-8 content on first request */
+	private transient volatile String decodedEvent;
+
 	/**
-	 * Default constructor
+	 * Initializes the instance using the provided input
+	 * @param identifier
+	 * @param origin
+	 * @param ingestionTime
+	 * @param event
 	 */
-	public StreamEventMessage() {		
+	public StreamEventMessage(final String identifier, final String origin, final long ingestionTime, final String event) {
+		this(identifier, origin, ingestionTime, NO_EVENT_TIME, event, null, NO_ATTRIBUTES, false);
 	}
-	
+
 	/**
 	 * Initializes the instance using the provided input
 	 * @param identifier
 	 * @param origin
+	 * @param ingestionTime
+	 * @param event
+	 * @param customAttributes
+	 */
+	public StreamEventMessage(final String identifier, final String origin, final long ingestionTime, final String event, 
+			final Map<String, String> customAttributes) {
+		this(identifier, origin, ingestionTime, NO_EVENT_TIME, event, null, customAttributes, true);
+	}
+
+	/**
+	 * Creates an instance from its JSON representation which carries the ingestion time as formatted timestamp 
+	 * @param identifier
+	 * @param origin
 	 * @param timestamp
+	 * @param eventTime
 	 * @param event
+	 * @param customAttributes
+	 * @return
 	 */
-	public StreamEventMessage(final String identifier, final String origin, final String timestamp, final String event) {
+	@JsonCreator
+	private static StreamEventMessage fromJson(@JsonProperty("id") final String identifier, @JsonProperty("origin") final String origin,
+			@JsonProperty("timestamp") final String timestamp, @JsonProperty("eventTime") final long eventTime, @JsonProperty("event") final String event,
+			@JsonProperty("customAttributes") final Map<String, String> customAttributes) {
+		return new StreamEventMessage(identifier, origin, TimestampFormat.parse(timestamp), eventTime, event, null, customAttributes, true);
+	}
+
+	/**
+	 * Returns a message holding the given UTF-8 encoded content, eg. as received from a binary web socket frame. The
+	 * array is taken over, thus it must not be modified by the caller afterwards
+	 * @param identifier
+	 * @param origin
+	 * @param ingestionTime
+	 * @param eventBytes
+	 * @return
+	 */
+	public static StreamEventMessage fromUtf8(final String identifier, final String origin, final long ingestionTime, final byte[] eventBytes) {
+		return new StreamEventMessage(identifier, origin, ingestionTime, NO_EVENT_TIME, null, eventBytes, NO_ATTRIBUTES, false);
+	}
+
+	/**
+	 * Returns a message holding the given UTF-8 encoded content and a copy of the provided custom attributes. The 
+	 * array is taken over, thus it must not be modified by the caller afterwards
+	 * @param identifier
+	 * @param origin
+	 * @param ingestionTime
+	 * @param eventBytes
+	 * @param customAttributes
+	 * @return
+	 */
+	public static StreamEventMessage fromUtf8(final String identifier, final String origin, final long ingestionTime, final byte[] eventBytes,
+			final Map<String, String> customAttributes) {
+		return new StreamEventMessage(identifier, origin, ingestionTime, NO_EVENT_TIME, null, eventBytes, customAttributes, true);
+	}
+
+	/**
+	 * Initializes the instance using the provided input. The custom attributes are copied if requested,
+	 * otherwise the map is expected to be read-only and shared. The content is provided either as string or as bytes
+	 * @param identifier
+	 * @param origin
+	 * @param ingestionTime
+	 * @param eventTime
+	 * @param event
+	 * @param eventBytes
+	 * @param customAttributes
+	 * @param copyAttributes
+	 */
+	private StreamEventMessage(final String identifier, final String origin, final long ingestionTime, final long eventTime, final String event,
+			final byte[] eventBytes, final Map<String, String> customAttributes, final boolean copyAttributes) {
 		this.identifier = identifier;
 		this.origin = origin;
-		this.timestamp = timestamp;
+		this.ingestionTime = ingestionTime;
+		this.eventTime = eventTime;
 		this.event = event;
+		this.eventBytes = eventBytes;
+		if(customAttributes == null || customAttributes.isEmpty())
+			this.customAttributes = NO_ATTRIBUTES;
+		else if(copyAttributes)
+			this.customAttributes = Collections.unmodifiableMap(new HashMap<>(customAttributes));
+		else
+			this.customAttributes = customAttributes;
+	}
+
+	/**
+	 * Returns a message holding the given identifier
+	 * @param identifier
+	 * @return
+	 */
+	public StreamEventMessage withIdentifier(final String identifier) {
+		return new StreamEventMessage(identifier, this.origin, this.ingestionTime, this.eventTime, this.event, this.eventBytes, this.customAttributes, false).sharingEventTree(this);
+	}
+
+	/**
+	 * Returns a message holding the given origin
+	 * @param origin
+	 * @return
+	 */
+	public StreamEventMessage withOrigin(final String origin) {
+		return new StreamEventMessage(this.identifier, origin, this.ingestionTime, this.eventTime, this.event, this.eventBytes, this.customAttributes, false).sharingEventTree(this);
+	}
+
+	/**
+	 * Returns a message holding the given ingestion time
+	 * @param ingestionTime
+	 * @return
+	 */
+	public StreamEventMessage withIngestionTime(final long ingestionTime) {
+		return new StreamEventMessage(this.identifier, this.origin, ingestionTime, this.eventTime, this.event, this.eventBytes, this.customAttributes, false).sharingEventTree(this);
+	}
+
+	/**
+	 * Returns a message holding the given event time
+	 * @param eventTime
+	 * @return
+	 */
+	public StreamEventMessage withEventTime(final long eventTime) {
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, eventTime, this.event, this.eventBytes, this.customAttributes, false).sharingEventTree(this);
+	}
+
+	/**
+	 * Returns a message holding the given event content - the parsed tree of the current content is not carried over
+	 * @param event
+	 * @return
+	 */
+	public StreamEventMessage withEvent(final String event) {
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, this.eventTime, event, null, this.customAttributes, false);
 	}
 
 	/**
-	 * Adds a new custom attribute to the message
+	 * Returns a message holding the given UTF-8 encoded event content - the parsed tree of the current content is not 
+	 * carried over. The array is taken over, thus it must not be modified by the caller afterwards
+	 * @param eventBytes
+	 * @return
+	 */
+	public StreamEventMessage withEventBytes(final byte[] eventBytes) {
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, this.eventTime, null, eventBytes, this.customAttributes, false);
+	}
+
+	/**
+	 * Returns a message holding the custom attributes of this one plus the given attribute
 	 * @param key
 	 * @param value
+	 * @return
 	 */
-	public void addCustomAttribute(final String key, final String value) {
-		this.customAttributes.put(key, value);
+	public StreamEventMessage withCustomAttribute(final String key, final String value) {
+		Map<String, String> attributes = new HashMap<>(this.customAttributes);
+		attributes.put(key, value);
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, this.eventTime, this.event, this.eventBytes, Collections.unmodifiableMap(attributes), false).sharingEventTree(this);
 	}
-	
-	public String getIdentifier() {
-		return identifier;
+
+	/**
+	 * Returns a message holding the custom attributes of this one plus the given attributes
+	 * @param customAttributes
+	 * @return
+	 */
+	public StreamEventMessage withCustomAttributes(final Map<String, String> customAttributes) {
+		if(customAttributes == null || customAttributes.isEmpty())
+			return this;
+		Map<String, String> attributes = new HashMap<>(this.customAttributes);
+		attributes.putAll(customAttributes);
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, this.eventTime, this.event, this.eventBytes, Collections.unmodifiableMap(attributes), false).sharingEventTree(this);
 	}
 
-	public void setIdentifier(String identifier) {
-		this.identifier = identifier;
+	/**
+	 * Returns a message holding the custom attributes of this one without the referenced attribute
+	 * @param key
+	 * @return
+	 */
+	public StreamEventMessage withoutCustomAttribute(final String key) {
+		if(!this.customAttributes.containsKey(key))
+			return this;
+		Map<String, String> attributes = new HashMap<>(this.customAttributes);
+		attributes.remove(key);
+		return new StreamEventMessage(this.identifier, this.origin, this.ingestionTime, this.eventTime, this.event, this.eventBytes, Collections.unmodifiableMap(attributes), false).sharingEventTree(this);
+	}
+
+	/**
+	 * Returns the parsed event content. The content is parsed on first access only, all later calls return the
+	 * cached tree which must not be modified. Returns a {@link MissingNode missing node} if the content is empty 
+	 * or does not hold valid JSON
+	 * @return
+	 */
+	@JsonIgnore
+	public JsonNode getEventTree() {
+		JsonNode tree = this.eventTree;
+		if(tree == null) {
+			// concurrent first accesses may parse twice, both results are equal
+			tree = (this.eventBytes != null ? parseEvent(this.eventBytes) : parseEvent(this.event));
+			this.eventTree = tree;
+		}
+		return tree;
+	}
+
+	/**
+	 * Returns the event field found at the given dotted path, eg. "session.id", from the {@link #getEventTree() cached tree}.
+	 * Returns a {@link MissingNode missing node} if the field does not exist
+	 * @param path
+	 * @return
+	 */
+	@JsonIgnore
+	public JsonNode getEventField(final String path) {
+		JsonNode node = getEventTree();
+		int start = 0;
+		while(start <= path.length() && !node.isMissingNode()) {
+			int end = path.indexOf('.', start);
+			if(end < 0)
+				end = path.length();
+			node = node.path(path.substring(start, end));
+			start = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Returns true if the event content has already been parsed
+	 * @return
+	 */
+	@JsonIgnore
+	public boolean isEventTreeAvailable() {
+		return this.eventTree != null;
+	}
+
+	/**
+	 * Parses the given content into its tree representation
+	 * @param content
+	 * @return
+	 */
+	protected static JsonNode parseEvent(final String content) {
+		if(content == null || content.isEmpty())
+			return MissingNode.getInstance();
+		try {
+			JsonNode tree = MAPPER.readTree(content);
+			return (tree != null ? tree : MissingNode.getInstance());
+		} catch(IOException e) {
+			return MissingNode.getInstance();
+		}
+	}
+
+	/**
+	 * Parses the given UTF-8 encoded content into its tree representation
+	 * @param content
+	 * @return
+	 */
+	protected static JsonNode parseEvent(final byte[] content) {
+		if(content.length == 0)
+			return MissingNode.getInstance();
+		try {
+			JsonNode tree = MAPPER.readTree(content);
+			return (tree != null ? tree : MissingNode.getInstance());
+		} catch(IOException e) {
+			return MissingNode.getInstance();
+		}
+	}
+
+	/**
+	 * Takes over the parsed tree and decoded content of the given message which must hold the same event content
+	 * @param source
+	 * @return
+	 */
+	private StreamEventMessage sharingEventTree(final StreamEventMessage source) {
+		this.eventTree = source.eventTree;
+		this.decodedEvent = source.decodedEvent;
+		return this;
+	}
+
+	public String getIdentifier() {
+		return identifier;
 	}
 
 	public String getOrigin() {
 		return origin;
 	}
 
-	public void setOrigin(String origin) {
-		this.origin = origin;
+	/**
+	 * Returns the time of ingestion, given as milliseconds since epoch
+	 * @return
+	 */
+	@JsonIgnore
+	public long getIngestionTime() {
+		return ingestionTime;
 	}
 
+	/**
+	 * Returns the time of ingestion rendered as "yyyy-MM-dd'T'HH:mm:ss.SSSZ" 
+	 * @return
+	 */
+	@JsonProperty ( value = "timestamp", required = true )
 	public String getTimestamp() {
-		return timestamp;
+		return TimestampFormat.format(this.ingestionTime);
+	}
+
+	/**
+	 * Returns the time the event occurred at the source, given as milliseconds since epoch, or {@link #NO_EVENT_TIME}
+	 * @return
+	 */
+	public long getEventTime() {
+		return eventTime;
 	}
 
-	public void setTimestamp(String timestamp) {
-		this.timestamp = timestamp;
+	/**
+	 * Returns true if the source provided the time the event occurred
+	 * @return
+	 */
+	@JsonIgnore
+	public boolean hasEventTime() {
+		return this.eventTime != NO_EVENT_TIME;
 	}
 
+	/**
+	 * Returns the event content. If the content is held as UTF-8 bytes, it is decoded on first request
+	 * @return
+	 */
+	@JsonProperty ( value = "event", required = true )
 	public String getEvent() {
-		return event;
+		if(this.event != null || this.eventBytes == null)
+			return this.event;
+		String decoded = this.decodedEvent;
+		if(decoded == null) {
+			decoded = new String(this.eventBytes, UTF8);
+			this.decodedEvent = decoded;
+		}
+		return decoded;
 	}
 
-	public void setEvent(String event) {
-		this.event = event;
+	/**
+	 * Returns the UTF-8 encoded event content. If the content is held as bytes, the array itself is returned and must 
+	 * not be modified, otherwise the content gets encoded
+	 * @return
+	 */
+	@JsonIgnore
+	public byte[] getEventBytes() {
+		if(this.eventBytes != null)
+			return this.eventBytes;
+		return (this.event != null ? this.event.getBytes(UTF8) : null);
 	}
 
-	public Map<String, String> getCustomAttributes() {
-		return customAttributes;
+	/**
+	 * Returns true if the event content is held as UTF-8 bytes
+	 * @return
+	 */
+	@JsonIgnore
+	public boolean isUtf8Payload() {
+		return this.eventBytes != null;
 	}
 
-	public void setCustomAttributes(Map<String, String> customAttributes) {
-		this.customAttributes = customAttributes;
+	/**
+	 * Returns the read-only custom attributes
+	 * @return
+	 */
+	public Map<String, String> getCustomAttributes() {
+		return customAttributes;
 	}
 
 }
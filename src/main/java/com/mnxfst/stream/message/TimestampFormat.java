@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Renders and parses timestamps given as milliseconds since epoch using the format "yyyy-MM-dd'T'HH:mm:ss.SSSZ".
+ * Rendering reuses the date, time and zone part computed for the most recent second and appends the milliseconds 
+ * only, thus events ingested within the same second require no date formatting at all. All methods are thread-safe
+ * @author mnxfst
+ * @since 27.03.2014
+ *
+ */
+public final class TimestampFormat {
+
+	public static final String PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+	/** date formats are not thread-safe, thus each thread receives its own */
+	private static final ThreadLocal<SimpleDateFormat> SECOND_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.");
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> ZONE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("Z");
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> PARSE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(PATTERN);
+		}
+	};
+
+	/** parts rendered for the most recent second */
+	private static volatile RenderedSecond lastSecond = new RenderedSecond(Long.MIN_VALUE, "", "");
+
+	private TimestampFormat() {
+	}
+
+	/**
+	 * Renders the given timestamp
+	 * @param timestamp milliseconds since epoch
+	 * @return
+	 */
+	public static String format(final long timestamp) {
+		
+		long millis = timestamp % 1000;
+		if(millis < 0)
+			millis = millis + 1000;
+		final long second = timestamp - millis;
+		
+		RenderedSecond rendered = lastSecond;
+		if(rendered.second != second) {
+			Date date = new Date(second);
+			rendered = new RenderedSecond(second, SECOND_FORMAT.get().format(date), ZONE_FORMAT.get().format(date));
+			lastSecond = rendered;
+		}
+		
+		StringBuilder result = new StringBuilder(rendered.dateTime.length() + 3 + rendered.zone.length());
+		result.append(rendered.dateTime);
+		if(millis < 100)
+			result.append('0');
+		if(millis < 10)
+			result.append('0');
+		result.append(millis);
+		result.append(rendered.zone);
+		return result.toString();
+	}
+
+	/**
+	 * Parses the given timestamp which is either rendered according to {@link #PATTERN} or provided as milliseconds since epoch
+	 * @param timestamp
+	 * @return milliseconds since epoch
+	 * @throws IllegalArgumentException if the timestamp is empty or cannot be parsed
+	 */
+	public static long parse(final String timestamp) {
+		if(timestamp == null || timestamp.isEmpty())
+			throw new IllegalArgumentException("Missing required timestamp");
+		
+		if(isNumeric(timestamp))
+			return Long.parseLong(timestamp);
+		try {
+			return PARSE_FORMAT.get().parse(timestamp).getTime();
+		} catch(ParseException e) {
+			throw new IllegalArgumentException("Invalid timestamp '" + timestamp + "', expected format: " + PATTERN);
+		}
+	}
+
+	/**
+	 * Returns true if the given string holds an optionally signed integer
+	 * @param value
+	 * @return
+	 */
+	private static boolean isNumeric(final String value) {
+		int start = (value.charAt(0) == '-' ? 1 : 0);
+		if(start == value.length())
+			return false;
+		for(int i = start; i < value.length(); i++) {
+			if(!Character.isDigit(value.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Second along with its rendered date/time and zone part
+	 * @author mnxfst
+	 * @since 27.03.2014
+	 */
+	private static final class RenderedSecond {
+		private final long second;
+		private final String dateTime;
+		private final String zone;
+		
+		private RenderedSecond(final long second, final String dateTime, final String zone) {
+			this.second = second;
+			this.dateTime = dateTime;
+			this.zone = zone;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import scala.concurrent.Future;
+import akka.actor.ActorRef;
+import akka.dispatch.OnComplete;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+
+/**
+ * Common parent to all pipeline elements which process events asynchronously, eg. by writing them to a remote
+ * sink. Implementations return a {@link Future future} for each event instead of blocking the actor thread. Completions
+ * are piped back to the actor as messages, thus all element state is still accessed from within the actor only. The number
+ * of events being processed concurrently is limited by {@link #CONFIG_ASYNC_MAX_IN_FLIGHT}, further events are queued
+ * until an outstanding one completes. The queue is limited by {@link #CONFIG_ASYNC_MAX_WAITING}, events beyond are dropped.
+ * Completions are tagged with the element instance which started the operation, thus completions arriving after a restart
+ * are left unhandled and never touch the counters of the new instance
+ * @author mnxfst
+ * @since 18.03.2014
+ *
+ */
+public abstract class AsyncPipelineElement extends PipelineElement {
+
+	/** configuration option holding the max. number of events processed concurrently */
+	public static final String CONFIG_ASYNC_MAX_IN_FLIGHT = "async.maxInFlight";
+
+	/** configuration option holding the max. number of events waiting for a free slot */
+	public static final String CONFIG_ASYNC_MAX_WAITING = "async.maxWaiting";
+
+	public static final int ERROR_CODE_ASYNC_PROCESSING_FAILED = 100;
+	public static final int ERROR_CODE_ASYNC_QUEUE_EXCEEDED = 101;
+
+	/** max. number of events processed concurrently */
+	private int maxInFlight = 16;
+	/** number of events currently processed */
+	private int inFlight = 0;
+	/** max. number of events waiting for a free slot */
+	private int maxWaiting = 10000;
+	/** events waiting for a free slot */
+	private final Queue<StreamEventMessage> waitingEvents = new ArrayDeque<>();
+	/** identifies this element instance - completions of operations started by a previous instance or another element executed by the same host carry another one */
+	private final Object incarnation = new Object();
+
+	/**
+	 * Processes an inbound message asynchronously and must be implemented by all async elements. The returned
+	 * future must not access any element state when being completed
+	 * @param message
+	 * @return
+	 * @throws Exception
+	 */
+	protected abstract Future<Object> processEventAsync(StreamEventMessage message) throws Exception;
+
+	/**
+	 * Initializes the pipeline element using the provided input
+	 * @param pipelineElementConfiguration
+	 */
+	public AsyncPipelineElement(final PipelineElementConfiguration pipelineElementConfiguration) {
+		super(pipelineElementConfiguration);
+	}
+
+	/**
+	 * @see akka.actor.UntypedActor#preStart()
+	 */
+	public void preStart() throws Exception {
+		super.preStart();
+		this.maxInFlight = Math.max(1, getIntProperty(CONFIG_ASYNC_MAX_IN_FLIGHT, 16));
+		this.maxWaiting = Math.max(0, getIntProperty(CONFIG_ASYNC_MAX_WAITING, 10000));
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#onReceive(java.lang.Object)
+	 */
+	public void onReceive(Object message) throws Exception {
+		if(message instanceof AsyncCompletion) {
+			AsyncCompletion completion = (AsyncCompletion)message;
+			if(completion.incarnation != this.incarnation) {
+				unhandled(message);
+				return;
+			}
+			this.inFlight--;
+			if(completion.failure != null)
+				onEventFailed(completion.message, completion.failure);
+			else
+				onEventProcessed(completion.message, completion.result);
+
+			// occupy the slot that has just become available
+			while(this.inFlight < this.maxInFlight && !this.waitingEvents.isEmpty())
+				dispatchEvent(this.waitingEvents.poll());
+		} else {
+			super.onReceive(message);
+		}
+	}
+
+	/**
+	 * Hands over the event to {@link #processEventAsync(StreamEventMessage)} if a slot is available, otherwise it is queued or 
+	 * dropped if the queue is full
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvent(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	protected void processEvent(StreamEventMessage message) throws Exception {
+		if(this.inFlight < this.maxInFlight) {
+			dispatchEvent(message);
+		} else if(this.waitingEvents.size() < this.maxWaiting) {
+			this.waitingEvents.add(message);
+		} else {
+			countDroppedMessages(1);
+			reportError(ERROR_CODE_ASYNC_QUEUE_EXCEEDED, "Queue limit exceeded, event dropped [id="+message.getIdentifier()+", inFlight="+this.inFlight+", waiting="+this.waitingEvents.size()+"]");
+		}
+	}
+
+	/**
+	 * Executed within the actor when the processing of the given event succeeded. The default implementation does nothing
+	 * @param message
+	 * @param result
+	 */
+	protected void onEventProcessed(final StreamEventMessage message, final Object result) {
+	}
+
+	/**
+	 * Executed within the actor when the processing of the given event failed. The default implementation reports the error
+	 * @param message
+	 * @param failure
+	 */
+	protected void onEventFailed(final StreamEventMessage message, final Throwable failure) {
+		reportError(ERROR_CODE_ASYNC_PROCESSING_FAILED, "Failed to process event [id="+(message != null ? message.getIdentifier() : null)+", error="+failure.getMessage()+"]");
+	}
+
+	/**
+	 * Starts the async processing of the given event and pipes its completion back to the actor
+	 * @param message
+	 */
+	protected void dispatchEvent(final StreamEventMessage message) {
+
+		Future<Object> future = null;
+		try {
+			future = processEventAsync(message);
+		} catch(Exception e) {
+			onEventFailed(message, e);
+			return;
+		}
+
+		if(future == null) {
+			onEventProcessed(message, null);
+			return;
+		}
+
+		this.inFlight++;
+		final ActorRef self = getSelf();
+		final Object incarnation = this.incarnation;
+		future.onComplete(new OnComplete<Object>() {
+			public void onComplete(Throwable failure, Object result) throws Throwable {
+				self.tell(new AsyncCompletion(incarnation, message, result, failure), ActorRef.noSender());
+			}
+		}, context().dispatcher());
+	}
+
+	/**
+	 * Returns the number of events currently processed
+	 * @return
+	 */
+	protected int getInFlight() {
+		return this.inFlight;
+	}
+
+	/**
+	 * Events are completed as soon as their async operation finishes, thus in-flight and waiting events are pending
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#getPendingEvents()
+	 */
+	protected int getPendingEvents() {
+		return this.inFlight + this.waitingEvents.size();
+	}
+
+	/**
+	 * Returns the number of events waiting for a free slot
+	 * @return
+	 */
+	protected int getWaitingEvents() {
+		return this.waitingEvents.size();
+	}
+
+	/**
+	 * Hands over the outcome of an async operation to the actor
+	 */
+	private static final class AsyncCompletion {
+		private final Object incarnation;
+		private final StreamEventMessage message;
+		private final Object result;
+		private final Throwable failure;
+
+		private AsyncCompletion(final Object incarnation, final StreamEventMessage message, final Object result, final Throwable failure) {
+			this.incarnation = incarnation;
+			this.message = message;
+			this.result = result;
+			this.failure = failure;
+		}
+	}
+}
@@ -15,31 +15,104 @@
  */
 package com.mnxfst.stream.pipeline;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 
+import scala.Option;
+import scala.concurrent.duration.Duration;
 import akka.actor.ActorRef;
 import akka.actor.UntypedActor;
 
+import com.mnxfst.stream.message.StreamEventBatch;
 import com.mnxfst.stream.message.StreamEventMessage;
 import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
 import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUnknownMessage;
 import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementRetentionStatsMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementRetentionStatsRequestMessage;
 
 /**
- * Common parent to all pipeline element
+ * Common parent to all pipeline element. Each element runs as an actor of its own unless it is part of a fused segment: 
+ * such elements are instantiated within the context of a {@link PipelineElementHost host actor} which hands over all inbound 
+ * messages, thus they share its reference, sender and mailbox. Messages forwarded towards an element executed by the same 
+ * host are processed right away by calling it, messages towards an element executed by another host are sent to that host 
+ * which passes them on.<br/><br/>
+ * Messages forwarded towards destinations which have not been resolved yet
+ * are kept by a {@link RetainedMessageBuffer retention buffer} per destination and are delivered in order as soon as
+ * a {@link PipelineElementReferenceUpdateMessage reference update} provides the destination. The reference is requested
+ * once per destination. If the parent does not know the destination or the retained messages cannot be read, the lookup 
+ * or delivery is retried with an increasing {@link #CONFIG_RETENTION_RETRY_DELAY delay}. Messages towards a destination are 
+ * retained as long as earlier ones have not been delivered, thus the order is kept. The retained messages are dropped after
+ * the {@link #CONFIG_RETENTION_RETRY_MAX max. number of retries}. Retained messages are written to disk when the element restarts, thus the new instance delivers them.
+ * Beyond that they survive a stop only if {@link #CONFIG_RETENTION_PERSISTENT persistence} is enabled, otherwise they are 
+ * dropped along with their segment files. The retention state is reported on {@link PipelineElementRetentionStatsRequestMessage request}.<br/><br/>
+ * Each element counts the events it receives and forwards per destination. The counters are reported towards the
+ * {@link PipelineRoot pipeline root} on {@link PipelineElementFlowRequestMessage request} which derives the number of events
+ * queued within the pipeline from them 
  * @author mnxfst
  * @since 03.03.2014
- * TODO implement retention policy
  */
 public abstract class PipelineElement extends UntypedActor {
 
+	/** configuration option holding the number of messages retained in memory per destination */
+	public static final String CONFIG_RETENTION_MEMORY_CAPACITY = "retention.memory.capacity";
+	/** configuration option holding the directory receiving retained messages which do not fit into memory */
+	public static final String CONFIG_RETENTION_SPILL_DIRECTORY = "retention.spill.directory";
+	/** configuration option holding the max. number of bytes spilled to disk per destination */
+	public static final String CONFIG_RETENTION_SPILL_MAX_BYTES = "retention.spill.maxBytes";
+	/** configuration option enabling retained messages to be kept on disk when the element stops and recovered when it starts */
+	public static final String CONFIG_RETENTION_PERSISTENT = "retention.persistent";
+	/** configuration option holding the delay (in milliseconds) before the first retry of a failed lookup or delivery - doubled with each further retry */
+	public static final String CONFIG_RETENTION_RETRY_DELAY = "retention.retry.delayMs";
+	/** configuration option holding the max. number of retries before the messages retained for a destination are dropped */
+	public static final String CONFIG_RETENTION_RETRY_MAX = "retention.retry.max";
+	
+	public static final int ERROR_CODE_RETENTION_FAILED = 200;
+	
+	/** file name suffix of retention segment files */
+	private static final String RETENTION_SEGMENT_SUFFIX = ".retained";
+	
 	/** configuration provided to the pipeline element */
 	private final PipelineElementConfiguration pipelineElementConfiguration;
 	/** destinations accessible by this element */
 	private final Map<String, ActorRef> messageDestinations = new HashMap<>();
+	/** messages retained per destination which has not been resolved yet */
+	private final Map<String, RetainedMessageBuffer> retainedMessages = new LinkedHashMap<>();
+	/** destinations whose reference has been requested but not received yet */
+	private final Set<String> pendingLookups = new HashSet<>();
+	/** number of retries per destination whose lookup or delivery failed */
+	private final Map<String, Integer> retentionRetries = new HashMap<>();
+	/** number of messages dropped since they could neither be delivered nor retained */
+	private long droppedMessages = 0;
+	/** number of events taken from the mailbox */
+	private long receivedEvents = 0;
+	/** number of events forwarded per destination element */
+	private final Map<String, long[]> forwardedEvents = new HashMap<>();
+	/** elements executed by the same host - messages forwarded towards them are handed over by calling them */
+	private final Map<String, PipelineElement> fusedDestinations = new HashMap<>();
+	/** destinations executed by another host - messages forwarded towards them are sent to the host along with the element identifier */
+	private final Set<String> hostedDestinations = new HashSet<>();
+	/** set if the element is executed by a host */
+	private boolean hosted = false;
+	/** set if the message most recently handed over by the host has not been handled */
+	private boolean messageUnhandled = false;
+	/** set if the element is stopped for or started after a restart of its actor */
+	private boolean restart = false;
 
 	/**
 	 * Processes an inbound message and must be implemented by all elements
@@ -48,6 +121,17 @@ public abstract class PipelineElement extends UntypedActor {
 	 */
 	protected abstract void processEvent(StreamEventMessage message) throws Exception;
 	
+	/**
+	 * Processes an inbound {@link StreamEventBatch batch} of messages. The default implementation hands over each message 
+	 * to {@link #processEvent(StreamEventMessage)}, elements able to handle a set of messages at once should override it
+	 * @param messages
+	 * @throws Exception
+	 */
+	protected void processEvents(List<StreamEventMessage> messages) throws Exception {
+		for(final StreamEventMessage message : messages)
+			processEvent(message);
+	}
+	
 	/**
 	 * Initializes the pipeline element using the provided input
 	 * @param pipelineElementConfiguration
@@ -56,16 +140,94 @@ public abstract class PipelineElement extends UntypedActor {
 		this.pipelineElementConfiguration = pipelineElementConfiguration;
 	}
 
+	/**
+	 * Recovers messages retained by a previous instance, eg. before a restart
+	 * @see akka.actor.UntypedActor#preStart()
+	 */
+	public void preStart() throws Exception {
+		if(!this.restart && !getBooleanProperty(CONFIG_RETENTION_PERSISTENT, false))
+			return;
+		
+		File[] segmentFiles = getRetentionDirectory().listFiles();
+		if(segmentFiles != null) {
+			final String prefix = getRetentionSegmentPrefix();
+			for(final File segmentFile : segmentFiles) {
+				String name = segmentFile.getName();
+				if(name.startsWith(prefix) && name.endsWith(RETENTION_SEGMENT_SUFFIX)) {
+					String elementId = URLDecoder.decode(name.substring(prefix.length(), name.length() - RETENTION_SEGMENT_SUFFIX.length()), "UTF-8");
+					RetainedMessageBuffer buffer = getRetentionBuffer(elementId);
+					if(buffer != null && !buffer.isEmpty())
+						context().system().log().info("Recovered retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+elementId+", messages="+buffer.size()+"]");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all retained messages to disk if the actor restarts or persistence is enabled, thus they survive. Otherwise 
+	 * they are dropped and their segment files are removed
+	 * @see akka.actor.UntypedActor#postStop()
+	 */
+	public void postStop() throws Exception {
+		final boolean persist = this.restart || getBooleanProperty(CONFIG_RETENTION_PERSISTENT, false);
+		for(final Map.Entry<String, RetainedMessageBuffer> entry : this.retainedMessages.entrySet()) {
+			final RetainedMessageBuffer buffer = entry.getValue();
+			try {
+				if(persist) {
+					buffer.persist();
+				} else {
+					if(!buffer.isEmpty())
+						context().system().log().error("Dropped retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+entry.getKey()+", messages="+buffer.size()+"]");
+					buffer.discard();
+				}
+			} catch(IOException e) {
+				context().system().log().error("Failed to "+(persist ? "persist" : "discard")+" retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+entry.getKey()+", error="+e.getMessage()+"]");
+			}
+		}
+		this.retainedMessages.clear();
+	}
+	
+	/**
+	 * Marks the element as being stopped for a restart, thus it keeps its retained messages
+	 * @see akka.actor.UntypedActor#preRestart(java.lang.Throwable, scala.Option)
+	 */
+	public void preRestart(Throwable reason, Option<Object> message) throws Exception {
+		this.restart = true;
+		super.preRestart(reason, message);
+	}
+	
+	/**
+	 * Marks the element as being started after a restart, thus it recovers the messages retained before
+	 * @see akka.actor.UntypedActor#postRestart(java.lang.Throwable)
+	 */
+	public void postRestart(Throwable reason) throws Exception {
+		this.restart = true;
+		super.postRestart(reason);
+	}
+
 	/**
 	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
 	 */
 	public void onReceive(Object message) throws Exception {
 		
 		if(message instanceof StreamEventMessage) {
+			this.receivedEvents++;
 			processEvent((StreamEventMessage)message);
+		} else if(message instanceof StreamEventBatch) {
+			StreamEventBatch batch = (StreamEventBatch)message;
+			this.receivedEvents += batch.size();
+			if(batch.size() > 0)
+				processEvents(batch.getEvents());
 		} else if(message instanceof PipelineElementReferenceUpdateMessage) {
 			registerMessageDestinations((PipelineElementReferenceUpdateMessage)message);
 			processRetainedMessages();
+		} else if(message instanceof PipelineElementFlowRequestMessage) {
+			getSender().tell(createFlowReport(), getSelf());
+		} else if(message instanceof PipelineElementRetentionStatsRequestMessage) {
+			getSender().tell(new PipelineElementRetentionStatsMessage(pipelineElementConfiguration.getPipelineId(), 
+					pipelineElementConfiguration.getElementId(), getRetentionDepth(), getRetentionBytes(), getDroppedMessages()), getSelf());
+		} else if(message instanceof RetentionRetry && ((RetentionRetry)message).owner == this) {
+			retryRetainedMessages(((RetentionRetry)message).elementId);
 		} else {
 			unhandled(message);
 		}
@@ -84,26 +246,106 @@ public abstract class PipelineElement extends UntypedActor {
 	}
 	
 	/**
-	 * Forwards the provided message towards the referenced {@link PipelineElement element}. If the pipeline element
-	 * does not exist, a request for an reference update will be issued and the message is retained if requested
+	 * Forwards the provided message towards the referenced {@link PipelineElement element}. Elements executed by the same host 
+	 * process the message right away. If the pipeline element does not exist, a request for an reference update will be issued and the message is 
+	 * retained if requested
 	 * @param message
 	 * @param elementId
 	 * @param retainOnError
 	 */
 	protected void forwardMessage(final StreamEventMessage message, final String elementId, boolean retainOnError) {
 
-		if(message != null && StringUtils.isNotBlank(elementId) && this.messageDestinations.containsKey(elementId)) {			
+		if(message == null || StringUtils.isBlank(elementId))
+			return;
+		
+		final PipelineElement fusedElement = this.fusedDestinations.get(elementId);
+		if(fusedElement != null) {
+			countForwardedEvents(elementId, 1);
+			fusedElement.receiveFused(message);
+		} else if(this.messageDestinations.containsKey(elementId) && hasRetainedMessages(elementId)) {
+			// messages retained before have not been delivered yet - keep the order
+			retainMessage(message, elementId);
+		} else if(this.messageDestinations.containsKey(elementId)) {			
 			final ActorRef destinationRef = this.messageDestinations.get(elementId);
-			if(destinationRef != null)
-				destinationRef.tell(message, getSelf());
+			if(destinationRef != null) {
+				sendToDestination(destinationRef, elementId, message);
+				countForwardedEvents(elementId, 1);
+			}
 //			else
 				// destination has been queried before and is unknown .. what to do?
 		} else {
-			context().parent().tell(new PipelineElementReferenceUnknownMessage(pipelineElementConfiguration.getPipelineId(), pipelineElementConfiguration.getElementId(), elementId), getSelf());
-			// TODO retain message
+			requestReference(elementId);
+			if(retainOnError)
+				retainMessage(message, elementId);
+			else
+				this.droppedMessages++;
 		}		
 	}	
 	
+	/**
+	 * Forwards the provided messages towards the referenced {@link PipelineElement element}. More than one message is 
+	 * forwarded as {@link StreamEventBatch batch}, otherwise it behaves like {@link #forwardMessage(StreamEventMessage, String, boolean)}
+	 * @param messages
+	 * @param elementId
+	 * @param retainOnError
+	 */
+	protected void forwardMessages(final List<StreamEventMessage> messages, final String elementId, boolean retainOnError) {
+		
+		if(messages == null || messages.isEmpty())
+			return;
+		if(messages.size() == 1) {
+			forwardMessage(messages.get(0), elementId, retainOnError);
+			return;
+		}
+		
+		final PipelineElement fusedElement = (elementId != null ? this.fusedDestinations.get(elementId) : null);
+		if(fusedElement != null) {
+			countForwardedEvents(elementId, messages.size());
+			fusedElement.receiveFused(new StreamEventBatch(messages));
+		} else if(StringUtils.isNotBlank(elementId) && this.messageDestinations.containsKey(elementId) && hasRetainedMessages(elementId)) {
+			// messages retained before have not been delivered yet - keep the order
+			for(final StreamEventMessage message : messages)
+				retainMessage(message, elementId);
+		} else if(StringUtils.isNotBlank(elementId) && this.messageDestinations.containsKey(elementId)) {
+			final ActorRef destinationRef = this.messageDestinations.get(elementId);
+			if(destinationRef != null) {
+				sendToDestination(destinationRef, elementId, new StreamEventBatch(messages));
+				countForwardedEvents(elementId, messages.size());
+			}
+		} else {
+			requestReference(elementId);
+			for(final StreamEventMessage message : messages) {
+				if(retainOnError)
+					retainMessage(message, elementId);
+				else
+					this.droppedMessages++;
+			}
+		}
+	}
+	
+	/**
+	 * Sends the message towards the destination. Destinations executed by another host receive it along with their identifier, 
+	 * thus the host is able to pass it on
+	 * @param destinationRef
+	 * @param elementId
+	 * @param message
+	 */
+	private void sendToDestination(final ActorRef destinationRef, final String elementId, final Object message) {
+		if(this.hostedDestinations.contains(elementId))
+			destinationRef.tell(new PipelineElementHost.FusedElementMessage(elementId, message), getSelf());
+		else
+			destinationRef.tell(message, getSelf());
+	}
+	
+	/**
+	 * Asks the parent for the reference of the given destination unless it has been asked before and did not answer yet
+	 * @param elementId
+	 */
+	protected void requestReference(final String elementId) {
+		if(this.pendingLookups.add(elementId))
+			context().parent().tell(new PipelineElementReferenceUnknownMessage(pipelineElementConfiguration.getPipelineId(), pipelineElementConfiguration.getElementId(), elementId), getSelf());
+	}
+	
 	/**
 	 * Register possible message destinations
 	 * @param msg
@@ -118,7 +360,16 @@ public abstract class PipelineElement extends UntypedActor {
 					ActorRef elementRef = msg.getElementReferences().get(elementId);
 					if(elementRef != null) {
 						this.messageDestinations.put(elementId, elementRef);
+						if(msg.getHostedElementIds().contains(elementId))
+							this.hostedDestinations.add(elementId);
+						else
+							this.hostedDestinations.remove(elementId);
+						this.pendingLookups.remove(elementId);
+						this.retentionRetries.remove(elementId);
 						context().system().log().info("Element '"+elementId+"' registered as destination for '"+pipelineElementConfiguration.getPipelineId()+"#"+pipelineElementConfiguration.getElementId()+"'");
+					} else if(this.pendingLookups.contains(elementId)) {
+						// the parent does not know the destination (yet) - the lookup stays pending until it is retried
+						scheduleRetentionRetry(elementId);
 					}
 				}
 			}
@@ -126,12 +377,308 @@ public abstract class PipelineElement extends UntypedActor {
 	}
 	
 	/**
-	 * Attempts to send retained messages
+	 * Attempts to send retained messages. All messages retained for a resolved destination are delivered in order
 	 */
 	protected void processRetainedMessages() {
 		
-		// TODO implement
+		for(Iterator<Map.Entry<String, RetainedMessageBuffer>> iter = this.retainedMessages.entrySet().iterator(); iter.hasNext();) {
+			final Map.Entry<String, RetainedMessageBuffer> entry = iter.next();
+			final ActorRef destinationRef = this.messageDestinations.get(entry.getKey());
+			if(destinationRef == null)
+				continue;
+			
+			final RetainedMessageBuffer buffer = entry.getValue();
+			int count = 0;
+			try {
+				StreamEventMessage message = null;
+				while((message = buffer.poll()) != null) {
+					sendToDestination(destinationRef, entry.getKey(), message);
+					count++;
+				}
+				countForwardedEvents(entry.getKey(), count);
+				buffer.close();
+				iter.remove();
+				this.retentionRetries.remove(entry.getKey());
+				context().system().log().info("Delivered retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+entry.getKey()+", messages="+count+"]");
+			} catch(IOException e) {
+				countForwardedEvents(entry.getKey(), count);
+				reportError(ERROR_CODE_RETENTION_FAILED, "Failed to read retained messages [destination="+entry.getKey()+", delivered="+count+", error="+e.getMessage()+"]");
+				scheduleRetentionRetry(entry.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if messages are retained for the referenced destination
+	 * @param elementId
+	 * @return
+	 */
+	protected boolean hasRetainedMessages(final String elementId) {
+		final RetainedMessageBuffer buffer = this.retainedMessages.get(elementId);
+		return buffer != null && !buffer.isEmpty();
+	}
+	
+	/**
+	 * Schedules another attempt to look up the referenced destination or to deliver the messages retained for it. The delay 
+	 * doubles with each retry. The retained messages are dropped once the max. number of retries is exceeded
+	 * @param elementId
+	 */
+	protected void scheduleRetentionRetry(final String elementId) {
+		
+		final Integer retries = this.retentionRetries.get(elementId);
+		final int retry = (retries != null ? retries.intValue() + 1 : 1);
+		if(retry > getIntProperty(CONFIG_RETENTION_RETRY_MAX, 5)) {
+			this.retentionRetries.remove(elementId);
+			this.pendingLookups.remove(elementId);
+			dropRetainedMessages(elementId);
+			return;
+		}
+		this.retentionRetries.put(elementId, retry);
+		
+		final long delay = getLongProperty(CONFIG_RETENTION_RETRY_DELAY, 100) << Math.min(retry - 1, 16);
+		context().system().scheduler().scheduleOnce(Duration.create(delay, TimeUnit.MILLISECONDS), getSelf(), 
+				new RetentionRetry(this, elementId), context().dispatcher(), getSelf());
+	}
+	
+	/**
+	 * Retries to deliver the messages retained for the referenced destination if it has been resolved, otherwise its 
+	 * reference is requested again
+	 * @param elementId
+	 */
+	protected void retryRetainedMessages(final String elementId) {
+		if(this.messageDestinations.containsKey(elementId)) {
+			processRetainedMessages();
+		} else {
+			this.pendingLookups.remove(elementId);
+			if(hasRetainedMessages(elementId))
+				requestReference(elementId);
+			else
+				this.retentionRetries.remove(elementId);
+		}
+	}
+	
+	/**
+	 * Drops all messages retained for the referenced destination and removes their segment file
+	 * @param elementId
+	 */
+	protected void dropRetainedMessages(final String elementId) {
+		final RetainedMessageBuffer buffer = this.retainedMessages.remove(elementId);
+		if(buffer == null)
+			return;
+		
+		this.droppedMessages += buffer.size();
+		context().system().log().error("Dropped retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+elementId+", messages="+buffer.size()+"]");
+		try {
+			buffer.discard();
+		} catch(IOException e) {
+			context().system().log().error("Failed to discard retained messages [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", destination="+elementId+", error="+e.getMessage()+"]");
+		}
+	}
+	
+	/**
+	 * Adds the given number of events to the counter of the referenced destination
+	 * @param elementId
+	 * @param events
+	 */
+	protected void countForwardedEvents(final String elementId, final int events) {
+		long[] counter = this.forwardedEvents.get(elementId);
+		if(counter == null) {
+			counter = new long[1];
+			this.forwardedEvents.put(elementId, counter);
+		}
+		counter[0] += events;
+	}
+	
+	/**
+	 * Returns a {@link PipelineElementFlowReportMessage report} holding the current event counters
+	 * @return
+	 */
+	protected PipelineElementFlowReportMessage createFlowReport() {
+		PipelineElementFlowReportMessage report = new PipelineElementFlowReportMessage(pipelineElementConfiguration.getPipelineId(), 
+				pipelineElementConfiguration.getElementId(), this.receivedEvents, getPendingEvents() + getRetentionDepth());
+		for(final Map.Entry<String, long[]> entry : this.forwardedEvents.entrySet())
+			report.getForwardedEvents().put(entry.getKey(), entry.getValue()[0]);
+		return report;
+	}
+	
+	/**
+	 * Returns the number of events received but not completed yet. The default implementation returns 0 as events
+	 * are completed when {@link #processEvent(StreamEventMessage)} returns, elements holding events beyond that override it
+	 * @return
+	 */
+	protected int getPendingEvents() {
+		return 0;
+	}
+	
+	/**
+	 * Retains the given message until the referenced destination has been resolved
+	 * @param message
+	 * @param elementId
+	 */
+	protected void retainMessage(final StreamEventMessage message, final String elementId) {
+		
+		final RetainedMessageBuffer buffer = getRetentionBuffer(elementId);
+		if(buffer == null) {
+			this.droppedMessages++;
+			return;
+		}
 		
+		try {
+			if(!buffer.retain(message)) {
+				this.droppedMessages++;
+				reportError(ERROR_CODE_RETENTION_FAILED, "Retention limit exceeded, message dropped [destination="+elementId+", id="+message.getIdentifier()+"]");
+			}
+		} catch(IOException e) {
+			this.droppedMessages++;
+			reportError(ERROR_CODE_RETENTION_FAILED, "Failed to retain message [destination="+elementId+", id="+message.getIdentifier()+", error="+e.getMessage()+"]");
+		}
+	}
+	
+	/**
+	 * Returns the retention buffer for the referenced destination - creates it if missing. Returns null if the buffer could not be created
+	 * @param elementId
+	 * @return
+	 */
+	protected RetainedMessageBuffer getRetentionBuffer(final String elementId) {
+		
+		RetainedMessageBuffer buffer = this.retainedMessages.get(elementId);
+		if(buffer == null) {
+			try {
+				File segmentFile = new File(getRetentionDirectory(), getRetentionSegmentPrefix() + URLEncoder.encode(elementId, "UTF-8") + RETENTION_SEGMENT_SUFFIX);
+				buffer = new RetainedMessageBuffer(getIntProperty(CONFIG_RETENTION_MEMORY_CAPACITY, 1024), segmentFile, getLongProperty(CONFIG_RETENTION_SPILL_MAX_BYTES, 64 * 1024 * 1024));
+				this.retainedMessages.put(elementId, buffer);
+			} catch(IOException e) {
+				reportError(ERROR_CODE_RETENTION_FAILED, "Failed to initialize retention buffer [destination="+elementId+", error="+e.getMessage()+"]");
+				return null;
+			}
+		}
+		return buffer;
+	}
+	
+	/**
+	 * Returns the directory holding the retention segment files
+	 * @return
+	 */
+	protected File getRetentionDirectory() {
+		String directory = getStringProperty(CONFIG_RETENTION_SPILL_DIRECTORY);
+		if(StringUtils.isBlank(directory))
+			directory = new File(System.getProperty("java.io.tmpdir"), "stream-analyzer").getAbsolutePath();
+		return new File(directory, pipelineElementConfiguration.getPipelineId());
+	}
+	
+	/**
+	 * Returns the file name prefix of all retention segment files written by this element instance. The name of the actor
+	 * is used as it remains stable across restarts and differs between instances of the same element, the element identifier
+	 * tells apart elements executed by the same host
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	protected String getRetentionSegmentPrefix() throws UnsupportedEncodingException {
+		return URLEncoder.encode(getSelf().path().name(), "UTF-8") + "_" + URLEncoder.encode(pipelineElementConfiguration.getElementId(), "UTF-8") + "_";
+	}
+	
+	//////////////////////// HOST ACCESS ////////////////////////
+	
+	/**
+	 * Marks the element as being executed by a {@link PipelineElementHost host}. Must be invoked before the element is started
+	 */
+	void attach() {
+		this.hosted = true;
+	}
+	
+	/**
+	 * Fuses the given element with this one: messages forwarded towards it are processed right away by calling it.
+	 * Both elements must be executed by the same host
+	 * @param element
+	 */
+	void fuse(final PipelineElement element) {
+		if(element != null && element != this)
+			this.fusedDestinations.put(element.getPipelineElementConfiguration().getElementId(), element);
+	}
+	
+	/**
+	 * Marks the element as being stopped for or started after a restart of its host
+	 */
+	void markRestart() {
+		this.restart = true;
+	}
+	
+	/**
+	 * Hands over the message to {@link #onReceive(Object)} and returns true if the element handled it 
+	 * @param message
+	 * @return
+	 * @throws Exception
+	 */
+	boolean handleMessage(final Object message) throws Exception {
+		this.messageUnhandled = false;
+		onReceive(message);
+		return !this.messageUnhandled;
+	}
+	
+	/**
+	 * Hands over a message forwarded by a fused element. Failures are passed on to the host which restarts all elements it executes
+	 * @param message
+	 */
+	void receiveFused(final Object message) {
+		try {
+			handleMessage(message);
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new RuntimeException("Fused element failed [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", error="+e.getMessage()+"]", e);
+		}
+	}
+	
+	/**
+	 * Marks the message as unhandled if the element is executed by a host, thus the host offers it to the other elements
+	 * it executes. Otherwise the message is treated as unhandled by the actor
+	 * @see akka.actor.UntypedActor#unhandled(java.lang.Object)
+	 */
+	public void unhandled(Object message) {
+		if(this.hosted)
+			this.messageUnhandled = true;
+		else
+			super.unhandled(message);
+	}
+	
+	//////////////////////// RETENTION METRICS ////////////////////////
+	
+	/**
+	 * Returns the number of retained messages over all destinations
+	 * @return
+	 */
+	protected int getRetentionDepth() {
+		int depth = 0;
+		for(final RetainedMessageBuffer buffer : this.retainedMessages.values())
+			depth = depth + buffer.size();
+		return depth;
+	}
+	
+	/**
+	 * Returns the number of bytes spilled to disk over all destinations
+	 * @return
+	 */
+	protected long getRetentionBytes() {
+		long bytes = 0;
+		for(final RetainedMessageBuffer buffer : this.retainedMessages.values())
+			bytes = bytes + buffer.getSegmentBytes();
+		return bytes;
+	}
+	
+	/**
+	 * Counts the given number of messages dropped by the element, eg. since it ran out of queue capacity
+	 * @param messages
+	 */
+	protected void countDroppedMessages(final int messages) {
+		this.droppedMessages += messages;
+	}
+	
+	/**
+	 * Returns the number of messages dropped since they could neither be delivered nor retained or were dropped by the element itself
+	 * @return
+	 */
+	protected long getDroppedMessages() {
+		return this.droppedMessages;
 	}
 	
 	//////////////////////// CONFIGURATION ACCESS ////////////////////////
@@ -187,4 +734,38 @@ public abstract class PipelineElement extends UntypedActor {
 		}
 		return defaultValue;			
 	}
+	
+	/**
+	 * Parses the content of the referenced property into its long representation
+	 * @param propertyName
+	 * @param defaultValue
+	 * @return
+	 */
+	protected long getLongProperty(final String propertyName, final long defaultValue) {
+		String value = pipelineElementConfiguration.getSettings().get(propertyName);
+		if(StringUtils.isNotBlank(value)) {
+			try {
+				return Long.parseLong(value);
+			} catch(Exception e) {
+				context().system().log().error("Failed to parse setting to long. [pipeline="+pipelineElementConfiguration.getPipelineId()+", element="+pipelineElementConfiguration.getElementId()+", setting="+propertyName+"]");
+			}
+		}
+		return defaultValue;			
+	}
+	
+	/**
+	 * Message sent to the element itself for retrying a failed lookup or delivery. Tagged with the element instance which 
+	 * scheduled it, thus retries scheduled by a previous instance or another element executed by the same host are left unhandled
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	private static final class RetentionRetry {
+		private final PipelineElement owner;
+		private final String elementId;
+		
+		private RetentionRetry(final PipelineElement owner, final String elementId) {
+			this.owner = owner;
+			this.elementId = elementId;
+		}
+	}
 }
@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import scala.Option;
+import akka.actor.ActorCell;
+import akka.actor.ActorContext;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementRetentionStatsRequestMessage;
+
+/**
+ * Actor executing a fused segment of {@link PipelineElement pipeline elements}. The host is only created for segments 
+ * holding more than one element, all other elements run as actors of their own. The elements are instantiated within 
+ * the context of the host, thus they share its reference, sender and mailbox. The first configured element is the head 
+ * which receives all events sent to the host. All further elements are fused with the head: events forwarded towards them 
+ * by any element of the host are processed right away by calling them, thus a chain of elements runs within a single actor 
+ * without passing a mailbox between them. Elements running elsewhere reach a fused element by sending a {@link FusedElementMessage}
+ * to the host.<br/><br/>
+ * Events are handed over to the head, {@link PipelineElementReferenceUpdateMessage reference updates}, {@link PipelineElementFlowRequestMessage flow requests}
+ * and {@link PipelineElementRetentionStatsRequestMessage retention stats requests} are handed over to all elements. Any other message is offered to one element after another until one handles it. A failing 
+ * element restarts the host along with all elements it executes. 
+ * @author mnxfst
+ * @since 30.03.2014
+ */
+public class PipelineElementHost extends UntypedActor {
+
+	/** elements executed by the host, head first */
+	private final List<PipelineElement> elements = new ArrayList<>();
+	
+	/**
+	 * Returns the {@link Props} of a host executing the given elements, head first
+	 * @param configurations
+	 * @return
+	 */
+	public static Props props(final List<PipelineElementConfiguration> configurations) {
+		return Props.create(PipelineElementHost.class, new ArrayList<>(configurations));
+	}
+	
+	/**
+	 * Initializes the host and instantiates the configured elements
+	 * @param configurations
+	 * @throws Exception
+	 */
+	public PipelineElementHost(final List<PipelineElementConfiguration> configurations) throws Exception {
+		
+		if(configurations == null || configurations.isEmpty())
+			throw new RuntimeException("Missing required pipeline element configurations");
+		
+		for(final PipelineElementConfiguration cfg : configurations) {
+			final Class<?> elementClass = Class.forName(cfg.getElementClass());
+			if(!PipelineElement.class.isAssignableFrom(elementClass))
+				throw new RuntimeException("Class '"+cfg.getElementClass()+"' is not a pipeline element. Pipeline: " + cfg.getPipelineId());
+			final PipelineElement element = createElement(elementClass.asSubclass(PipelineElement.class), cfg);
+			element.attach();
+			this.elements.add(element);
+		}
+		
+		// all elements forward events towards fused elements by calling them
+		for(final PipelineElement element : this.elements) {
+			for(int i = 1; i < this.elements.size(); i++)
+				element.fuse(this.elements.get(i));
+		}
+	}
+	
+	/**
+	 * Instantiates the element within the context of the host. An actor may only be instantiated while its context is 
+	 * registered with the current thread, thus the host registers its own context for the time the element is created
+	 * @param elementClass
+	 * @param cfg
+	 * @return
+	 * @throws Exception
+	 */
+	protected PipelineElement createElement(final Class<? extends PipelineElement> elementClass, final PipelineElementConfiguration cfg) throws Exception {
+		final ThreadLocal<scala.collection.immutable.List<ActorContext>> contextStack = ActorCell.contextStack();
+		final scala.collection.immutable.List<ActorContext> stack = contextStack.get();
+		contextStack.set(stack.$colon$colon((ActorContext)getContext()));
+		try {
+			return elementClass.getConstructor(PipelineElementConfiguration.class).newInstance(cfg);
+		} finally {
+			contextStack.set(stack);
+		}
+	}
+	
+	/**
+	 * @see akka.actor.UntypedActor#preStart()
+	 */
+	public void preStart() throws Exception {
+		for(final PipelineElement element : this.elements)
+			element.preStart();
+	}
+	
+	/**
+	 * Stops all elements - a failing element does not keep the remaining ones from being stopped
+	 * @see akka.actor.UntypedActor#postStop()
+	 */
+	public void postStop() throws Exception {
+		for(final PipelineElement element : this.elements) {
+			try {
+				element.postStop();
+			} catch(Exception e) {
+				context().system().log().error("Failed to stop element [pipeline="+element.getPipelineElementConfiguration().getPipelineId()+", element="+element.getPipelineElementConfiguration().getElementId()+", error="+e.getMessage()+"]");
+			}
+		}
+	}
+	
+	/**
+	 * Tells the elements that they are stopped for a restart, thus they keep their retained messages
+	 * @see akka.actor.UntypedActor#preRestart(java.lang.Throwable, scala.Option)
+	 */
+	public void preRestart(Throwable reason, Option<Object> message) throws Exception {
+		for(final PipelineElement element : this.elements)
+			element.markRestart();
+		super.preRestart(reason, message);
+	}
+	
+	/**
+	 * Tells the elements that they are started after a restart, thus they recover the messages retained before
+	 * @see akka.actor.UntypedActor#postRestart(java.lang.Throwable)
+	 */
+	public void postRestart(Throwable reason) throws Exception {
+		for(final PipelineElement element : this.elements)
+			element.markRestart();
+		super.postRestart(reason);
+	}
+	
+	/**
+	 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
+	 */
+	public void onReceive(Object message) throws Exception {
+		
+		if(message instanceof StreamEventMessage || message instanceof StreamEventBatch) {
+			this.elements.get(0).handleMessage(message);
+		} else if(message instanceof FusedElementMessage) {
+			final FusedElementMessage msg = (FusedElementMessage)message;
+			final PipelineElement element = getElement(msg.elementId);
+			if(element == null || !element.handleMessage(msg.message))
+				unhandled(msg.message);
+		} else if(message instanceof PipelineElementReferenceUpdateMessage || message instanceof PipelineElementFlowRequestMessage 
+				|| message instanceof PipelineElementRetentionStatsRequestMessage) {
+			for(final PipelineElement element : this.elements)
+				element.handleMessage(message);
+		} else {
+			for(final PipelineElement element : this.elements) {
+				if(element.handleMessage(message))
+					return;
+			}
+			unhandled(message);
+		}
+	}
+	
+	/**
+	 * Returns the referenced element or null if the host does not execute it
+	 * @param elementId
+	 * @return
+	 */
+	protected PipelineElement getElement(final String elementId) {
+		for(final PipelineElement element : this.elements) {
+			if(element.getPipelineElementConfiguration().getElementId().equals(elementId))
+				return element;
+		}
+		return null;
+	}
+	
+	/**
+	 * Message sent to a host on behalf of a fused element it executes
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	static final class FusedElementMessage {
+		private final String elementId;
+		private final Object message;
+		
+		FusedElementMessage(final String elementId, final Object message) {
+			this.elementId = elementId;
+			this.message = message;
+		}
+	}
+}
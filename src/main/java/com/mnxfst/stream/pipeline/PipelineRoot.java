@@ -15,37 +15,74 @@
  */
 package com.mnxfst.stream.pipeline;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 
 import akka.actor.ActorContext;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.actor.UntypedActor;
+import akka.routing.RoundRobinRouter;
+import akka.routing.RouterConfig;
+import akka.routing.SmallestMailboxRouter;
+import scala.concurrent.duration.Duration;
 
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.message.StreamEventBatch;
 import com.mnxfst.stream.message.StreamEventMessage;
 import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
 import com.mnxfst.stream.pipeline.config.PipelineRootConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
 import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUnknownMessage;
 import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
 import com.mnxfst.stream.pipeline.message.PipelineElementSetupFailedMessage;
+import com.mnxfst.stream.pipeline.message.PipelineLoadReportMessage;
 import com.mnxfst.stream.pipeline.message.PipelineRootInitializedMessage;
 import com.mnxfst.stream.pipeline.message.PipelineShutdownMessage;
 
 /**
- * Pipeline root node
+ * Pipeline root node. If a {@link PipelineRootConfiguration#getCreditWindow() credit window} is configured, the root limits the
+ * number of events queued within the pipeline: it periodically collects {@link PipelineElementFlowReportMessage flow reports} from
+ * all element instances, derives the number of events queued in front of each element and grants the remaining capacity as 
+ * {@link FlowCreditMessage credits} towards the dispatchers forwarding events to it
  * @author mnxfst
  * @since 03.03.2014
  *
  */
 public class PipelineRoot extends UntypedActor {
 
+	/** message sent to the root itself for triggering the load reports */
+	protected static final String LOAD_REPORT_TICK = "pipelineRoot.loadReportTick";
+	
 	private final PipelineRootConfiguration pipelineConfiguration;
+	/** element references - points to a router if the element is configured to run more than one instance */
 	private final Map<String, ActorRef> pipelineElements = new HashMap<>();
+	/** identifiers of elements executed by the host of their segment head - messages towards them are sent to the host */
+	private final Set<String> fusedElementIds = new HashSet<>();
+	/** element instances - required for notifying each instance about element references */
+	private final Map<String, List<ActorRef>> pipelineElementInstances = new HashMap<>();
 	private ActorRef initialMessageReceiverRef;
+	/** identifier of initial message receiving element */
+	private String initialMessageReceiverId;
+	/** number of events forwarded towards the initial message receiver */
+	private long forwardedEvents = 0;
+	/** most recent flow report per element instance - keyed by host and element as a host may execute fused elements */
+	private final Map<String, ElementFlow> elementFlows = new HashMap<>();
+	/** load observed per dispatcher forwarding events to the pipeline - reported periodically towards each of them */
+	private final Map<ActorRef, LoadCounter> loadCounters = new HashMap<>();
+	/** schedule triggering the load reports, null if disabled */
+	private Cancellable loadReportSchedule;
 	
 	/**
 	 * Initializes the root using the provided input
@@ -61,6 +98,9 @@ public class PipelineRoot extends UntypedActor {
 			throw new RuntimeException("Missing required pipeline identifier");
 		if(pipelineConfiguration.getElements() == null || pipelineConfiguration.getElements().isEmpty())
 			throw new RuntimeException("Missing required pipeline element configurations");
+		// credits are granted along with the load reports, thus the flow control would stall the listeners without them
+		if(pipelineConfiguration.getCreditWindow() > 0 && pipelineConfiguration.getLoadReportInterval() <= 0)
+			throw new RuntimeException("Credit window requires a positive load report interval. Pipeline: " + pipelineConfiguration.getPipelineId());
 
 		// step through element configurations and validate settings to avoid errors during start
 		for(final PipelineElementConfiguration cfg : pipelineConfiguration.getElements()) {
@@ -85,8 +125,10 @@ public class PipelineRoot extends UntypedActor {
 		String pipelineId = pipelineConfiguration.getPipelineId();
 		
 		PipelineElementReferenceUpdateMessage refUpdateMessage = new PipelineElementReferenceUpdateMessage(pipelineId);
+		final Map<String, String> fusedElements = determineFusedElements(pipelineConfiguration);
+		final Set<String> elementIds = new HashSet<>();
 		
-		// iterate through pipeline element configurations and instantiate a new node for each
+		// iterate through pipeline element configurations and instantiate each element not being fused with its upstream element
 		for(final PipelineElementConfiguration cfg : pipelineConfiguration.getElements()) {			
 
 			// extract required values into variables for faster access ... obviously, ehhh ;-)
@@ -96,7 +138,7 @@ public class PipelineRoot extends UntypedActor {
 			
 			//////////////////////////////////////////////////////////////////////////////////////
 			// ensure that the element does not exist
-			if(this.pipelineElements.containsKey(elementId)) {
+			if(!elementIds.add(elementId)) {
 				reportInitError(pipelineId, elementId, elementClassName, PipelineElementSetupFailedMessage.NON_UNIQUE_ELEMENT_ID, "Element id '"+elementId+"' already in use");
 				failed = true;
 				break;
@@ -105,19 +147,35 @@ public class PipelineRoot extends UntypedActor {
 			//////////////////////////////////////////////////////////////////////////////////////
 
 			//////////////////////////////////////////////////////////////////////////////////////
-			// initialize element 
+			// validate element class
+			try {
+				if(!PipelineElement.class.isAssignableFrom(Class.forName(elementClassName))) {
+					reportInitError(pipelineId, elementId, elementClassName, PipelineElementSetupFailedMessage.GENERAL, "Not a pipeline element");
+					failed = true;
+					break;
+				}
+			} catch(ClassNotFoundException e) {
+				reportInitError(pipelineId, elementId, elementClassName, PipelineElementSetupFailedMessage.CLASS_NOT_FOUND, "Class not found");
+				failed = true;
+				break;
+			}
+			if(fusedElements.containsKey(elementId))
+				continue;
+			//
+			//////////////////////////////////////////////////////////////////////////////////////
+
+			//////////////////////////////////////////////////////////////////////////////////////
+			// initialize element along with the elements fused with it
 			context().system().log().info("init start [pipeline="+pipelineId+", element="+elementId+", description="+description+", class="+elementClassName+"]");
 			try {
-				final ActorRef elementRef = context().actorOf(Props.create(Class.forName(elementClassName), cfg), elementId);
+				final ActorRef elementRef = initializeElement(cfg, getFusedElements(elementId, fusedElements));
 				this.pipelineElements.put(elementId, elementRef);
 				refUpdateMessage.addElementReference(elementId, elementRef);
 				
-				if(this.initialMessageReceiverRef == null && StringUtils.endsWithIgnoreCase(elementId, pipelineConfiguration.getInitialReceiverId()))
+				if(this.initialMessageReceiverRef == null && StringUtils.endsWithIgnoreCase(elementId, pipelineConfiguration.getInitialReceiverId())) {
 					this.initialMessageReceiverRef = elementRef;
-			} catch(ClassNotFoundException e) {
-				reportInitError(pipelineId, elementId, elementClassName, PipelineElementSetupFailedMessage.CLASS_NOT_FOUND, "Class not found");
-				failed = true;
-				break;
+					this.initialMessageReceiverId = elementId;
+				}
 			} catch(Exception e) {
 				reportInitError(pipelineId, elementId, elementClassName, PipelineElementSetupFailedMessage.GENERAL, e.getMessage());
 				failed = true;
@@ -126,6 +184,17 @@ public class PipelineRoot extends UntypedActor {
 			context().system().log().info("init done  [pipeline="+pipelineId+", element="+elementId+", description="+description+", class="+elementClassName+"]");
 		}		
 		
+		// fused elements are reached through the host executing them
+		if(!failed) {
+			for(final Map.Entry<String, String> entry : fusedElements.entrySet()) {
+				final ActorRef hostRef = this.pipelineElements.get(getSegmentHead(entry.getKey(), fusedElements));
+				this.pipelineElements.put(entry.getKey(), hostRef);
+				this.fusedElementIds.add(entry.getKey());
+				refUpdateMessage.addHostedElementReference(entry.getKey(), hostRef);
+				context().system().log().info("init fused [pipeline="+pipelineId+", element="+entry.getKey()+", upstream="+entry.getValue()+", host="+hostRef.path().name()+"]");
+			}
+		}
+		
 		if(this.initialMessageReceiverRef == null) {
 			reportInitError(pipelineId, pipelineConfiguration.getInitialReceiverId(), "null", PipelineElementSetupFailedMessage.INITIAL_MESSAGE_RECEIVER_NOT_FOUND, "Referenced initial message receiver not found");
 			failed = true;
@@ -137,12 +206,201 @@ public class PipelineRoot extends UntypedActor {
 			context().system().log().info("init done  [pipeline="+pipelineId+", elementCount="+this.pipelineElements.size()+"]");
 			context().parent().tell(new PipelineRootInitializedMessage(pipelineId), getSelf());
 			
-			// notify all children about each other
-			for(final ActorRef pipelineElementRef : this.pipelineElements.values()) {
-				pipelineElementRef.tell(refUpdateMessage, getSelf());
+			// notify all children about each other - instances are addressed directly as the update must reach every single one
+			for(final List<ActorRef> instanceRefs : this.pipelineElementInstances.values()) {
+				for(final ActorRef instanceRef : instanceRefs)
+					instanceRef.tell(refUpdateMessage, getSelf());
+			}
+			
+			// report the load towards the dispatchers periodically 
+			final long interval = pipelineConfiguration.getLoadReportInterval();
+			if(interval > 0) {
+				this.loadReportSchedule = context().system().scheduler().schedule(Duration.create(interval, TimeUnit.MILLISECONDS), 
+						Duration.create(interval, TimeUnit.MILLISECONDS), getSelf(), LOAD_REPORT_TICK, context().dispatcher(), null);
 			}
 		}
 	}
+	
+	/**
+	 * @see akka.actor.UntypedActor#postStop()
+	 */
+	public void postStop() throws Exception {
+		if(this.loadReportSchedule != null)
+			this.loadReportSchedule.cancel();
+		super.postStop();
+	}
+	
+	/**
+	 * Instantiates the {@link PipelineElementConfiguration#getNumOfInstances() configured number} of element instances. An element 
+	 * with fused elements is executed along with them by a {@link PipelineElementHost host}, any other element runs as actor of its own. 
+	 * If more than one instance is requested, a router of the {@link PipelineElementConfiguration#getRouterType() configured type} 
+	 * is put in front of them and its reference is returned. The instances are created as children of the pipeline root to keep 
+	 * {@link ActorContext#parent()} pointing towards it.
+	 * @param cfg
+	 * @param fusedElements configurations of elements fused with the element
+	 * @return
+	 * @throws ClassNotFoundException 
+	 */
+	protected ActorRef initializeElement(final PipelineElementConfiguration cfg, final List<PipelineElementConfiguration> fusedElements) throws ClassNotFoundException {
+
+		final List<ActorRef> instanceRefs = new ArrayList<>();
+		this.pipelineElementInstances.put(cfg.getElementId(), instanceRefs);
+		
+		Props elementProps = null;
+		if(fusedElements == null || fusedElements.isEmpty()) {
+			elementProps = Props.create(Class.forName(cfg.getElementClass()), cfg);
+		} else {
+			final List<PipelineElementConfiguration> segment = new ArrayList<>();
+			segment.add(cfg);
+			segment.addAll(fusedElements);
+			elementProps = PipelineElementHost.props(segment);
+		}
+		
+		// assign the element to its own dispatcher if requested
+		if(StringUtils.isNotBlank(cfg.getDispatcher()))
+			elementProps = elementProps.withDispatcher(cfg.getDispatcher());
+		if(StringUtils.isNotBlank(cfg.getMailbox()))
+			elementProps = elementProps.withMailbox(cfg.getMailbox());
+		
+		if(cfg.getNumOfInstances() <= 1) {
+			final ActorRef elementRef = context().actorOf(elementProps, cfg.getElementId());
+			instanceRefs.add(elementRef);
+			return elementRef;
+		}
+		
+		for(int i = 0; i < cfg.getNumOfInstances(); i++) {
+			instanceRefs.add(context().actorOf(elementProps, cfg.getElementId() + "-" + i));
+		}
+		context().system().log().info("init router [pipeline="+cfg.getPipelineId()+", element="+cfg.getElementId()+", type="+cfg.getRouterType()+", instances="+instanceRefs.size()+"]");
+		return context().actorOf(Props.empty().withRouter(createRouterConfig(cfg, instanceRefs)), cfg.getElementId());
+	}
+	
+	/**
+	 * Returns the configurations of all elements executed by the host of the referenced segment head, in configuration order
+	 * @param headId
+	 * @param fusedElements
+	 * @return
+	 */
+	protected List<PipelineElementConfiguration> getFusedElements(final String headId, final Map<String, String> fusedElements) {
+		final List<PipelineElementConfiguration> result = new ArrayList<>();
+		for(final PipelineElementConfiguration cfg : this.pipelineConfiguration.getElements()) {
+			if(fusedElements.containsKey(cfg.getElementId()) && headId.equals(getSegmentHead(cfg.getElementId(), fusedElements)))
+				result.add(cfg);
+		}
+		return result;
+	}
+	
+	/**
+	 * Follows the upstream elements of the referenced element until reaching the one which is not fused with its upstream element
+	 * @param elementId
+	 * @param fusedElements
+	 * @return
+	 */
+	protected String getSegmentHead(final String elementId, final Map<String, String> fusedElements) {
+		String headId = elementId;
+		while(fusedElements.containsKey(headId))
+			headId = fusedElements.get(headId);
+		return headId;
+	}
+	
+	/**
+	 * Determines the elements which are fused with their upstream element and returns them along with the identifier of the 
+	 * upstream element. Such elements are executed by the {@link PipelineElementHost host} of their upstream element, thus a 
+	 * message forwarded to them is processed right away as a method call instead of passing a mailbox. Segments are either taken 
+	 * from {@link PipelineRootConfiguration#getFusedSegments() configuration} or detected by following 
+	 * {@link PipelineElementConfiguration#getDefaultDestination() default destinations} if {@link PipelineRootConfiguration#isFusion() enabled}.
+	 * A segment is broken (and a mailbox boundary kept) wherever an element is blocking, runs multiple instances, has its own 
+	 * dispatcher, already has been fused with another upstream element, would close a cycle or - in case of detection - is referenced 
+	 * by more than one element.
+	 * @param cfg
+	 * @return
+	 */
+	protected Map<String, String> determineFusedElements(final PipelineRootConfiguration cfg) {
+		
+		final Map<String, String> result = new HashMap<>();
+		final Map<String, PipelineElementConfiguration> elements = new HashMap<>();
+		for(final PipelineElementConfiguration elementCfg : cfg.getElements())
+			elements.put(elementCfg.getElementId(), elementCfg);
+		
+		if(cfg.getFusedSegments() != null && !cfg.getFusedSegments().isEmpty()) {
+			for(final List<String> segment : cfg.getFusedSegments()) {
+				for(int i = 1; i < segment.size(); i++) {
+					PipelineElementConfiguration upstream = elements.get(segment.get(i-1));
+					PipelineElementConfiguration downstream = elements.get(segment.get(i));
+					if(isFusable(upstream, downstream, cfg.getInitialReceiverId()) && fuse(upstream.getElementId(), downstream.getElementId(), result))
+						continue;
+					context().system().log().info("fused segment broken [pipeline="+cfg.getPipelineId()+", upstream="+segment.get(i-1)+", downstream="+segment.get(i)+"]");
+				}
+			}
+		} else if(cfg.isFusion()) {
+			
+			// count references to detect elements having a single upstream element only
+			final Map<String, Integer> referenceCounts = new HashMap<>();
+			for(final PipelineElementConfiguration elementCfg : cfg.getElements()) {
+				if(StringUtils.isNotBlank(elementCfg.getDefaultDestination())) {
+					Integer count = referenceCounts.get(elementCfg.getDefaultDestination());
+					referenceCounts.put(elementCfg.getDefaultDestination(), (count != null ? count + 1 : 1));
+				}
+			}
+			
+			for(final PipelineElementConfiguration upstream : cfg.getElements()) {
+				if(StringUtils.isNotBlank(upstream.getDefaultDestination()) && referenceCounts.get(upstream.getDefaultDestination()) == 1) {
+					PipelineElementConfiguration downstream = elements.get(upstream.getDefaultDestination());
+					if(isFusable(upstream, downstream, cfg.getInitialReceiverId()))
+						fuse(upstream.getElementId(), downstream.getElementId(), result);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Fuses the downstream element with the upstream element unless it already has been fused or the fusion would close a cycle
+	 * @param upstreamId
+	 * @param downstreamId
+	 * @param fusedElements
+	 * @return
+	 */
+	protected boolean fuse(final String upstreamId, final String downstreamId, final Map<String, String> fusedElements) {
+		if(fusedElements.containsKey(downstreamId))
+			return StringUtils.equals(fusedElements.get(downstreamId), upstreamId);
+		if(StringUtils.equals(getSegmentHead(upstreamId, fusedElements), downstreamId))
+			return false;
+		fusedElements.put(downstreamId, upstreamId);
+		return true;
+	}
+	
+	/**
+	 * Returns true if the downstream element may be executed by the host of the upstream element
+	 * @param upstream
+	 * @param downstream
+	 * @param initialReceiverId
+	 * @return
+	 */
+	protected boolean isFusable(final PipelineElementConfiguration upstream, final PipelineElementConfiguration downstream, final String initialReceiverId) {
+		if(upstream == null || downstream == null || upstream == downstream)
+			return false;
+		if(StringUtils.equalsIgnoreCase(downstream.getElementId(), initialReceiverId))
+			return false;
+		if(upstream.isBlocking() || upstream.getNumOfInstances() > 1)
+			return false;
+		return !downstream.isBlocking() && downstream.getNumOfInstances() <= 1 && StringUtils.isBlank(downstream.getDispatcher());
+	}
+	
+	/**
+	 * Returns the router configuration for the given element instances
+	 * @param cfg
+	 * @param instanceRefs
+	 * @return
+	 */
+	protected RouterConfig createRouterConfig(final PipelineElementConfiguration cfg, final List<ActorRef> instanceRefs) {
+		
+		if(StringUtils.equalsIgnoreCase(cfg.getRouterType(), PipelineElementConfiguration.ROUTER_TYPE_SMALLEST_MAILBOX))
+			return SmallestMailboxRouter.create(instanceRefs);
+		if(StringUtils.equalsIgnoreCase(cfg.getRouterType(), PipelineElementConfiguration.ROUTER_TYPE_CONSISTENT_HASH))
+			return new StreamEventConsistentHashingRouter(instanceRefs, cfg.getRouterHashAttribute());
+		return RoundRobinRouter.create(instanceRefs);
+	}
 
 
 
@@ -152,6 +410,27 @@ public class PipelineRoot extends UntypedActor {
 	public void onReceive(Object message) throws Exception {
 		if(message instanceof StreamEventMessage) {
 			this.initialMessageReceiverRef.tell(message, getSelf());
+			this.forwardedEvents++;
+			recordLoad(getSender(), System.currentTimeMillis() - ((StreamEventMessage)message).getIngestionTime(), 1);
+		} else if(message instanceof StreamEventBatch) {
+			final StreamEventBatch batch = (StreamEventBatch)message;
+			final long now = System.currentTimeMillis();
+			long latency = 0;
+			for(final StreamEventMessage event : batch.getEvents())
+				latency += Math.max(0, now - event.getIngestionTime());
+			this.initialMessageReceiverRef.tell(message, getSelf());
+			this.forwardedEvents += batch.size();
+			recordLoad(getSender(), latency, batch.size());
+		} else if(LOAD_REPORT_TICK.equals(message)) {
+			reportLoad();
+			if(this.pipelineConfiguration.getCreditWindow() > 0) {
+				grantCredits();
+				requestFlowReports();
+			}
+		} else if(message instanceof PipelineElementFlowReportMessage) {
+			updateElementFlow(getSender(), (PipelineElementFlowReportMessage)message);
+		} else if(message instanceof Terminated) {
+			this.loadCounters.remove(((Terminated)message).getActor());
 		} else if(message instanceof PipelineShutdownMessage) {
 			shutdown((PipelineShutdownMessage)message);
 			getSender().tell(new PipelineShutdownMessage(this.pipelineConfiguration.getPipelineId()), getSelf());
@@ -163,6 +442,138 @@ public class PipelineRoot extends UntypedActor {
 
 	}
 	
+	/**
+	 * Records the given number of events received from the sender. Senders are watched on first contact to
+	 * drop their counters as soon as they terminate
+	 * @param sender
+	 * @param latencyMillis sum of milliseconds passed between ingestion and arrival of all events
+	 * @param events
+	 */
+	protected void recordLoad(final ActorRef sender, final long latencyMillis, final int events) {
+		if(sender == null || sender.equals(context().system().deadLetters()))
+			return;
+		
+		LoadCounter counter = this.loadCounters.get(sender);
+		if(counter == null) {
+			counter = new LoadCounter();
+			this.loadCounters.put(sender, counter);
+			context().watch(sender);
+		}
+		counter.receivedEvents += events;
+		counter.intervalEvents += events;
+		counter.intervalLatencyMillis += Math.max(0, latencyMillis);
+		
+		// new senders are told about the flow control right away
+		if(counter.creditLimit < 0 && this.pipelineConfiguration.getCreditWindow() > 0)
+			grantCredits();
+	}
+	
+	/**
+	 * Grants the capacity left within the {@link PipelineRootConfiguration#getCreditWindow() credit window} in equal shares towards 
+	 * all senders. Each sender may send its share beyond the events received from it so far. Limits never decrease, thus senders
+	 * which are not granted more keep their previous limit
+	 */
+	protected void grantCredits() {
+		
+		if(this.loadCounters.isEmpty())
+			return;
+		
+		final long free = Math.max(0, this.pipelineConfiguration.getCreditWindow() - computeQueuedEvents());
+		final long share = free / this.loadCounters.size();
+		final String pipelineId = this.pipelineConfiguration.getPipelineId();
+		for(final Map.Entry<ActorRef, LoadCounter> entry : this.loadCounters.entrySet()) {
+			final LoadCounter counter = entry.getValue();
+			counter.creditLimit = Math.max(counter.creditLimit, counter.receivedEvents + share);
+			entry.getKey().tell(new FlowCreditMessage(pipelineId, counter.creditLimit), getSelf());
+		}
+	}
+	
+	/**
+	 * Requests a {@link PipelineElementFlowReportMessage flow report} from each element instance
+	 */
+	protected void requestFlowReports() {
+		final PipelineElementFlowRequestMessage request = new PipelineElementFlowRequestMessage(this.pipelineConfiguration.getPipelineId());
+		for(final List<ActorRef> instanceRefs : this.pipelineElementInstances.values()) {
+			for(final ActorRef instanceRef : instanceRefs)
+				instanceRef.tell(request, getSelf());
+		}
+	}
+	
+	/**
+	 * Keeps the flow report received from an element instance. A restarted instance starts counting from scratch, thus
+	 * the counters reported before are kept as base values
+	 * @param instanceRef
+	 * @param report
+	 */
+	protected void updateElementFlow(final ActorRef instanceRef, final PipelineElementFlowReportMessage report) {
+		
+		final String key = instanceRef.path().toString() + "#" + report.getElementId();
+		ElementFlow flow = this.elementFlows.get(key);
+		if(flow == null) {
+			flow = new ElementFlow();
+			this.elementFlows.put(key, flow);
+		} else if(flow.report != null && report.getReceivedEvents() < flow.report.getReceivedEvents()) {
+			flow.receivedBase += flow.report.getReceivedEvents();
+			for(final Map.Entry<String, Long> entry : flow.report.getForwardedEvents().entrySet()) {
+				Long base = flow.forwardedBase.get(entry.getKey());
+				flow.forwardedBase.put(entry.getKey(), (base != null ? base : 0) + entry.getValue());
+			}
+		}
+		flow.report = report;
+	}
+	
+	/**
+	 * Returns the number of events queued within the pipeline according to the most recent flow reports: for each element the
+	 * events forwarded towards it minus the events it has completed. Events forwarded by the root count towards the initial 
+	 * receiver. Elements which have not reported yet count all events forwarded towards them, thus stale reports never 
+	 * under-estimate the number of queued events by more than the upstream reports lag behind
+	 * @return
+	 */
+	protected long computeQueuedEvents() {
+		
+		final Map<String, long[]> inbound = new HashMap<>();
+		inbound.put(this.initialMessageReceiverId, new long[]{this.forwardedEvents, 0});
+		
+		for(final ElementFlow flow : this.elementFlows.values()) {
+			final PipelineElementFlowReportMessage report = flow.report;
+			long[] counters = inbound.get(report.getElementId());
+			if(counters == null) {
+				counters = new long[2];
+				inbound.put(report.getElementId(), counters);
+			}
+			counters[1] += flow.receivedBase + report.getReceivedEvents() - report.getPendingEvents();
+			
+			for(final Map.Entry<String, Long> entry : report.getForwardedEvents().entrySet()) {
+				long[] destination = inbound.get(entry.getKey());
+				if(destination == null) {
+					destination = new long[2];
+					inbound.put(entry.getKey(), destination);
+				}
+				Long base = flow.forwardedBase.get(entry.getKey());
+				destination[0] += entry.getValue() + (base != null ? base : 0);
+			}
+		}
+		
+		long queued = 0;
+		for(final long[] counters : inbound.values())
+			queued += Math.max(0, counters[0] - counters[1]);
+		return queued;
+	}
+	
+	/**
+	 * Sends a {@link PipelineLoadReportMessage load report} towards each sender of events and resets the interval values
+	 */
+	protected void reportLoad() {
+		final String pipelineId = this.pipelineConfiguration.getPipelineId();
+		for(final Map.Entry<ActorRef, LoadCounter> entry : this.loadCounters.entrySet()) {
+			final LoadCounter counter = entry.getValue();
+			final long latency = (counter.intervalEvents > 0 ? counter.intervalLatencyMillis / counter.intervalEvents : 0);
+			entry.getKey().tell(new PipelineLoadReportMessage(pipelineId, counter.receivedEvents, latency), getSelf());
+			counter.intervalEvents = 0;
+			counter.intervalLatencyMillis = 0;
+		}
+	}
+	
 	/**
 	 * Shuts down the pipeline if the reference provided in the message is the same as
 	 * the one carried by the pipeline root
@@ -173,6 +584,11 @@ public class PipelineRoot extends UntypedActor {
 			for(final ActorRef elementRef : this.pipelineElements.values()) {
 				context().stop(elementRef);
 			}
+			// routers do not stop instances they did not create themselves
+			for(final List<ActorRef> instanceRefs : this.pipelineElementInstances.values()) {
+				for(final ActorRef instanceRef : instanceRefs)
+					context().stop(instanceRef);
+			}
 		}
 	}
 	
@@ -198,11 +614,44 @@ public class PipelineRoot extends UntypedActor {
 		
 		if(msg != null) {		
 			PipelineElementReferenceUpdateMessage response = new PipelineElementReferenceUpdateMessage(this.pipelineConfiguration.getPipelineId());
-			response.addElementReference(msg.getElementId(), this.pipelineElements.get(msg.getElementId()));
+			if(this.fusedElementIds.contains(msg.getUnknownElementId()))
+				response.addHostedElementReference(msg.getUnknownElementId(), this.pipelineElements.get(msg.getUnknownElementId()));
+			else
+				response.addElementReference(msg.getUnknownElementId(), this.pipelineElements.get(msg.getUnknownElementId()));
 			return response;
 		}		
 		
 		return null;
 	}
 
+	/**
+	 * Load observed for a single sender
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	protected static class LoadCounter {
+		/** events received since the pipeline started */
+		long receivedEvents = 0;
+		/** events received during the current interval */
+		long intervalEvents = 0;
+		/** summed up latency of events received during the current interval */
+		long intervalLatencyMillis = 0;
+		/** credit limit granted towards the sender, -1 if none has been granted yet */
+		long creditLimit = -1;
+	}
+	
+	/**
+	 * Event flow reported by a single element instance
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	protected static class ElementFlow {
+		/** most recent report */
+		PipelineElementFlowReportMessage report;
+		/** events received before the instance was restarted */
+		long receivedBase = 0;
+		/** events forwarded per destination before the instance was restarted */
+		final Map<String, Long> forwardedBase = new HashMap<>();
+	}
+
 }
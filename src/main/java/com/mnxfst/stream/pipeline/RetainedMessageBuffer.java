@@ -0,0 +1,296 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Retains {@link StreamEventMessage messages} which cannot be delivered to their destination yet. Messages are kept
+ * in a bounded in-memory ring buffer. If it is full, all further messages are appended to a segment file on local disk
+ * until the buffer has been drained completely, thus the order of messages is always preserved. Each record within the
+ * segment file consists of the length of the serialized message followed by its JSON representation. A segment file left
+ * over by a previous instance (eg. before a restart) is picked up on initialization.<br/><br/>
+ * Instances are not thread-safe and must be accessed from within the owning actor only
+ * @author mnxfst
+ * @since 20.03.2014
+ *
+ */
+public class RetainedMessageBuffer {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/** in-memory ring buffer */
+	private final StreamEventMessage[] ring;
+	/** position of the oldest message within the ring buffer */
+	private int ringHead = 0;
+	/** number of messages held by the ring buffer */
+	private int ringSize = 0;
+
+	/** file receiving all messages which do not fit into the ring buffer */
+	private final File segmentFile;
+	/** max. number of bytes the segment file may grow to */
+	private final long maxSegmentBytes;
+	/** number of bytes written to the segment file */
+	private long segmentBytes = 0;
+	/** number of messages contained in the segment file which have not been read yet */
+	private int segmentMessages = 0;
+	/** writer appending to the segment file - opened on demand */
+	private DataOutputStream segmentWriter = null;
+	/** reader consuming the segment file - opened on demand */
+	private DataInputStream segmentReader = null;
+
+	/**
+	 * Initializes the buffer using the provided input and recovers the messages found in an existing segment file
+	 * @param capacity
+	 * @param segmentFile
+	 * @param maxSegmentBytes
+	 * @throws IOException
+	 */
+	public RetainedMessageBuffer(final int capacity, final File segmentFile, final long maxSegmentBytes) throws IOException {
+		this.ring = new StreamEventMessage[Math.max(1, capacity)];
+		this.segmentFile = segmentFile;
+		this.maxSegmentBytes = maxSegmentBytes;
+
+		if(segmentFile.isFile() && segmentFile.length() > 0)
+			recoverSegment();
+	}
+
+	/**
+	 * Retains the given message. Returns false if the message was rejected since the segment file reached its max. size
+	 * @param message
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean retain(final StreamEventMessage message) throws IOException {
+
+		if(message == null)
+			return true;
+
+		// keep in memory as long as nothing has been spilled - otherwise the order would break
+		if(this.segmentMessages == 0 && this.ringSize < this.ring.length) {
+			this.ring[(this.ringHead + this.ringSize) % this.ring.length] = message;
+			this.ringSize++;
+			return true;
+		}
+
+		byte[] content = MAPPER.writeValueAsBytes(message);
+		if(this.segmentBytes + content.length + 4 > this.maxSegmentBytes)
+			return false;
+
+		if(this.segmentWriter == null) {
+			File parent = this.segmentFile.getParentFile();
+			if(parent != null && !parent.isDirectory() && !parent.mkdirs())
+				throw new IOException("Failed to create directory '"+parent.getAbsolutePath()+"'");
+			this.segmentWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.segmentFile, true)));
+		}
+		this.segmentWriter.writeInt(content.length);
+		this.segmentWriter.write(content);
+		this.segmentBytes = this.segmentBytes + content.length + 4;
+		this.segmentMessages++;
+		return true;
+	}
+
+	/**
+	 * Returns the oldest retained message and removes it from the buffer. Returns null if the buffer is empty
+	 * @return
+	 * @throws IOException
+	 */
+	public StreamEventMessage poll() throws IOException {
+
+		if(this.ringSize > 0) {
+			StreamEventMessage message = this.ring[this.ringHead];
+			this.ring[this.ringHead] = null;
+			this.ringHead = (this.ringHead + 1) % this.ring.length;
+			this.ringSize--;
+			return message;
+		}
+
+		if(this.segmentMessages > 0) {
+			// messages may have been appended since the reader was opened
+			if(this.segmentWriter != null)
+				this.segmentWriter.flush();
+			if(this.segmentReader == null) {
+				this.segmentReader = new DataInputStream(new BufferedInputStream(new FileInputStream(this.segmentFile)));
+			}
+
+			byte[] content = new byte[this.segmentReader.readInt()];
+			this.segmentReader.readFully(content);
+			this.segmentMessages--;
+			if(this.segmentMessages == 0)
+				deleteSegment();
+			return MAPPER.readValue(content, StreamEventMessage.class);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Writes all retained messages to the segment file and releases all resources. A buffer initialized on the same
+	 * file afterwards continues where this one stopped
+	 * @throws IOException
+	 */
+	public void persist() throws IOException {
+
+		if(this.ringSize == 0 && this.segmentMessages == 0) {
+			close();
+			return;
+		}
+
+		// write all messages to a temporary file which replaces the segment file afterwards - polling
+		// removes the messages in order and rewrites the segment file content not read yet
+		File tmpFile = new File(this.segmentFile.getAbsolutePath() + ".tmp");
+		try(DataOutputStream tmpWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile, false)))) {
+			int remaining = this.ringSize + this.segmentMessages;
+			for(int i = 0; i < remaining; i++) {
+				byte[] content = MAPPER.writeValueAsBytes(poll());
+				tmpWriter.writeInt(content.length);
+				tmpWriter.write(content);
+			}
+		}
+		close();
+		Files.move(tmpFile.toPath(), this.segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Releases all resources. Messages held in memory are lost, the segment file is kept
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if(this.segmentWriter != null) {
+			this.segmentWriter.close();
+			this.segmentWriter = null;
+		}
+		if(this.segmentReader != null) {
+			this.segmentReader.close();
+			this.segmentReader = null;
+		}
+	}
+
+	/**
+	 * Drops all retained messages and removes the segment file
+	 * @throws IOException
+	 */
+	public void discard() throws IOException {
+		for(int i = 0; i < this.ring.length; i++)
+			this.ring[i] = null;
+		this.ringHead = 0;
+		this.ringSize = 0;
+		deleteSegment();
+	}
+
+	/**
+	 * Returns the number of retained messages
+	 * @return
+	 */
+	public int size() {
+		return this.ringSize + this.segmentMessages;
+	}
+
+	/**
+	 * Returns true if no message is retained
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the number of messages held in memory
+	 * @return
+	 */
+	public int getMemorySize() {
+		return this.ringSize;
+	}
+
+	/**
+	 * Returns the number of messages spilled to disk
+	 * @return
+	 */
+	public int getSegmentSize() {
+		return this.segmentMessages;
+	}
+
+	/**
+	 * Returns the number of bytes written to the segment file
+	 * @return
+	 */
+	public long getSegmentBytes() {
+		return this.segmentBytes;
+	}
+
+	/**
+	 * Returns the segment file
+	 * @return
+	 */
+	public File getSegmentFile() {
+		return this.segmentFile;
+	}
+
+	/**
+	 * Counts the complete records found in the existing segment file. An incomplete record at the end, eg. left by a crash,
+	 * is cut off
+	 * @throws IOException
+	 */
+	protected void recoverSegment() throws IOException {
+
+		long validBytes = 0;
+		try(DataInputStream reader = new DataInputStream(new BufferedInputStream(new FileInputStream(this.segmentFile)))) {
+			while(true) {
+				int length = reader.readInt();
+				if(length < 0 || validBytes + length + 4 > this.segmentFile.length())
+					break;
+				reader.readFully(new byte[length]);
+				validBytes = validBytes + length + 4;
+				this.segmentMessages++;
+			}
+		} catch(EOFException e) {
+			// end of segment reached
+		}
+
+		if(validBytes < this.segmentFile.length()) {
+			try(FileOutputStream truncate = new FileOutputStream(this.segmentFile, true)) {
+				truncate.getChannel().truncate(validBytes);
+			}
+		}
+		this.segmentBytes = validBytes;
+		if(this.segmentMessages == 0)
+			deleteSegment();
+	}
+
+	/**
+	 * Closes all streams and removes the segment file
+	 * @throws IOException
+	 */
+	protected void deleteSegment() throws IOException {
+		close();
+		Files.deleteIfExists(this.segmentFile.toPath());
+		this.segmentBytes = 0;
+		this.segmentMessages = 0;
+	}
+}
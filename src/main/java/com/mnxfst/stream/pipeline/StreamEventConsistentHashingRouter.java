@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import scala.collection.immutable.Seq;
+import akka.actor.ActorRef;
+import akka.actor.SupervisorStrategy;
+import akka.dispatch.Dispatchers;
+import akka.japi.Util;
+import akka.routing.Broadcast;
+import akka.routing.ConsistentHash;
+import akka.routing.CustomRoute;
+import akka.routing.CustomRouterConfig;
+import akka.routing.Destination;
+import akka.routing.RouteeProvider;
+import akka.routing.Router$;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Consistent hash router for {@link StreamEventMessage event messages} using the key provided by the {@link StreamEventMessageHashMapper hash mapper}.
+ * Other than {@link akka.routing.ConsistentHashingRouter} it splits {@link StreamEventBatch batches} holding events for different routees: 
+ * each routee receives the events selected for it as batch of its own, thus all events sharing a key are handled by the same routee 
+ * in the order of the original batch. Batches selecting a single routee are forwarded as they are.<br/><br/>
+ * The route is applied on the thread of the sender, thus it works on immutable state only
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class StreamEventConsistentHashingRouter extends CustomRouterConfig {
+
+	private static final long serialVersionUID = -3484735183911380458L;
+
+	/** number of virtual nodes per routee - same default as used by {@link akka.routing.ConsistentHashingRouter} */
+	public static final int VIRTUAL_NODES_FACTOR = 10;
+	
+	/** number of routees to create, ignored if the routees are provided */
+	private final int nrOfInstances;
+	/** routees created outside the router, null if the router creates them */
+	private final List<ActorRef> routees;
+	/** provides the hash key per event */
+	private final StreamEventMessageHashMapper hashMapper;
+	
+	/**
+	 * Initializes the router which creates the given number of routees itself
+	 * @param nrOfInstances
+	 * @param hashAttribute custom attribute holding the hash key, the event identifier is used if missing
+	 */
+	public StreamEventConsistentHashingRouter(final int nrOfInstances, final String hashAttribute) {
+		this.nrOfInstances = nrOfInstances;
+		this.routees = null;
+		this.hashMapper = new StreamEventMessageHashMapper(hashAttribute);
+	}
+	
+	/**
+	 * Initializes the router using the provided routees
+	 * @param routees
+	 * @param hashAttribute custom attribute holding the hash key, the event identifier is used if missing
+	 */
+	public StreamEventConsistentHashingRouter(final List<ActorRef> routees, final String hashAttribute) {
+		this.nrOfInstances = routees.size();
+		this.routees = new ArrayList<>(routees);
+		this.hashMapper = new StreamEventMessageHashMapper(hashAttribute);
+	}
+	
+	/**
+	 * @see akka.routing.CustomRouterConfig#createCustomRoute(akka.routing.RouteeProvider)
+	 */
+	public CustomRoute createCustomRoute(final RouteeProvider routeeProvider) {
+		
+		if(this.routees != null)
+			routeeProvider.registerRoutees(this.routees);
+		else
+			routeeProvider.createRoutees(this.nrOfInstances);
+		
+		final List<ActorRef> refs = new ArrayList<>(routeeProvider.getRoutees());
+		final ConsistentHash<ActorRef> consistentHash = ConsistentHash.create(refs, VIRTUAL_NODES_FACTOR);
+		final StreamEventMessageHashMapper mapper = this.hashMapper;
+		
+		return new CustomRoute() {
+			
+			public Seq<Destination> destinationsFor(final ActorRef sender, final Object message) {
+				
+				if(refs.isEmpty())
+					return Util.immutableSeq(Collections.<Destination>emptyList());
+				
+				if(message instanceof Broadcast) {
+					final List<Destination> destinations = new ArrayList<>(refs.size());
+					for(final ActorRef ref : refs)
+						destinations.add(new Destination(sender, ref));
+					return Util.immutableSeq(destinations);
+				}
+				
+				if(message instanceof StreamEventBatch) {
+					final Map<ActorRef, List<StreamEventMessage>> routeeEvents = splitBatch((StreamEventBatch)message, consistentHash, mapper);
+					if(routeeEvents.size() == 1)
+						return Util.immutableSingletonSeq(new Destination(sender, routeeEvents.keySet().iterator().next()));
+					
+					// events are handed over right away, thus the router itself has nothing left to deliver
+					for(final Map.Entry<ActorRef, List<StreamEventMessage>> entry : routeeEvents.entrySet())
+						entry.getKey().tell(new StreamEventBatch(entry.getValue()), sender);
+					return Util.immutableSeq(Collections.<Destination>emptyList());
+				}
+				
+				final Object key = mapper.hashKey(message);
+				return Util.immutableSingletonSeq(new Destination(sender, (key != null ? consistentHash.nodeFor(key.toString()) : refs.get(0))));
+			}
+		};
+	}
+	
+	/**
+	 * Assigns the events of the given batch to the routees selected by their hash keys. The order of events is kept per routee 
+	 * @param batch
+	 * @param consistentHash
+	 * @param mapper
+	 * @return
+	 */
+	protected static Map<ActorRef, List<StreamEventMessage>> splitBatch(final StreamEventBatch batch, final ConsistentHash<ActorRef> consistentHash, final StreamEventMessageHashMapper mapper) {
+		final Map<ActorRef, List<StreamEventMessage>> routeeEvents = new LinkedHashMap<>();
+		for(final StreamEventMessage event : batch.getEvents()) {
+			final ActorRef routee = consistentHash.nodeFor(String.valueOf(mapper.hashKey(event)));
+			List<StreamEventMessage> events = routeeEvents.get(routee);
+			if(events == null) {
+				events = new ArrayList<>();
+				routeeEvents.put(routee, events);
+			}
+			events.add(event);
+		}
+		return routeeEvents;
+	}
+
+	/**
+	 * @see akka.routing.RouterConfig#routerDispatcher()
+	 */
+	public String routerDispatcher() {
+		return Dispatchers.DefaultDispatcherId();
+	}
+
+	/**
+	 * Same strategy as applied by the routers shipped with akka: failures of routees are escalated
+	 * @see akka.routing.RouterConfig#supervisorStrategy()
+	 */
+	public SupervisorStrategy supervisorStrategy() {
+		return Router$.MODULE$.defaultSupervisorStrategy();
+	}
+
+}
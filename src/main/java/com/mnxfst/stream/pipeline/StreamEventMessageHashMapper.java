@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang3.StringUtils;
+
+import akka.routing.ConsistentHashingRouter.ConsistentHashMapper;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Provides the hash key for {@link StreamEventMessage event messages} routed through a consistent hash router. The key
+ * is read from the configured custom attribute. If the attribute is missing, the event identifier is used instead. 
+ * {@link StreamEventBatch Batches} provide a key only if all of their events share it, batches holding different keys must be 
+ * split before routing as done by the {@link StreamEventConsistentHashingRouter}
+ * @author mnxfst
+ * @since 17.03.2014
+ *
+ */
+public class StreamEventMessageHashMapper implements ConsistentHashMapper, Serializable {
+
+	private static final long serialVersionUID = 2961378315062148425L;
+
+	/** custom attribute holding the hash key */
+	private final String hashAttribute;
+
+	/**
+	 * Initializes the mapper using the provided input
+	 * @param hashAttribute
+	 */
+	public StreamEventMessageHashMapper(final String hashAttribute) {
+		this.hashAttribute = hashAttribute;
+	}
+
+	/**
+	 * @see akka.routing.ConsistentHashingRouter.ConsistentHashMapper#hashKey(java.lang.Object)
+	 */
+	public Object hashKey(Object message) {
+
+		if(message instanceof StreamEventBatch) {
+			Object key = null;
+			for(final StreamEventMessage event : ((StreamEventBatch)message).getEvents()) {
+				Object eventKey = hashKey(event);
+				if(key != null && !key.equals(eventKey))
+					return null;
+				key = eventKey;
+			}
+			return key;
+		}
+		
+		if(message instanceof StreamEventMessage) {
+			StreamEventMessage msg = (StreamEventMessage)message;
+			if(StringUtils.isNotBlank(hashAttribute) && msg.getCustomAttributes() != null) {
+				String key = msg.getCustomAttributes().get(hashAttribute);
+				if(key != null)
+					return key;
+			}
+			return msg.getIdentifier();
+		}
+		return null;
+	}
+
+}
@@ -33,6 +33,13 @@ public class PipelineElementConfiguration implements Serializable {
 
 	private static final long serialVersionUID = -4343068515242697150L;
 
+	/** instances are accessed in round-robin order */
+	public static final String ROUTER_TYPE_ROUND_ROBIN = "roundRobin";
+	/** instances are accessed according to their current mailbox size */
+	public static final String ROUTER_TYPE_SMALLEST_MAILBOX = "smallestMailbox";
+	/** instances are selected by hashing the {@link #routerHashAttribute configured attribute} */
+	public static final String ROUTER_TYPE_CONSISTENT_HASH = "consistentHash";
+
 	/** identifier of pipeline the element belongs to */
 	@JsonProperty ( value = "pipelineId" )
 	private String pipelineId;
@@ -49,10 +56,30 @@ public class PipelineElementConfiguration implements Serializable {
 	@JsonProperty ( value = "elementClass", required = true )
 	private String elementClass;
 	
-	/** number of instances - accessed through round-robin-router */
+	/** number of instances - accessed through the configured router */
 	@JsonProperty ( value = "numOfInstances", required = true )
 	private int numOfInstances = 1;
 	
+	/** router type used for accessing the instances - see ROUTER_TYPE_* constants, defaults to round-robin */
+	@JsonProperty ( value = "routerType", required = false )
+	private String routerType = ROUTER_TYPE_ROUND_ROBIN;
+	
+	/** custom attribute used as hash key by consistent hash router - the event identifier is used if missing */
+	@JsonProperty ( value = "routerHashAttribute", required = false )
+	private String routerHashAttribute = null;
+	
+	/** marks elements blocking their thread, eg. on I/O - such elements are never fused with their neighbours */
+	@JsonProperty ( value = "blocking", required = false )
+	private boolean blocking = false;
+	
+	/** optional akka dispatcher the element instances are executed on, eg. stream-analyzer.dispatchers.blocking-io */
+	@JsonProperty ( value = "dispatcher", required = false )
+	private String dispatcher = null;
+	
+	/** optional akka mailbox the element instances use, eg. stream-analyzer.mailboxes.bounded - ignored by fused elements as they are not accessed through a mailbox */
+	@JsonProperty ( value = "mailbox", required = false )
+	private String mailbox = null;
+	
 	/** default pipeline element messages will be forwarded to in case no other destination is defined */
 	@JsonProperty ( value = "defaultDestination", required = false )
 	private String defaultDestination = null;
@@ -142,6 +169,46 @@ public class PipelineElementConfiguration implements Serializable {
 		this.numOfInstances = numOfInstances;
 	}
 
+	public String getRouterType() {
+		return routerType;
+	}
+
+	public void setRouterType(String routerType) {
+		this.routerType = routerType;
+	}
+
+	public String getRouterHashAttribute() {
+		return routerHashAttribute;
+	}
+
+	public void setRouterHashAttribute(String routerHashAttribute) {
+		this.routerHashAttribute = routerHashAttribute;
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public String getDispatcher() {
+		return dispatcher;
+	}
+
+	public void setDispatcher(String dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	public String getMailbox() {
+		return mailbox;
+	}
+
+	public void setMailbox(String mailbox) {
+		this.mailbox = mailbox;
+	}
+
 	public String getDefaultDestination() {
 		return defaultDestination;
 	}
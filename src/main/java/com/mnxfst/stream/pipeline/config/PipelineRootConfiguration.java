@@ -16,7 +16,9 @@
 package com.mnxfst.stream.pipeline.config;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -34,6 +36,9 @@ public class PipelineRootConfiguration implements Serializable {
 
 	private static final long serialVersionUID = -2785753273278475169L;
 
+	/** default interval (in milliseconds) used for reporting the pipeline load */
+	public static final long DEFAULT_LOAD_REPORT_INTERVAL = 1000;
+
 	/** unique identifier which is reported to the component registry and is used for accessing the pipeline */
 	@JsonProperty ( value = "pipelineId", required = true )
 	private String pipelineId;
@@ -50,6 +55,22 @@ public class PipelineRootConfiguration implements Serializable {
 	@JsonProperty ( value = "elements", required = true )
 	private Set<PipelineElementConfiguration> elements = new HashSet<>();
 	
+	/** enables the detection of linear element segments (following default destinations) which are executed without mailbox hops */
+	@JsonProperty ( value = "fusion", required = false )
+	private boolean fusion = false;
+	
+	/** explicitly named segments of element identifiers executed without mailbox hops - replaces the detection if provided */
+	@JsonProperty ( value = "fusedSegments", required = false )
+	private List<List<String>> fusedSegments = new ArrayList<>();
+	
+	/** interval (in milliseconds) used for reporting the load towards the dispatchers forwarding events to the pipeline - 0 disables the reports */
+	@JsonProperty ( value = "loadReportInterval", required = false )
+	private long loadReportInterval = DEFAULT_LOAD_REPORT_INTERVAL;
+	
+	/** max. number of events queued within the pipeline - credits are granted towards the dispatchers accordingly, 0 disables the flow control. Requires a positive load report interval */
+	@JsonProperty ( value = "creditWindow", required = false )
+	private long creditWindow = 0;
+	
 	/**
 	 * Default constructor
 	 */
@@ -99,6 +120,22 @@ public class PipelineRootConfiguration implements Serializable {
 		this.elements = elements;
 	}
 
+	public boolean isFusion() {
+		return fusion;
+	}
+
+	public void setFusion(boolean fusion) {
+		this.fusion = fusion;
+	}
+
+	public List<List<String>> getFusedSegments() {
+		return fusedSegments;
+	}
+
+	public void setFusedSegments(List<List<String>> fusedSegments) {
+		this.fusedSegments = fusedSegments;
+	}
+
 	public String getInitialReceiverId() {
 		return initialReceiverId;
 	}
@@ -106,6 +143,22 @@ public class PipelineRootConfiguration implements Serializable {
 	public void setInitialReceiverId(String initialReceiverId) {
 		this.initialReceiverId = initialReceiverId;
 	}
+
+	public long getLoadReportInterval() {
+		return loadReportInterval;
+	}
+
+	public void setLoadReportInterval(long loadReportInterval) {
+		this.loadReportInterval = loadReportInterval;
+	}
+
+	public long getCreditWindow() {
+		return creditWindow;
+	}
+
+	public void setCreditWindow(long creditWindow) {
+		this.creditWindow = creditWindow;
+	}
 	
 	
 }
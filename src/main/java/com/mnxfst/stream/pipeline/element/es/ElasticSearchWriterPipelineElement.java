@@ -15,27 +15,60 @@
  */
 package com.mnxfst.stream.pipeline.element.es;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.concurrent.Promise;
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.dispatch.Futures;
+import akka.event.LoggingAdapter;
+import akka.pattern.Patterns;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mnxfst.stream.message.StreamEventMessage;
-import com.mnxfst.stream.pipeline.PipelineElement;
+import com.mnxfst.stream.pipeline.AsyncPipelineElement;
 import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
 import com.mnxfst.stream.pipeline.message.PipelineElementSetupFailedMessage;
 
 /**
- * Writers inbound messages to elasticsearch instance
+ * Writers inbound messages to elasticsearch instance. Single documents are indexed asynchronously, bulk
+ * indexing hands them over to a {@link BulkProcessor bulk processor}. Adding a document blocks if it fills up
+ * a bulk request while no request slot is free, such documents are therefore added on the {@link #BULK_CLOSE_DISPATCHER_ID 
+ * blocking i/o dispatcher} - along with all documents following them to keep the order
  * @author mnxfst
  * @since 05.03.2014
  *
  */
-public class ElasticSearchWriterPipelineElement extends PipelineElement {
+public class ElasticSearchWriterPipelineElement extends AsyncPipelineElement {
 
 	public static final String ES_CLUSTER_NAME = "eswriter.cluster.name";
 	public static final String ES_HOST_PREFIX = "eswriter.host."; 
@@ -43,11 +76,48 @@ public class ElasticSearchWriterPipelineElement extends PipelineElement {
 	public static final String ES_INDEX = "eswriter.index";
 	public static final String ES_DOCUMENT_TYPE = "eswriter.document.type";
 	public static final String ES_WRITE_EVENT_ONLY = "eswriter.document.writeEventOnly";
+	/** optional dotted path towards the event field holding the document identifier, eg. "session.id" */
+	public static final String ES_DOCUMENT_ID_FIELD = "eswriter.document.idField";
+	/** enables bulk indexing - documents are collected and flushed according to the eswriter.bulk.max* settings */
+	public static final String ES_BULK_ENABLED = "eswriter.bulk.enabled";
+	/** max. number of documents collected before a bulk request is issued - 0 disables the limit */
+	public static final String ES_BULK_MAX_DOCUMENTS = "eswriter.bulk.maxDocuments";
+	/** max. payload size (in bytes) collected before a bulk request is issued */
+	public static final String ES_BULK_MAX_BYTES = "eswriter.bulk.maxBytes";
+	/** max. age (in milliseconds) of collected documents before a bulk request is issued */
+	public static final String ES_BULK_MAX_AGE_MS = "eswriter.bulk.maxAgeMs";
+	/** number of bulk requests allowed to be executed concurrently - 0 executes them synchronously */
+	public static final String ES_BULK_CONCURRENT_REQUESTS = "eswriter.bulk.concurrentRequests";
+	/** time (in milliseconds) to wait for outstanding bulk requests on shutdown */
+	public static final String ES_BULK_CLOSE_TIMEOUT_MS = "eswriter.bulk.closeTimeoutMs";
+	
+	/** dispatcher adding documents which may block and awaiting outstanding bulk requests on shutdown - the default dispatcher is used if it is not configured */
+	public static final String BULK_CLOSE_DISPATCHER_ID = "stream-analyzer.dispatchers.blocking-io";
 	
-	private TransportClient elasticSearchTransportClient;
+	public static final int ERROR_CODE_BULK_ITEM_FAILED = 1;
+	public static final int ERROR_CODE_BULK_REQUEST_FAILED = 2;
+	
+	private Client elasticSearchClient;
 	private String indexName;
 	private String documentType;	
 	private boolean isWriteEventOnly = false;
+	/** path towards the event field holding the document identifier - null if elastic search assigns the identifier */
+	private String documentIdField = null;
+	/** messages will be serialized to json if the whole message must be written */
+	private final ObjectMapper mapper = new ObjectMapper();
+	/** collects and flushes index requests if bulk indexing is enabled, otherwise null */
+	private BulkProcessor bulkProcessor = null;
+	/** number of bulk requests issued but not yet answered */
+	private final AtomicInteger pendingBulkRequests = new AtomicInteger(0);
+	/** number of documents handed over to the bulk processor but not yet answered - collected or part of a pending request */
+	private final AtomicLong pendingBulkDocuments = new AtomicLong(0);
+	private long bulkCloseTimeout = 10000;
+	/** number of bulk requests allowed to be executed concurrently */
+	private int bulkConcurrentRequests = 1;
+	/** index requests waiting to be added on the blocking i/o dispatcher */
+	private final List<IndexRequest> deferredBulkRequests = new ArrayList<>();
+	/** index requests being added on the blocking i/o dispatcher, null if none is running */
+	private Future<Object> bulkHandOver = null;
 
 	/**
 	 * Initializes the instance using the provided configuration
@@ -91,6 +161,7 @@ public class ElasticSearchWriterPipelineElement extends PipelineElement {
 		}
 		
 		this.isWriteEventOnly = getBooleanProperty(ES_WRITE_EVENT_ONLY, false);
+		this.documentIdField = StringUtils.trimToNull(getStringProperty(ES_DOCUMENT_ID_FIELD));
 
 		// fetch all transport addresses
 		Map<String, Integer> transportAddressSettings = new HashMap<>();
@@ -113,30 +184,343 @@ public class ElasticSearchWriterPipelineElement extends PipelineElement {
 			return;
 		}
 		
-		// initialize elasticsearch client
+		this.elasticSearchClient = initClient(clusterName, transportAddressSettings);
+		if(getBooleanProperty(ES_BULK_ENABLED, false))
+			this.bulkProcessor = initBulkProcessor();
+	}
+
+	/**
+	 * Initializes the elasticsearch client connected to the given transport addresses
+	 * @param clusterName
+	 * @param transportAddressSettings
+	 * @return
+	 */
+	protected Client initClient(final String clusterName, final Map<String, Integer> transportAddressSettings) {
 		ImmutableSettings.Builder settingsBuilder = ImmutableSettings.settingsBuilder();
 		settingsBuilder.put("cluster.name", clusterName);
 		Settings settings = settingsBuilder.build();
-		this.elasticSearchTransportClient = new TransportClient(settings);
+		TransportClient client = new TransportClient(settings);
 		for(String host : transportAddressSettings.keySet()) {
 			Integer port = transportAddressSettings.get(host);
-			this.elasticSearchTransportClient.addTransportAddress(new InetSocketTransportAddress(host, port));
+			client.addTransportAddress(new InetSocketTransportAddress(host, port));
 			context().system().log().info("elasticsearch client init [pipeline="+getPipelineElementConfiguration().getPipelineId()+", element="+getPipelineElementConfiguration().getElementId()+", cluster="+clusterName+", host="+host+", port="+port+"]");		
 		}
-		
+		return client;
 	}
 
+	/**
+	 * Initializes the {@link BulkProcessor bulk processor} using the eswriter.bulk.* settings. Failures are reported
+	 * by the processor on elasticsearch threads, thus they are handed over to the actor as {@link BulkFailure messages}
+	 * @return
+	 */
+	protected BulkProcessor initBulkProcessor() {
+		
+		int maxDocuments = getIntProperty(ES_BULK_MAX_DOCUMENTS, 1000);
+		int maxBytes = getIntProperty(ES_BULK_MAX_BYTES, 5 * 1024 * 1024);
+		int maxAge = getIntProperty(ES_BULK_MAX_AGE_MS, 1000);
+		int concurrentRequests = getIntProperty(ES_BULK_CONCURRENT_REQUESTS, 1);
+		this.bulkConcurrentRequests = concurrentRequests;
+		this.bulkCloseTimeout = getIntProperty(ES_BULK_CLOSE_TIMEOUT_MS, 10000);
+		
+		final ActorRef self = getSelf();
+		final AtomicInteger pending = this.pendingBulkRequests;
+		final AtomicLong pendingDocuments = this.pendingBulkDocuments;
+		BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+			
+			public void beforeBulk(long executionId, BulkRequest request) {
+				pending.incrementAndGet();
+			}
+			
+			public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+				bulkRequestAnswered(pending);
+				pendingDocuments.addAndGet(-request.numberOfActions());
+				if(response.hasFailures()) {
+					for(BulkItemResponse item : response.getItems()) {
+						if(item.isFailed())
+							self.tell(new BulkFailure(ERROR_CODE_BULK_ITEM_FAILED, "Failed to index document [bulk="+executionId+", item="+item.getItemId()+", index="+item.getIndex()+", type="+item.getType()+", error="+item.getFailureMessage()+"]"), ActorRef.noSender());
+					}
+				}
+			}
+			
+			public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+				bulkRequestAnswered(pending);
+				pendingDocuments.addAndGet(-request.numberOfActions());
+				self.tell(new BulkFailure(ERROR_CODE_BULK_REQUEST_FAILED, "Failed to execute bulk request [bulk="+executionId+", documents="+request.numberOfActions()+", error="+failure.getMessage()+"]"), ActorRef.noSender());
+			}
+		};
+		
+		context().system().log().info("elasticsearch bulk init [pipeline="+getPipelineElementConfiguration().getPipelineId()+", element="+getPipelineElementConfiguration().getElementId()+", maxDocuments="+maxDocuments+", maxBytes="+maxBytes+", maxAgeMs="+maxAge+", concurrentRequests="+concurrentRequests+"]");
+		return BulkProcessor.builder(this.elasticSearchClient, listener)
+				.setName(getPipelineElementConfiguration().getPipelineId() + "#" + getPipelineElementConfiguration().getElementId())
+				// the processor issues a request as soon as it holds MORE than the given number of actions (see 
+				// BulkProcessor#isOverTheLimit), thus one less is configured for a request to carry exactly maxDocuments
+				.setBulkActions(maxDocuments > 0 ? maxDocuments - 1 : -1)
+				.setBulkSize(new ByteSizeValue(maxBytes))
+				.setFlushInterval(maxAge > 0 ? TimeValue.timeValueMillis(maxAge) : null)
+				.setConcurrentRequests(concurrentRequests)
+				.build();
+	}
+	
+	/**
+	 * Flushes all collected documents. Adding the deferred documents, flushing, waiting for outstanding bulk requests and closing 
+	 * the client is handed over to the {@link #BULK_CLOSE_DISPATCHER_ID blocking i/o dispatcher}, thus the thread executing the 
+	 * actor is released right away
+	 * @see akka.actor.UntypedActor#postStop()
+	 */
+	public void postStop() throws Exception {
+		
+		final Client client = this.elasticSearchClient;
+		if(this.bulkProcessor != null) {
+			final BulkProcessor processor = this.bulkProcessor;
+			final Future<Object> handOver = this.bulkHandOver;
+			final List<IndexRequest> deferred = new ArrayList<>(this.deferredBulkRequests);
+			this.deferredBulkRequests.clear();
+			
+			final AtomicInteger pending = this.pendingBulkRequests;
+			final long timeout = this.bulkCloseTimeout;
+			final String pipelineId = getPipelineElementConfiguration().getPipelineId();
+			final String elementId = getPipelineElementConfiguration().getElementId();
+			final LoggingAdapter log = context().system().log();
+			Futures.future(new Callable<Object>() {
+				public Object call() throws Exception {
+					try {
+						// the deferred documents must follow the ones being added
+						if(handOver != null)
+							Await.ready(handOver, Duration.create(timeout, TimeUnit.MILLISECONDS));
+						for(final IndexRequest request : deferred)
+							processor.add(request);
+					} catch(TimeoutException e) {
+						log.error("elasticsearch bulk shutdown timed out [pipeline="+pipelineId+", element="+elementId+", droppedDocuments="+deferred.size()+"]");
+					}
+					processor.close();
+					if(!awaitBulkRequests(pending, timeout))
+						log.error("elasticsearch bulk shutdown timed out [pipeline="+pipelineId+", element="+elementId+", pendingRequests="+pending.get()+"]");
+					if(client != null)
+						client.close();
+					return null;
+				}
+			}, getBulkExecutionContext());
+		} else if(client != null) {
+			client.close();
+		}
+		
+		super.postStop();
+	}
+	
+	/**
+	 * Returns the {@link #BULK_CLOSE_DISPATCHER_ID blocking i/o dispatcher} if configured, otherwise the default dispatcher
+	 * @return
+	 */
+	protected ExecutionContext getBulkExecutionContext() {
+		return (context().system().dispatchers().hasDispatcher(BULK_CLOSE_DISPATCHER_ID) ? 
+				context().system().dispatchers().lookup(BULK_CLOSE_DISPATCHER_ID) : context().system().dispatcher());
+	}
+	
+	/**
+	 * Waits until no bulk request is outstanding or the timeout is exceeded. Returns true if all requests have been answered
+	 * @param pending
+	 * @param timeout
+	 * @return
+	 * @throws InterruptedException
+	 */
+	protected static boolean awaitBulkRequests(final AtomicInteger pending, final long timeout) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		synchronized(pending) {
+			long remaining = timeout;
+			while(pending.get() > 0 && remaining > 0) {
+				pending.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return pending.get() <= 0;
+		}
+	}
+	
+	/**
+	 * Counts an answered bulk request and wakes up a shutdown waiting for it
+	 * @param pending
+	 */
+	protected static void bulkRequestAnswered(final AtomicInteger pending) {
+		synchronized(pending) {
+			pending.decrementAndGet();
+			pending.notifyAll();
+		}
+	}
 
+	/**
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#onReceive(java.lang.Object)
+	 */
+	public void onReceive(Object message) throws Exception {
+		if(message instanceof BulkFailure) {
+			BulkFailure failure = (BulkFailure)message;
+			reportError(failure.errorCode, failure.errorMessage);
+		} else if(message instanceof BulkHandOverCompleted) {
+			BulkHandOverCompleted completed = (BulkHandOverCompleted)message;
+			this.bulkHandOver = null;
+			if(completed.errorMessage != null)
+				reportError(ERROR_CODE_BULK_REQUEST_FAILED, completed.errorMessage);
+			handOverDeferredBulkRequests();
+		} else {
+			super.onReceive(message);
+		}
+	}
 
 	/**
-	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvent(com.mnxfst.stream.message.StreamEventMessage)
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#processEvent(com.mnxfst.stream.message.StreamEventMessage)
 	 */
 	protected void processEvent(StreamEventMessage message) throws Exception {
-		if(isWriteEventOnly) {
-			this.elasticSearchTransportClient.prepareIndex(indexName.toLowerCase(), documentType.toLowerCase()).setSource(message.getEvent()).execute().actionGet(); 
+		if(this.bulkProcessor != null)
+			addBulkRequest(message);
+		else
+			super.processEvent(message);
+	}
+	
+	/**
+	 * Hands over all messages to the bulk processor at once if bulk indexing is enabled, otherwise each message is indexed on its own
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvents(java.util.List)
+	 */
+	protected void processEvents(List<StreamEventMessage> messages) throws Exception {
+		if(this.bulkProcessor != null) {
+			for(final StreamEventMessage message : messages)
+				addBulkRequest(message);
+		} else {
+			super.processEvents(messages);
+		}
+	}
+	
+	/**
+	 * Hands over the index request for the given message to the bulk processor. The document counts as pending until its
+	 * bulk request is answered. The request is added right away only if no documents are waiting in front of it and a 
+	 * request slot is free, as adding may issue a bulk request which blocks until a slot is available. Otherwise it is
+	 * deferred and added on the {@link #BULK_CLOSE_DISPATCHER_ID blocking i/o dispatcher} 
+	 * @param message
+	 * @throws Exception
+	 */
+	protected void addBulkRequest(final StreamEventMessage message) throws Exception {
+		this.pendingBulkDocuments.incrementAndGet();
+		final IndexRequest request = prepareIndexRequest(message).request();
+		if(this.bulkHandOver == null && this.deferredBulkRequests.isEmpty() && isBulkRequestSlotAvailable()) {
+			this.bulkProcessor.add(request);
 		} else {
-			this.elasticSearchTransportClient.prepareIndex(indexName.toLowerCase(), documentType.toLowerCase()).setSource(message).execute().actionGet();
-		}		
+			this.deferredBulkRequests.add(request);
+			handOverDeferredBulkRequests();
+		}
+	}
+	
+	/**
+	 * Returns true if a bulk request may be issued without blocking. Requests are executed synchronously if no concurrent
+	 * requests are allowed, thus a slot is never available in that case
+	 * @return
+	 */
+	protected boolean isBulkRequestSlotAvailable() {
+		return this.bulkConcurrentRequests > 0 && this.pendingBulkRequests.get() < this.bulkConcurrentRequests;
+	}
+	
+	/**
+	 * Adds all deferred index requests to the bulk processor on the {@link #BULK_CLOSE_DISPATCHER_ID blocking i/o dispatcher} 
+	 * unless a previous hand-over is still running. The actor is notified as soon as they are added
+	 */
+	protected void handOverDeferredBulkRequests() {
+		
+		if(this.bulkHandOver != null || this.deferredBulkRequests.isEmpty())
+			return;
+		
+		final BulkProcessor processor = this.bulkProcessor;
+		final AtomicLong pendingDocuments = this.pendingBulkDocuments;
+		final List<IndexRequest> requests = new ArrayList<>(this.deferredBulkRequests);
+		this.deferredBulkRequests.clear();
+		this.bulkHandOver = Futures.future(new Callable<Object>() {
+			public Object call() throws Exception {
+				int added = 0;
+				try {
+					for(final IndexRequest request : requests) {
+						processor.add(request);
+						added++;
+					}
+					return new BulkHandOverCompleted(null);
+				} catch(Exception e) {
+					// documents not added will never be answered
+					pendingDocuments.addAndGet(added - requests.size());
+					return new BulkHandOverCompleted("Failed to add documents to bulk request [documents="+(requests.size() - added)+", error="+e.getMessage()+"]");
+				}
+			}
+		}, getBulkExecutionContext());
+		Patterns.pipe(this.bulkHandOver, context().dispatcher()).to(getSelf());
+	}
+	
+	/**
+	 * Documents collected by the bulk processor or being part of an unanswered bulk request are pending as well, otherwise 
+	 * the pipeline root under-estimates the events queued in front of a slow cluster
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#getPendingEvents()
+	 */
+	protected int getPendingEvents() {
+		return (int)Math.min(Integer.MAX_VALUE, super.getPendingEvents() + this.pendingBulkDocuments.get());
+	}
+	
+	/**
+	 * Returns the number of documents handed over to the bulk processor but not yet answered
+	 * @return
+	 */
+	protected long getPendingBulkDocuments() {
+		return this.pendingBulkDocuments.get();
+	}
+	
+	/**
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#processEventAsync(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	protected Future<Object> processEventAsync(StreamEventMessage message) throws Exception {
+		final Promise<Object> promise = Futures.promise();
+		prepareIndexRequest(message).execute(new ActionListener<IndexResponse>() {
+			public void onResponse(IndexResponse response) {
+				promise.success(response);
+			}
+			public void onFailure(Throwable e) {
+				promise.failure(e);
+			}
+		});
+		return promise.future();
+	}
+	
+	/**
+	 * Prepares the index request for the given message
+	 * @param message
+	 * @return
+	 * @throws Exception
+	 */
+	protected IndexRequestBuilder prepareIndexRequest(final StreamEventMessage message) throws Exception {
+		IndexRequestBuilder builder = this.elasticSearchClient.prepareIndex(indexName.toLowerCase(), documentType.toLowerCase());
+		if(this.documentIdField != null) {
+			// read from the cached event tree, the event is parsed once per pipeline only
+			JsonNode documentId = message.getEventField(this.documentIdField);
+			if(documentId.isValueNode())
+				builder.setId(documentId.asText());
+		}
+		if(isWriteEventOnly)
+			return builder.setSource(message.getEventBytes());
+		return builder.setSource(mapper.writeValueAsBytes(message));
+	}
+	
+	/**
+	 * Notifies the actor about deferred index requests being added to the {@link BulkProcessor bulk processor}
+	 */
+	private static final class BulkHandOverCompleted {
+		private final String errorMessage;
+		
+		private BulkHandOverCompleted(final String errorMessage) {
+			this.errorMessage = errorMessage;
+		}
+	}
+	
+	/**
+	 * Hands over failures reported by the {@link BulkProcessor bulk processor} to the actor
+	 */
+	private static final class BulkFailure {
+		private final int errorCode;
+		private final String errorMessage;
+		
+		private BulkFailure(final int errorCode, final String errorMessage) {
+			this.errorCode = errorCode;
+			this.errorMessage = errorMessage;
+		}
 	}
 
 }
@@ -15,6 +15,8 @@
  */
 package com.mnxfst.stream.pipeline.element.log;
 
+import java.util.List;
+
 import akka.actor.ActorSystem;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -49,4 +51,21 @@ public class LogWriterPipelineElement extends PipelineElement {
 			context().system().log().info(mapper.writeValueAsString(message));
 	}
 
+	/**
+	 * Writes all messages with a single log statement
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvents(java.util.List)
+	 */
+	protected void processEvents(List<StreamEventMessage> messages) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(final StreamEventMessage message : messages) {
+			if(message != null) {
+				if(sb.length() > 0)
+					sb.append('\n');
+				sb.append(mapper.writeValueAsString(message));
+			}
+		}
+		if(sb.length() > 0)
+			context().system().log().info(sb.toString());
+	}
+
 }
@@ -20,13 +20,19 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.mnxfst.stream.message.StreamEventMessage;
 import com.mnxfst.stream.pipeline.PipelineElement;
 import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
@@ -34,8 +40,11 @@ import com.mnxfst.stream.pipeline.message.PipelineElementSetupFailedMessage;
 
 /**
  * Implements a script evaluator which extracts the {@link StreamEventMessage#getEvent() event content}
- * from the message and applies the configured script. The evaluator may modify the message content
- * and returns the identifier of the next pipeline element which must receive the message  
+ * from the message and applies the configured script. The evaluator may modify the message content - which
+ * results in a {@link StreamEventMessage#withEvent(String) derived message} as the inbound one is shared - 
+ * and returns the identifier of the next pipeline element which must receive the message. Event fields named via
+ * {@link #CONFIG_SCRIPT_FIELD_VARIABLE_PREFIX} are read from the {@link StreamEventMessage#getEventTree() cached event tree} and
+ * handed over as variables, thus scripts reading a few fields do not need to parse the event content again
  * @author mnxfst
  * @since 04.03.2014
  *
@@ -50,16 +59,26 @@ public class ScriptEvaluatorPipelineElement extends PipelineElement {
 	public static final String CONFIG_SCRIPT_INIT_CODE_PREFIX = "script.code.init.";
 	/** configuration option holding the script to be executed for an event */
 	public static final String CONFIG_SCRIPT_EVAL_CODE = "script.code.eval";
+	/** optional configuration option naming a function defined by the eval script which is invoked for each event instead of evaluating the whole script */
+	public static final String CONFIG_SCRIPT_EVAL_FUNCTION = "script.function.eval";
 	/** configuration option holding the variable where the script expects the input */
 	public static final String CONFIG_SCRIPT_INPUT_VARIABLE = "script.var.input";
 	/** configuration option holding the variable where the script writes the identifier of the next pipeline element to */
 	public static final String CONFIG_SCRIPT_OUTPUT_NEXT_ELEMENT_VARIABLE = "script.var.output.nextelement";
+	/** prefix to configuration options naming a variable which receives the value of an event field - script.var.field.sessionId = session.id */
+	public static final String CONFIG_SCRIPT_FIELD_VARIABLE_PREFIX = "script.var.field.";
 	
 	private ScriptEngine scriptEngine;
 	private List<String> initScripts = new ArrayList<>();	
 	private String evalScript = null;
+	/** eval script compiled once during initialization - null if the engine does not support compilation */
+	private CompiledScript compiledEvalScript = null;
+	/** name of function invoked for each event - null if the eval script must be evaluated per event */
+	private String evalFunction = null;
 	private String scriptInputVariable = null;
 	private String scriptOutputNextElementVariable = null;
+	/** dotted path towards the event field per variable receiving its value */
+	private final Map<String, String> fieldVariables = new LinkedHashMap<>();
 	
 	public ScriptEvaluatorPipelineElement(PipelineElementConfiguration pipelineElementConfiguration) {
 		super(pipelineElementConfiguration);		 
@@ -69,11 +88,14 @@ public class ScriptEvaluatorPipelineElement extends PipelineElement {
 	 * @see akka.actor.UntypedActor#preStart()
 	 */
 	public void preStart() throws Exception {		
+		super.preStart();
 		
 		// initialize the script engine 
 		ScriptEngineManager factory = new ScriptEngineManager();
 		try {
 			this.scriptEngine = factory.getEngineByName(getStringProperty(CONFIG_SCRIPT_ENGINE_NAME));
+			if(this.scriptEngine == null)
+				throw new Exception("Unknown script engine '"+getStringProperty(CONFIG_SCRIPT_ENGINE_NAME)+"'");
 		} catch(Exception e) {
 			context().parent().tell(new PipelineElementSetupFailedMessage(
 					getPipelineElementConfiguration().getPipelineId(), getPipelineElementConfiguration().getElementId(), 
@@ -120,12 +142,30 @@ public class ScriptEvaluatorPipelineElement extends PipelineElement {
 			return;
 		}
 		
+		// collect the variables receiving event fields
+		for(final Map.Entry<String, String> setting : getPipelineElementConfiguration().getSettings().entrySet()) {
+			if(setting.getKey().startsWith(CONFIG_SCRIPT_FIELD_VARIABLE_PREFIX) && StringUtils.isNotBlank(setting.getValue()))
+				this.fieldVariables.put(setting.getKey().substring(CONFIG_SCRIPT_FIELD_VARIABLE_PREFIX.length()), setting.getValue().trim());
+		}
+		
 		// if the set of init scripts is not empty, provide them to the script engine 
 		if(!initScripts.isEmpty()) {
 			for(String script : initScripts) {
 				this.scriptEngine.eval(script);
 			}
 		}
+		
+		// prepare the eval script: if a function is named and the engine is able to invoke it, the script is evaluated once 
+		// for defining the function. otherwise it gets compiled if supported by the engine. the raw script is evaluated per event
+		// only in case none of both is available
+		String functionName = getStringProperty(CONFIG_SCRIPT_EVAL_FUNCTION);
+		if(StringUtils.isNotBlank(functionName) && this.scriptEngine instanceof Invocable) {
+			this.scriptEngine.eval(this.evalScript);
+			this.evalFunction = functionName.trim();
+		} else if(this.scriptEngine instanceof Compilable) {
+			this.compiledEvalScript = ((Compilable)this.scriptEngine).compile(this.evalScript);
+		}
+		context().system().log().info("script evaluator init [pipeline="+getPipelineElementConfiguration().getPipelineId()+", element="+getPipelineElementConfiguration().getElementId()+", function="+this.evalFunction+", compiled="+(this.compiledEvalScript != null)+"]");
 	}
 
 	/**
@@ -133,32 +173,97 @@ public class ScriptEvaluatorPipelineElement extends PipelineElement {
 	 */
 	protected void processEvent(StreamEventMessage message) throws Exception {		
 
+		StreamEventMessage evaluatedMessage = evaluate(message);
+		if(evaluatedMessage != null) {
+			String nextElementId = getNextElementId();
+			if(StringUtils.isNotBlank(nextElementId))
+				forwardMessage(evaluatedMessage, nextElementId, true);
+		}
+	}
+
+	/**
+	 * Evaluates all messages and forwards them as batches grouped by their next element
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvents(java.util.List)
+	 */
+	protected void processEvents(List<StreamEventMessage> messages) throws Exception {
+		
+		Map<String, List<StreamEventMessage>> nextElementMessages = new LinkedHashMap<>();
+		for(final StreamEventMessage message : messages) {
+			StreamEventMessage evaluatedMessage = evaluate(message);
+			String nextElementId = (evaluatedMessage != null ? getNextElementId() : null);
+			if(StringUtils.isNotBlank(nextElementId)) {
+				List<StreamEventMessage> forwards = nextElementMessages.get(nextElementId);
+				if(forwards == null) {
+					forwards = new ArrayList<>(messages.size());
+					nextElementMessages.put(nextElementId, forwards);
+				}
+				forwards.add(evaluatedMessage);
+			}
+		}
+		
+		for(final Map.Entry<String, List<StreamEventMessage>> entry : nextElementMessages.entrySet())
+			forwardMessages(entry.getValue(), entry.getKey(), true);
+	}
+	
+	/**
+	 * Applies the eval script to the provided message and returns the message to forward - a derived one if the
+	 * script modified the event content. The identifier of the next element is available via {@link #getNextElementId()} 
+	 * afterwards. Returns null if the message could not be evaluated
+	 * @param message
+	 * @return
+	 * @throws Exception
+	 */
+	protected StreamEventMessage evaluate(final StreamEventMessage message) throws Exception {
+
 		if(message != null) {
 			
 			if(StringUtils.isBlank(message.getEvent())) {
 				// TODO what to do?
 				reportError(ERROR_CODE_EVENT_CONTENT_MISSING, "Required event content missing");
-				return;
+				return null;
 			}
 		
-			// provide message to script engine
+			// provide message to script engine along with the requested fields taken from the cached event tree
 			this.scriptEngine.put(scriptInputVariable, (String)message.getEvent());
-			this.scriptEngine.eval(this.evalScript);
+			for(final Map.Entry<String, String> fieldVariable : this.fieldVariables.entrySet())
+				this.scriptEngine.put(fieldVariable.getKey(), toScriptValue(message.getEventField(fieldVariable.getValue())));
+			if(this.evalFunction != null)
+				((Invocable)this.scriptEngine).invokeFunction(this.evalFunction, message.getEvent());
+			else if(this.compiledEvalScript != null)
+				this.compiledEvalScript.eval();
+			else
+				this.scriptEngine.eval(this.evalScript);
 			
 			// fetch the content from the input variable as it may have been modified ... if the script sets it
 			// to null, it will be ignored
 			String modifiedEventContent = (String)this.scriptEngine.get(scriptInputVariable);
-			if(StringUtils.isNotBlank(modifiedEventContent))
-				message.setEvent(modifiedEventContent);
-			
-			// fetch the next element identifier
-			String nextElementId = (String)this.scriptEngine.get(scriptOutputNextElementVariable);
-			if(StringUtils.isNotBlank(nextElementId)) {
-				forwardMessage(message, nextElementId, true);
-			}
-			
-			
+			if(StringUtils.isNotBlank(modifiedEventContent) && !modifiedEventContent.equals(message.getEvent()))
+				return message.withEvent(modifiedEventContent);
+			return message;
 		}
+		return null;
+	}
+	
+	/**
+	 * Converts the given event field into the value handed over to the script: values are passed as text, objects and
+	 * arrays as json and missing fields as null
+	 * @param field
+	 * @return
+	 */
+	protected String toScriptValue(final JsonNode field) {
+		if(field == null || field.isMissingNode() || field.isNull())
+			return null;
+		if(field.isValueNode())
+			return field.asText();
+		return field.toString();
+	}
+	
+	/**
+	 * Returns the identifier of the next element as written by the last script evaluation
+	 * @return
+	 */
+	protected String getNextElementId() {
+		return (String)this.scriptEngine.get(scriptOutputNextElementVariable);
 	}
 
 	/**
@@ -0,0 +1,120 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.message;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.pipeline.PipelineElement;
+import com.mnxfst.stream.pipeline.PipelineRoot;
+
+/**
+ * Reports the event flow through a single {@link PipelineElement element} instance towards the {@link PipelineRoot pipeline root}.
+ * All counters are totals since the instance started, thus the root derives the number of events queued in front of
+ * each element by comparing the events forwarded towards it with the events it has received 
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "pipelineElementFlowReportMessage" )
+public class PipelineElementFlowReportMessage implements Serializable {
+
+	private static final long serialVersionUID = -1379408757010457839L;
+
+	/** identifier of pipeline the element belongs to */
+	@JsonProperty ( value = "pipelineId", required = true )
+	private String pipelineId;
+	
+	/** identifier of reporting element */
+	@JsonProperty ( value = "elementId", required = true )
+	private String elementId;
+	
+	/** number of events taken from the mailbox */
+	@JsonProperty ( value = "receivedEvents", required = true )
+	private long receivedEvents;
+	
+	/** number of events received but not completed yet, eg. waiting for an async operation */
+	@JsonProperty ( value = "pendingEvents", required = true )
+	private long pendingEvents;
+	
+	/** number of events forwarded per destination element */
+	@JsonProperty ( value = "forwardedEvents", required = true )
+	private Map<String, Long> forwardedEvents = new HashMap<>();
+	
+	/**
+	 * Default constructor
+	 */
+	public PipelineElementFlowReportMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param pipelineId
+	 * @param elementId
+	 * @param receivedEvents
+	 * @param pendingEvents
+	 */
+	public PipelineElementFlowReportMessage(final String pipelineId, final String elementId, final long receivedEvents, final long pendingEvents) {
+		this.pipelineId = pipelineId;
+		this.elementId = elementId;
+		this.receivedEvents = receivedEvents;
+		this.pendingEvents = pendingEvents;
+	}
+
+	public String getPipelineId() {
+		return pipelineId;
+	}
+
+	public void setPipelineId(String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+
+	public String getElementId() {
+		return elementId;
+	}
+
+	public void setElementId(String elementId) {
+		this.elementId = elementId;
+	}
+
+	public long getReceivedEvents() {
+		return receivedEvents;
+	}
+
+	public void setReceivedEvents(long receivedEvents) {
+		this.receivedEvents = receivedEvents;
+	}
+
+	public long getPendingEvents() {
+		return pendingEvents;
+	}
+
+	public void setPendingEvents(long pendingEvents) {
+		this.pendingEvents = pendingEvents;
+	}
+
+	public Map<String, Long> getForwardedEvents() {
+		return forwardedEvents;
+	}
+
+	public void setForwardedEvents(Map<String, Long> forwardedEvents) {
+		this.forwardedEvents = forwardedEvents;
+	}
+	
+}
@@ -0,0 +1,63 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.pipeline.PipelineElement;
+import com.mnxfst.stream.pipeline.PipelineRoot;
+
+/**
+ * Sent periodically by the {@link PipelineRoot pipeline root} towards each {@link PipelineElement element} instance which
+ * answers with a {@link PipelineElementFlowReportMessage flow report}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "pipelineElementFlowRequestMessage" )
+public class PipelineElementFlowRequestMessage implements Serializable {
+
+	private static final long serialVersionUID = 8178251006012493715L;
+
+	/** identifier of requesting pipeline */
+	@JsonProperty ( value = "pipelineId", required = true )
+	private String pipelineId;
+	
+	/**
+	 * Default constructor
+	 */
+	public PipelineElementFlowRequestMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param pipelineId
+	 */
+	public PipelineElementFlowRequestMessage(final String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+
+	public String getPipelineId() {
+		return pipelineId;
+	}
+
+	public void setPipelineId(String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+	
+}
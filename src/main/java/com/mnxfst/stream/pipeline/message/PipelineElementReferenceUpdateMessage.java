@@ -17,7 +17,9 @@ package com.mnxfst.stream.pipeline.message;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
@@ -43,6 +45,10 @@ public class PipelineElementReferenceUpdateMessage implements Serializable {
 	@JsonProperty ( value = "elementReferences", required = true )
 	private Map<String, ActorRef> elementReferences = new HashMap<>();
 	
+	/** identifiers of elements executed by the host their reference points to */
+	@JsonProperty ( value = "hostedElementIds" )
+	private Set<String> hostedElementIds = new HashSet<>();
+	
 	/**
 	 * Default constructor
 	 */
@@ -66,6 +72,16 @@ public class PipelineElementReferenceUpdateMessage implements Serializable {
 		this.elementReferences.put(elementId, elementReference);
 	}
 
+	/**
+	 * Adds a new reference towards the host executing the element
+	 * @param elementId
+	 * @param hostReference
+	 */
+	public void addHostedElementReference(final String elementId, final ActorRef hostReference) {
+		this.elementReferences.put(elementId, hostReference);
+		this.hostedElementIds.add(elementId);
+	}
+
 	public String getPipelineId() {
 		return pipelineId;
 	}
@@ -81,5 +97,13 @@ public class PipelineElementReferenceUpdateMessage implements Serializable {
 	public void setElementReferences(Map<String, ActorRef> elementReferences) {
 		this.elementReferences = elementReferences;
 	}
+
+	public Set<String> getHostedElementIds() {
+		return hostedElementIds;
+	}
+
+	public void setHostedElementIds(Set<String> hostedElementIds) {
+		this.hostedElementIds = hostedElementIds;
+	}
 	
 }
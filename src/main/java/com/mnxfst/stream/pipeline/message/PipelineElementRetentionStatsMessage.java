@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.pipeline.PipelineElement;
+
+/**
+ * Reports the messages a {@link PipelineElement element} instance retains for destinations which have not been resolved yet.
+ * Sent in response to a {@link PipelineElementRetentionStatsRequestMessage retention stats request}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "pipelineElementRetentionStatsMessage" )
+public class PipelineElementRetentionStatsMessage implements Serializable {
+
+	private static final long serialVersionUID = -6215404717790253350L;
+
+	/** identifier of pipeline the element belongs to */
+	@JsonProperty ( value = "pipelineId", required = true )
+	private String pipelineId;
+	
+	/** identifier of reporting element */
+	@JsonProperty ( value = "elementId", required = true )
+	private String elementId;
+	
+	/** number of retained messages over all destinations */
+	@JsonProperty ( value = "retentionDepth", required = true )
+	private int retentionDepth;
+	
+	/** number of bytes spilled to disk over all destinations */
+	@JsonProperty ( value = "retentionBytes", required = true )
+	private long retentionBytes;
+	
+	/** number of messages dropped since they could neither be delivered nor retained */
+	@JsonProperty ( value = "droppedMessages", required = true )
+	private long droppedMessages;
+	
+	/**
+	 * Default constructor
+	 */
+	public PipelineElementRetentionStatsMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param pipelineId
+	 * @param elementId
+	 * @param retentionDepth
+	 * @param retentionBytes
+	 * @param droppedMessages
+	 */
+	public PipelineElementRetentionStatsMessage(final String pipelineId, final String elementId, final int retentionDepth, final long retentionBytes, final long droppedMessages) {
+		this.pipelineId = pipelineId;
+		this.elementId = elementId;
+		this.retentionDepth = retentionDepth;
+		this.retentionBytes = retentionBytes;
+		this.droppedMessages = droppedMessages;
+	}
+
+	public String getPipelineId() {
+		return pipelineId;
+	}
+
+	public void setPipelineId(String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+
+	public String getElementId() {
+		return elementId;
+	}
+
+	public void setElementId(String elementId) {
+		this.elementId = elementId;
+	}
+
+	public int getRetentionDepth() {
+		return retentionDepth;
+	}
+
+	public void setRetentionDepth(int retentionDepth) {
+		this.retentionDepth = retentionDepth;
+	}
+
+	public long getRetentionBytes() {
+		return retentionBytes;
+	}
+
+	public void setRetentionBytes(long retentionBytes) {
+		this.retentionBytes = retentionBytes;
+	}
+
+	public long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	public void setDroppedMessages(long droppedMessages) {
+		this.droppedMessages = droppedMessages;
+	}
+	
+}
@@ -0,0 +1,61 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.pipeline.PipelineElement;
+
+/**
+ * Asks a {@link PipelineElement element} instance for its {@link PipelineElementRetentionStatsMessage retention statistics}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "pipelineElementRetentionStatsRequestMessage" )
+public class PipelineElementRetentionStatsRequestMessage implements Serializable {
+
+	private static final long serialVersionUID = 4410983557961202184L;
+
+	/** identifier of requested pipeline */
+	@JsonProperty ( value = "pipelineId", required = true )
+	private String pipelineId;
+	
+	/**
+	 * Default constructor
+	 */
+	public PipelineElementRetentionStatsRequestMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param pipelineId
+	 */
+	public PipelineElementRetentionStatsRequestMessage(final String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+
+	public String getPipelineId() {
+		return pipelineId;
+	}
+
+	public void setPipelineId(String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+	
+}
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.message;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.mnxfst.stream.dispatcher.StreamEventMessageDispatcher;
+import com.mnxfst.stream.pipeline.PipelineRoot;
+
+/**
+ * Periodically sent by a {@link PipelineRoot pipeline root} towards each {@link StreamEventMessageDispatcher dispatcher}
+ * forwarding events to it. The report carries the number of events received from that very dispatcher since the
+ * pipeline started - the dispatcher derives the number of events still queued by comparing it with the number of 
+ * events it has sent - as well as the average time passed between ingestion and arrival at the root during the last interval 
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+@JsonRootName ( value = "pipelineLoadReportMessage" )
+public class PipelineLoadReportMessage implements Serializable {
+
+	private static final long serialVersionUID = 4529131837306117457L;
+
+	/** identifier of reporting pipeline */
+	@JsonProperty ( value = "pipelineId", required = true )
+	private String pipelineId;
+	
+	/** number of events received from the addressed dispatcher since the pipeline started */
+	@JsonProperty ( value = "receivedEvents", required = true )
+	private long receivedEvents;
+	
+	/** average number of milliseconds passed between ingestion and arrival of events received during the last interval, 0 if none was received */
+	@JsonProperty ( value = "latencyMillis", required = true )
+	private long latencyMillis;
+	
+	/**
+	 * Default constructor
+	 */
+	public PipelineLoadReportMessage() {		
+	}
+	
+	/**
+	 * Initializes the message using the provided input
+	 * @param pipelineId
+	 * @param receivedEvents
+	 * @param latencyMillis
+	 */
+	public PipelineLoadReportMessage(final String pipelineId, final long receivedEvents, final long latencyMillis) {
+		this.pipelineId = pipelineId;
+		this.receivedEvents = receivedEvents;
+		this.latencyMillis = latencyMillis;
+	}
+
+	public String getPipelineId() {
+		return pipelineId;
+	}
+
+	public void setPipelineId(String pipelineId) {
+		this.pipelineId = pipelineId;
+	}
+
+	public long getReceivedEvents() {
+		return receivedEvents;
+	}
+
+	public void setReceivedEvents(long receivedEvents) {
+		this.receivedEvents = receivedEvents;
+	}
+
+	public long getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the binary representation of messages created by a {@link BinaryMessageWriter}. Reading beyond the end of
+ * the provided content or hitting an invalid value results in an {@link IllegalArgumentException}<br/><br/>
+ * Instances are not thread-safe and must be used for a single payload only 
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class BinaryMessageReader {
+
+	/** content to read from */
+	private final byte[] buffer;
+	/** position of the next byte to read */
+	private int position = 0;
+	/** strings read via dictionary - index equals the reference */
+	private List<String> dictionary = null;
+	
+	/**
+	 * Initializes the reader using the provided input
+	 * @param buffer
+	 */
+	public BinaryMessageReader(final byte[] buffer) {
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Reads a single byte
+	 * @return
+	 */
+	public int readByte() {
+		ensureAvailable(1);
+		return this.buffer[this.position++];
+	}
+	
+	/**
+	 * Reads a non-negative integer written by {@link BinaryMessageWriter#writeVarInt(int)}
+	 * @return
+	 */
+	public int readVarInt() {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift = shift + 7) {
+			ensureAvailable(1);
+			byte b = this.buffer[this.position++];
+			value = value | ((b & 0x7F) << shift);
+			if((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Invalid variable length integer found at position " + this.position);
+	}
+	
+	/**
+	 * Reads a long value written by {@link BinaryMessageWriter#writeLong(long)}
+	 * @return
+	 */
+	public long readLong() {
+		ensureAvailable(8);
+		long value = 0;
+		for(int i = 0; i < 8; i++)
+			value = (value << 8) | (this.buffer[this.position++] & 0xFF);
+		return value;
+	}
+	
+	/**
+	 * Reads a byte array written by {@link BinaryMessageWriter#writeBytes(byte[])}
+	 * @return
+	 */
+	public byte[] readBytes() {
+		int length = readVarInt();
+		if(length == 0)
+			return null;
+		ensureAvailable(length - 1);
+		byte[] value = Arrays.copyOfRange(this.buffer, this.position, this.position + length - 1);
+		this.position = this.position + length - 1;
+		return value;
+	}
+	
+	/**
+	 * Reads a string written by {@link BinaryMessageWriter#writeString(String)}
+	 * @return
+	 */
+	public String readString() {
+		int length = readVarInt();
+		if(length == 0)
+			return null;
+		ensureAvailable(length - 1);
+		String value = new String(this.buffer, this.position, length - 1, BinaryMessageWriter.UTF8);
+		this.position = this.position + length - 1;
+		return value;
+	}
+	
+	/**
+	 * Reads a string written by {@link BinaryMessageWriter#writeDictionaryString(String)}
+	 * @return
+	 */
+	public String readDictionaryString() {
+		if(this.dictionary == null)
+			this.dictionary = new ArrayList<>();
+		int reference = readVarInt();
+		if(reference == 0) {
+			String value = readString();
+			this.dictionary.add(value);
+			return value;
+		}
+		if(reference > this.dictionary.size())
+			throw new IllegalArgumentException("Unknown dictionary reference " + reference + " found at position " + this.position);
+		return this.dictionary.get(reference - 1);
+	}
+	
+	/**
+	 * Returns true if all content has been read
+	 * @return
+	 */
+	public boolean isExhausted() {
+		return this.position >= this.buffer.length;
+	}
+	
+	/**
+	 * Throws an exception if the content does not provide the given number of bytes beyond the current position
+	 * @param length
+	 */
+	protected void ensureAvailable(final int length) {
+		if(length < 0 || this.position + length > this.buffer.length)
+			throw new IllegalArgumentException("Unexpected end of content at position " + this.position + ", expected " + length + " more bytes");
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the binary representation of messages into a growing buffer. Integers are written as variable length 
+ * values, strings and byte arrays are prefixed by their length where a length of 0 denotes null and all other values 
+ * are shifted by one. Strings recurring within a single payload, eg. attribute keys, may be written via 
+ * {@link #writeDictionaryString(String)} which emits the content on first occurrence only and a reference later on.<br/><br/>
+ * Instances are not thread-safe and must be used for a single payload only 
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class BinaryMessageWriter {
+
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** buffer receiving the content */
+	private byte[] buffer;
+	/** number of bytes written to the buffer */
+	private int position = 0;
+	/** strings written via dictionary along with their reference */
+	private Map<String, Integer> dictionary = null;
+	
+	/**
+	 * Initializes the writer using the provided input
+	 * @param initialCapacity
+	 */
+	public BinaryMessageWriter(final int initialCapacity) {
+		this.buffer = new byte[Math.max(16, initialCapacity)];
+	}
+	
+	/**
+	 * Writes a single byte
+	 * @param value
+	 */
+	public void writeByte(final int value) {
+		ensureCapacity(1);
+		this.buffer[this.position++] = (byte)value;
+	}
+	
+	/**
+	 * Writes a non-negative integer using 1 to 5 bytes
+	 * @param value
+	 */
+	public void writeVarInt(final int value) {
+		ensureCapacity(5);
+		int remaining = value;
+		while((remaining & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte)((remaining & 0x7F) | 0x80);
+			remaining = remaining >>> 7;
+		}
+		this.buffer[this.position++] = (byte)remaining;
+	}
+	
+	/**
+	 * Writes the given long value using 8 bytes
+	 * @param value
+	 */
+	public void writeLong(final long value) {
+		ensureCapacity(8);
+		for(int shift = 56; shift >= 0; shift = shift - 8)
+			this.buffer[this.position++] = (byte)(value >>> shift);
+	}
+	
+	/**
+	 * Writes the given byte array along with its length
+	 * @param value
+	 */
+	public void writeBytes(final byte[] value) {
+		if(value == null) {
+			writeVarInt(0);
+			return;
+		}
+		writeVarInt(value.length + 1);
+		ensureCapacity(value.length);
+		System.arraycopy(value, 0, this.buffer, this.position, value.length);
+		this.position = this.position + value.length;
+	}
+	
+	/**
+	 * Writes the UTF-8 representation of the given string along with its length
+	 * @param value
+	 */
+	public void writeString(final String value) {
+		writeBytes(value != null ? value.getBytes(UTF8) : null);
+	}
+	
+	/**
+	 * Writes the given string on its first occurrence within the payload, later occurrences are written as reference
+	 * @param value
+	 */
+	public void writeDictionaryString(final String value) {
+		if(this.dictionary == null)
+			this.dictionary = new HashMap<>();
+		Integer reference = this.dictionary.get(value);
+		if(reference != null) {
+			writeVarInt(reference.intValue() + 1);
+		} else {
+			this.dictionary.put(value, Integer.valueOf(this.dictionary.size()));
+			writeVarInt(0);
+			writeString(value);
+		}
+	}
+	
+	/**
+	 * Returns the content written so far
+	 * @return
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.position);
+	}
+	
+	/**
+	 * Returns the number of bytes written so far
+	 * @return
+	 */
+	public int size() {
+		return this.position;
+	}
+	
+	/**
+	 * Grows the buffer if it cannot hold the given number of additional bytes
+	 * @param additionalBytes
+	 */
+	protected void ensureCapacity(final int additionalBytes) {
+		if(this.position + additionalBytes > this.buffer.length)
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + additionalBytes));
+	}
+}
@@ -0,0 +1,511 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import akka.actor.ActorRef;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JSerializer;
+import akka.serialization.Serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mnxfst.stream.directory.ComponentType;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
+import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.pipeline.config.PipelineRootConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUnknownMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementSetupFailedMessage;
+import com.mnxfst.stream.pipeline.message.PipelineLoadReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineRootInitializedMessage;
+import com.mnxfst.stream.pipeline.message.PipelineSetupMessage;
+import com.mnxfst.stream.pipeline.message.PipelineSetupResponseMessage;
+import com.mnxfst.stream.pipeline.message.PipelineShutdownMessage;
+import com.mnxfst.stream.pipeline.message.PipelineShutdownResponseMessage;
+
+/**
+ * Binary {@link akka.serialization.Serializer serializer} for the control messages exchanged with the 
+ * {@link com.mnxfst.stream.directory.ComponentRegistry component registry} and the pipeline components. Each 
+ * message is written as type tag followed by its fields, {@link ActorRef actor references} are transferred via
+ * their serialized path and resolved by the receiving {@link ExtendedActorSystem actor system}. The pipeline 
+ * configuration carried by a {@link PipelineSetupMessage} is rarely sent, thus it is written as JSON.<br/><br/>
+ * The serializer must be bound to the supported classes via <code>akka.actor.serialization-bindings</code>
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class ControlMessageSerializer extends JSerializer {
+
+	public static final int SERIALIZER_ID = 8402;
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	/** version of the binary format - increased on incompatible changes */
+	protected static final byte FORMAT_VERSION = 1;
+	
+	protected static final byte TYPE_COMPONENT_REGISTRATION = 1;
+	protected static final byte TYPE_COMPONENT_REGISTRATION_RESPONSE = 2;
+	protected static final byte TYPE_COMPONENT_DEREGISTRATION = 3;
+	protected static final byte TYPE_COMPONENT_DEREGISTRATION_RESPONSE = 4;
+	protected static final byte TYPE_COMPONENT_DEREGISTRATION_NOTIFICATION = 5;
+	protected static final byte TYPE_COMPONENT_LOOKUP = 6;
+	protected static final byte TYPE_COMPONENT_LOOKUP_RESPONSE = 7;
+	protected static final byte TYPE_COMPONENT_BULK_LOOKUP = 8;
+	protected static final byte TYPE_COMPONENT_BULK_LOOKUP_RESPONSE = 9;
+	protected static final byte TYPE_COMPONENT_SUBSCRIPTION = 10;
+	protected static final byte TYPE_PIPELINE_ELEMENT_REFERENCE_UNKNOWN = 20;
+	protected static final byte TYPE_PIPELINE_ELEMENT_REFERENCE_UPDATE = 21;
+	protected static final byte TYPE_PIPELINE_ELEMENT_SETUP_FAILED = 22;
+	protected static final byte TYPE_PIPELINE_ROOT_INITIALIZED = 23;
+	protected static final byte TYPE_PIPELINE_SETUP = 24;
+	protected static final byte TYPE_PIPELINE_SETUP_RESPONSE = 25;
+	protected static final byte TYPE_PIPELINE_SHUTDOWN = 26;
+	protected static final byte TYPE_PIPELINE_SHUTDOWN_RESPONSE = 27;
+	protected static final byte TYPE_PIPELINE_LOAD_REPORT = 28;
+	protected static final byte TYPE_PIPELINE_ELEMENT_FLOW_REQUEST = 29;
+	protected static final byte TYPE_PIPELINE_ELEMENT_FLOW_REPORT = 30;
+	protected static final byte TYPE_FLOW_CREDIT = 40;
+	
+	private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+	
+	/** actor system used for resolving actor references */
+	private final ExtendedActorSystem system;
+	
+	/**
+	 * Initializes the serializer using the provided input - invoked by akka
+	 * @param system
+	 */
+	public ControlMessageSerializer(final ExtendedActorSystem system) {
+		this.system = system;
+	}
+
+	/**
+	 * @see akka.serialization.Serializer#identifier()
+	 */
+	public int identifier() {
+		return SERIALIZER_ID;
+	}
+
+	/**
+	 * @see akka.serialization.Serializer#includeManifest()
+	 */
+	public boolean includeManifest() {
+		return false;
+	}
+
+	/**
+	 * @see akka.serialization.Serializer#toBinary(java.lang.Object)
+	 */
+	public byte[] toBinary(Object obj) {
+		
+		BinaryMessageWriter writer = new BinaryMessageWriter(128);
+		writer.writeByte(FORMAT_VERSION);
+		
+		if(obj instanceof ComponentRegistrationMessage) {
+			ComponentRegistrationMessage msg = (ComponentRegistrationMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_REGISTRATION);
+			writer.writeString(msg.getId());
+			writeComponentType(writer, msg.getType());
+			writeActorRef(writer, msg.getReference());
+		} else if(obj instanceof ComponentRegistrationResponseMessage) {
+			ComponentRegistrationResponseMessage msg = (ComponentRegistrationResponseMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_REGISTRATION_RESPONSE);
+			writer.writeString(msg.getId());
+			writeComponentType(writer, msg.getType());
+			writer.writeVarInt(msg.getState());
+		} else if(obj instanceof ComponentDeregistrationMessage) {
+			ComponentDeregistrationMessage msg = (ComponentDeregistrationMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_DEREGISTRATION);
+			writer.writeString(msg.getId());
+			writeComponentType(writer, msg.getType());
+		} else if(obj instanceof ComponentDeregistrationResponseMessage) {
+			ComponentDeregistrationResponseMessage msg = (ComponentDeregistrationResponseMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_DEREGISTRATION_RESPONSE);
+			writer.writeString(msg.getId());
+			writeComponentType(writer, msg.getType());
+			writer.writeVarInt(msg.getState());
+		} else if(obj instanceof ComponentDeregistrationNotificationMessage) {
+			ComponentDeregistrationNotificationMessage msg = (ComponentDeregistrationNotificationMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_DEREGISTRATION_NOTIFICATION);
+			writer.writeString(msg.getId());
+			writeComponentType(writer, msg.getType());
+		} else if(obj instanceof ComponentLookupMessage) {
+			ComponentLookupMessage msg = (ComponentLookupMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_LOOKUP);
+			writeComponentType(writer, msg.getType());
+			writeStrings(writer, msg.getComponentIds());
+		} else if(obj instanceof ComponentLookupResponseMessage) {
+			ComponentLookupResponseMessage msg = (ComponentLookupResponseMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_LOOKUP_RESPONSE);
+			writeComponentType(writer, msg.getType());
+			writeActorRefs(writer, msg.getComponentReferences());
+		} else if(obj instanceof ComponentBulkLookupMessage) {
+			ComponentBulkLookupMessage msg = (ComponentBulkLookupMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_BULK_LOOKUP);
+			Map<ComponentType, Set<String>> componentIds = msg.getComponentIds();
+			writer.writeVarInt(componentIds != null ? componentIds.size() : 0);
+			if(componentIds != null) {
+				for(Map.Entry<ComponentType, Set<String>> entry : componentIds.entrySet()) {
+					writeComponentType(writer, entry.getKey());
+					writeStrings(writer, entry.getValue());
+				}
+			}
+		} else if(obj instanceof ComponentBulkLookupResponseMessage) {
+			ComponentBulkLookupResponseMessage msg = (ComponentBulkLookupResponseMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_BULK_LOOKUP_RESPONSE);
+			Map<ComponentType, Map<String, ActorRef>> references = msg.getComponentReferences();
+			writer.writeVarInt(references != null ? references.size() : 0);
+			if(references != null) {
+				for(Map.Entry<ComponentType, Map<String, ActorRef>> entry : references.entrySet()) {
+					writeComponentType(writer, entry.getKey());
+					writeActorRefs(writer, entry.getValue());
+				}
+			}
+		} else if(obj instanceof ComponentSubscriptionMessage) {
+			ComponentSubscriptionMessage msg = (ComponentSubscriptionMessage)obj;
+			writer.writeByte(TYPE_COMPONENT_SUBSCRIPTION);
+			writeComponentType(writer, msg.getType());
+			writeStrings(writer, msg.getComponentIds());
+		} else if(obj instanceof PipelineElementReferenceUnknownMessage) {
+			PipelineElementReferenceUnknownMessage msg = (PipelineElementReferenceUnknownMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_ELEMENT_REFERENCE_UNKNOWN);
+			writer.writeString(msg.getPipelineId());
+			writer.writeString(msg.getElementId());
+			writer.writeString(msg.getUnknownElementId());
+		} else if(obj instanceof PipelineElementReferenceUpdateMessage) {
+			PipelineElementReferenceUpdateMessage msg = (PipelineElementReferenceUpdateMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_ELEMENT_REFERENCE_UPDATE);
+			writer.writeString(msg.getPipelineId());
+			writeActorRefs(writer, msg.getElementReferences());
+		} else if(obj instanceof PipelineElementSetupFailedMessage) {
+			PipelineElementSetupFailedMessage msg = (PipelineElementSetupFailedMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_ELEMENT_SETUP_FAILED);
+			writer.writeString(msg.getPipelineId());
+			writer.writeString(msg.getElementId());
+			writer.writeVarInt(msg.getError());
+			writer.writeString(msg.getMessage());
+		} else if(obj instanceof PipelineRootInitializedMessage) {
+			writer.writeByte(TYPE_PIPELINE_ROOT_INITIALIZED);
+			writer.writeString(((PipelineRootInitializedMessage)obj).getPipelineId());
+		} else if(obj instanceof PipelineSetupMessage) {
+			writer.writeByte(TYPE_PIPELINE_SETUP);
+			try {
+				PipelineRootConfiguration configuration = ((PipelineSetupMessage)obj).getConfiguration();
+				writer.writeBytes(configuration != null ? MAPPER.writeValueAsBytes(configuration) : null);
+			} catch(IOException e) {
+				throw new IllegalArgumentException("Failed to serialize pipeline configuration. Error: " + e.getMessage(), e);
+			}
+		} else if(obj instanceof PipelineSetupResponseMessage) {
+			PipelineSetupResponseMessage msg = (PipelineSetupResponseMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_SETUP_RESPONSE);
+			writer.writeString(msg.getPipelineId());
+			writer.writeVarInt(msg.getResponseCode());
+			writer.writeString(msg.getResponseMessage());
+		} else if(obj instanceof PipelineShutdownMessage) {
+			writer.writeByte(TYPE_PIPELINE_SHUTDOWN);
+			writer.writeString(((PipelineShutdownMessage)obj).getPipelineId());
+		} else if(obj instanceof PipelineShutdownResponseMessage) {
+			writer.writeByte(TYPE_PIPELINE_SHUTDOWN_RESPONSE);
+			writer.writeString(((PipelineShutdownResponseMessage)obj).getPipelineId());
+		} else if(obj instanceof PipelineLoadReportMessage) {
+			PipelineLoadReportMessage msg = (PipelineLoadReportMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_LOAD_REPORT);
+			writer.writeString(msg.getPipelineId());
+			writer.writeLong(msg.getReceivedEvents());
+			writer.writeLong(msg.getLatencyMillis());
+		} else if(obj instanceof PipelineElementFlowRequestMessage) {
+			writer.writeByte(TYPE_PIPELINE_ELEMENT_FLOW_REQUEST);
+			writer.writeString(((PipelineElementFlowRequestMessage)obj).getPipelineId());
+		} else if(obj instanceof PipelineElementFlowReportMessage) {
+			PipelineElementFlowReportMessage msg = (PipelineElementFlowReportMessage)obj;
+			writer.writeByte(TYPE_PIPELINE_ELEMENT_FLOW_REPORT);
+			writer.writeString(msg.getPipelineId());
+			writer.writeString(msg.getElementId());
+			writer.writeLong(msg.getReceivedEvents());
+			writer.writeLong(msg.getPendingEvents());
+			Map<String, Long> forwardedEvents = msg.getForwardedEvents();
+			writer.writeVarInt(forwardedEvents != null ? forwardedEvents.size() : 0);
+			if(forwardedEvents != null) {
+				for(Map.Entry<String, Long> entry : forwardedEvents.entrySet()) {
+					writer.writeString(entry.getKey());
+					writer.writeLong(entry.getValue() != null ? entry.getValue() : 0);
+				}
+			}
+		} else if(obj instanceof FlowCreditMessage) {
+			FlowCreditMessage msg = (FlowCreditMessage)obj;
+			writer.writeByte(TYPE_FLOW_CREDIT);
+			writer.writeString(msg.getSourceId());
+			writer.writeLong(msg.getCreditLimit());
+			writer.writeString(msg.getInstanceId());
+			writer.writeLong(msg.getReceivedEvents());
+		} else {
+			throw new IllegalArgumentException("Unsupported message type: " + (obj != null ? obj.getClass().getName() : "null"));
+		}
+		
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @see akka.serialization.JSerializer#fromBinaryJava(byte[], java.lang.Class)
+	 */
+	public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+		
+		BinaryMessageReader reader = new BinaryMessageReader(bytes);
+		int version = reader.readByte();
+		if(version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version: " + version);
+		
+		int type = reader.readByte();
+		switch(type) {
+			case TYPE_COMPONENT_REGISTRATION: {
+				String id = reader.readString();
+				ComponentType componentType = readComponentType(reader);
+				return new ComponentRegistrationMessage(id, componentType, readActorRef(reader));
+			}
+			case TYPE_COMPONENT_REGISTRATION_RESPONSE: {
+				String id = reader.readString();
+				ComponentType componentType = readComponentType(reader);
+				return new ComponentRegistrationResponseMessage(id, componentType, reader.readVarInt());
+			}
+			case TYPE_COMPONENT_DEREGISTRATION: {
+				String id = reader.readString();
+				return new ComponentDeregistrationMessage(id, readComponentType(reader));
+			}
+			case TYPE_COMPONENT_DEREGISTRATION_RESPONSE: {
+				String id = reader.readString();
+				ComponentType componentType = readComponentType(reader);
+				return new ComponentDeregistrationResponseMessage(id, componentType, reader.readVarInt());
+			}
+			case TYPE_COMPONENT_DEREGISTRATION_NOTIFICATION: {
+				String id = reader.readString();
+				return new ComponentDeregistrationNotificationMessage(id, readComponentType(reader));
+			}
+			case TYPE_COMPONENT_LOOKUP: {
+				ComponentLookupMessage msg = new ComponentLookupMessage(readComponentType(reader));
+				msg.setComponentIds(readStrings(reader));
+				return msg;
+			}
+			case TYPE_COMPONENT_LOOKUP_RESPONSE: {
+				ComponentLookupResponseMessage msg = new ComponentLookupResponseMessage(readComponentType(reader));
+				msg.setComponentReferences(readActorRefs(reader));
+				return msg;
+			}
+			case TYPE_COMPONENT_BULK_LOOKUP: {
+				ComponentBulkLookupMessage msg = new ComponentBulkLookupMessage();
+				int size = reader.readVarInt();
+				for(int i = 0; i < size; i++) {
+					ComponentType componentType = readComponentType(reader);
+					msg.getComponentIds().put(componentType, readStrings(reader));
+				}
+				return msg;
+			}
+			case TYPE_COMPONENT_BULK_LOOKUP_RESPONSE: {
+				ComponentBulkLookupResponseMessage msg = new ComponentBulkLookupResponseMessage();
+				int size = reader.readVarInt();
+				for(int i = 0; i < size; i++) {
+					ComponentType componentType = readComponentType(reader);
+					msg.getComponentReferences().put(componentType, readActorRefs(reader));
+				}
+				return msg;
+			}
+			case TYPE_COMPONENT_SUBSCRIPTION: {
+				ComponentSubscriptionMessage msg = new ComponentSubscriptionMessage(readComponentType(reader));
+				msg.setComponentIds(readStrings(reader));
+				return msg;
+			}
+			case TYPE_PIPELINE_ELEMENT_REFERENCE_UNKNOWN: {
+				String pipelineId = reader.readString();
+				String elementId = reader.readString();
+				return new PipelineElementReferenceUnknownMessage(pipelineId, elementId, reader.readString());
+			}
+			case TYPE_PIPELINE_ELEMENT_REFERENCE_UPDATE: {
+				PipelineElementReferenceUpdateMessage msg = new PipelineElementReferenceUpdateMessage(reader.readString());
+				msg.setElementReferences(readActorRefs(reader));
+				return msg;
+			}
+			case TYPE_PIPELINE_ELEMENT_SETUP_FAILED: {
+				String pipelineId = reader.readString();
+				String elementId = reader.readString();
+				int error = reader.readVarInt();
+				return new PipelineElementSetupFailedMessage(pipelineId, elementId, error, reader.readString());
+			}
+			case TYPE_PIPELINE_ROOT_INITIALIZED: {
+				return new PipelineRootInitializedMessage(reader.readString());
+			}
+			case TYPE_PIPELINE_SETUP: {
+				byte[] configuration = reader.readBytes();
+				try {
+					return new PipelineSetupMessage(configuration != null ? MAPPER.readValue(configuration, PipelineRootConfiguration.class) : null);
+				} catch(IOException e) {
+					throw new IllegalArgumentException("Failed to deserialize pipeline configuration. Error: " + e.getMessage(), e);
+				}
+			}
+			case TYPE_PIPELINE_SETUP_RESPONSE: {
+				String pipelineId = reader.readString();
+				int responseCode = reader.readVarInt();
+				return new PipelineSetupResponseMessage(pipelineId, responseCode, reader.readString());
+			}
+			case TYPE_PIPELINE_SHUTDOWN: {
+				return new PipelineShutdownMessage(reader.readString());
+			}
+			case TYPE_PIPELINE_SHUTDOWN_RESPONSE: {
+				return new PipelineShutdownResponseMessage(reader.readString());
+			}
+			case TYPE_PIPELINE_LOAD_REPORT: {
+				String pipelineId = reader.readString();
+				long receivedEvents = reader.readLong();
+				return new PipelineLoadReportMessage(pipelineId, receivedEvents, reader.readLong());
+			}
+			case TYPE_PIPELINE_ELEMENT_FLOW_REQUEST: {
+				return new PipelineElementFlowRequestMessage(reader.readString());
+			}
+			case TYPE_PIPELINE_ELEMENT_FLOW_REPORT: {
+				String pipelineId = reader.readString();
+				String elementId = reader.readString();
+				long receivedEvents = reader.readLong();
+				PipelineElementFlowReportMessage msg = new PipelineElementFlowReportMessage(pipelineId, elementId, receivedEvents, reader.readLong());
+				int size = reader.readVarInt();
+				for(int i = 0; i < size; i++) {
+					String destination = reader.readString();
+					msg.getForwardedEvents().put(destination, reader.readLong());
+				}
+				return msg;
+			}
+			case TYPE_FLOW_CREDIT: {
+				String sourceId = reader.readString();
+				long creditLimit = reader.readLong();
+				String instanceId = reader.readString();
+				return new FlowCreditMessage(sourceId, creditLimit, instanceId, reader.readLong());
+			}
+			default:
+				throw new IllegalArgumentException("Unsupported message type: " + type);
+		}
+	}
+	
+	/**
+	 * Writes the given component type - null is allowed
+	 * @param writer
+	 * @param type
+	 */
+	protected void writeComponentType(final BinaryMessageWriter writer, final ComponentType type) {
+		writer.writeVarInt(type != null ? type.ordinal() + 1 : 0);
+	}
+	
+	/**
+	 * Reads a component type written by {@link #writeComponentType(BinaryMessageWriter, ComponentType)}
+	 * @param reader
+	 * @return
+	 */
+	protected ComponentType readComponentType(final BinaryMessageReader reader) {
+		int value = reader.readVarInt();
+		if(value == 0)
+			return null;
+		if(value > COMPONENT_TYPES.length)
+			throw new IllegalArgumentException("Unknown component type: " + value);
+		return COMPONENT_TYPES[value - 1];
+	}
+	
+	/**
+	 * Writes the given set of strings
+	 * @param writer
+	 * @param values
+	 */
+	protected void writeStrings(final BinaryMessageWriter writer, final Set<String> values) {
+		writer.writeVarInt(values != null ? values.size() : 0);
+		if(values != null) {
+			for(String value : values)
+				writer.writeString(value);
+		}
+	}
+	
+	/**
+	 * Reads a set of strings written by {@link #writeStrings(BinaryMessageWriter, Set)}
+	 * @param reader
+	 * @return
+	 */
+	protected Set<String> readStrings(final BinaryMessageReader reader) {
+		int size = reader.readVarInt();
+		Set<String> values = new HashSet<>();
+		for(int i = 0; i < size; i++)
+			values.add(reader.readString());
+		return values;
+	}
+	
+	/**
+	 * Writes the serialized path of the given actor reference - null is allowed
+	 * @param writer
+	 * @param reference
+	 */
+	protected void writeActorRef(final BinaryMessageWriter writer, final ActorRef reference) {
+		writer.writeString(reference != null ? Serialization.serializedActorPath(reference) : null);
+	}
+	
+	/**
+	 * Resolves the actor reference written by {@link #writeActorRef(BinaryMessageWriter, ActorRef)}
+	 * @param reader
+	 * @return
+	 */
+	protected ActorRef readActorRef(final BinaryMessageReader reader) {
+		String path = reader.readString();
+		return (path != null ? this.system.provider().resolveActorRef(path) : null);
+	}
+	
+	/**
+	 * Writes the given map of identifiers and actor references
+	 * @param writer
+	 * @param references
+	 */
+	protected void writeActorRefs(final BinaryMessageWriter writer, final Map<String, ActorRef> references) {
+		writer.writeVarInt(references != null ? references.size() : 0);
+		if(references != null) {
+			for(Map.Entry<String, ActorRef> entry : references.entrySet()) {
+				writer.writeString(entry.getKey());
+				writeActorRef(writer, entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Reads a map of identifiers and actor references written by {@link #writeActorRefs(BinaryMessageWriter, Map)}
+	 * @param reader
+	 * @return
+	 */
+	protected Map<String, ActorRef> readActorRefs(final BinaryMessageReader reader) {
+		int size = reader.readVarInt();
+		Map<String, ActorRef> references = new HashMap<>();
+		for(int i = 0; i < size; i++) {
+			String id = reader.readString();
+			references.put(id, readActorRef(reader));
+		}
+		return references;
+	}
+}
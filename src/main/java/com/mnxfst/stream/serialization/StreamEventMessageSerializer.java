@@ -0,0 +1,183 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import akka.serialization.JSerializer;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Binary {@link akka.serialization.Serializer serializer} for {@link StreamEventMessage event messages} and 
+ * {@link StreamEventBatch batches} transferred between remote actor systems. Each event is written as sequence 
+ * of length prefixed strings and fixed size times followed by its custom attributes. Attribute keys are kept in a dictionary which spans 
+ * the whole payload, thus keys recurring throughout a batch are written once only. The event content is transferred 
+ * as UTF-8 bytes and is not decoded by the receiving side until requested.<br/><br/>
+ * The serializer must be bound to the supported classes via <code>akka.actor.serialization-bindings</code>
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class StreamEventMessageSerializer extends JSerializer {
+
+	public static final int SERIALIZER_ID = 8401;
+	
+	/** version of the binary format - increased on incompatible changes */
+	protected static final byte FORMAT_VERSION = 2;
+	protected static final byte TYPE_EVENT = 1;
+	protected static final byte TYPE_BATCH = 2;
+	
+	/**
+	 * @see akka.serialization.Serializer#identifier()
+	 */
+	public int identifier() {
+		return SERIALIZER_ID;
+	}
+
+	/**
+	 * @see akka.serialization.Serializer#includeManifest()
+	 */
+	public boolean includeManifest() {
+		return false;
+	}
+
+	/**
+	 * @see akka.serialization.Serializer#toBinary(java.lang.Object)
+	 */
+	public byte[] toBinary(Object obj) {
+		
+		if(obj instanceof StreamEventMessage) {
+			StreamEventMessage message = (StreamEventMessage)obj;
+			BinaryMessageWriter writer = new BinaryMessageWriter(estimateSize(message));
+			writer.writeByte(FORMAT_VERSION);
+			writer.writeByte(TYPE_EVENT);
+			writeEvent(writer, message);
+			return writer.toByteArray();
+		} 
+		
+		if(obj instanceof StreamEventBatch) {
+			StreamEventBatch batch = (StreamEventBatch)obj;
+			List<StreamEventMessage> events = batch.getEvents();
+			int size = batch.size();
+			BinaryMessageWriter writer = new BinaryMessageWriter(size > 0 ? size * estimateSize(events.get(0)) : 16);
+			writer.writeByte(FORMAT_VERSION);
+			writer.writeByte(TYPE_BATCH);
+			writer.writeVarInt(size);
+			for(int i = 0; i < size; i++)
+				writeEvent(writer, events.get(i));
+			return writer.toByteArray();
+		}
+		
+		throw new IllegalArgumentException("Unsupported message type: " + (obj != null ? obj.getClass().getName() : "null"));
+	}
+
+	/**
+	 * @see akka.serialization.JSerializer#fromBinaryJava(byte[], java.lang.Class)
+	 */
+	public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+		
+		BinaryMessageReader reader = new BinaryMessageReader(bytes);
+		int version = reader.readByte();
+		if(version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version: " + version);
+		
+		int type = reader.readByte();
+		switch(type) {
+			case TYPE_EVENT: {
+				return readEvent(reader);
+			}
+			case TYPE_BATCH: {
+				int size = reader.readVarInt();
+				List<StreamEventMessage> events = new ArrayList<>(size);
+				for(int i = 0; i < size; i++)
+					events.add(readEvent(reader));
+				return new StreamEventBatch(events);
+			}
+			default:
+				throw new IllegalArgumentException("Unsupported message type: " + type);
+		}
+	}
+	
+	/**
+	 * Writes the given event to the provided writer
+	 * @param writer
+	 * @param message
+	 */
+	protected void writeEvent(final BinaryMessageWriter writer, final StreamEventMessage message) {
+		writer.writeString(message.getIdentifier());
+		writer.writeString(message.getOrigin());
+		writer.writeLong(message.getIngestionTime());
+		writer.writeLong(message.getEventTime());
+		writer.writeBytes(message.getEventBytes());
+		
+		Map<String, String> attributes = message.getCustomAttributes();
+		writer.writeVarInt(attributes.size());
+		for(Map.Entry<String, String> attribute : attributes.entrySet()) {
+			writer.writeDictionaryString(attribute.getKey());
+			writer.writeString(attribute.getValue());
+		}
+	}
+	
+	/**
+	 * Reads an event from the provided reader
+	 * @param reader
+	 * @return
+	 */
+	protected StreamEventMessage readEvent(final BinaryMessageReader reader) {
+		String identifier = reader.readString();
+		String origin = reader.readString();
+		long ingestionTime = reader.readLong();
+		long eventTime = reader.readLong();
+		byte[] event = reader.readBytes();
+		
+		int attributeCount = reader.readVarInt();
+		Map<String, String> attributes = null;
+		if(attributeCount > 0) {
+			attributes = new HashMap<>();
+			for(int i = 0; i < attributeCount; i++) {
+				String key = reader.readDictionaryString();
+				attributes.put(key, reader.readString());
+			}
+		}
+		
+		StreamEventMessage message = (event != null ? StreamEventMessage.fromUtf8(identifier, origin, ingestionTime, event, attributes) :
+			new StreamEventMessage(identifier, origin, ingestionTime, null, attributes));
+		return (eventTime != StreamEventMessage.NO_EVENT_TIME ? message.withEventTime(eventTime) : message);
+	}
+	
+	/**
+	 * Returns the estimated number of bytes required for the given message, used to size the write buffer 
+	 * @param message
+	 * @return
+	 */
+	protected int estimateSize(final StreamEventMessage message) {
+		if(message == null)
+			return 16;
+		// strings are assumed to be mostly ascii, content held as bytes is not encoded again 
+		int size = 48 + length(message.getIdentifier()) + length(message.getOrigin());
+		size = size + (message.isUtf8Payload() ? message.getEventBytes().length : length(message.getEvent()));
+		return size + message.getCustomAttributes().size() * 32;
+	}
+	
+	private static int length(final String value) {
+		return (value != null ? value.length() : 0);
+	}
+}
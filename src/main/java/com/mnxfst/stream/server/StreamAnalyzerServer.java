@@ -32,6 +32,7 @@ import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.ObjectMapper;
 
@@ -122,8 +123,14 @@ public class StreamAnalyzerServer  {
 		// step through configurations
 		for(final StreamEventListenerConfiguration listenerCfg : listenerConfigurations) {
 			if(listenerCfg != null) {
-				logger.info("listener [id="+listenerCfg.getId()+", name="+listenerCfg.getName()+", class="+listenerCfg.getListenerClass()+", version=" + listenerCfg.getVersion()+"]");
-				this.rootActorSystem.actorOf(Props.create(Class.forName(listenerCfg.getListenerClass()), listenerCfg, componentRegistryRef), listenerCfg.getId());
+				// each shard is run by an instance of its own
+				for(final StreamEventListenerConfiguration shardCfg : listenerCfg.createShardConfigurations()) {
+					logger.info("listener [id="+shardCfg.getId()+", name="+shardCfg.getName()+", class="+shardCfg.getListenerClass()+", version=" + shardCfg.getVersion()+", dispatcher="+shardCfg.getDispatcher()+"]");
+					Props listenerProps = Props.create(Class.forName(shardCfg.getListenerClass()), shardCfg, componentRegistryRef);
+					if(StringUtils.isNotBlank(shardCfg.getDispatcher()))
+						listenerProps = listenerProps.withDispatcher(shardCfg.getDispatcher());
+					this.rootActorSystem.actorOf(listenerProps, shardCfg.getId());
+				}
 			}
 		}		
 	}
@@ -140,8 +147,15 @@ public class StreamAnalyzerServer  {
 		for(final StreamEventMessageDispatcherConfiguration dispCfg : dispatcherConfigurations) {
 			
 			if(dispCfg != null) {
-				logger.info("dispatcher [id="+dispCfg.getId()+", name="+dispCfg.getName()+", policy="+dispCfg.getDispatchPolicy().getPolicyClass()+"]");
-				this.rootActorSystem.actorOf(Props.create(StreamEventMessageDispatcher.class, dispCfg, componentRegistryRef), dispCfg.getId());
+				logger.info("dispatcher [id="+dispCfg.getId()+", name="+dispCfg.getName()+", policy="+dispCfg.getDispatchPolicy().getPolicyClass()+", dispatcher="+dispCfg.getDispatcher()+", instances="+dispCfg.getInstances()+", routerType="+dispCfg.getRouterType()+"]");
+				Props dispatcherProps = Props.create(StreamEventMessageDispatcher.class, dispCfg, componentRegistryRef);
+				if(StringUtils.isNotBlank(dispCfg.getDispatcher()))
+					dispatcherProps = dispatcherProps.withDispatcher(dispCfg.getDispatcher());
+				if(StringUtils.isNotBlank(dispCfg.getMailbox()))
+					dispatcherProps = dispatcherProps.withMailbox(dispCfg.getMailbox());
+				if(dispCfg.getInstances() > 1)
+					dispatcherProps = dispatcherProps.withRouter(StreamEventMessageDispatcher.createRouterConfig(dispCfg));
+				this.rootActorSystem.actorOf(dispatcherProps, dispCfg.getId());
 			}			
 		}		
 	}
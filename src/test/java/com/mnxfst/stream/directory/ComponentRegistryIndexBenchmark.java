@@ -0,0 +1,111 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.directory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+
+/**
+ * Measures lookups on the {@link ComponentRegistryIndex} compared to the former string concatenated keys. Run it
+ * via {@link #main(String[])} from the test classpath: the attached {@link GCProfiler} reports the allocation rate
+ * per operation (gc.alloc.rate.norm) which must be ~0 bytes for lookups of cached identifiers  
+ * @author mnxfst
+ * @since 22.03.2014
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentRegistryIndexBenchmark {
+
+	private static final int NUM_OF_COMPONENTS = 64;
+	
+	private ActorSystem system;
+	private ComponentRegistryIndex index;
+	private Map<String, ComponentRegistryEntry> concatenatedKeyIndex;
+	private String[] componentIds;
+	private int position = 0;
+	
+	@Setup
+	public void setup() {
+		this.system = ActorSystem.create("benchmark");
+		this.index = new ComponentRegistryIndex();
+		this.concatenatedKeyIndex = new HashMap<>();
+		this.componentIds = new String[NUM_OF_COMPONENTS];
+		for(int i = 0; i < NUM_OF_COMPONENTS; i++) {
+			this.componentIds[i] = "pipeline-" + i;
+			ActorRef ref = this.system.actorOf(Props.create(ComponentRegistry.class), this.componentIds[i]);
+			ComponentRegistryEntry entry = new ComponentRegistryEntry(this.componentIds[i], ComponentType.PIPELINE_ROOT, ref);
+			this.index.add(entry);
+			this.concatenatedKeyIndex.put(ComponentType.PIPELINE_ROOT + "#" + this.componentIds[i], entry);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		this.system.shutdown();
+	}
+	
+	/**
+	 * Lookup via per-type index
+	 * @return
+	 */
+	@Benchmark
+	public ActorRef lookupTypeIndex() {
+		this.position = (this.position + 1) & (NUM_OF_COMPONENTS - 1);
+		return this.index.getReference(ComponentType.PIPELINE_ROOT, this.componentIds[this.position]);
+	}
+	
+	/**
+	 * Lookup via concatenated string keys - baseline
+	 * @return
+	 */
+	@Benchmark
+	public ActorRef lookupConcatenatedKey() {
+		this.position = (this.position + 1) & (NUM_OF_COMPONENTS - 1);
+		ComponentRegistryEntry entry = this.concatenatedKeyIndex.get(ComponentType.PIPELINE_ROOT + "#" + this.componentIds[this.position]);
+		return (entry != null ? entry.getReference() : null);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().include(ComponentRegistryIndexBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
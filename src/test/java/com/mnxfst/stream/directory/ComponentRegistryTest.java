@@ -31,10 +31,14 @@ import akka.testkit.TestActorRef;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mnxfst.stream.config.StreamAnalyzerConfiguration;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupMessage;
 import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
 import com.mnxfst.stream.dispatcher.config.DispatchPolicyConfiguration;
 import com.mnxfst.stream.dispatcher.config.StreamEventMessageDispatcherConfiguration;
 import com.mnxfst.stream.dispatcher.policy.BroadcastDispatchPolicy;
@@ -188,6 +192,77 @@ public class ComponentRegistryTest {
 		};
 	}
 	
+	/**
+	 * Test case for {@link ComponentRegistry} being provided a {@link ComponentSubscriptionMessage}, expecting registrations and
+	 * deregistrations (via termination) to be pushed
+	 */
+	@Test
+	public void testSubscribeExpectingPushedRegistrationsAndTerminations() {
+				
+		new JavaTestKit(system) { 
+			{
+				final ActorRef registryRef = system.actorOf(Props.create(ComponentRegistry.class), "testSubscribeExpectingPushedRegistrationsAndTerminations");				
+				final JavaTestKit component = new JavaTestKit(system);
+				
+				// subscribe before the component exists, expecting an empty snapshot
+				ComponentSubscriptionMessage subscriptionMsg = new ComponentSubscriptionMessage(ComponentType.PIPELINE_ROOT);
+				subscriptionMsg.addComponentId("pipe-1");
+				registryRef.tell(subscriptionMsg, getRef());
+				expectMsgAllOf(FiniteDuration.apply(500, TimeUnit.MILLISECONDS), new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT));
+				
+				// register a component not subscribed for and the subscribed one
+				registryRef.tell(new ComponentRegistrationMessage("pipe-2", ComponentType.PIPELINE_ROOT, component.getRef()), component.getRef());
+				registryRef.tell(new ComponentRegistrationMessage("pipe-1", ComponentType.PIPELINE_ROOT, component.getRef()), component.getRef());
+				ComponentLookupResponseMessage expectedPush = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+				expectedPush.addComponentReference("pipe-1", component.getRef());
+				expectMsgAllOf(FiniteDuration.apply(500, TimeUnit.MILLISECONDS), expectedPush);
+				
+				// stop the component, expecting a deregistration notification for the subscribed component only
+				system.stop(component.getRef());
+				ComponentDeregistrationNotificationMessage notification = expectMsgClass(FiniteDuration.apply(500, TimeUnit.MILLISECONDS), ComponentDeregistrationNotificationMessage.class);
+				Assert.assertEquals("The id must be equal", "pipe-1", notification.getId());
+				Assert.assertEquals("The type must be equal", ComponentType.PIPELINE_ROOT, notification.getType());
+				expectNoMsg(FiniteDuration.apply(200, TimeUnit.MILLISECONDS));
+				
+				// lookups must not return the terminated component
+				ComponentLookupMessage lookupMsg = new ComponentLookupMessage(ComponentType.PIPELINE_ROOT);
+				lookupMsg.addComponentId("pipe-1");
+				lookupMsg.addComponentId("pipe-2");
+				registryRef.tell(lookupMsg, getRef());
+				expectMsgAllOf(FiniteDuration.apply(500, TimeUnit.MILLISECONDS), new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT));
+			}
+		};
+	}
+	
+	/**
+	 * Test case for {@link ComponentRegistry} being asked for all components of a type and for components of multiple types at once
+	 */
+	@Test
+	public void testLookupAllOfTypeAndBulkLookup() {
+		
+		TestActorRef<ComponentRegistry> registryRef = TestActorRef.create(system, Props.create(ComponentRegistry.class), "testLookupAllOfTypeAndBulkLookup");
+		ComponentRegistry registry = registryRef.underlyingActor();
+		registry.registerComponent(new ComponentRegistrationMessage("pipe-1", ComponentType.PIPELINE_ROOT, registryRef));
+		registry.registerComponent(new ComponentRegistrationMessage("pipe-2", ComponentType.PIPELINE_ROOT, registryRef));
+		registry.registerComponent(new ComponentRegistrationMessage("disp-1", ComponentType.DISPATCHER, registryRef));
+		
+		ComponentLookupResponseMessage allPipelines = registry.lookupComponentReferences(new ComponentLookupMessage(ComponentType.PIPELINE_ROOT));
+		Assert.assertEquals("The response must hold two references", 2, allPipelines.getComponentReferences().size());
+		Assert.assertTrue("The reference must be contained", allPipelines.getComponentReferences().containsKey("pipe-1"));
+		Assert.assertTrue("The reference must be contained", allPipelines.getComponentReferences().containsKey("pipe-2"));
+		
+		ComponentBulkLookupMessage bulkLookup = new ComponentBulkLookupMessage();
+		bulkLookup.addComponentId(ComponentType.PIPELINE_ROOT, "pipe-2");
+		bulkLookup.addComponentId(ComponentType.PIPELINE_ROOT, "pipe-unknown");
+		bulkLookup.addComponentType(ComponentType.DISPATCHER);
+		bulkLookup.addComponentType(ComponentType.STREAM_LISTENER);
+		ComponentBulkLookupResponseMessage bulkResponse = registry.lookupComponentReferences(bulkLookup);
+		Assert.assertEquals("The response must hold one pipeline", 1, bulkResponse.getComponentReferences(ComponentType.PIPELINE_ROOT).size());
+		Assert.assertEquals("The ref must be equal", registryRef, bulkResponse.getComponentReferences(ComponentType.PIPELINE_ROOT).get("pipe-2"));
+		Assert.assertEquals("The ref must be equal", registryRef, bulkResponse.getComponentReferences(ComponentType.DISPATCHER).get("disp-1"));
+		Assert.assertNull("No listener must be found", bulkResponse.getComponentReferences(ComponentType.STREAM_LISTENER));
+	}
+	
 	@Test
 	public void test() throws Exception {
 		
@@ -15,6 +15,9 @@
  */
 package com.mnxfst.stream.dispatcher;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
@@ -31,10 +34,14 @@ import akka.testkit.TestActorRef;
 
 import com.mnxfst.stream.directory.ComponentRegistry;
 import com.mnxfst.stream.directory.ComponentType;
-import com.mnxfst.stream.directory.message.ComponentLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentDeregistrationNotificationMessage;
+import com.mnxfst.stream.directory.message.ComponentLookupResponseMessage;
 import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
+import com.mnxfst.stream.directory.message.ComponentSubscriptionMessage;
 import com.mnxfst.stream.dispatcher.config.DispatchPolicyConfiguration;
 import com.mnxfst.stream.dispatcher.config.StreamEventMessageDispatcherConfiguration;
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.message.StreamEventBatch;
 import com.mnxfst.stream.message.StreamEventMessage;
 
 /**
@@ -102,10 +109,10 @@ protected static ActorSystem system;
 	}
 	
 	/**
-	 * Test case for {@link StreamEventMessageDispatcher} being initialized and sending component lookup messages 	 
+	 * Test case for {@link StreamEventMessageDispatcher} being initialized and sending component subscription messages 	 
 	 */
 	@Test
-	public void testDispatcherInitializationValidateComponentRegistrationWithLookupMessages() {
+	public void testDispatcherInitializationValidateComponentRegistrationWithSubscriptionMessages() {
 		
 		final DispatchPolicyConfiguration dispatchPolicyCfg = new DispatchPolicyConfiguration("policy-1", TestDispatcher.class.getName());
 		final StreamEventMessageDispatcherConfiguration cfg = new StreamEventMessageDispatcherConfiguration("testDispatcherInitializationValidateComponentRegistrationWithLookupMessages", "disp-1", "test description", dispatchPolicyCfg);
@@ -121,12 +128,12 @@ protected static ActorSystem system;
 			Assert.assertEquals("The type must be equal", ComponentType.DISPATCHER, registrationRequest.getType());
 			Assert.assertEquals("The reference must be equal", dispatcherRef, registrationRequest.getReference());
  
-			ComponentLookupMessage lookupMessage = (ComponentLookupMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)); 
-			Assert.assertNotNull("The component lookup request must not be null", lookupMessage);
-			Assert.assertEquals("The type must be equal", ComponentType.PIPELINE_ROOT, lookupMessage.getType());
-			Assert.assertEquals("The number of requested components must be " + cfg.getDestinations().size(), cfg.getDestinations().size(), lookupMessage.getComponentIds().size());
-			Assert.assertTrue("The component must be contained", lookupMessage.getComponentIds().contains("test-destination-1"));
-			Assert.assertTrue("The component must be contained", lookupMessage.getComponentIds().contains("test-destination-2"));
+			ComponentSubscriptionMessage subscriptionMessage = (ComponentSubscriptionMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)); 
+			Assert.assertNotNull("The component subscription request must not be null", subscriptionMessage);
+			Assert.assertEquals("The type must be equal", ComponentType.PIPELINE_ROOT, subscriptionMessage.getType());
+			Assert.assertEquals("The number of requested components must be " + cfg.getDestinations().size(), cfg.getDestinations().size(), subscriptionMessage.getComponentIds().size());
+			Assert.assertTrue("The component must be contained", subscriptionMessage.getComponentIds().contains("test-destination-1"));
+			Assert.assertTrue("The component must be contained", subscriptionMessage.getComponentIds().contains("test-destination-2"));
 			
 		}};
 	}
@@ -149,28 +156,241 @@ protected static ActorSystem system;
 
 		new JavaTestKit(system) { {
 			final ActorRef dispatcherRef = system.actorOf(Props.create(StreamEventMessageDispatcher.class, cfg, getRef()), "testDispatcherWithValidSetupAndStreamEventMessage");
+			// credits granted towards the sender of events are not of interest here
+			new IgnoreMsg() {
+				protected boolean ignore(Object msg) {
+					return msg instanceof FlowCreditMessage;
+				}
+			};
 			ComponentRegistrationMessage registrationRequest = (ComponentRegistrationMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
 			Assert.assertNotNull("The registration request must not be null", registrationRequest);
 			Assert.assertEquals("The id must be equal", cfg.getId(), registrationRequest.getId());
 			Assert.assertEquals("The type must be equal", ComponentType.DISPATCHER, registrationRequest.getType());
 			Assert.assertEquals("The reference must be equal", dispatcherRef, registrationRequest.getReference());
  
-			ComponentLookupMessage lookupMessage = (ComponentLookupMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)); 
-			Assert.assertNotNull("The component lookup request must not be null", lookupMessage);
-			Assert.assertEquals("The type must be equal", ComponentType.PIPELINE_ROOT, lookupMessage.getType());
-			Assert.assertEquals("The number of requested components must be " + cfg.getDestinations().size(), cfg.getDestinations().size(), lookupMessage.getComponentIds().size());
-			Assert.assertTrue("The component must be contained", lookupMessage.getComponentIds().contains("test-destination-1"));
-			Assert.assertTrue("The component must be contained", lookupMessage.getComponentIds().contains("test-destination-2"));
+			ComponentSubscriptionMessage subscriptionMessage = (ComponentSubscriptionMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)); 
+			Assert.assertNotNull("The component subscription request must not be null", subscriptionMessage);
+			Assert.assertEquals("The type must be equal", ComponentType.PIPELINE_ROOT, subscriptionMessage.getType());
+			Assert.assertEquals("The number of requested components must be " + cfg.getDestinations().size(), cfg.getDestinations().size(), subscriptionMessage.getComponentIds().size());
+			Assert.assertTrue("The component must be contained", subscriptionMessage.getComponentIds().contains("test-destination-1"));
+			Assert.assertTrue("The component must be contained", subscriptionMessage.getComponentIds().contains("test-destination-2"));
 			
-			dispatcherRef.tell(new StreamEventMessage("test-id", "test-origin", "2014-03-03", "TestEvent"), getRef());
+			// the destination is unknown, the registry must not be contacted and the message is retained
+			dispatcherRef.tell(new StreamEventMessage("test-id", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			expectNoMsg(Duration.apply(200, TimeUnit.MILLISECONDS));
 			
+			// push the destination reference and expect the retained message to be forwarded ahead of the next one
+			ComponentLookupResponseMessage pushedReferences = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+			pushedReferences.addComponentReference("test-destination-1", getRef());
+			dispatcherRef.tell(pushedReferences, getRef());
+			dispatcherRef.tell(new StreamEventMessage("test-id-2", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			StreamEventMessage dispatchedMessage = (StreamEventMessage)receiveOne(Duration.apply(500, TimeUnit.MILLISECONDS));
+			Assert.assertNotNull("The message must not be null", dispatchedMessage);
+			Assert.assertEquals("The identifier must be equal", "test-id", dispatchedMessage.getIdentifier());
+			dispatchedMessage = (StreamEventMessage)receiveOne(Duration.apply(500, TimeUnit.MILLISECONDS));
+			Assert.assertNotNull("The message must not be null", dispatchedMessage);
+			Assert.assertEquals("The identifier must be equal", "test-id-2", dispatchedMessage.getIdentifier());
 			
+			// remove the destination and expect the message to be retained
+			dispatcherRef.tell(new ComponentDeregistrationNotificationMessage("test-destination-1", ComponentType.PIPELINE_ROOT), getRef());
+			dispatcherRef.tell(new StreamEventMessage("test-id-3", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			expectNoMsg(Duration.apply(200, TimeUnit.MILLISECONDS));
+		}};
+	}
+
+	/**
+	 * Test case for {@link StreamEventMessageDispatcher} being initialized and receiving a {@link StreamEventBatch batch} which
+	 * must be forwarded as a whole
+	 */
+	@Test
+	public void testDispatcherWithValidSetupAndStreamEventBatch() {
+		
+		final DispatchPolicyConfiguration dispatchPolicyCfg = new DispatchPolicyConfiguration("policy-1", TestDispatcher.class.getName());
+		dispatchPolicyCfg.addSetting("test-destination-1", null);
+		
+		final StreamEventMessageDispatcherConfiguration cfg = new StreamEventMessageDispatcherConfiguration("testDispatcherWithValidSetupAndStreamEventBatch", "disp-1", "test description", dispatchPolicyCfg);
+		cfg.addDestination("test-destination-1");
+
+		new JavaTestKit(system) { {
+			final ActorRef dispatcherRef = system.actorOf(Props.create(StreamEventMessageDispatcher.class, cfg, getRef()), "testDispatcherWithValidSetupAndStreamEventBatch");
+			// credits granted towards the sender of events are not of interest here
+			new IgnoreMsg() {
+				protected boolean ignore(Object msg) {
+					return msg instanceof FlowCreditMessage;
+				}
+			};
+			Assert.assertNotNull("The registration request must not be null", (ComponentRegistrationMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)));
+			Assert.assertNotNull("The component subscription request must not be null", (ComponentSubscriptionMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)));
+			
+			ComponentLookupResponseMessage lookupResponse = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+			lookupResponse.addComponentReference("test-destination-1", getRef());
+			dispatcherRef.tell(lookupResponse, getRef());
+			
+			StreamEventBatch batch = new StreamEventBatch(Arrays.asList(
+					new StreamEventMessage("test-id-1", "test-origin", System.currentTimeMillis(), "TestEvent"),
+					new StreamEventMessage("test-id-2", "test-origin", System.currentTimeMillis(), "TestEvent")));
+			dispatcherRef.tell(batch, getRef());
+			
+			StreamEventBatch dispatchedBatch = (StreamEventBatch)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+			Assert.assertNotNull("The batch must not be null", dispatchedBatch);
+			Assert.assertEquals("The batch must hold 2 events", 2, dispatchedBatch.size());
+			Assert.assertEquals("The order must be kept", "test-id-1", dispatchedBatch.getEvents().get(0).getIdentifier());
+			Assert.assertEquals("The order must be kept", "test-id-2", dispatchedBatch.getEvents().get(1).getIdentifier());
+		}};
+	}
+
+	/**
+	 * Test case for {@link StreamEventMessageDispatcher} receiving {@link FlowCreditMessage credits} from its destination, expecting
+	 * events beyond the credits to be buffered, buffered events to be delivered as batch on further credits, events exceeding the
+	 * buffer to be dropped and the sender of events to receive credits itself
+	 */
+	@Test
+	public void testDispatcherFlowControl() {
+		
+		final DispatchPolicyConfiguration dispatchPolicyCfg = new DispatchPolicyConfiguration("policy-1", TestDispatcher.class.getName());
+		dispatchPolicyCfg.addSetting("test-destination-1", null);
+		
+		final StreamEventMessageDispatcherConfiguration cfg = new StreamEventMessageDispatcherConfiguration("testDispatcherFlowControl", "disp-1", "test description", dispatchPolicyCfg);
+		cfg.addDestination("test-destination-1");
+		cfg.setFlowBufferSize(4);
+
+		new JavaTestKit(system) { {
+			final JavaTestKit registry = new JavaTestKit(system);
+			final JavaTestKit upstream = new JavaTestKit(system);
+			final TestActorRef<StreamEventMessageDispatcher> dispatcherRef = TestActorRef.create(system, Props.create(StreamEventMessageDispatcher.class, cfg, registry.getRef()), "testDispatcherFlowControl");
+			
+			ComponentLookupResponseMessage lookupResponse = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+			lookupResponse.addComponentReference("test-destination-1", getRef());
+			dispatcherRef.tell(lookupResponse, getRef());
+			dispatcherRef.tell(new FlowCreditMessage("test-destination-1", 1), getRef());
+			
+			for(int i = 0; i < 3; i++)
+				dispatcherRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), upstream.getRef());
+			
+			FlowCreditMessage upstreamCredit = upstream.expectMsgClass(FlowCreditMessage.class);
+			Assert.assertEquals("Values must be equal", cfg.getId(), upstreamCredit.getSourceId());
+			Assert.assertEquals("The sender must be allowed to fill the buffer", 5, upstreamCredit.getCreditLimit());
+			
+			Assert.assertEquals("The identifier must be equal", "test-id-0", expectMsgClass(StreamEventMessage.class).getIdentifier());
+			expectNoMsg(Duration.apply(200, TimeUnit.MILLISECONDS));
+			Assert.assertEquals("The buffer must hold 2 events", 2, dispatcherRef.underlyingActor().getPendingEvents("test-destination-1"));
+			
+			// further credits release the buffered events as batch
+			dispatcherRef.tell(new FlowCreditMessage("test-destination-1", 3), getRef());
+			StreamEventBatch batch = expectMsgClass(StreamEventBatch.class);
+			Assert.assertEquals("The batch must hold 2 events", 2, batch.size());
+			Assert.assertEquals("The order must be kept", "test-id-1", batch.getEvents().get(0).getIdentifier());
+			Assert.assertEquals("The order must be kept", "test-id-2", batch.getEvents().get(1).getIdentifier());
+			Assert.assertEquals("The buffer must be empty", 0, dispatcherRef.underlyingActor().getPendingEvents("test-destination-1"));
+			
+			// credits are exhausted, thus the buffer fills up and all events beyond are dropped
+			for(int i = 3; i < 9; i++)
+				dispatcherRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), upstream.getRef());
+			expectNoMsg(Duration.apply(200, TimeUnit.MILLISECONDS));
+			Assert.assertEquals("The buffer must hold 4 events", 4, dispatcherRef.underlyingActor().getPendingEvents("test-destination-1"));
+			Assert.assertEquals("2 events must be dropped", 2, dispatcherRef.underlyingActor().getDroppedEvents());
+		}};
+	}
+
+	/**
+	 * Test case for {@link StreamEventMessageDispatcher} receiving events before the reference of their destination has been pushed, 
+	 * expecting them to be delivered in order as soon as it arrives - or to be counted as dropped if no flow buffer is configured
+	 */
+	@Test
+	public void testDispatcherRetainsEventsForUnknownDestination() {
+		
+		final DispatchPolicyConfiguration dispatchPolicyCfg = new DispatchPolicyConfiguration("policy-1", TestDispatcher.class.getName());
+		dispatchPolicyCfg.addSetting("test-destination-1", null);
+		
+		final StreamEventMessageDispatcherConfiguration cfg = new StreamEventMessageDispatcherConfiguration("testDispatcherRetainsEvents", "disp-1", "test description", dispatchPolicyCfg);
+		cfg.addDestination("test-destination-1");
+		cfg.setFlowBufferSize(4);
+		
+		final StreamEventMessageDispatcherConfiguration unbufferedCfg = new StreamEventMessageDispatcherConfiguration("testDispatcherDropsEvents", "disp-1", "test description", dispatchPolicyCfg);
+		unbufferedCfg.addDestination("test-destination-1");
+		unbufferedCfg.setFlowBufferSize(0);
+
+		new JavaTestKit(system) { {
+			final JavaTestKit registry = new JavaTestKit(system);
+			final TestActorRef<StreamEventMessageDispatcher> dispatcherRef = TestActorRef.create(system, Props.create(StreamEventMessageDispatcher.class, cfg, registry.getRef()), "testDispatcherRetainsEvents");
+			
+			for(int i = 0; i < 3; i++)
+				dispatcherRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			Assert.assertEquals("The buffer must hold 3 events", 3, dispatcherRef.underlyingActor().getPendingEvents("test-destination-1"));
+			Assert.assertEquals("No event must be dropped", 0, dispatcherRef.underlyingActor().getDroppedEvents());
+			
+			final JavaTestKit destination = new JavaTestKit(system);
+			ComponentLookupResponseMessage lookupResponse = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+			lookupResponse.addComponentReference("test-destination-1", destination.getRef());
+			dispatcherRef.tell(lookupResponse, registry.getRef());
+			
+			StreamEventBatch batch = destination.expectMsgClass(StreamEventBatch.class);
+			Assert.assertEquals("The batch must hold 3 events", 3, batch.size());
+			for(int i = 0; i < 3; i++)
+				Assert.assertEquals("The order must be kept", "test-id-" + i, batch.getEvents().get(i).getIdentifier());
+			Assert.assertEquals("The buffer must be empty", 0, dispatcherRef.underlyingActor().getPendingEvents("test-destination-1"));
+			
+			final TestActorRef<StreamEventMessageDispatcher> unbufferedRef = TestActorRef.create(system, Props.create(StreamEventMessageDispatcher.class, unbufferedCfg, registry.getRef()), "testDispatcherDropsEvents");
+			for(int i = 0; i < 3; i++)
+				unbufferedRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			Assert.assertEquals("3 events must be dropped", 3, unbufferedRef.underlyingActor().getDroppedEvents());
+		}};
+	}
+
+	/**
+	 * Test case for {@link StreamEventMessageDispatcher} being run by several instances behind a router, expecting the router
+	 * to be registered, each instance to subscribe on its own, messages to be spread across all instances and each instance to
+	 * grant credits under its own name
+	 */
+	@Test
+	public void testPooledDispatcherInstances() {
+		
+		final DispatchPolicyConfiguration dispatchPolicyCfg = new DispatchPolicyConfiguration("policy-1", TestDispatcher.class.getName());
+		dispatchPolicyCfg.addSetting("test-destination-1", null);
+		
+		final StreamEventMessageDispatcherConfiguration cfg = new StreamEventMessageDispatcherConfiguration("testPooledDispatcherInstances", "disp-1", "test description", dispatchPolicyCfg);
+		cfg.addDestination("test-destination-1");
+		cfg.setInstances(3);
+
+		new JavaTestKit(system) { {
+			final ActorRef routerRef = system.actorOf(Props.create(StreamEventMessageDispatcher.class, cfg, getRef()).withRouter(StreamEventMessageDispatcher.createRouterConfig(cfg)), "testPooledDispatcherInstances");
+			
+			// each instance registers the router and subscribes for the destinations on its own
+			int registrations = 0;
+			int subscriptions = 0;
+			for(int i = 0; i < 6; i++) {
+				Object message = receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+				if(message instanceof ComponentRegistrationMessage) {
+					Assert.assertEquals("The router must be registered", routerRef, ((ComponentRegistrationMessage)message).getReference());
+					registrations++;
+				} else if(message instanceof ComponentSubscriptionMessage) {
+					ComponentLookupResponseMessage pushedReferences = new ComponentLookupResponseMessage(ComponentType.PIPELINE_ROOT);
+					pushedReferences.addComponentReference("test-destination-1", getRef());
+					getLastSender().tell(pushedReferences, getRef());
+					subscriptions++;
+				}
+			}
+			Assert.assertEquals("Each instance must register the router", 3, registrations);
+			Assert.assertEquals("Each instance must subscribe", 3, subscriptions);
+			
+			final JavaTestKit upstream = new JavaTestKit(system);
+			Set<ActorRef> instances = new HashSet<>();
+			for(int i = 0; i < 6; i++) {
+				routerRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), upstream.getRef());
+				Assert.assertNotNull("The message must not be null", (StreamEventMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS)));
+				instances.add(getLastSender());
+			}
+			Assert.assertEquals("All instances must dispatch messages", 3, instances.size());
 			
-			lookupMessage = (ComponentLookupMessage)receiveOne(Duration.apply(500, TimeUnit.MILLISECONDS));
-			Assert.assertNotNull("The component lookup request must not be null", lookupMessage);
-			Assert.assertEquals("The type must be equal", ComponentType.DISPATCHER, lookupMessage.getType());
-//			Assert.assertEquals("The number of requested components must be " + dispatchPolicyCfg.getSettings().size(), dispatchPolicyCfg.getSettings().size(), lookupMessage.getComponentIds().size());
-			Assert.assertTrue("The component must be contained", lookupMessage.getComponentIds().contains("test-destination-1"));
+			Set<String> instanceIds = new HashSet<>();
+			for(Object message : upstream.receiveN(3)) {
+				FlowCreditMessage credit = (FlowCreditMessage)message;
+				Assert.assertEquals("The dispatcher identifier must be used", cfg.getId(), credit.getSourceId());
+				Assert.assertEquals("The events received by the instance must be reported", 1, credit.getReceivedEvents());
+				Assert.assertEquals("The sender must be allowed to fill the buffer", 1 + cfg.getFlowBufferSize(), credit.getCreditLimit());
+				instanceIds.add(credit.getInstanceId());
+			}
+			Assert.assertEquals("Each instance must grant credits on its own", 3, instanceIds.size());
 		}};
 	}
 
@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link ConsistentHashDispatchPolicy}
+ * @author mnxfst
+ * @since 28.03.2014
+ *
+ */
+public class ConsistentHashDispatchPolicyTest {
+
+	/**
+	 * Test case for {@link ConsistentHashDispatchPolicy#init(Map)} being provided settings without key reference
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInitWithMissingKey() {
+		Map<String, String> settings = new HashMap<>();
+		settings.put(ConsistentHashDispatchPolicy.HASH_DESTINATION_PREFIX + "0", "pipeline-0");
+		new ConsistentHashDispatchPolicy("hash").init(settings);
+	}
+	
+	/**
+	 * Test case for {@link ConsistentHashDispatchPolicy#determineDestinations(StreamEventMessage)} expecting messages with the
+	 * same key to be routed to the same single destination and keys to be spread across all destinations
+	 */
+	@Test
+	public void testDetermineDestinations() {
+		
+		ConsistentHashDispatchPolicy policy = createPolicy(4);
+		Map<String, Integer> counts = new HashMap<>();
+		for(int i = 0; i < 10000; i++) {
+			Set<String> destinations = policy.determineDestinations(createMessage("visitor-" + i));
+			Assert.assertEquals("Exactly one destination must be selected", 1, destinations.size());
+			Assert.assertEquals("Values must be equal", destinations, policy.determineDestinations(createMessage("visitor-" + i)));
+			String destination = destinations.iterator().next();
+			counts.put(destination, (counts.containsKey(destination) ? counts.get(destination) : 0) + 1);
+		}
+		Assert.assertEquals("All destinations must receive keys", 4, counts.size());
+		for(Integer count : counts.values())
+			Assert.assertTrue("Keys must be spread evenly: " + counts, count > 1500 && count < 3500);
+		
+		// custom attribute takes precedence over the event content
+		StreamEventMessage attributed = createMessage("visitor-1").withCustomAttribute("partition", "visitor-2");
+		Assert.assertEquals("Values must be equal", policy.determineDestinations(createMessage("visitor-2")), policy.determineDestinations(attributed));
+	}
+	
+	/**
+	 * Test case for {@link ConsistentHashDispatchPolicy#destinationRemoved(String)} and {@link ConsistentHashDispatchPolicy#destinationAdded(String)}
+	 * expecting only the keys of the removed destination to be remapped and the original mapping to be restored afterwards
+	 */
+	@Test
+	public void testRemapping() {
+		
+		ConsistentHashDispatchPolicy policy = createPolicy(4);
+		String[] original = new String[5000];
+		for(int i = 0; i < original.length; i++)
+			original[i] = policy.determineDestinations(createMessage("visitor-" + i)).iterator().next();
+		
+		policy.destinationRemoved("pipeline-2");
+		for(int i = 0; i < original.length; i++) {
+			String destination = policy.determineDestinations(createMessage("visitor-" + i)).iterator().next();
+			Assert.assertNotEquals("The removed destination must not be selected", "pipeline-2", destination);
+			if(!original[i].equals("pipeline-2"))
+				Assert.assertEquals("Keys of other destinations must not be remapped", original[i], destination);
+		}
+		
+		policy.destinationAdded("pipeline-2");
+		for(int i = 0; i < original.length; i++)
+			Assert.assertEquals("The original mapping must be restored", original[i], policy.determineDestinations(createMessage("visitor-" + i)).iterator().next());
+		
+		for(int i = 0; i < 4; i++)
+			policy.destinationRemoved("pipeline-" + i);
+		Assert.assertTrue("No destination must be selected", policy.determineDestinations(createMessage("visitor-1")).isEmpty());
+	}
+	
+	protected ConsistentHashDispatchPolicy createPolicy(final int destinations) {
+		Map<String, String> settings = new HashMap<>();
+		for(int i = 0; i < destinations; i++)
+			settings.put(ConsistentHashDispatchPolicy.HASH_DESTINATION_PREFIX + i, "pipeline-" + i);
+		settings.put(ConsistentHashDispatchPolicy.HASH_KEY_PATH, "visitor.id");
+		settings.put(ConsistentHashDispatchPolicy.HASH_KEY_ATTRIBUTE, "partition");
+		ConsistentHashDispatchPolicy policy = new ConsistentHashDispatchPolicy("hash");
+		policy.init(settings);
+		return policy;
+	}
+	
+	protected StreamEventMessage createMessage(final String visitorId) {
+		return new StreamEventMessage("id", "origin", System.currentTimeMillis(), "{\"visitor\":{\"id\":\"" + visitorId + "\"}}");
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link LeastLoadedDispatchPolicy}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class LeastLoadedDispatchPolicyTest {
+
+	/**
+	 * Test case for {@link LeastLoadedDispatchPolicy#init(Map)} being provided an invalid number of choices
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInitWithInvalidChoices() {
+		Map<String, String> settings = new HashMap<>();
+		settings.put(LeastLoadedDispatchPolicy.LOAD_DESTINATION_PREFIX + "0", "pipeline-0");
+		settings.put(LeastLoadedDispatchPolicy.LOAD_CHOICES, "0");
+		new LeastLoadedDispatchPolicy("load").init(settings);
+	}
+	
+	/**
+	 * Test case for {@link LeastLoadedDispatchPolicy#determineDestinations(StreamEventMessage)} without any load reports, expecting
+	 * each message to be sent to exactly one destination and messages to be spread evenly
+	 */
+	@Test
+	public void testDetermineDestinationsWithoutReports() {
+		
+		LeastLoadedDispatchPolicy policy = createPolicy(4);
+		Map<String, Integer> counts = dispatch(policy, 4000);
+		Assert.assertEquals("All destinations must receive messages", 4, counts.size());
+		for(Integer count : counts.values())
+			Assert.assertTrue("Messages must be spread evenly: " + counts, count > 900 && count < 1100);
+		
+		Assert.assertTrue("No destination must be selected", new LeastLoadedDispatchPolicy("load").determineDestinations(createMessage()).isEmpty());
+	}
+	
+	/**
+	 * Test case for {@link LeastLoadedDispatchPolicy#loadReported(String, long, long)} expecting the destination having drained its queue
+	 * to receive new messages and a slow destination to be avoided 
+	 */
+	@Test
+	public void testLoadReported() {
+		
+		LeastLoadedDispatchPolicy policy = createPolicy(2);
+		dispatch(policy, 200);
+		Assert.assertEquals("Values must be equal", 100, policy.getQueueDepth("pipeline-0"));
+		Assert.assertEquals("Values must be equal", 100, policy.getQueueDepth("pipeline-1"));
+		
+		// pipeline-0 has drained its queue, thus it must receive all messages until its depth reaches the other one
+		policy.loadReported("pipeline-0", 100, 0);
+		policy.loadReported("pipeline-1", 0, 0);
+		Map<String, Integer> counts = dispatch(policy, 100);
+		Assert.assertEquals("Values must be equal", Integer.valueOf(100), counts.get("pipeline-0"));
+		policy.loadReported("pipeline-0", 200, 0);
+		policy.loadReported("pipeline-1", 100, 0);
+		
+		// a slow destination must not receive any message as long as the others are not loaded accordingly
+		policy = createPolicy(3);
+		policy.loadReported("pipeline-2", 0, 10000);
+		counts = dispatch(policy, 3000);
+		Assert.assertNull("The slow destination must not receive any message: " + counts, counts.get("pipeline-2"));
+		Assert.assertTrue("Values must be equal", policy.getLoad("pipeline-2") >= 10000);
+		
+		// reports exceeding the number of sent events - eg. after a restart of the dispatcher - must not result in negative depths
+		policy = createPolicy(2);
+		policy.loadReported("pipeline-0", 500, 0);
+		dispatch(policy, 10);
+		Assert.assertTrue("Values must be equal", policy.getQueueDepth("pipeline-0") > 0);
+		policy.loadReported("pipeline-0", 505, 0);
+		Assert.assertTrue("The depth must not be negative", policy.getQueueDepth("pipeline-0") >= 0);
+		
+		// reports of unknown destinations are ignored
+		policy.loadReported("unknown", 10, 10);
+		Assert.assertEquals("Values must be equal", -1, policy.getQueueDepth("unknown"));
+	}
+	
+	/**
+	 * Test case for {@link LeastLoadedDispatchPolicy#destinationRemoved(String)} and {@link LeastLoadedDispatchPolicy#destinationAdded(String)}
+	 * expecting removed destinations to be skipped and added ones to receive messages 
+	 */
+	@Test
+	public void testDestinationRemovedAndAdded() {
+		
+		LeastLoadedDispatchPolicy policy = createPolicy(3);
+		policy.destinationRemoved("pipeline-1");
+		Map<String, Integer> counts = dispatch(policy, 100);
+		Assert.assertEquals("Two destinations must receive messages", 2, counts.size());
+		Assert.assertNull("The removed destination must not receive messages", counts.get("pipeline-1"));
+		
+		// the new destination is empty, thus it wins whenever it is sampled until it catches up with the others
+		policy.destinationAdded("pipeline-3");
+		counts = dispatch(policy, 50);
+		Assert.assertTrue("The added destination must receive most messages: " + counts, counts.get("pipeline-3") >= 20);
+	}
+	
+	/**
+	 * Dispatches the given number of messages and counts the messages per destination 
+	 * @param policy
+	 * @param messages
+	 * @return
+	 */
+	protected Map<String, Integer> dispatch(final LeastLoadedDispatchPolicy policy, final int messages) {
+		Map<String, Integer> counts = new HashMap<>();
+		for(int i = 0; i < messages; i++) {
+			Set<String> destinations = policy.determineDestinations(createMessage());
+			Assert.assertEquals("Exactly one destination must be selected", 1, destinations.size());
+			String destination = destinations.iterator().next();
+			counts.put(destination, (counts.containsKey(destination) ? counts.get(destination) : 0) + 1);
+		}
+		return counts;
+	}
+	
+	/**
+	 * Returns a policy distributing messages across the given number of destinations
+	 * @param destinations
+	 * @return
+	 */
+	protected LeastLoadedDispatchPolicy createPolicy(final int destinations) {
+		Map<String, String> settings = new HashMap<>();
+		for(int i = 0; i < destinations; i++)
+			settings.put(LeastLoadedDispatchPolicy.LOAD_DESTINATION_PREFIX + i, "pipeline-" + i);
+		LeastLoadedDispatchPolicy policy = new LeastLoadedDispatchPolicy("load");
+		policy.init(settings);
+		return policy;
+	}
+	
+	protected StreamEventMessage createMessage() {
+		return new StreamEventMessage("id", "origin", System.currentTimeMillis(), "{}");
+	}
+}
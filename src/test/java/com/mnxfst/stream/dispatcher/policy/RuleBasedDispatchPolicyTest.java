@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.dispatcher.policy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link RuleBasedDispatchPolicy}
+ * @author mnxfst
+ * @since 29.03.2014
+ *
+ */
+public class RuleBasedDispatchPolicyTest {
+
+	/**
+	 * Test case for {@link RuleBasedDispatchPolicy#determineDestinations(StreamEventMessage)} being provided the rules
+	 * found in query-examples.txt 
+	 */
+	@Test
+	public void testDetermineDestinations() {
+		
+		Map<String, String> settings = new HashMap<>();
+		settings.put("rule.0.expression", "${person.lastname} == 'Kreutzfeldt' && ${person.firstname} == 'Christian'");
+		settings.put("rule.0.destinations", "pipeline-0");
+		settings.put("rule.1.expression", "${person.city} == 'Hamburg' && ${person.postalCode} != 23847");
+		settings.put("rule.1.destinations", "pipeline-1, pipeline-2");
+		settings.put("rule.2.expression", "${person.street} != null && ${person.street2} == null");
+		settings.put("rule.2.destinations", "pipeline-2");
+		settings.put("rule.3.expression", "!(${person.age} < 18 || ${person.age} >= 65) && ${person.city} != \"Hamburg\"");
+		settings.put("rule.3.destinations", "pipeline-3");
+		settings.put("rule.default.destinations", "pipeline-default");
+		
+		RuleBasedDispatchPolicy policy = new RuleBasedDispatchPolicy("rules");
+		policy.init(settings);
+		Assert.assertEquals("Fields must be shared across rules", 7, policy.getRuleSet().getFieldCount());
+		Assert.assertEquals("Comparisons must be shared across rules", 8, policy.getRuleSet().getPredicateCount());
+		
+		Assert.assertEquals("Values must be equal", new HashSet<>(Arrays.asList("pipeline-0", "pipeline-1", "pipeline-2")), 
+				policy.determineDestinations(createMessage("{\"person\":{\"firstname\":\"Christian\",\"lastname\":\"Kreutzfeldt\",\"city\":\"Hamburg\",\"postalCode\":20095}}")));
+		Assert.assertEquals("Values must be equal", Collections.singleton("pipeline-0"), 
+				policy.determineDestinations(createMessage("{\"person\":{\"firstname\":\"Christian\",\"lastname\":\"Kreutzfeldt\",\"city\":\"Hamburg\",\"postalCode\":\"23847\"}}")));
+		Assert.assertEquals("Values must be equal", Collections.singleton("pipeline-2"), 
+				policy.determineDestinations(createMessage("{\"person\":{\"street\":\"Main St.\",\"street2\":null,\"age\":12}}")));
+		Assert.assertEquals("Values must be equal", Collections.singleton("pipeline-3"), 
+				policy.determineDestinations(createMessage("{\"person\":{\"age\":40,\"city\":\"Berlin\"}}")));
+		Assert.assertEquals("Values must be equal", Collections.singleton("pipeline-default"), 
+				policy.determineDestinations(createMessage("{\"person\":{\"age\":70,\"city\":\"Berlin\"}}")));
+	}
+	
+	/**
+	 * Test case for {@link RuleBasedDispatchPolicy#init(Map)} being provided invalid expressions
+	 */
+	@Test
+	public void testInitWithInvalidExpression() {
+		
+		for(String expression : new String[]{ "${person.city} = 'Hamburg'", "${person.city == 'Hamburg'", "${person.city} == 'Hamburg", 
+				"(${person.city} == 'Hamburg'", "${person.city} == Hamburg", "${person.city} > null", "${person.city} == 'Hamburg' &&" }) {
+			Map<String, String> settings = new HashMap<>();
+			settings.put("rule.0.expression", expression);
+			settings.put("rule.0.destinations", "pipeline-0");
+			try {
+				new RuleBasedDispatchPolicy("rules").init(settings);
+				Assert.fail("Invalid expression: " + expression);
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
+	protected StreamEventMessage createMessage(final String event) {
+		return new StreamEventMessage("id", "origin", System.currentTimeMillis(), event);
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link ConnectionTracker}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class ConnectionTrackerTest {
+
+	/**
+	 * Test case for {@link ConnectionTracker} recording connections and outages, expecting failed attempts not to 
+	 * restart a running outage and planned disconnects not to count as outage
+	 */
+	@Test
+	public void testUptimeAndOutages() {
+		
+		ConnectionTracker tracker = new ConnectionTracker();
+		Assert.assertEquals("No outage expected", -1, tracker.connected(1000));
+		Assert.assertTrue("The tracker must be connected", tracker.isConnected());
+		Assert.assertEquals("Values must be equal", 500, tracker.getUptimeMillis(1500));
+		
+		// lost at 2000, failed attempt at 2500, re-established at 4000
+		tracker.disconnected(2000, false);
+		Assert.assertFalse("The tracker must be disconnected", tracker.isConnected());
+		Assert.assertEquals("Values must be equal", 0, tracker.getUptimeMillis(2200));
+		tracker.disconnected(2500, false);
+		Assert.assertEquals("Values must be equal", 1000, tracker.getCurrentOutageMillis(3000));
+		Assert.assertEquals("The outage must last 2000ms", 2000, tracker.connected(4000));
+		Assert.assertEquals("Values must be equal", 0, tracker.getCurrentOutageMillis(4000));
+		
+		// lost at 5000, re-established at 5500
+		tracker.disconnected(5000, false);
+		Assert.assertEquals("The outage must last 500ms", 500, tracker.connected(5500));
+		
+		// planned disconnect at 6000, connected again at 9000
+		tracker.disconnected(6000, true);
+		Assert.assertEquals("No outage expected", -1, tracker.connected(9000));
+		
+		Assert.assertEquals("Values must be equal", 4, tracker.getConnects());
+		Assert.assertEquals("Values must be equal", 2, tracker.getOutages());
+		Assert.assertEquals("Values must be equal", 500, tracker.getLastOutageMillis());
+		Assert.assertEquals("Values must be equal", 2000, tracker.getLongestOutageMillis());
+		Assert.assertEquals("Values must be equal", 2500, tracker.getTotalOutageMillis());
+		Assert.assertEquals("Values must be equal", 1000 + 1000 + 500 + 1000, tracker.getTotalUptimeMillis(10000));
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link EventStamper}
+ * @author mnxfst
+ * @since 26.03.2014
+ *
+ */
+public class EventStamperTest {
+
+	/**
+	 * Test case for {@link EventStamper#nextId()} being called from concurrent threads, expecting identifiers to be 
+	 * unique and increasing per thread
+	 */
+	@Test
+	public void testNextIdConcurrently() throws Exception {
+		
+		final EventStamper stamper = new EventStamper(1);
+		final int threads = 4;
+		final int idsPerThread = 50000;
+		final long[][] ids = new long[threads][idsPerThread];
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		
+		long before = System.currentTimeMillis();
+		for(int t = 0; t < threads; t++) {
+			final long[] threadIds = ids[t];
+			new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						for(int i = 0; i < idsPerThread; i++)
+							threadIds[i] = stamper.nextId();
+					} catch(InterruptedException e) {
+						// ignore
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		start.countDown();
+		done.await();
+		
+		Set<Long> unique = new HashSet<>();
+		for(int t = 0; t < threads; t++) {
+			for(int i = 0; i < idsPerThread; i++) {
+				Assert.assertTrue("The identifier must be unique", unique.add(ids[t][i]));
+				if(i > 0)
+					Assert.assertTrue("The identifiers must increase", ids[t][i] > ids[t][i-1]);
+			}
+		}
+		Assert.assertTrue("The timestamp must not precede the start", EventStamper.timestampOf(ids[0][0]) >= before);
+	}
+	
+	/**
+	 * Test case for {@link EventStamper#formatId(long)} and {@link EventStamper#timestampOf(long)}
+	 */
+	@Test
+	public void testFormatIdAndTimestamp() {
+		
+		EventStamper stamper = new EventStamper(0x0123456789abcdefL);
+		Assert.assertEquals("Values must be equal", "0123456789abcdef00000000000000ff", stamper.formatId(255));
+		
+		long timestamp = System.currentTimeMillis();
+		Assert.assertEquals("Values must be equal", timestamp, EventStamper.timestampOf(timestamp << EventStamper.SEQUENCE_BITS | 17));
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mnxfst.stream.message.FlowCreditMessage;
+
+/**
+ * Test case for {@link FlowCreditGate}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class FlowCreditGateTest {
+
+	/**
+	 * Test case for {@link FlowCreditGate#consume(int)} without any credits granted, expecting the gate to remain open
+	 */
+	@Test
+	public void testConsumeWithoutCredits() {
+		FlowCreditGate gate = new FlowCreditGate();
+		Assert.assertTrue("The gate must be open", gate.consume(1000));
+		Assert.assertEquals("Values must be equal", 1000, gate.getSentEvents());
+		Assert.assertEquals("Values must be equal", FlowCreditGate.UNLIMITED, gate.getCreditLimit());
+	}
+	
+	/**
+	 * Test case for {@link FlowCreditGate#grant(String, long)} with two dispatchers, expecting the smallest limit to apply,
+	 * limits to refer to the events sent after registration and smaller limits to be ignored 
+	 */
+	@Test
+	public void testGrantAndConsume() {
+		FlowCreditGate gate = new FlowCreditGate();
+		gate.register("disp-1");
+		gate.consume(10);
+		gate.register("disp-2");
+		
+		Assert.assertTrue("Credits must be left", gate.grant("disp-1", 15));
+		Assert.assertTrue("Credits must be left", gate.grant("disp-2", 10));
+		Assert.assertEquals("The limit must be relative to the registration", 15, gate.getCreditLimit());
+		
+		Assert.assertTrue("Credits must be left", gate.consume(4));
+		Assert.assertFalse("Credits must be exhausted", gate.consume(1));
+		Assert.assertFalse("Credits must be exhausted", gate.hasCredit());
+		
+		Assert.assertFalse("Smaller limits must be ignored", gate.grant("disp-2", 3));
+		Assert.assertFalse("The smallest limit must apply", gate.grant("disp-2", 20));
+		Assert.assertEquals("Values must be equal", 15, gate.getCreditLimit());
+		Assert.assertTrue("Credits must be left", gate.grant("disp-1", 16));
+		Assert.assertEquals("Values must be equal", 16, gate.getCreditLimit());
+		
+		// removing the dispatcher holding the smallest limit opens the gate further
+		Assert.assertTrue("Credits must be left", gate.remove("disp-1"));
+		Assert.assertEquals("Values must be equal", 30, gate.getCreditLimit());
+		Assert.assertTrue("Credits must be left", gate.remove("disp-2"));
+		Assert.assertEquals("Values must be equal", FlowCreditGate.UNLIMITED, gate.getCreditLimit());
+	}
+	
+	/**
+	 * Test case for {@link FlowCreditGate#hasCredit(long)} expecting events pending to be sent to count against the credits
+	 * without being consumed
+	 */
+	@Test
+	public void testHasCreditWithPendingEvents() {
+		FlowCreditGate gate = new FlowCreditGate();
+		gate.grant("disp-1", 10);
+		gate.consume(5);
+		
+		Assert.assertTrue("Credits must be left", gate.hasCredit(4));
+		Assert.assertFalse("Credits must be exhausted", gate.hasCredit(5));
+		Assert.assertEquals("Pending events must not be consumed", 5, gate.getSentEvents());
+		Assert.assertTrue("Credits must be left", gate.hasCredit());
+	}
+	
+	/**
+	 * Test case for {@link FlowCreditGate#grant(String, String, long, long)} with a dispatcher running two instances, expecting
+	 * the events received by all instances plus the smallest headroom to apply
+	 */
+	@Test
+	public void testGrantPerInstance() {
+		FlowCreditGate gate = new FlowCreditGate();
+		gate.register("disp-1");
+		gate.consume(5);
+		
+		Assert.assertTrue("Credits must be left", gate.grant("disp-1", "$a", 10, 30));
+		Assert.assertEquals("The headroom of the single instance must apply", 30, gate.getCreditLimit());
+		Assert.assertTrue("Credits must be left", gate.grant("disp-1", "$b", 2, 3));
+		Assert.assertEquals("The limits must never decrease", 30, gate.getCreditLimit());
+		Assert.assertTrue("Credits must be left", gate.grant(new FlowCreditMessage("disp-1", 60, "$b", 40)));
+		Assert.assertEquals("Events received by all instances plus the smallest headroom must apply", 50 + 20, gate.getCreditLimit());
+		
+		Assert.assertTrue("Credits must be left", gate.remove("disp-1"));
+		Assert.assertEquals("Values must be equal", FlowCreditGate.UNLIMITED, gate.getCreditLimit());
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link IngestRingBuffer}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class IngestRingBufferTest {
+
+	/**
+	 * Test case for {@link IngestRingBuffer#IngestRingBuffer(int)} expecting the capacity to be rounded up to the next power of two
+	 */
+	@Test
+	public void testCapacity() {
+		Assert.assertEquals("Values must be equal", 1, new IngestRingBuffer<String>(1).capacity());
+		Assert.assertEquals("Values must be equal", 8, new IngestRingBuffer<String>(5).capacity());
+		Assert.assertEquals("Values must be equal", 8, new IngestRingBuffer<String>(8).capacity());
+		try {
+			new IngestRingBuffer<String>(0);
+			Assert.fail("Invalid capacity");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Test case for {@link IngestRingBuffer#offer(Object)} exceeding the capacity, expecting the elements to be dropped and 
+	 * the buffer to accept elements again after draining
+	 */
+	@Test
+	public void testOfferDrainAndDrop() {
+		IngestRingBuffer<String> buffer = new IngestRingBuffer<>(4);
+		for(int i = 0; i < 4; i++)
+			Assert.assertTrue("The element must be accepted", buffer.offer("e-" + i));
+		Assert.assertFalse("The element must be dropped", buffer.offer("e-4"));
+		Assert.assertEquals("The buffer must hold 4 elements", 4, buffer.size());
+		Assert.assertEquals("1 element must be dropped", 1, buffer.getDroppedElements());
+		
+		Assert.assertEquals("Values must be equal", "e-0", buffer.poll());
+		List<String> drained = new ArrayList<>();
+		Assert.assertEquals("2 elements must be drained", 2, buffer.drainTo(drained, 2));
+		Assert.assertEquals("The order must be kept", "e-1", drained.get(0));
+		Assert.assertEquals("The order must be kept", "e-2", drained.get(1));
+		
+		// wrap around
+		Assert.assertTrue("The element must be accepted", buffer.offer("e-5"));
+		Assert.assertTrue("The element must be accepted", buffer.offer("e-6"));
+		Assert.assertTrue("The element must be accepted", buffer.offer("e-7"));
+		drained.clear();
+		Assert.assertEquals("4 elements must be drained", 4, buffer.drainTo(drained, 10));
+		Assert.assertEquals("The order must be kept", "e-3", drained.get(0));
+		Assert.assertEquals("The order must be kept", "e-7", drained.get(3));
+		Assert.assertTrue("The buffer must be empty", buffer.isEmpty());
+		Assert.assertNull("The buffer must be empty", buffer.poll());
+		Assert.assertEquals("7 elements must be accepted", 7, buffer.getOfferedElements());
+	}
+	
+	/**
+	 * Test case for {@link IngestRingBuffer} being filled by one thread while drained by another, expecting all 
+	 * accepted elements to arrive in order
+	 */
+	@Test
+	public void testConcurrentProducerAndConsumer() throws Exception {
+		
+		final int count = 200000;
+		final IngestRingBuffer<Integer> buffer = new IngestRingBuffer<>(64);
+		Thread producer = new Thread() {
+			public void run() {
+				for(int i = 0; i < count; i++) {
+					while(!buffer.offer(i))
+						Thread.yield();
+				}
+			}
+		};
+		producer.start();
+		
+		List<Integer> drained = new ArrayList<>(32);
+		int expected = 0;
+		while(expected < count) {
+			drained.clear();
+			if(buffer.drainTo(drained, 32) == 0)
+				Thread.yield();
+			for(Integer value : drained)
+				Assert.assertEquals("The order must be kept", expected++, value.intValue());
+		}
+		producer.join();
+		Assert.assertTrue("The buffer must be empty", buffer.isEmpty());
+		Assert.assertEquals("Values must be equal", count, buffer.getOfferedElements());
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link ReconnectBackoff}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class ReconnectBackoffTest {
+
+	/**
+	 * Test case for {@link ReconnectBackoff#ReconnectBackoff(long, long)} with invalid bounds
+	 */
+	@Test
+	public void testInvalidBounds() {
+		try {
+			new ReconnectBackoff(0, 100);
+			Assert.fail("Invalid minimum delay");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new ReconnectBackoff(100, 50);
+			Assert.fail("Invalid maximum delay");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Test case for {@link ReconnectBackoff#nextDelay()} expecting the delays to double, to be capped at the maximum, to 
+	 * carry up to half of the delay as jitter and to start over after {@link ReconnectBackoff#reset()}
+	 */
+	@Test
+	public void testNextDelay() {
+		ReconnectBackoff backoff = new ReconnectBackoff(100, 1000, new Random(42));
+		long[] expected = new long[]{100, 200, 400, 800, 1000, 1000};
+		for(int i = 0; i < expected.length; i++) {
+			long delay = backoff.nextDelay();
+			Assert.assertTrue("The delay must not exceed " + expected[i] + ": " + delay, delay <= expected[i]);
+			Assert.assertTrue("The delay must be at least " + (expected[i] / 2) + ": " + delay, delay >= expected[i] / 2);
+		}
+		Assert.assertEquals("Values must be equal", expected.length, backoff.getAttempts());
+		
+		backoff.reset();
+		Assert.assertEquals("Values must be equal", 0, backoff.getAttempts());
+		Assert.assertTrue("The delay must start over", backoff.nextDelay() <= 100);
+	}
+	
+	/**
+	 * Test case for {@link ReconnectBackoff#nextDelay()} expecting the jitter to spread the delays
+	 */
+	@Test
+	public void testJitter() {
+		ReconnectBackoff first = new ReconnectBackoff(1000, 1000, new Random(1));
+		ReconnectBackoff second = new ReconnectBackoff(1000, 1000, new Random(2));
+		boolean differ = false;
+		for(int i = 0; i < 10 && !differ; i++)
+			differ = first.nextDelay() != second.nextDelay();
+		Assert.assertTrue("The delays must differ", differ);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test case for {@link StreamEventListenerConfiguration}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class StreamEventListenerConfigurationTest {
+
+	/**
+	 * Test case for {@link StreamEventListenerConfiguration#createShardConfigurations()} without shards, expecting the configuration itself
+	 */
+	@Test
+	public void testCreateShardConfigurationsWithoutShards() {
+		StreamEventListenerConfiguration cfg = new StreamEventListenerConfiguration("listenerClass", "listener-1", "name", "description", "0.1");
+		List<StreamEventListenerConfiguration> shardCfgs = cfg.createShardConfigurations();
+		Assert.assertEquals("Values must be equal", 1, shardCfgs.size());
+		Assert.assertSame("The configuration must be returned as is", cfg, shardCfgs.get(0));
+	}
+	
+	/**
+	 * Test case for {@link StreamEventListenerConfiguration#createShardConfigurations()} with two shards, expecting each shard
+	 * to be identified on its own, to feed the same dispatchers and to apply its settings on top of the common ones
+	 */
+	@Test
+	public void testCreateShardConfigurations() {
+		StreamEventListenerConfiguration cfg = new StreamEventListenerConfiguration("listenerClass", "listener-1", "name", "description", "0.1");
+		cfg.addDispatcher("disp-1");
+		cfg.setDispatcher("stream-analyzer.dispatchers.pinned");
+		cfg.addSetting("query", "common-query");
+		cfg.addSetting("url", "common-url");
+		Map<String, String> shard = new HashMap<>();
+		shard.put("query", "query-0");
+		cfg.addShard(shard);
+		cfg.addShard(null);
+		
+		List<StreamEventListenerConfiguration> shardCfgs = cfg.createShardConfigurations();
+		Assert.assertEquals("Values must be equal", 2, shardCfgs.size());
+		for(int i = 0; i < 2; i++) {
+			StreamEventListenerConfiguration shardCfg = shardCfgs.get(i);
+			Assert.assertEquals("Values must be equal", "listener-1" + StreamEventListenerConfiguration.SHARD_ID_SEPARATOR + i, shardCfg.getId());
+			Assert.assertEquals("Values must be equal", "listenerClass", shardCfg.getListenerClass());
+			Assert.assertEquals("Values must be equal", "stream-analyzer.dispatchers.pinned", shardCfg.getDispatcher());
+			Assert.assertTrue("The dispatcher must be contained", shardCfg.getDispatchers().contains("disp-1"));
+			Assert.assertEquals("Values must be equal", "common-url", shardCfg.getSettings().get("url"));
+			Assert.assertEquals("Values must be equal", String.valueOf(i), shardCfg.getSettings().get(StreamEventListenerConfiguration.SETTING_SHARD_INDEX));
+			Assert.assertEquals("Values must be equal", "2", shardCfg.getSettings().get(StreamEventListenerConfiguration.SETTING_SHARD_COUNT));
+		}
+		Assert.assertEquals("Values must be equal", "query-0", shardCfgs.get(0).getSettings().get("query"));
+		Assert.assertEquals("Values must be equal", "common-query", shardCfgs.get(1).getSettings().get("query"));
+		Assert.assertEquals("The common settings must remain unchanged", "common-query", cfg.getSettings().get("query"));
+	}
+	
+	/**
+	 * Test case for reading shards via jackson
+	 */
+	@Test
+	public void testReadShards() throws Exception {
+		StreamEventListenerConfiguration cfg = new ObjectMapper().readValue("{\"listenerClass\":\"listenerClass\",\"id\":\"listener-1\",\"name\":\"name\",\"description\":\"description\",\"version\":\"0.1\"," +
+				"\"dispatchers\":[\"disp-1\"],\"settings\":{\"query\":\"common-query\"},\"shards\":[{\"query\":\"query-0\"},{\"query\":\"query-1\"}]}", StreamEventListenerConfiguration.class);
+		Assert.assertEquals("Values must be equal", 2, cfg.getShards().size());
+		Assert.assertEquals("Values must be equal", "query-1", cfg.createShardConfigurations().get(1).getSettings().get("query"));
+	}
+}
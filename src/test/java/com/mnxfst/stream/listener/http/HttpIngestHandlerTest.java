@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.listener.http;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.listener.FlowCreditGate;
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link HttpIngestHandler}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class HttpIngestHandlerTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for {@link HttpIngestHandler} receiving requests towards unknown paths, with unsupported methods and without 
+	 * any dispatcher being available
+	 */
+	@Test
+	public void testRejectedRequests() {
+		
+		new JavaTestKit(system) {{
+			HttpIngestHandler handler = new HttpIngestHandler(getRef(), "http-listener", "/events", new FlowCreditGate());
+			EmbeddedChannel channel = new EmbeddedChannel(handler);
+			
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.NOT_FOUND, post(channel, HttpMethod.POST, "/unknown", "event").getStatus());
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.METHOD_NOT_ALLOWED, post(channel, HttpMethod.GET, "/events", "").getStatus());
+			
+			FullHttpResponse response = post(channel, HttpMethod.POST, "/events?source=test", "event");
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.SERVICE_UNAVAILABLE, response.getStatus());
+			Assert.assertEquals("Values must be equal", HttpIngestHandler.RETRY_AFTER_SECONDS, response.headers().get(HttpHeaders.Names.RETRY_AFTER));
+			Assert.assertEquals("Values must be equal", 1, handler.getRejectedRequests());
+			expectNoMsg();
+		}};
+	}
+	
+	/**
+	 * Test case for {@link HttpIngestHandler} receiving a single event and a newline-delimited batch, expecting the events 
+	 * to be sent towards the dispatcher on behalf of the listener and requests to be rejected as soon as the credits are exhausted
+	 */
+	@Test
+	public void testSingleAndBatchEvents() {
+		
+		new JavaTestKit(system) {{
+			final JavaTestKit listener = new JavaTestKit(system);
+			FlowCreditGate creditGate = new FlowCreditGate();
+			creditGate.grant("disp-1", 4);
+			HttpIngestHandler handler = new HttpIngestHandler(listener.getRef(), "http-listener", "/events", creditGate);
+			handler.updateDispatchers(Arrays.asList(getRef()));
+			EmbeddedChannel channel = new EmbeddedChannel(handler);
+			
+			FullHttpResponse response = post(channel, HttpMethod.POST, "/events", "{\"name\":\"café\"}");
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.ACCEPTED, response.getStatus());
+			Assert.assertEquals("Values must be equal", "{\"accepted\":1}", response.content().toString(CharsetUtil.UTF_8));
+			StreamEventMessage event = expectMsgClass(StreamEventMessage.class);
+			Assert.assertEquals("The listener must be the sender", listener.getRef(), getLastSender());
+			Assert.assertEquals("Values must be equal", "http-listener", event.getOrigin());
+			Assert.assertEquals("Values must be equal", "café", event.getEventField("name").asText());
+			
+			response = post(channel, HttpMethod.POST, "/events/batch", "{\"id\":1}\r\n\n  \n{\"id\":2}\n{\"id\":3}");
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.ACCEPTED, response.getStatus());
+			Assert.assertEquals("Values must be equal", "{\"accepted\":3}", response.content().toString(CharsetUtil.UTF_8));
+			StreamEventBatch batch = expectMsgClass(StreamEventBatch.class);
+			Assert.assertEquals("The batch must hold 3 events", 3, batch.size());
+			for(int i = 0; i < 3; i++)
+				Assert.assertEquals("Values must be equal", "{\"id\":" + (i + 1) + "}", batch.getEvents().get(i).getEvent());
+			Assert.assertEquals("Values must be equal", 4, handler.getAcceptedEvents());
+			
+			// credits are exhausted
+			response = post(channel, HttpMethod.POST, "/events", "event");
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.TOO_MANY_REQUESTS, response.getStatus());
+			expectNoMsg();
+			
+			creditGate.grant("disp-1", 5);
+			Assert.assertEquals("Values must be equal", HttpResponseStatus.ACCEPTED, post(channel, HttpMethod.POST, "/events", "event").getStatus());
+			Assert.assertEquals("Values must be equal", "event", expectMsgClass(StreamEventMessage.class).getEvent());
+		}};
+	}
+	
+	/**
+	 * Writes the request into the channel and returns the response
+	 * @param channel
+	 * @param method
+	 * @param uri
+	 * @param content
+	 * @return
+	 */
+	protected static FullHttpResponse post(final EmbeddedChannel channel, final HttpMethod method, final String uri, final String content) {
+		FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri, Unpooled.copiedBuffer(content, CharsetUtil.UTF_8));
+		channel.writeInbound(request);
+		FullHttpResponse response = (FullHttpResponse)channel.readOutbound();
+		Assert.assertNotNull("The response must not be null", response);
+		return response;
+	}
+
+}
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link StreamEventBatch}
+ * @author mnxfst
+ * @since 19.03.2014
+ *
+ */
+public class StreamEventBatchTest {
+
+	/**
+	 * Test case for {@link StreamEventBatch#StreamEventBatch(List)} being provided a list which is modified afterwards,
+	 * expecting the batch to remain unchanged
+	 */
+	@Test
+	public void testBatchCopiesProvidedEvents() {
+		List<StreamEventMessage> events = new ArrayList<>();
+		events.add(new StreamEventMessage("id-1", "origin", System.currentTimeMillis(), "event"));
+		StreamEventBatch batch = new StreamEventBatch(events);
+		events.add(new StreamEventMessage("id-2", "origin", System.currentTimeMillis(), "event"));
+		
+		Assert.assertEquals("Values must be equal", 1, batch.size());
+		Assert.assertEquals("Values must be equal", "id-1", batch.getEvents().get(0).getIdentifier());
+		Assert.assertEquals("Values must be equal", 0, new StreamEventBatch(null).size());
+	}
+	
+	/**
+	 * Test case for {@link StreamEventBatch#getEvents()} being modified by a receiver, expecting an exception
+	 */
+	@Test(expected=UnsupportedOperationException.class)
+	public void testEventsAreUnmodifiable() {
+		List<StreamEventMessage> events = new ArrayList<>();
+		events.add(new StreamEventMessage("id-1", "origin", System.currentTimeMillis(), "event"));
+		new StreamEventBatch(events).getEvents().add(new StreamEventMessage("id-2", "origin", System.currentTimeMillis(), "event"));
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares a pipeline of five elements each reading one field from the event content. The baseline parses the
+ * raw event in each element, the cached variant relies on {@link StreamEventMessage#getEventTree()}. Run it via
+ * {@link #main(String[])} from the test classpath
+ * @author mnxfst
+ * @since 23.03.2014
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamEventMessageBenchmark {
+
+	private static final String[] FIELDS = { "session.id", "page.url", "page.title", "visitor.country", "event.type" };
+	private static final String EVENT = "{\"session\":{\"id\":\"2c4a6f1e-8d8e-4f7a-9a51-4fd3c6c1a2b0\",\"start\":\"2014-03-23T10:15:00.000+0100\"},"
+			+ "\"page\":{\"url\":\"http://www.example.com/products/shoes?color=red\",\"title\":\"Red shoes\",\"referrer\":\"http://www.example.com/\"},"
+			+ "\"visitor\":{\"id\":\"v-81723\",\"country\":\"DE\",\"city\":\"Hamburg\",\"agent\":\"Mozilla/5.0 (X11; Linux x86_64)\"},"
+			+ "\"event\":{\"type\":\"pageview\",\"ts\":1395566100000,\"tags\":[\"shoes\",\"red\",\"sale\"]}}";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * Each element parses the raw event content
+	 * @param blackhole
+	 * @throws Exception
+	 */
+	@Benchmark
+	public void parsePerElement(final Blackhole blackhole) throws Exception {
+		StreamEventMessage message = new StreamEventMessage("id", "origin", System.currentTimeMillis(), EVENT);
+		for(final String field : FIELDS) {
+			JsonNode node = this.mapper.readTree(message.getEvent());
+			for(final String segment : field.split("\\."))
+				node = node.path(segment);
+			blackhole.consume(node);
+		}
+	}
+
+	/**
+	 * The first element parses the event content, all others reuse the cached tree
+	 * @param blackhole
+	 */
+	@Benchmark
+	public void cachedEventTree(final Blackhole blackhole) {
+		StreamEventMessage message = new StreamEventMessage("id", "origin", System.currentTimeMillis(), EVENT);
+		for(final String field : FIELDS)
+			blackhole.consume(message.getEventField(field));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().include(StreamEventMessageBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test case for {@link StreamEventMessage}
+ * @author mnxfst
+ * @since 23.03.2014
+ *
+ */
+public class StreamEventMessageTest {
+
+	/**
+	 * Test case for the <code>with...</code> derivations, expecting the original message to remain unchanged and
+	 * unchanged fields to be shared
+	 */
+	@Test
+	public void testDerivationsKeepOriginalUnchanged() {
+		
+		StreamEventMessage original = new StreamEventMessage("id", "origin", System.currentTimeMillis(), "event").withCustomAttribute("key", "value");
+		StreamEventMessage modified = original.withEvent("modified");
+		
+		Assert.assertEquals("The event must not change", "event", original.getEvent());
+		Assert.assertEquals("The event must be modified", "modified", modified.getEvent());
+		Assert.assertSame("The attributes must be shared", original.getCustomAttributes(), modified.getCustomAttributes());
+		Assert.assertSame("The identifier must be shared", original.getIdentifier(), modified.getIdentifier());
+		
+		StreamEventMessage attributed = modified.withCustomAttribute("key-2", "value-2");
+		Assert.assertEquals("The original must hold one attribute", 1, modified.getCustomAttributes().size());
+		Assert.assertEquals("The derived must hold two attributes", 2, attributed.getCustomAttributes().size());
+		Assert.assertEquals("The derived must hold one attribute", 1, attributed.withoutCustomAttribute("key").getCustomAttributes().size());
+		
+		try {
+			original.getCustomAttributes().put("key-3", "value-3");
+			Assert.fail("The attributes must be read-only");
+		} catch(UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessage#getEventTree()} expecting the tree to be parsed once and to be dropped when replacing the event
+	 */
+	@Test
+	public void testEventTreeCachedAndInvalidated() {
+		
+		StreamEventMessage message = new StreamEventMessage("id", "origin", System.currentTimeMillis(), "{\"session\":{\"id\":\"s-1\"},\"count\":3}");
+		Assert.assertFalse("The tree must not be parsed yet", message.isEventTreeAvailable());
+		Assert.assertEquals("Values must be equal", "s-1", message.getEventField("session.id").asText());
+		Assert.assertEquals("Values must be equal", 3, message.getEventField("count").asInt());
+		Assert.assertTrue("The field must be missing", message.getEventField("session.unknown.field").isMissingNode());
+		Assert.assertSame("The tree must be cached", message.getEventTree(), message.getEventTree());
+		
+		StreamEventMessage attributed = message.withCustomAttribute("key", "value");
+		Assert.assertSame("The tree must be shared", message.getEventTree(), attributed.getEventTree());
+		
+		StreamEventMessage replaced = message.withEvent("{\"session\":{\"id\":\"s-2\"}}");
+		Assert.assertFalse("The tree must be dropped", replaced.isEventTreeAvailable());
+		Assert.assertEquals("Values must be equal", "s-2", replaced.getEventField("session.id").asText());
+		
+		Assert.assertTrue("Invalid content must result in a missing node", message.withEvent("no json").getEventTree().isMissingNode());
+	}
+	
+	/**
+	 * Test case for serializing and deserializing a message via jackson
+	 */
+	@Test
+	public void testJsonRoundTrip() throws Exception {
+		
+		ObjectMapper mapper = new ObjectMapper();
+		StreamEventMessage original = new StreamEventMessage("id", "origin", System.currentTimeMillis(), "event").withCustomAttribute("key", "value").withEventTime(1395738900123L);
+		StreamEventMessage copy = mapper.readValue(mapper.writeValueAsBytes(original), StreamEventMessage.class);
+		Assert.assertEquals("Values must be equal", original.getIdentifier(), copy.getIdentifier());
+		Assert.assertEquals("Values must be equal", original.getOrigin(), copy.getOrigin());
+		Assert.assertEquals("Values must be equal", original.getTimestamp(), copy.getTimestamp());
+		Assert.assertEquals("Values must be equal", original.getIngestionTime(), copy.getIngestionTime());
+		Assert.assertEquals("Values must be equal", 1395738900123L, copy.getEventTime());
+		Assert.assertEquals("Values must be equal", original.getEvent(), copy.getEvent());
+		Assert.assertEquals("Values must be equal", "value", copy.getCustomAttributes().get("key"));
+		
+		StreamEventMessage plain = mapper.readValue("{\"id\":\"id\",\"origin\":\"origin\",\"timestamp\":\"2014-03-25T10:15:00.123+0100\",\"event\":\"event\"}", StreamEventMessage.class);
+		Assert.assertEquals("Values must be equal", 1395738900123L, plain.getIngestionTime());
+		Assert.assertFalse("The event time must not be set", plain.hasEventTime());
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessage#fromUtf8(String, String, long, byte[])} expecting the bytes to be 
+	 * handed out as is, the content to be decoded on request and to be parsed from the bytes
+	 */
+	@Test
+	public void testUtf8Payload() throws Exception {
+		
+		byte[] content = "{\"name\":\"caf\u00e9\"}".getBytes("UTF-8");
+		StreamEventMessage message = StreamEventMessage.fromUtf8("id", "origin", System.currentTimeMillis(), content);
+		Assert.assertTrue("The content must be held as bytes", message.isUtf8Payload());
+		Assert.assertSame("The bytes must be handed out as is", content, message.getEventBytes());
+		Assert.assertEquals("Values must be equal", "caf\u00e9", message.getEventField("name").asText());
+		Assert.assertEquals("Values must be equal", "{\"name\":\"caf\u00e9\"}", message.getEvent());
+		Assert.assertSame("The decoded content must be cached", message.getEvent(), message.getEvent());
+		
+		StreamEventMessage attributed = message.withCustomAttribute("key", "value");
+		Assert.assertSame("The bytes must be shared", content, attributed.getEventBytes());
+		Assert.assertFalse("The content must be held as string", message.withEvent("event").isUtf8Payload());
+		Assert.assertArrayEquals("Values must be equal", "event".getBytes("UTF-8"), message.withEvent("event").getEventBytes());
+		
+		ObjectMapper mapper = new ObjectMapper();
+		StreamEventMessage copy = mapper.readValue(mapper.writeValueAsBytes(attributed), StreamEventMessage.class);
+		Assert.assertEquals("Values must be equal", message.getEvent(), copy.getEvent());
+		Assert.assertEquals("Values must be equal", "value", copy.getCustomAttributes().get("key"));
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.message;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case for {@link TimestampFormat}
+ * @author mnxfst
+ * @since 27.03.2014
+ *
+ */
+public class TimestampFormatTest {
+
+	/**
+	 * Test case for {@link TimestampFormat#format(long)} expecting the same result as a {@link SimpleDateFormat}, 
+	 * also for timestamps sharing the same second
+	 */
+	@Test
+	public void testFormat() {
+		
+		SimpleDateFormat expected = new SimpleDateFormat(TimestampFormat.PATTERN);
+		long second = (System.currentTimeMillis() / 1000) * 1000;
+		for(long timestamp : new long[]{ second, second + 7, second + 42, second + 999, second + 1000, 0, -1, 1395738900123L })
+			Assert.assertEquals("Values must be equal", expected.format(new Date(timestamp)), TimestampFormat.format(timestamp));
+	}
+	
+	/**
+	 * Test case for {@link TimestampFormat#parse(String)}
+	 */
+	@Test
+	public void testParse() {
+		
+		long timestamp = System.currentTimeMillis();
+		Assert.assertEquals("Values must be equal", timestamp, TimestampFormat.parse(TimestampFormat.format(timestamp)));
+		Assert.assertEquals("Values must be equal", timestamp, TimestampFormat.parse(String.valueOf(timestamp)));
+		
+		try {
+			TimestampFormat.parse("2014-03-27");
+			Assert.fail("Invalid timestamp");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
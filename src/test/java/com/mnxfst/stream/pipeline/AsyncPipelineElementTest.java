@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+
+/**
+ * Test case for {@link AsyncPipelineElement}
+ * @author mnxfst
+ * @since 18.03.2014
+ *
+ */
+public class AsyncPipelineElementTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for {@link AsyncPipelineElement} being limited to a single event in flight, expecting all events to be processed in order
+	 */
+	@Test
+	public void testProcessEventsWithSingleEventInFlight() {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "async-element", "description", TestAsyncPipelineElement.class.getName(), 1, "");
+			cfg.addSetting("logRefPath", getRef().path().toString());
+			cfg.addSetting(AsyncPipelineElement.CONFIG_ASYNC_MAX_IN_FLIGHT, "1");
+			final ActorRef elementRef = system.actorOf(Props.create(TestAsyncPipelineElement.class, cfg));
+			
+			for(int i = 0; i < 3; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "test-event"), getRef());
+
+			for(int i = 0; i < 3; i++) {
+				StreamEventMessage processed = (StreamEventMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+				Assert.assertNotNull("The message must not be null", processed);
+				Assert.assertEquals("The events must be processed in order", "event-" + i, processed.getIdentifier());
+				Assert.assertEquals("No event must be in flight", "0", processed.getCustomAttributes().get("inFlight"));
+				Assert.assertEquals("The remaining events must wait", String.valueOf(2 - i), processed.getCustomAttributes().get("waiting"));
+			}
+		}};
+	}
+	
+	/**
+	 * Test case for {@link AsyncPipelineElement} being restarted while an event is in flight, expecting its completion to be 
+	 * ignored by the new instance
+	 */
+	@Test
+	public void testCompletionAfterRestartIgnored() {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "async-element", "description", TestAsyncPipelineElement.class.getName(), 1, "");
+			cfg.addSetting("logRefPath", getRef().path().toString());
+			cfg.addSetting(AsyncPipelineElement.CONFIG_ASYNC_MAX_IN_FLIGHT, "1");
+			final ActorRef elementRef = system.actorOf(Props.create(TestAsyncPipelineElement.class, cfg));
+			
+			elementRef.tell(new StreamEventMessage("event-0", "test-origin", System.currentTimeMillis(), "test-event"), getRef());
+			elementRef.tell(new StreamEventMessage(TestAsyncPipelineElement.RESTART_EVENT_ID, "test-origin", System.currentTimeMillis(), "test-event"), getRef());
+			for(int i = 1; i < 3; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "test-event"), getRef());
+			
+			for(int i = 1; i < 3; i++) {
+				StreamEventMessage processed = (StreamEventMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+				Assert.assertNotNull("The message must not be null", processed);
+				Assert.assertEquals("The completion started before the restart must be ignored", "event-" + i, processed.getIdentifier());
+				Assert.assertEquals("No event must be in flight", "0", processed.getCustomAttributes().get("inFlight"));
+			}
+			expectNoMsg(Duration.create(100, TimeUnit.MILLISECONDS));
+		}};
+	}
+	
+	/**
+	 * Test case for {@link AsyncPipelineElement} receiving more events than it may queue, expecting the events beyond to be dropped
+	 */
+	@Test
+	public void testWaitingEventsLimited() {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "async-element", "description", TestAsyncPipelineElement.class.getName(), 1, "");
+			cfg.addSetting("logRefPath", getRef().path().toString());
+			cfg.addSetting(AsyncPipelineElement.CONFIG_ASYNC_MAX_IN_FLIGHT, "1");
+			cfg.addSetting(AsyncPipelineElement.CONFIG_ASYNC_MAX_WAITING, "1");
+			final ActorRef elementRef = system.actorOf(Props.create(TestAsyncPipelineElement.class, cfg));
+			
+			for(int i = 0; i < 3; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "test-event"), getRef());
+			
+			for(int i = 0; i < 2; i++) {
+				StreamEventMessage processed = (StreamEventMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+				Assert.assertNotNull("The message must not be null", processed);
+				Assert.assertEquals("The events must be processed in order", "event-" + i, processed.getIdentifier());
+			}
+			expectNoMsg(Duration.create(100, TimeUnit.MILLISECONDS));
+		}};
+	}
+	
+}
@@ -0,0 +1,244 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUnknownMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementRetentionStatsMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementRetentionStatsRequestMessage;
+
+/**
+ * Test case for {@link PipelineElement}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class PipelineElementTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for {@link PipelineElement} forwarding events towards an unresolved destination, expecting a single reference 
+	 * request, the events to be retained - partly on disk - and to be delivered in order as soon as the destination is resolved
+	 */
+	@Test
+	public void testForwardRetainAndDrain() throws Exception {
+		new JavaTestKit(system) {{
+			
+			final JavaTestKit destination = new JavaTestKit(system);
+			final File spillDirectory = Files.createTempDirectory("retention-").toFile();
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "source", "description", TestForwardingPipelineElement.class.getName(), 1, "destination");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_MEMORY_CAPACITY, "2");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_SPILL_DIRECTORY, spillDirectory.getAbsolutePath());
+			final ActorRef parentRef = system.actorOf(Props.create(TestParent.class, Props.create(TestForwardingPipelineElement.class, cfg), getRef()));
+			
+			for(int i = 0; i < 5; i++)
+				parentRef.tell(new StreamEventMessage("id-" + i, "origin", System.currentTimeMillis(), "event-" + i), getRef());
+
+			PipelineElementReferenceUnknownMessage lookup = expectMsgClass(PipelineElementReferenceUnknownMessage.class);
+			Assert.assertEquals("Values must be equal", "destination", lookup.getUnknownElementId());
+
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			PipelineElementRetentionStatsMessage stats = expectMsgClass(PipelineElementRetentionStatsMessage.class);
+			Assert.assertEquals("All events must be retained", 5, stats.getRetentionDepth());
+			Assert.assertTrue("Events must be spilled to disk", stats.getRetentionBytes() > 0);
+			Assert.assertEquals("No event must be dropped", 0, stats.getDroppedMessages());
+			
+			PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			update.addElementReference("destination", destination.getRef());
+			parentRef.tell(update, getRef());
+			for(int i = 0; i < 5; i++)
+				Assert.assertEquals("The events must arrive in order", "id-" + i, destination.expectMsgClass(StreamEventMessage.class).getIdentifier());
+			
+			parentRef.tell(new StreamEventMessage("id-5", "origin", System.currentTimeMillis(), "event-5"), getRef());
+			Assert.assertEquals("Values must be equal", "id-5", destination.expectMsgClass(StreamEventMessage.class).getIdentifier());
+
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			stats = expectMsgClass(PipelineElementRetentionStatsMessage.class);
+			Assert.assertEquals("No event must be retained", 0, stats.getRetentionDepth());
+			Assert.assertEquals("No event must be spilled", 0, stats.getRetentionBytes());
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineElement} being stopped while retaining events, expecting the segment files to be removed 
+	 * as persistence is not enabled
+	 */
+	@Test
+	public void testStopRemovesSegmentFiles() throws Exception {
+		new JavaTestKit(system) {{
+			
+			final File spillDirectory = Files.createTempDirectory("retention-").toFile();
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "source", "description", TestForwardingPipelineElement.class.getName(), 1, "destination");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_MEMORY_CAPACITY, "1");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_SPILL_DIRECTORY, spillDirectory.getAbsolutePath());
+			final ActorRef parentRef = system.actorOf(Props.create(TestParent.class, Props.create(TestForwardingPipelineElement.class, cfg), getRef()));
+			
+			for(int i = 0; i < 3; i++)
+				parentRef.tell(new StreamEventMessage("id-" + i, "origin", System.currentTimeMillis(), "event-" + i), getRef());
+			expectMsgClass(PipelineElementReferenceUnknownMessage.class);
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			Assert.assertTrue("Events must be spilled to disk", expectMsgClass(PipelineElementRetentionStatsMessage.class).getRetentionBytes() > 0);
+			
+			watch(parentRef);
+			system.stop(parentRef);
+			expectMsgClass(Terminated.class);
+			
+			final File[] segmentFiles = new File(spillDirectory, "test-pipeline").listFiles();
+			Assert.assertTrue("The segment files must be removed", segmentFiles == null || segmentFiles.length == 0);
+			expectNoMsg(Duration.create(100, TimeUnit.MILLISECONDS));
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineElement} forwarding events towards a destination unknown to the parent, expecting the 
+	 * lookup to be retried and the retained events to be dropped once the max. number of retries is exceeded. A later
+	 * event starts a new lookup
+	 */
+	@Test
+	public void testUnknownDestinationLookupIsRetried() throws Exception {
+		new JavaTestKit(system) {{
+			
+			final JavaTestKit destination = new JavaTestKit(system);
+			final File spillDirectory = Files.createTempDirectory("retention-").toFile();
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "source", "description", TestForwardingPipelineElement.class.getName(), 1, "destination");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_SPILL_DIRECTORY, spillDirectory.getAbsolutePath());
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_RETRY_DELAY, "50");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_RETRY_MAX, "2");
+			final ActorRef parentRef = system.actorOf(Props.create(TestParent.class, Props.create(TestForwardingPipelineElement.class, cfg), getRef()));
+			
+			parentRef.tell(new StreamEventMessage("id-0", "origin", System.currentTimeMillis(), "event-0"), getRef());
+			PipelineElementReferenceUpdateMessage unknown = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			unknown.addElementReference("destination", null);
+			for(int i = 0; i < 3; i++) {
+				Assert.assertEquals("Values must be equal", "destination", expectMsgClass(PipelineElementReferenceUnknownMessage.class).getUnknownElementId());
+				parentRef.tell(unknown, getRef());
+			}
+			
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			PipelineElementRetentionStatsMessage stats = expectMsgClass(PipelineElementRetentionStatsMessage.class);
+			Assert.assertEquals("No event must be retained", 0, stats.getRetentionDepth());
+			Assert.assertEquals("The retained event must be dropped", 1, stats.getDroppedMessages());
+			
+			parentRef.tell(new StreamEventMessage("id-1", "origin", System.currentTimeMillis(), "event-1"), getRef());
+			expectMsgClass(PipelineElementReferenceUnknownMessage.class);
+			PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			update.addElementReference("destination", destination.getRef());
+			parentRef.tell(update, getRef());
+			Assert.assertEquals("Values must be equal", "id-1", destination.expectMsgClass(StreamEventMessage.class).getIdentifier());
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineElement} failing to read retained events, expecting events forwarded meanwhile to be retained
+	 * behind them instead of overtaking them - until the retained events are dropped after the max. number of retries
+	 */
+	@Test
+	public void testFailedDrainKeepsOrder() throws Exception {
+		new JavaTestKit(system) {{
+			
+			final JavaTestKit destination = new JavaTestKit(system);
+			final File spillDirectory = Files.createTempDirectory("retention-").toFile();
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", "source", "description", TestForwardingPipelineElement.class.getName(), 1, "destination");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_MEMORY_CAPACITY, "1");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_SPILL_DIRECTORY, spillDirectory.getAbsolutePath());
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_RETRY_DELAY, "50");
+			cfg.addSetting(PipelineElement.CONFIG_RETENTION_RETRY_MAX, "1");
+			final ActorRef parentRef = system.actorOf(Props.create(TestParent.class, Props.create(TestForwardingPipelineElement.class, cfg), getRef()));
+			
+			for(int i = 0; i < 3; i++)
+				parentRef.tell(new StreamEventMessage("id-" + i, "origin", System.currentTimeMillis(), "event-" + i), getRef());
+			expectMsgClass(PipelineElementReferenceUnknownMessage.class);
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			Assert.assertTrue("Events must be spilled to disk", expectMsgClass(PipelineElementRetentionStatsMessage.class).getRetentionBytes() > 0);
+			
+			// events spilled to disk cannot be read anymore
+			for(final File segmentFile : new File(spillDirectory, "test-pipeline").listFiles())
+				Assert.assertTrue("The segment file must be removed", segmentFile.delete());
+			
+			PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			update.addElementReference("destination", destination.getRef());
+			parentRef.tell(update, getRef());
+			parentRef.tell(new StreamEventMessage("id-3", "origin", System.currentTimeMillis(), "event-3"), getRef());
+			Assert.assertEquals("Values must be equal", "id-0", destination.expectMsgClass(StreamEventMessage.class).getIdentifier());
+			destination.expectNoMsg(Duration.create(300, TimeUnit.MILLISECONDS));
+			
+			parentRef.tell(new PipelineElementRetentionStatsRequestMessage("test-pipeline"), getRef());
+			PipelineElementRetentionStatsMessage stats = expectMsgClass(PipelineElementRetentionStatsMessage.class);
+			Assert.assertEquals("No event must be retained", 0, stats.getRetentionDepth());
+			Assert.assertEquals("The unreadable events and the event retained behind them must be dropped", 3, stats.getDroppedMessages());
+			
+			parentRef.tell(new StreamEventMessage("id-4", "origin", System.currentTimeMillis(), "event-4"), getRef());
+			Assert.assertEquals("Values must be equal", "id-4", destination.expectMsgClass(StreamEventMessage.class).getIdentifier());
+		}};
+	}
+	
+	/**
+	 * Parent of the element under test, forwards all messages sent by the element to the probe and all others to the element 
+	 * @author mnxfst
+	 * @since 30.03.2014
+	 */
+	public static class TestParent extends UntypedActor {
+		
+		private final ActorRef probeRef;
+		private final ActorRef elementRef;
+		
+		public TestParent(final Props elementProps, final ActorRef probeRef) {
+			this.probeRef = probeRef;
+			this.elementRef = context().actorOf(elementProps, "element");
+		}
+		
+		/**
+		 * @see akka.actor.UntypedActor#onReceive(java.lang.Object)
+		 */
+		public void onReceive(Object message) throws Exception {
+			if(this.elementRef.equals(getSender()))
+				this.probeRef.tell(message, getSelf());
+			else
+				this.elementRef.forward(message, getContext());
+		}
+	}
+}
@@ -16,7 +16,9 @@
 package com.mnxfst.stream.pipeline;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
@@ -29,7 +31,9 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.JavaTestKit;
+import akka.testkit.TestActorRef;
 
+import com.mnxfst.stream.message.FlowCreditMessage;
 import com.mnxfst.stream.message.StreamEventMessage;
 import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
 import com.mnxfst.stream.pipeline.config.PipelineRootConfiguration;
@@ -105,6 +109,139 @@ protected static ActorSystem system;
 		}};
 	}
 	
+	/**
+	 * Test case for {@link PipelineRoot} being initialized with multiple element instances, expecting notifications for each instance
+	 */
+	@Test
+	public void testSetupWithMultipleInstancesExpectingReferenceUpdatesForEachInstance() {
+		new JavaTestKit(system) {{
+			
+			PipelineRootConfiguration rootCfg = new PipelineRootConfiguration("test-pipeline-instances", "description", "element-id");
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration(rootCfg.getPipelineId(), "element-id", "description", TestPipelineElement.class.getName(), 3, "");
+			cfg.setRouterType(PipelineElementConfiguration.ROUTER_TYPE_SMALLEST_MAILBOX);
+			cfg.addSetting("logRefPath", getRef().path().toString());
+			rootCfg.addElementConfiguration(cfg);
+			system.actorOf(Props.create(PipelineRoot.class, rootCfg));
+			
+			ActorRef elementRef = null;
+			for(int i = 0; i < 3; i++) {
+				PipelineElementReferenceUpdateMessage updateMessage = (PipelineElementReferenceUpdateMessage)receiveOne(Duration.create(500, TimeUnit.MILLISECONDS));
+				Assert.assertNotNull("The message must not be null", updateMessage);
+				Assert.assertEquals("The elements map must have 1 entry", 1, updateMessage.getElementReferences().size());
+				if(elementRef == null)
+					elementRef = updateMessage.getElementReferences().get(cfg.getElementId());
+				Assert.assertEquals("All instances must receive the same router reference", elementRef, updateMessage.getElementReferences().get(cfg.getElementId()));
+			}
+			Assert.assertEquals("The router must be named after the element", cfg.getElementId(), elementRef.path().name());
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineRoot} being configured with a credit window, expecting the first sender of events to be
+	 * granted the whole window
+	 */
+	@Test
+	public void testCreditWindowGrantedToSender() {
+		new JavaTestKit(system) {{
+			
+			final JavaTestKit elementLog = new JavaTestKit(system);
+			PipelineRootConfiguration rootCfg = new PipelineRootConfiguration("test-pipeline-credits", "description", "element-id");
+			rootCfg.setCreditWindow(100);
+			rootCfg.setLoadReportInterval(60000);
+			PipelineElementConfiguration cfg = new PipelineElementConfiguration(rootCfg.getPipelineId(), "element-id", "description", TestPipelineElement.class.getName(), 1, "");
+			cfg.addSetting("logRefPath", elementLog.getRef().path().toString());
+			rootCfg.addElementConfiguration(cfg);
+			final ActorRef pipelineRootRef = system.actorOf(Props.create(PipelineRoot.class, rootCfg));
+			
+			pipelineRootRef.tell(new StreamEventMessage("test-id", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			FlowCreditMessage credit = expectMsgClass(FlowCreditMessage.class);
+			Assert.assertEquals("Values must be equal", rootCfg.getPipelineId(), credit.getSourceId());
+			Assert.assertEquals("The whole window must be granted", 100, credit.getCreditLimit());
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineRoot#determineFusedElements(PipelineRootConfiguration)} expecting segments to be broken at blocking and parallel elements
+	 */
+	@Test
+	public void testDetermineFusedElements() {
+		new JavaTestKit(system) {{
+			
+			PipelineRootConfiguration rootCfg = new PipelineRootConfiguration("test-pipeline-fusion", "description", "head");
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "head", "description", TestPipelineElement.class.getName(), 1, "filter"));
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "filter", "description", TestPipelineElement.class.getName(), 1, "writer"));
+			PipelineElementConfiguration writerCfg = new PipelineElementConfiguration(rootCfg.getPipelineId(), "writer", "description", TestPipelineElement.class.getName(), 1, "parallel");
+			writerCfg.setBlocking(true);
+			rootCfg.addElementConfiguration(writerCfg);
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "parallel", "description", TestPipelineElement.class.getName(), 2, "tail"));
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "tail", "description", TestPipelineElement.class.getName(), 1, ""));
+			for(PipelineElementConfiguration cfg : rootCfg.getElements())
+				cfg.addSetting("logRefPath", getRef().path().toString());
+			
+			TestActorRef<PipelineRoot> rootRef = TestActorRef.create(system, Props.create(PipelineRoot.class, rootCfg));
+			PipelineRoot root = rootRef.underlyingActor();
+			
+			Assert.assertTrue("Fusion is disabled", root.determineFusedElements(rootCfg).isEmpty());
+			
+			rootCfg.setFusion(true);
+			Map<String, String> fused = root.determineFusedElements(rootCfg);
+			Assert.assertEquals("Only the filter must be fused", 1, fused.size());
+			Assert.assertEquals("The filter must be fused with the head", "head", fused.get("filter"));
+			
+			rootCfg.getFusedSegments().add(Arrays.asList("filter", "writer", "parallel"));
+			rootCfg.getFusedSegments().add(Arrays.asList("head", "unknown"));
+			Assert.assertTrue("Blocking, parallel and unknown elements must not be fused", root.determineFusedElements(rootCfg).isEmpty());
+			
+			rootCfg.getFusedSegments().add(Arrays.asList("head", "filter"));
+			rootCfg.getFusedSegments().add(Arrays.asList("filter", "head"));
+			fused = root.determineFusedElements(rootCfg);
+			Assert.assertEquals("Only the filter must be fused", 1, fused.size());
+			Assert.assertEquals("The filter must be fused with the head", "head", fused.get("filter"));
+		}};
+	}
+	
+	/**
+	 * Test case for {@link PipelineRoot} running a fused segment, expecting the events to be processed by the downstream element
+	 * within the host of the upstream element - no matter if forwarded by the upstream element or by an element running elsewhere
+	 */
+	@Test
+	public void testFusedSegmentProcessesEvents() {
+		new JavaTestKit(system) {{
+			
+			PipelineRootConfiguration rootCfg = new PipelineRootConfiguration("test-pipeline-fused", "description", "head");
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "head", "description", TestForwardingPipelineElement.class.getName(), 1, "tail"));
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "tail", "description", TestForwardingPipelineElement.class.getName(), 1, ""));
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "side", "description", TestForwardingPipelineElement.class.getName(), 1, "tail"));
+			for(PipelineElementConfiguration cfg : rootCfg.getElements())
+				cfg.addSetting("logRefPath", getRef().path().toString());
+			rootCfg.setFusedSegments(Arrays.asList(Arrays.asList("head", "tail")));
+			final ActorRef pipelineRootRef = system.actorOf(Props.create(PipelineRoot.class, rootCfg));
+
+			for(int i = 0; i < 3; i++)
+				pipelineRootRef.tell(new StreamEventMessage("test-id-" + i, "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			for(int i = 0; i < 3; i++) {
+				StreamEventMessage event = expectMsgClass(StreamEventMessage.class);
+				Assert.assertEquals("The events must arrive in order", "test-id-" + i, event.getIdentifier());
+				Assert.assertEquals("The tail must be executed by the host of the head", "head", getLastSender().path().name());
+			}
+			
+			system.actorSelection(pipelineRootRef.path().child("side")).tell(new StreamEventMessage("test-id-side", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			StreamEventMessage event = expectMsgClass(StreamEventMessage.class);
+			Assert.assertEquals("Values must be equal", "test-id-side", event.getIdentifier());
+			Assert.assertEquals("The tail must be executed by the host of the head", "head", getLastSender().path().name());
+			
+			// without fusion the tail runs within its own actor
+			rootCfg = new PipelineRootConfiguration("test-pipeline-unfused", "description", "head");
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "head", "description", TestForwardingPipelineElement.class.getName(), 1, "tail"));
+			rootCfg.addElementConfiguration(new PipelineElementConfiguration(rootCfg.getPipelineId(), "tail", "description", TestForwardingPipelineElement.class.getName(), 1, ""));
+			for(PipelineElementConfiguration cfg : rootCfg.getElements())
+				cfg.addSetting("logRefPath", getRef().path().toString());
+			system.actorOf(Props.create(PipelineRoot.class, rootCfg)).tell(new StreamEventMessage("test-id", "test-origin", System.currentTimeMillis(), "TestEvent"), getRef());
+			expectMsgClass(StreamEventMessage.class);
+			Assert.assertEquals("The tail must be executed by its own actor", "tail", getLastSender().path().name());
+		}};
+	}
+	
 	/**
 	 * Test case for {@link PipelineRoot} being initialized and handed over a message
 	 */
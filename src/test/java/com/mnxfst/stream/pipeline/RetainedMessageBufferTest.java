@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link RetainedMessageBuffer}
+ * @author mnxfst
+ * @since 20.03.2014
+ *
+ */
+public class RetainedMessageBufferTest {
+
+	/**
+	 * Test case for {@link RetainedMessageBuffer#poll()} with messages held in memory and spilled to disk, expecting the original order
+	 */
+	@Test
+	public void testRetainAndPollWithSpill() throws IOException {
+
+		File segmentFile = File.createTempFile("retention-", ".retained");
+		segmentFile.delete();
+
+		RetainedMessageBuffer buffer = new RetainedMessageBuffer(2, segmentFile, 1024 * 1024);
+		for(int i = 0; i < 5; i++)
+			Assert.assertTrue("The message must be retained", buffer.retain(new StreamEventMessage("id-"+i, "origin", System.currentTimeMillis(), "event-"+i)));
+
+		Assert.assertEquals("The buffer must hold 5 messages", 5, buffer.size());
+		Assert.assertEquals("The memory must hold 2 messages", 2, buffer.getMemorySize());
+		Assert.assertEquals("The segment must hold 3 messages", 3, buffer.getSegmentSize());
+		Assert.assertTrue("The segment must not be empty", buffer.getSegmentBytes() > 0);
+
+		Assert.assertEquals("Values must be equal", "id-0", buffer.poll().getIdentifier());
+		Assert.assertEquals("Values must be equal", "id-1", buffer.poll().getIdentifier());
+
+		// spill must continue as long as the segment is not drained
+		Assert.assertTrue("The message must be retained", buffer.retain(new StreamEventMessage("id-5", "origin", System.currentTimeMillis(), "event-5")));
+		Assert.assertEquals("The memory must be empty", 0, buffer.getMemorySize());
+
+		for(int i = 2; i < 6; i++) {
+			StreamEventMessage message = buffer.poll();
+			Assert.assertEquals("Values must be equal", "id-"+i, message.getIdentifier());
+			Assert.assertEquals("Values must be equal", "event-"+i, message.getEvent());
+		}
+		Assert.assertNull("The buffer must be empty", buffer.poll());
+		Assert.assertTrue("The buffer must be empty", buffer.isEmpty());
+		Assert.assertFalse("The segment file must be removed", segmentFile.exists());
+	}
+
+	/**
+	 * Test case for {@link RetainedMessageBuffer#retain(StreamEventMessage)} exceeding the segment size limit
+	 */
+	@Test
+	public void testRetainExceedingSegmentLimit() throws IOException {
+
+		File segmentFile = File.createTempFile("retention-", ".retained");
+		segmentFile.delete();
+
+		RetainedMessageBuffer buffer = new RetainedMessageBuffer(1, segmentFile, 16);
+		Assert.assertTrue("The message must be retained in memory", buffer.retain(new StreamEventMessage("id-0", "origin", System.currentTimeMillis(), "event-0")));
+		Assert.assertFalse("The message must be rejected", buffer.retain(new StreamEventMessage("id-1", "origin", System.currentTimeMillis(), "event-1")));
+		Assert.assertEquals("The buffer must hold 1 message", 1, buffer.size());
+		buffer.close();
+	}
+
+	/**
+	 * Test case for {@link RetainedMessageBuffer#persist()} expecting a new buffer to recover all messages in order
+	 */
+	@Test
+	public void testPersistAndRecover() throws IOException {
+
+		File segmentFile = File.createTempFile("retention-", ".retained");
+		segmentFile.delete();
+
+		RetainedMessageBuffer buffer = new RetainedMessageBuffer(2, segmentFile, 1024 * 1024);
+		for(int i = 0; i < 4; i++)
+			buffer.retain(new StreamEventMessage("id-"+i, "origin", System.currentTimeMillis(), "event-"+i));
+		buffer.poll();
+		buffer.persist();
+		Assert.assertTrue("The segment file must exist", segmentFile.isFile());
+
+		RetainedMessageBuffer recovered = new RetainedMessageBuffer(2, segmentFile, 1024 * 1024);
+		Assert.assertEquals("The buffer must hold 3 messages", 3, recovered.size());
+		for(int i = 1; i < 4; i++)
+			Assert.assertEquals("Values must be equal", "id-"+i, recovered.poll().getIdentifier());
+		Assert.assertTrue("The buffer must be empty", recovered.isEmpty());
+		Assert.assertFalse("The segment file must be removed", segmentFile.exists());
+	}
+}
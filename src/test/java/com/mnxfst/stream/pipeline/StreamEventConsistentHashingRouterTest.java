@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link StreamEventConsistentHashingRouter}
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class StreamEventConsistentHashingRouterTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for routing a batch holding events of different keys, expecting the batch to be split, all events sharing a key
+	 * to reach the same routee in their original order and single events to follow the same assignment
+	 */
+	@Test
+	public void testBatchSplitByHashKey() {
+		new JavaTestKit(system) {{
+			
+			final List<JavaTestKit> routees = new ArrayList<>();
+			final List<ActorRef> routeeRefs = new ArrayList<>();
+			for(int i = 0; i < 3; i++) {
+				routees.add(new JavaTestKit(system));
+				routeeRefs.add(routees.get(i).getRef());
+			}
+			final ActorRef routerRef = system.actorOf(Props.empty().withRouter(new StreamEventConsistentHashingRouter(routeeRefs, "key")));
+			
+			final List<StreamEventMessage> events = new ArrayList<>();
+			for(int i = 0; i < 30; i++)
+				events.add(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "test-event").withCustomAttribute("key", "key-" + (i % 10)));
+			routerRef.tell(new StreamEventBatch(events), getRef());
+			
+			// collect the events received per routee
+			final Map<String, ActorRef> keyRoutees = new HashMap<>();
+			final Map<String, List<String>> keyEvents = new HashMap<>();
+			int received = 0;
+			for(int i = 0; i < routees.size(); i++) {
+				final JavaTestKit routee = routees.get(i);
+				final Object message = routee.receiveOne(Duration.create(200, TimeUnit.MILLISECONDS));
+				if(message == null)
+					continue;
+				Assert.assertEquals("The sender must be kept", getRef(), routee.getLastSender());
+				for(final StreamEventMessage event : ((StreamEventBatch)message).getEvents()) {
+					final String key = event.getCustomAttributes().get("key");
+					final ActorRef previous = keyRoutees.put(key, routeeRefs.get(i));
+					Assert.assertTrue("All events sharing a key must reach the same routee", previous == null || previous.equals(routeeRefs.get(i)));
+					List<String> ids = keyEvents.get(key);
+					if(ids == null) {
+						ids = new ArrayList<>();
+						keyEvents.put(key, ids);
+					}
+					ids.add(event.getIdentifier());
+					received++;
+				}
+			}
+			Assert.assertEquals("All events must be received", 30, received);
+			Assert.assertEquals("All keys must be assigned", 10, keyRoutees.size());
+			Assert.assertTrue("The batch must be split", new HashSet<>(keyRoutees.values()).size() > 1);
+			for(int i = 0; i < 10; i++) {
+				final List<String> ids = keyEvents.get("key-" + i);
+				Assert.assertEquals("The order must be kept", "event-" + i, ids.get(0));
+				Assert.assertEquals("The order must be kept", "event-" + (i + 10), ids.get(1));
+				Assert.assertEquals("The order must be kept", "event-" + (i + 20), ids.get(2));
+			}
+			
+			// single events are routed like the events of a batch
+			routerRef.tell(events.get(3), getRef());
+			final JavaTestKit routee = routees.get(routeeRefs.indexOf(keyRoutees.get("key-3")));
+			Assert.assertEquals("Values must be equal", "event-3", routee.expectMsgClass(StreamEventMessage.class).getIdentifier());
+		}};
+	}
+	
+}
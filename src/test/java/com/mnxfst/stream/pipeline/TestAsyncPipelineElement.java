@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import java.util.concurrent.Callable;
+
+import scala.concurrent.Future;
+import akka.dispatch.Futures;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+
+/**
+ * Async test element which completes each event after a short delay and reports it along with
+ * the number of events in flight towards the configured log reference. An event identified by {@link #RESTART_EVENT_ID} 
+ * fails the actor, thus it is restarted by its supervisor
+ * @author mnxfst
+ * @since 18.03.2014
+ *
+ */
+public class TestAsyncPipelineElement extends AsyncPipelineElement {
+
+	public static final String RESTART_EVENT_ID = "restart";
+	
+	private String logRefPath = null;
+	
+	public TestAsyncPipelineElement(PipelineElementConfiguration pipelineElementConfiguration) {
+		super(pipelineElementConfiguration);
+		logRefPath = pipelineElementConfiguration.getSettings().get("logRefPath");
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#processEvent(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	protected void processEvent(StreamEventMessage message) throws Exception {
+		if(RESTART_EVENT_ID.equals(message.getIdentifier()))
+			throw new IllegalStateException("restart requested");
+		super.processEvent(message);
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#processEventAsync(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	protected Future<Object> processEventAsync(final StreamEventMessage message) throws Exception {
+		return Futures.future(new Callable<Object>() {
+			public Object call() throws Exception {
+				Thread.sleep(20);
+				return message.getIdentifier();
+			}
+		}, context().dispatcher());
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.AsyncPipelineElement#onEventProcessed(com.mnxfst.stream.message.StreamEventMessage, java.lang.Object)
+	 */
+	protected void onEventProcessed(StreamEventMessage message, Object result) {
+		context().actorSelection(logRefPath).tell(message
+				.withCustomAttribute("inFlight", String.valueOf(getInFlight()))
+				.withCustomAttribute("waiting", String.valueOf(getWaitingEvents())), getSelf());
+	}
+
+}
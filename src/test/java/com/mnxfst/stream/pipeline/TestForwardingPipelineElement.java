@@ -0,0 +1,48 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+
+/**
+ * Forwards all events towards its default destination. If none is configured, events are sent to the actor referenced by 
+ * the log path setting
+ * @author mnxfst
+ * @since 30.03.2014
+ */
+public class TestForwardingPipelineElement extends PipelineElement {
+
+	private String logRefPath = null;
+	
+	public TestForwardingPipelineElement(PipelineElementConfiguration pipelineElementConfiguration) {
+		super(pipelineElementConfiguration);
+		logRefPath = pipelineElementConfiguration.getSettings().get("logRefPath");
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#processEvent(com.mnxfst.stream.message.StreamEventMessage)
+	 */
+	protected void processEvent(StreamEventMessage message) throws Exception {
+		if(StringUtils.isNotBlank(getPipelineElementConfiguration().getDefaultDestination()))
+			forwardMessage(message, getPipelineElementConfiguration().getDefaultDestination(), true);
+		else
+			context().actorSelection(logRefPath).tell(message, getSelf());
+	}
+
+}
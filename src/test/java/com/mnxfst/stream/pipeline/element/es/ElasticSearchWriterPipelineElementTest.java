@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.element.es;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
+
+/**
+ * Test case for {@link ElasticSearchWriterPipelineElement} in bulk mode. The writer runs against a {@link TestElasticSearchClient test client}, 
+ * thus each bulk request fails right away and is reported as error
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class ElasticSearchWriterPipelineElementTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for bulk indexing being flushed as soon as the max. number of documents is collected, expecting collected 
+	 * documents to be reported as pending and the failed request to be reported as error
+	 */
+	@Test
+	public void testBulkFlushOnMaxDocuments() throws Exception {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = createConfiguration("bulk-max-documents", getRef());
+			cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_MAX_DOCUMENTS, "3");
+			final ActorRef elementRef = system.actorOf(Props.create(TestElasticSearchWriterPipelineElement.class, cfg));
+			
+			for(int i = 0; i < 2; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "{\"id\":" + i + "}"), getRef());
+			elementRef.tell(new PipelineElementFlowRequestMessage("test-pipeline"), getRef());
+			PipelineElementFlowReportMessage report = expectMsgClass(PipelineElementFlowReportMessage.class);
+			Assert.assertEquals("Values must be equal", 2, report.getReceivedEvents());
+			Assert.assertEquals("The collected documents must be pending", 2, report.getPendingEvents());
+			
+			elementRef.tell(new StreamEventMessage("event-2", "test-origin", System.currentTimeMillis(), "{\"id\":2}"), getRef());
+			Assert.assertEquals("The failed bulk request must be reported", Integer.valueOf(ElasticSearchWriterPipelineElement.ERROR_CODE_BULK_REQUEST_FAILED), 
+					expectMsgClass(Duration.create(5, TimeUnit.SECONDS), Integer.class));
+			
+			elementRef.tell(new PipelineElementFlowRequestMessage("test-pipeline"), getRef());
+			report = expectMsgClass(PipelineElementFlowReportMessage.class);
+			Assert.assertEquals("Values must be equal", 3, report.getReceivedEvents());
+			Assert.assertEquals("The answered documents must not be pending", 0, report.getPendingEvents());
+			system.stop(elementRef);
+		}};
+	}
+	
+	/**
+	 * Test case for bulk indexing with all request slots taken, expecting the element to keep answering while the document 
+	 * waits for a slot and the document to be indexed as soon as the outstanding request is answered
+	 */
+	@Test
+	public void testBulkAddWithoutFreeSlot() throws Exception {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = createConfiguration("bulk-no-free-slot", getRef());
+			cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_MAX_DOCUMENTS, "1");
+			cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_CONCURRENT_REQUESTS, "1");
+			cfg.addSetting("responseDelayMs", "1000");
+			final ActorRef elementRef = system.actorOf(Props.create(TestElasticSearchWriterPipelineElement.class, cfg));
+			
+			for(int i = 0; i < 2; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "{\"id\":" + i + "}"), getRef());
+			elementRef.tell(new PipelineElementFlowRequestMessage("test-pipeline"), getRef());
+			Assert.assertEquals("Both documents must be pending", 2, expectMsgClass(Duration.create(500, TimeUnit.MILLISECONDS), PipelineElementFlowReportMessage.class).getPendingEvents());
+			
+			for(int i = 0; i < 2; i++)
+				Assert.assertEquals("The failed bulk request must be reported", Integer.valueOf(ElasticSearchWriterPipelineElement.ERROR_CODE_BULK_REQUEST_FAILED), 
+						expectMsgClass(Duration.create(5, TimeUnit.SECONDS), Integer.class));
+			elementRef.tell(new PipelineElementFlowRequestMessage("test-pipeline"), getRef());
+			Assert.assertEquals("The answered documents must not be pending", 0, expectMsgClass(PipelineElementFlowReportMessage.class).getPendingEvents());
+			system.stop(elementRef);
+		}};
+	}
+	
+	/**
+	 * Test case for bulk indexing being flushed after the max. age of collected documents
+	 */
+	@Test
+	public void testBulkFlushOnMaxAge() throws Exception {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = createConfiguration("bulk-max-age", getRef());
+			cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_MAX_AGE_MS, "200");
+			final ActorRef elementRef = system.actorOf(Props.create(TestElasticSearchWriterPipelineElement.class, cfg));
+			
+			elementRef.tell(new StreamEventMessage("event-0", "test-origin", System.currentTimeMillis(), "{\"id\":0}"), getRef());
+			Assert.assertEquals("The failed bulk request must be reported", Integer.valueOf(ElasticSearchWriterPipelineElement.ERROR_CODE_BULK_REQUEST_FAILED), 
+					expectMsgClass(Duration.create(5, TimeUnit.SECONDS), Integer.class));
+			system.stop(elementRef);
+		}};
+	}
+	
+	/**
+	 * Test case for stopping the element with documents collected, expecting them to be flushed without blocking the stop
+	 */
+	@Test
+	public void testBulkFlushOnStop() throws Exception {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = createConfiguration("bulk-stop", getRef());
+			final ActorRef elementRef = system.actorOf(Props.create(TestElasticSearchWriterPipelineElement.class, cfg));
+			watch(elementRef);
+			
+			elementRef.tell(new StreamEventMessage("event-0", "test-origin", System.currentTimeMillis(), "{\"id\":0}"), getRef());
+			elementRef.tell(new PipelineElementFlowRequestMessage("test-pipeline"), getRef());
+			Assert.assertEquals("The collected document must be pending", 1, expectMsgClass(PipelineElementFlowReportMessage.class).getPendingEvents());
+			
+			system.stop(elementRef);
+			expectTerminated(Duration.create(2, TimeUnit.SECONDS), elementRef);
+		}};
+	}
+	
+	/**
+	 * Test case for bulk requests answered with failed items, expecting each item to be reported as error
+	 */
+	@Test
+	public void testBulkItemFailures() throws Exception {
+		new JavaTestKit(system) {{
+			
+			PipelineElementConfiguration cfg = createConfiguration("bulk-item-failures", getRef());
+			cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_MAX_DOCUMENTS, "2");
+			cfg.addSetting("failItems", "true");
+			final ActorRef elementRef = system.actorOf(Props.create(TestElasticSearchWriterPipelineElement.class, cfg));
+			
+			for(int i = 0; i < 2; i++)
+				elementRef.tell(new StreamEventMessage("event-" + i, "test-origin", System.currentTimeMillis(), "{\"id\":" + i + "}"), getRef());
+			for(int i = 0; i < 2; i++)
+				Assert.assertEquals("The failed item must be reported", Integer.valueOf(ElasticSearchWriterPipelineElement.ERROR_CODE_BULK_ITEM_FAILED), 
+						expectMsgClass(Duration.create(5, TimeUnit.SECONDS), Integer.class));
+			system.stop(elementRef);
+		}};
+	}
+	
+	/**
+	 * Returns a bulk writer configuration which is never flushed by age unless configured otherwise 
+	 * @param elementId
+	 * @param logRef
+	 * @return
+	 */
+	protected static PipelineElementConfiguration createConfiguration(final String elementId, final ActorRef logRef) {
+		PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", elementId, "description", TestElasticSearchWriterPipelineElement.class.getName(), 1, "");
+		cfg.addSetting("logRefPath", logRef.path().toString());
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_CLUSTER_NAME, "test-cluster");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_HOST_PREFIX + "0", "localhost");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_PORT_PREFIX + "0", "9300");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_INDEX, "test-index");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_DOCUMENT_TYPE, "test-type");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_WRITE_EVENT_ONLY, "true");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_ENABLED, "true");
+		cfg.addSetting(ElasticSearchWriterPipelineElement.ES_BULK_MAX_AGE_MS, "0");
+		return cfg;
+	}
+
+}
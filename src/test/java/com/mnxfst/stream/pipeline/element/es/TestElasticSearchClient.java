@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.element.es;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.AdminClient;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * Client answering bulk requests without a cluster: either each item fails or the request as a whole. Answers may be
+ * delayed for keeping bulk requests outstanding
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class TestElasticSearchClient extends AbstractClient {
+
+	/** answer each item as failed instead of the request as a whole */
+	private final boolean failItems;
+	/** time in milliseconds requests are answered after */
+	private final long responseDelay;
+	
+	public TestElasticSearchClient(final boolean failItems, final long responseDelay) {
+		this.failItems = failItems;
+		this.responseDelay = responseDelay;
+	}
+	
+	/**
+	 * @see org.elasticsearch.client.internal.InternalGenericClient#execute(org.elasticsearch.action.Action, org.elasticsearch.action.ActionRequest, org.elasticsearch.action.ActionListener)
+	 */
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void execute(
+			Action<Request, Response, RequestBuilder> action, final Request request, final ActionListener<Response> listener) {
+		
+		if(this.responseDelay <= 0) {
+			answer(request, listener);
+			return;
+		}
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(responseDelay);
+				} catch(InterruptedException e) {
+					// answered right away
+				}
+				answer(request, listener);
+			}
+		}).start();
+	}
+	
+	/**
+	 * Answers the given request 
+	 * @param request
+	 * @param listener
+	 */
+	@SuppressWarnings("unchecked")
+	protected <Request extends ActionRequest, Response extends ActionResponse> void answer(final Request request, final ActionListener<Response> listener) {
+		
+		if(!(request instanceof BulkRequest) || !this.failItems) {
+			listener.onFailure(new IllegalStateException("no node available"));
+			return;
+		}
+		
+		BulkRequest bulkRequest = (BulkRequest)request;
+		BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+		for(int i = 0; i < items.length; i++)
+			items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure("test-index", "test-type", null, "document rejected"));
+		listener.onResponse((Response)new BulkResponse(items, 0));
+	}
+
+	/**
+	 * @see org.elasticsearch.client.internal.InternalGenericClient#execute(org.elasticsearch.action.Action, org.elasticsearch.action.ActionRequest)
+	 */
+	public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> ActionFuture<Response> execute(
+			Action<Request, Response, RequestBuilder> action, Request request) {
+		throw new UnsupportedOperationException("synchronous requests are not supported");
+	}
+
+	public ThreadPool threadPool() {
+		return null;
+	}
+
+	public AdminClient admin() {
+		return null;
+	}
+
+	public Settings settings() {
+		return ImmutableSettings.EMPTY;
+	}
+
+	public void close() {
+	}
+
+}
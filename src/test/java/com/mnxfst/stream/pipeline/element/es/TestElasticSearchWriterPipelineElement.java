@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.pipeline.element.es;
+
+import java.util.Map;
+
+import org.elasticsearch.client.Client;
+
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+
+/**
+ * Elastic search writer running against a {@link TestElasticSearchClient test client} and reporting errors towards the 
+ * configured log reference as well
+ * @author mnxfst
+ * @since 30.03.2014
+ *
+ */
+public class TestElasticSearchWriterPipelineElement extends ElasticSearchWriterPipelineElement {
+
+	private String logRefPath = null;
+	
+	public TestElasticSearchWriterPipelineElement(PipelineElementConfiguration pipelineElementConfiguration) {
+		super(pipelineElementConfiguration);
+		logRefPath = pipelineElementConfiguration.getSettings().get("logRefPath");
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.element.es.ElasticSearchWriterPipelineElement#initClient(java.lang.String, java.util.Map)
+	 */
+	protected Client initClient(String clusterName, Map<String, Integer> transportAddressSettings) {
+		return new TestElasticSearchClient(getBooleanProperty("failItems", false), getIntProperty("responseDelayMs", 0));
+	}
+
+	/**
+	 * @see com.mnxfst.stream.pipeline.PipelineElement#reportError(int, java.lang.String)
+	 */
+	protected void reportError(int errorCode, String errorMessage) {
+		super.reportError(errorCode, errorMessage);
+		context().actorSelection(logRefPath).tell(Integer.valueOf(errorCode), getSelf());
+	}
+
+}
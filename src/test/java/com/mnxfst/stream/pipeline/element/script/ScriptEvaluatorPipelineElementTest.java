@@ -15,72 +15,146 @@
  */
 package com.mnxfst.stream.pipeline.element.script;
 
-import java.io.FileReader;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
-import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
-import org.apache.commons.lang3.StringUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+
 import com.mnxfst.stream.message.StreamEventMessage;
+import com.mnxfst.stream.pipeline.PipelineElementTest;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementSetupFailedMessage;
 
 /**
- * Test case for {@link ScriptEvaluatorPipelineElement}
+ * Test case for {@link ScriptEvaluatorPipelineElement}. Test cases evaluating scripts are skipped if the runtime does
+ * not provide a javascript engine 
  * @author mnxfst
  * @since 05.03.2014
  *
  */
 public class ScriptEvaluatorPipelineElementTest {
 
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
 	/**
-	 * This is not a test case but more a kind of a sandbox for fiddling around with the script engine
+	 * Test case for {@link ScriptEvaluatorPipelineElement#preStart()} being provided an unknown script engine, expecting 
+	 * the parent to be notified about the failed setup
 	 */
 	@Test
-	public void testEvaluateScriptWithReturn() throws Exception {
-		
-		ScriptEngineManager factory = new ScriptEngineManager();
-		ScriptEngine engine = factory.getEngineByName("JavaScript");
-		StringWriter writer = new StringWriter ();
-	    PrintWriter pw = new PrintWriter (writer, true);
-	    engine.getContext ().setWriter (pw);
-	    
-	    engine.eval(new FileReader("/home/mnxfst/git/stream-analyzer/src/main/resources/spahql.js"));
-	    
-	    String script = "var result0 = '1';var result1 = '2';";
-	    engine.eval(script);
-	    StringBuffer sb = writer.getBuffer ();
-	    System.out.println ("StringBuffer contains: " + sb + " - " + engine.get("test"));
-	    System.out.println(engine.get("content"));
-	    
-	    for(int i = 0; i < Integer.MAX_VALUE; i++) {
-	    	String content = (String)engine.get("result"+i);
-	    	if(StringUtils.isBlank(content))
-	    		break;
-	    	System.out.println(content);
-	    }
-	    
+	public void testPreStartWithUnknownScriptEngine() throws Exception {
+		new JavaTestKit(system) {{
+			PipelineElementConfiguration cfg = createConfiguration("unknown-engine", "test-unknown-engine");
+			final ActorRef parentRef = system.actorOf(Props.create(PipelineElementTest.TestParent.class, Props.create(ScriptEvaluatorPipelineElement.class, cfg), getRef()));
+			
+			PipelineElementSetupFailedMessage failed = expectMsgClass(PipelineElementSetupFailedMessage.class);
+			Assert.assertEquals("Values must be equal", "test-unknown-engine", failed.getElementId());
+			Assert.assertEquals("Values must be equal", PipelineElementSetupFailedMessage.GENERAL, failed.getError());
+			system.stop(parentRef);
+		}};
+	}
+	
+	/**
+	 * Test case for {@link ScriptEvaluatorPipelineElement} applying a compiled script which reads an event field from a 
+	 * variable, modifies the content and names the next element 
+	 */
+	@Test
+	public void testEvaluateCompiledScript() throws Exception {
+		Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("JavaScript"));
+		new JavaTestKit(system) {{
+			PipelineElementConfiguration cfg = createConfiguration("JavaScript", "test-compiled");
+			cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_EVAL_CODE, writeScript("nextElement = 'destination'; content = 'session:' + sessionId;"));
+			cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_FIELD_VARIABLE_PREFIX + "sessionId", "session.id");
+			final ActorRef parentRef = system.actorOf(Props.create(PipelineElementTest.TestParent.class, Props.create(ScriptEvaluatorPipelineElement.class, cfg), getRef()));
+			
+			final JavaTestKit destination = new JavaTestKit(system);
+			PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			update.addElementReference("destination", destination.getRef());
+			parentRef.tell(update, getRef());
+			
+			parentRef.tell(new StreamEventMessage("id-1", "origin", System.currentTimeMillis(), "{\"session\":{\"id\":\"s-1\"}}"), getRef());
+			StreamEventMessage evaluated = destination.expectMsgClass(StreamEventMessage.class);
+			Assert.assertEquals("Values must be equal", "id-1", evaluated.getIdentifier());
+			Assert.assertEquals("Values must be equal", "session:s-1", evaluated.getEvent());
+			system.stop(parentRef);
+		}};
+	}
 
-		ObjectMapper mapper = new ObjectMapper();
-		StreamEventMessage message = new StreamEventMessage();
-		message.setIdentifier("test-id");
-		message.setOrigin("test-origin");
-		message.setTimestamp("2014-03-05");
-		message.setEvent("10");
-//		message.addCustomAttribute("test-key-1", "3");
-//		message.addCustomAttribute("test-key-2", "value-1");
-//		message.addCustomAttribute("test-key-3", "19");
-//		message.addCustomAttribute("errors", (String)engine.get("test"));
+	/**
+	 * Test case for {@link ScriptEvaluatorPipelineElement} invoking the configured function for each event. The script
+	 * names no next element when evaluated as a whole, thus a forwarded event proves the function to be invoked 
+	 */
+	@Test
+	public void testEvaluateInvocableFunction() throws Exception {
+		Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("JavaScript"));
+		new JavaTestKit(system) {{
+			PipelineElementConfiguration cfg = createConfiguration("JavaScript", "test-invocable");
+			cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_EVAL_CODE, writeScript("function evaluate(event) { nextElement = 'destination'; content = event + '-evaluated'; }"));
+			cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_EVAL_FUNCTION, "evaluate");
+			final ActorRef parentRef = system.actorOf(Props.create(PipelineElementTest.TestParent.class, Props.create(ScriptEvaluatorPipelineElement.class, cfg), getRef()));
 			
-		String json = mapper.writeValueAsString(message);
-		System.out.println(json);
-		StreamEventMessage msg = mapper.readValue(json,  StreamEventMessage.class);
-		System.out.println(message.getCustomAttributes().get("json"));
-	    
-		
+			final JavaTestKit destination = new JavaTestKit(system);
+			PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("test-pipeline");
+			update.addElementReference("destination", destination.getRef());
+			parentRef.tell(update, getRef());
+			
+			for(int i = 0; i < 3; i++)
+				parentRef.tell(new StreamEventMessage("id-" + i, "origin", System.currentTimeMillis(), "event-" + i), getRef());
+			for(int i = 0; i < 3; i++)
+				Assert.assertEquals("Values must be equal", "event-" + i + "-evaluated", destination.expectMsgClass(StreamEventMessage.class).getEvent());
+			system.stop(parentRef);
+		}};
+	}
+	
+	/**
+	 * Returns the configuration for a script evaluator using the given engine, reading the event from "content" and the
+	 * next element from "nextElement"
+	 * @param engineName
+	 * @param elementId
+	 * @return
+	 */
+	protected static PipelineElementConfiguration createConfiguration(final String engineName, final String elementId) {
+		PipelineElementConfiguration cfg = new PipelineElementConfiguration("test-pipeline", elementId, "description", ScriptEvaluatorPipelineElement.class.getName(), 1, null);
+		cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_ENGINE_NAME, engineName);
+		cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_INPUT_VARIABLE, "content");
+		cfg.addSetting(ScriptEvaluatorPipelineElement.CONFIG_SCRIPT_OUTPUT_NEXT_ELEMENT_VARIABLE, "nextElement");
+		return cfg;
+	}
+	
+	/**
+	 * Writes the script to a temporary file and returns its url as the evaluator loads scripts by url
+	 * @param script
+	 * @return
+	 * @throws Exception
+	 */
+	protected static String writeScript(final String script) throws Exception {
+		File scriptFile = File.createTempFile("script-", ".js");
+		scriptFile.deleteOnExit();
+		Files.write(scriptFile.toPath(), script.getBytes(StandardCharsets.UTF_8));
+		return scriptFile.toURI().toURL().toString();
 	}
 	
 }
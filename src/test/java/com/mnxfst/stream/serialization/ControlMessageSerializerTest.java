@@ -0,0 +1,151 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.SerializationExtension;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.directory.ComponentType;
+import com.mnxfst.stream.directory.message.ComponentBulkLookupResponseMessage;
+import com.mnxfst.stream.directory.message.ComponentLookupMessage;
+import com.mnxfst.stream.directory.message.ComponentRegistrationMessage;
+import com.mnxfst.stream.message.FlowCreditMessage;
+import com.mnxfst.stream.pipeline.config.PipelineElementConfiguration;
+import com.mnxfst.stream.pipeline.config.PipelineRootConfiguration;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementFlowRequestMessage;
+import com.mnxfst.stream.pipeline.message.PipelineElementReferenceUpdateMessage;
+import com.mnxfst.stream.pipeline.message.PipelineLoadReportMessage;
+import com.mnxfst.stream.pipeline.message.PipelineSetupMessage;
+import com.mnxfst.stream.pipeline.message.PipelineSetupResponseMessage;
+
+/**
+ * Test case for {@link ControlMessageSerializer}
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class ControlMessageSerializerTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for registry messages carrying actor references, expecting the references to be resolved
+	 */
+	@Test
+	public void testSerializeRegistryMessages() {
+		
+		ActorRef ref = new JavaTestKit(system).getRef();
+		ControlMessageSerializer serializer = new ControlMessageSerializer((ExtendedActorSystem)system);
+		Assert.assertEquals("Values must be equal", ControlMessageSerializer.SERIALIZER_ID, 
+				SerializationExtension.get(system).findSerializerFor(new ComponentRegistrationMessage()).identifier());
+		
+		ComponentRegistrationMessage registration = (ComponentRegistrationMessage)serializer.fromBinary(
+				serializer.toBinary(new ComponentRegistrationMessage("id", ComponentType.DISPATCHER, ref)));
+		Assert.assertEquals("Values must be equal", "id", registration.getId());
+		Assert.assertEquals("Values must be equal", ComponentType.DISPATCHER, registration.getType());
+		Assert.assertEquals("Values must be equal", ref, registration.getReference());
+		
+		ComponentLookupMessage lookup = new ComponentLookupMessage(ComponentType.PIPELINE_ROOT);
+		lookup.addComponentId("p-1");
+		lookup.addComponentId("p-2");
+		ComponentLookupMessage lookupCopy = (ComponentLookupMessage)serializer.fromBinary(serializer.toBinary(lookup));
+		Assert.assertEquals("Values must be equal", ComponentType.PIPELINE_ROOT, lookupCopy.getType());
+		Assert.assertEquals("Values must be equal", lookup.getComponentIds(), lookupCopy.getComponentIds());
+		
+		ComponentBulkLookupResponseMessage bulk = new ComponentBulkLookupResponseMessage();
+		bulk.addComponentReference(ComponentType.DISPATCHER, "d-1", ref);
+		bulk.addComponentReference(ComponentType.STREAM_LISTENER, "l-1", ref);
+		ComponentBulkLookupResponseMessage bulkCopy = (ComponentBulkLookupResponseMessage)serializer.fromBinary(serializer.toBinary(bulk));
+		Assert.assertEquals("Values must be equal", ref, bulkCopy.getComponentReferences(ComponentType.DISPATCHER).get("d-1"));
+		Assert.assertEquals("Values must be equal", ref, bulkCopy.getComponentReferences(ComponentType.STREAM_LISTENER).get("l-1"));
+	}
+	
+	/**
+	 * Test case for pipeline control messages
+	 */
+	@Test
+	public void testSerializePipelineMessages() {
+		
+		ActorRef ref = new JavaTestKit(system).getRef();
+		ControlMessageSerializer serializer = new ControlMessageSerializer((ExtendedActorSystem)system);
+		
+		PipelineElementReferenceUpdateMessage update = new PipelineElementReferenceUpdateMessage("pipeline-1");
+		update.addElementReference("element-1", ref);
+		PipelineElementReferenceUpdateMessage updateCopy = (PipelineElementReferenceUpdateMessage)serializer.fromBinary(serializer.toBinary(update));
+		Assert.assertEquals("Values must be equal", "pipeline-1", updateCopy.getPipelineId());
+		Assert.assertEquals("Values must be equal", ref, updateCopy.getElementReferences().get("element-1"));
+		
+		PipelineSetupResponseMessage response = (PipelineSetupResponseMessage)serializer.fromBinary(
+				serializer.toBinary(new PipelineSetupResponseMessage("pipeline-1", -1, "failed")));
+		Assert.assertEquals("Values must be equal", "pipeline-1", response.getPipelineId());
+		Assert.assertEquals("Values must be equal", -1, response.getResponseCode());
+		Assert.assertEquals("Values must be equal", "failed", response.getResponseMessage());
+		
+		PipelineElementConfiguration elementConfiguration = new PipelineElementConfiguration("pipeline-1", "element-1", "description", "class", 1, "element-2");
+		elementConfiguration.addSetting("key", "value");
+		PipelineRootConfiguration configuration = new PipelineRootConfiguration("pipeline-1", "description", "element-1");
+		configuration.addElementConfiguration(elementConfiguration);
+		PipelineSetupMessage setup = (PipelineSetupMessage)serializer.fromBinary(serializer.toBinary(new PipelineSetupMessage(configuration)));
+		Assert.assertEquals("Values must be equal", "pipeline-1", setup.getConfiguration().getPipelineId());
+		Assert.assertEquals("Values must be equal", "element-1", setup.getConfiguration().getInitialReceiverId());
+		Assert.assertEquals("Values must be equal", "value", setup.getConfiguration().getElements().iterator().next().getSettings().get("key"));
+		
+		PipelineLoadReportMessage report = (PipelineLoadReportMessage)serializer.fromBinary(serializer.toBinary(new PipelineLoadReportMessage("pipeline-1", 12345L, 17L)));
+		Assert.assertEquals("Values must be equal", "pipeline-1", report.getPipelineId());
+		Assert.assertEquals("Values must be equal", 12345L, report.getReceivedEvents());
+		Assert.assertEquals("Values must be equal", 17L, report.getLatencyMillis());
+		
+		Assert.assertEquals("Values must be equal", "pipeline-1", ((PipelineElementFlowRequestMessage)serializer.fromBinary(serializer.toBinary(new PipelineElementFlowRequestMessage("pipeline-1")))).getPipelineId());
+		
+		PipelineElementFlowReportMessage flowReport = new PipelineElementFlowReportMessage("pipeline-1", "element-1", 100L, 7L);
+		flowReport.getForwardedEvents().put("element-2", 93L);
+		PipelineElementFlowReportMessage flowReportCopy = (PipelineElementFlowReportMessage)serializer.fromBinary(serializer.toBinary(flowReport));
+		Assert.assertEquals("Values must be equal", "pipeline-1", flowReportCopy.getPipelineId());
+		Assert.assertEquals("Values must be equal", "element-1", flowReportCopy.getElementId());
+		Assert.assertEquals("Values must be equal", 100L, flowReportCopy.getReceivedEvents());
+		Assert.assertEquals("Values must be equal", 7L, flowReportCopy.getPendingEvents());
+		Assert.assertEquals("Values must be equal", Long.valueOf(93L), flowReportCopy.getForwardedEvents().get("element-2"));
+		
+		FlowCreditMessage credit = (FlowCreditMessage)serializer.fromBinary(serializer.toBinary(new FlowCreditMessage("dispatcher-1", 5000L)));
+		Assert.assertEquals("Values must be equal", "dispatcher-1", credit.getSourceId());
+		Assert.assertEquals("Values must be equal", 5000L, credit.getCreditLimit());
+		Assert.assertNull("The instance must not be set", credit.getInstanceId());
+		
+		credit = (FlowCreditMessage)serializer.fromBinary(serializer.toBinary(new FlowCreditMessage("dispatcher-1", 5000L, "$a", 1200L)));
+		Assert.assertEquals("Values must be equal", "$a", credit.getInstanceId());
+		Assert.assertEquals("Values must be equal", 1200L, credit.getReceivedEvents());
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Compares the {@link StreamEventMessageSerializer} against java serialization - which akka falls back to for 
+ * unbound {@link java.io.Serializable} messages - by serializing and deserializing a single event and a batch of 
+ * 100 events. Run it via {@link #main(String[])} from the test classpath which prints the payload sizes as well
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamEventMessageSerializerBenchmark {
+
+	private static final String EVENT = "{\"session\":{\"id\":\"2c4a6f1e-8d8e-4f7a-9a51-4fd3c6c1a2b0\",\"start\":\"2014-03-23T10:15:00.000+0100\"},"
+			+ "\"page\":{\"url\":\"http://www.example.com/products/shoes?color=red\",\"title\":\"Red shoes\",\"referrer\":\"http://www.example.com/\"},"
+			+ "\"visitor\":{\"id\":\"v-81723\",\"country\":\"DE\",\"city\":\"Hamburg\",\"agent\":\"Mozilla/5.0 (X11; Linux x86_64)\"},"
+			+ "\"event\":{\"type\":\"pageview\",\"ts\":1395566100000,\"tags\":[\"shoes\",\"red\",\"sale\"]}}";
+
+	private final StreamEventMessageSerializer serializer = new StreamEventMessageSerializer();
+	private final StreamEventMessage message = createMessage(0);
+	private final StreamEventBatch batch = createBatch(100);
+
+	@Benchmark
+	public Object javaMessage() throws Exception {
+		return javaDeserialize(javaSerialize(this.message));
+	}
+
+	@Benchmark
+	public Object binaryMessage() {
+		return this.serializer.fromBinary(this.serializer.toBinary(this.message));
+	}
+
+	@Benchmark
+	public Object javaBatch() throws Exception {
+		return javaDeserialize(javaSerialize(this.batch));
+	}
+
+	@Benchmark
+	public Object binaryBatch() {
+		return this.serializer.fromBinary(this.serializer.toBinary(this.batch));
+	}
+
+	protected static byte[] javaSerialize(final Object obj) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(obj);
+		}
+		return bytes.toByteArray();
+	}
+
+	protected static Object javaDeserialize(final byte[] content) throws Exception {
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(content))) {
+			return in.readObject();
+		}
+	}
+
+	/**
+	 * Returns a message with distinct content - otherwise java serialization would write the content once per batch only 
+	 * @param index
+	 * @return
+	 */
+	protected static StreamEventMessage createMessage(final int index) {
+		return new StreamEventMessage("9b1f6a7e-0c4e-4bb5-8f43-" + (100000000000L + index), "webtrends", 1395738900000L + index, EVENT.replace("v-81723", "v-" + index))
+			.withCustomAttribute("pipeline", "pipeline-1").withCustomAttribute("customer", "customer-" + (index % 10));
+	}
+
+	protected static StreamEventBatch createBatch(final int size) {
+		List<StreamEventMessage> events = new ArrayList<>(size);
+		for(int i = 0; i < size; i++)
+			events.add(createMessage(i));
+		return new StreamEventBatch(events);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().include(StreamEventMessageSerializerBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
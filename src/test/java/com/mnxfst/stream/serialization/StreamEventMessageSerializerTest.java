@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2014 Christian Kreutzfeldt
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.mnxfst.stream.serialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import akka.actor.ActorSystem;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.testkit.JavaTestKit;
+
+import com.mnxfst.stream.message.StreamEventBatch;
+import com.mnxfst.stream.message.StreamEventMessage;
+
+/**
+ * Test case for {@link StreamEventMessageSerializer}
+ * @author mnxfst
+ * @since 25.03.2014
+ *
+ */
+public class StreamEventMessageSerializerTest {
+
+	protected static ActorSystem system;
+	
+	@BeforeClass
+	public static void initialize() {
+	    system = ActorSystem.create();
+	}
+	  
+	@AfterClass
+	public static void shutdown() {
+		JavaTestKit.shutdownActorSystem(system);
+		system = null;
+	}
+	
+	/**
+	 * Test case for the serializer binding found in application.conf
+	 */
+	@Test
+	public void testSerializerBinding() {
+		Serialization serialization = SerializationExtension.get(system);
+		Serializer serializer = serialization.findSerializerFor(new StreamEventMessage("id", "origin", System.currentTimeMillis(), "event"));
+		Assert.assertEquals("Values must be equal", StreamEventMessageSerializer.SERIALIZER_ID, serializer.identifier());
+		Assert.assertEquals("Values must be equal", StreamEventMessageSerializer.SERIALIZER_ID, serialization.findSerializerFor(new StreamEventBatch()).identifier());
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessageSerializer#toBinary(Object)} and {@link StreamEventMessageSerializer#fromBinaryJava(byte[], Class)} 
+	 * being provided a single message, expecting the content to be transferred as bytes
+	 */
+	@Test
+	public void testSerializeEvent() {
+		
+		StreamEventMessageSerializer serializer = new StreamEventMessageSerializer();
+		StreamEventMessage original = new StreamEventMessage("id", "origin", System.currentTimeMillis(), "{\"name\":\"café\"}").withCustomAttribute("key", "value").withCustomAttribute("empty", null).withEventTime(1395738900123L);
+		StreamEventMessage copy = (StreamEventMessage)serializer.fromBinary(serializer.toBinary(original));
+		Assert.assertEquals("Values must be equal", original.getIdentifier(), copy.getIdentifier());
+		Assert.assertEquals("Values must be equal", original.getOrigin(), copy.getOrigin());
+		Assert.assertEquals("Values must be equal", original.getIngestionTime(), copy.getIngestionTime());
+		Assert.assertEquals("Values must be equal", original.getEventTime(), copy.getEventTime());
+		Assert.assertTrue("The content must be held as bytes", copy.isUtf8Payload());
+		Assert.assertEquals("Values must be equal", original.getEvent(), copy.getEvent());
+		Assert.assertEquals("Values must be equal", original.getCustomAttributes(), copy.getCustomAttributes());
+		
+		StreamEventMessage empty = (StreamEventMessage)serializer.fromBinary(serializer.toBinary(new StreamEventMessage(null, null, 0, null)));
+		Assert.assertNull("The identifier must be null", empty.getIdentifier());
+		Assert.assertNull("The event must be null", empty.getEvent());
+		Assert.assertTrue("The attributes must be empty", empty.getCustomAttributes().isEmpty());
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessageSerializer#toBinary(Object)} and {@link StreamEventMessageSerializer#fromBinaryJava(byte[], Class)} 
+	 * being provided a batch, expecting attribute keys to be written once only 
+	 */
+	@Test
+	public void testSerializeBatch() {
+		
+		StreamEventMessageSerializer serializer = new StreamEventMessageSerializer();
+		List<StreamEventMessage> events = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+			events.add(new StreamEventMessage("id-"+i, "origin", System.currentTimeMillis(), "event-"+i).withCustomAttribute("a-rather-long-attribute-key", "v"));
+		
+		byte[] content = serializer.toBinary(new StreamEventBatch(events));
+		int single = serializer.toBinary(events.get(0)).length;
+		Assert.assertTrue("The key must be written once only", content.length <= 10 * single - 9 * "a-rather-long-attribute-key".length());
+		
+		StreamEventBatch copy = (StreamEventBatch)serializer.fromBinary(content);
+		Assert.assertEquals("Values must be equal", 10, copy.size());
+		for(int i = 0; i < 10; i++) {
+			Assert.assertEquals("Values must be equal", "id-"+i, copy.getEvents().get(i).getIdentifier());
+			Assert.assertEquals("Values must be equal", "event-"+i, copy.getEvents().get(i).getEvent());
+			Assert.assertEquals("Values must be equal", "v", copy.getEvents().get(i).getCustomAttributes().get("a-rather-long-attribute-key"));
+		}
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessageSerializer#toBinary(Object)} being provided the benchmark message and batch, expecting 
+	 * the binary content to be smaller than the java serialized one
+	 */
+	@Test
+	public void testSerializedSizeBelowJavaSerialization() throws Exception {
+		StreamEventMessageSerializer serializer = new StreamEventMessageSerializer();
+		StreamEventMessage message = StreamEventMessageSerializerBenchmark.createMessage(0);
+		StreamEventBatch batch = StreamEventMessageSerializerBenchmark.createBatch(100);
+		Assert.assertTrue("The message must be smaller than java serialized", serializer.toBinary(message).length < StreamEventMessageSerializerBenchmark.javaSerialize(message).length);
+		Assert.assertTrue("The batch must be smaller than java serialized", serializer.toBinary(batch).length < StreamEventMessageSerializerBenchmark.javaSerialize(batch).length);
+	}
+	
+	/**
+	 * Test case for {@link StreamEventMessageSerializer#fromBinaryJava(byte[], Class)} being provided truncated content
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testDeserializeTruncatedContent() {
+		StreamEventMessageSerializer serializer = new StreamEventMessageSerializer();
+		byte[] content = serializer.toBinary(new StreamEventMessage("id", "origin", System.currentTimeMillis(), "event"));
+		serializer.fromBinary(Arrays.copyOf(content, content.length - 3));
+	}
+}